@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.RootNode;
+
+import edu.uci.megaguards.backend.truffle.node.MGTBinaryArithmetic.MGTBinaryArithmeticDouble;
+import edu.uci.megaguards.backend.truffle.node.MGTBinaryArithmetic.MGTBinaryArithmeticInt;
+import edu.uci.megaguards.backend.truffle.node.MGTBinaryArithmetic.MGTBinaryArithmeticLong;
+import edu.uci.megaguards.backend.truffle.node.MGTNode;
+import edu.uci.megaguards.object.DataType;
+
+/**
+ * The {@link edu.uci.megaguards.backend.truffle.node.MGTBinaryArithmetic} nodes, with and without
+ * the overflow check, evaluated over {@link #SIZE} operand pairs per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArithmeticBenchmark {
+
+    static final int SIZE = 4096;
+
+    /**
+     * Reads the operand at the current index of its {@link ArithmeticRoot}.
+     */
+    static final class Operand<T> extends MGTNode<T> {
+
+        private final T[] values;
+        private int index;
+
+        Operand(T[] values, DataType t) {
+            super(t);
+            this.values = values;
+            this.index = 0;
+        }
+
+        @Override
+        public T execute(VirtualFrame frame) {
+            return values[index];
+        }
+
+    }
+
+    static final class ArithmeticRoot extends RootNode {
+
+        @Child private MGTNode<?> expression;
+        private final Operand<?> left;
+        private final Operand<?> right;
+
+        ArithmeticRoot(MGTNode<?> expression, Operand<?> left, Operand<?> right) {
+            super(null);
+            this.expression = expression;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            Object result = null;
+            for (int i = 0; i < SIZE; i++) {
+                left.index = i;
+                right.index = i;
+                result = expression.execute(frame);
+            }
+            return result;
+        }
+
+    }
+
+    private CallTarget intAdd;
+    private CallTarget intAddOF;
+    private CallTarget intMul;
+    private CallTarget intMulOF;
+    private CallTarget longAdd;
+    private CallTarget longAddOF;
+    private CallTarget longMul;
+    private CallTarget longMulOF;
+    private CallTarget doubleAdd;
+    private CallTarget doubleMul;
+
+    private Integer[] ints;
+    private Long[] longs;
+    private Double[] doubles;
+
+    @Setup
+    public void setup() {
+        ints = new Integer[SIZE];
+        longs = new Long[SIZE];
+        doubles = new Double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            ints[i] = i - SIZE / 2;
+            longs[i] = (long) i << 10;
+            doubles[i] = i * 0.25;
+        }
+
+        Operand<Integer> l = intOperand();
+        Operand<Integer> r = intOperand();
+        intAdd = createCallTarget(new MGTBinaryArithmeticInt.AddNode(l, r), l, r);
+        l = intOperand();
+        r = intOperand();
+        intAddOF = createCallTarget(new MGTBinaryArithmeticInt.AddOFNode(l, r), l, r);
+        l = intOperand();
+        r = intOperand();
+        intMul = createCallTarget(new MGTBinaryArithmeticInt.MulNode(l, r), l, r);
+        l = intOperand();
+        r = intOperand();
+        intMulOF = createCallTarget(new MGTBinaryArithmeticInt.MulOFNode(l, r), l, r);
+
+        Operand<Long> ll = longOperand();
+        Operand<Long> lr = longOperand();
+        longAdd = createCallTarget(new MGTBinaryArithmeticLong.AddNode(ll, lr), ll, lr);
+        ll = longOperand();
+        lr = longOperand();
+        longAddOF = createCallTarget(new MGTBinaryArithmeticLong.AddOFNode(ll, lr), ll, lr);
+        ll = longOperand();
+        lr = longOperand();
+        longMul = createCallTarget(new MGTBinaryArithmeticLong.MulNode(ll, lr), ll, lr);
+        ll = longOperand();
+        lr = longOperand();
+        longMulOF = createCallTarget(new MGTBinaryArithmeticLong.MulOFNode(ll, lr), ll, lr);
+
+        Operand<Double> dl = doubleOperand();
+        Operand<Double> dr = doubleOperand();
+        doubleAdd = createCallTarget(new MGTBinaryArithmeticDouble.AddNode(dl, dr), dl, dr);
+        dl = doubleOperand();
+        dr = doubleOperand();
+        doubleMul = createCallTarget(new MGTBinaryArithmeticDouble.MulNode(dl, dr), dl, dr);
+    }
+
+    private Operand<Integer> intOperand() {
+        return new Operand<>(ints, DataType.Int);
+    }
+
+    private Operand<Long> longOperand() {
+        return new Operand<>(longs, DataType.Long);
+    }
+
+    private Operand<Double> doubleOperand() {
+        return new Operand<>(doubles, DataType.Double);
+    }
+
+    private static CallTarget createCallTarget(MGTNode<?> expression, Operand<?> left, Operand<?> right) {
+        return Truffle.getRuntime().createCallTarget(new ArithmeticRoot(expression, left, right));
+    }
+
+    @Benchmark
+    public Object intAdd() {
+        return intAdd.call();
+    }
+
+    @Benchmark
+    public Object intAddOF() {
+        return intAddOF.call();
+    }
+
+    @Benchmark
+    public Object intMul() {
+        return intMul.call();
+    }
+
+    @Benchmark
+    public Object intMulOF() {
+        return intMulOF.call();
+    }
+
+    @Benchmark
+    public Object longAdd() {
+        return longAdd.call();
+    }
+
+    @Benchmark
+    public Object longAddOF() {
+        return longAddOF.call();
+    }
+
+    @Benchmark
+    public Object longMul() {
+        return longMul.call();
+    }
+
+    @Benchmark
+    public Object longMulOF() {
+        return longMulOF.call();
+    }
+
+    @Benchmark
+    public Object doubleAdd() {
+        return doubleAdd.call();
+    }
+
+    @Benchmark
+    public Object doubleMul() {
+        return doubleMul.call();
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.megaguards.analysis.bounds.BoundNodeVisitor;
+import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
+import edu.uci.megaguards.analysis.exception.MGException;
+
+/**
+ * The symbolic bound construction and the bound check that guards every execution of a loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundCheckBenchmark {
+
+    private LoopKernel kernel;
+    private FinalizedVariableValues finalizedValues;
+
+    @Setup
+    public void setup() throws MGException {
+        final double[][] data = LoopKernel.createData(1024);
+        kernel = new LoopKernel(data[0], data[1], data[2]);
+        finalizedValues = kernel.prepare();
+    }
+
+    @Benchmark
+    public BoundNodeVisitor processBounds() {
+        final BoundNodeVisitor variableBounds = new BoundNodeVisitor(kernel.getEnv(), kernel.getLog());
+        variableBounds.processAllLoopInfos();
+        variableBounds.processBounds();
+        return variableBounds;
+    }
+
+    @Benchmark
+    public boolean boundCheck() {
+        return finalizedValues.boundCheck(false);
+    }
+
+    /**
+     * The re-execution path, where the verification is skipped if none of its inputs changed.
+     */
+    @Benchmark
+    public boolean verify() {
+        return finalizedValues.boundCheck(true);
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.benchmark;
+
+import java.util.HashMap;
+
+import edu.uci.megaguards.MGNodeOptions;
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.analysis.bounds.BoundNodeVisitor;
+import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
+import edu.uci.megaguards.analysis.exception.MGException;
+import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.LoopInfo;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeAssign;
+import edu.uci.megaguards.ast.node.MGNodeBinOp;
+import edu.uci.megaguards.ast.node.MGNodeBinOp.BinOpType;
+import edu.uci.megaguards.ast.node.MGNodeOperand;
+import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.object.ArrayInfo;
+import edu.uci.megaguards.object.DataType;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.object.MGIntLiteral;
+import edu.uci.megaguards.object.MGStorage;
+import edu.uci.megaguards.unbox.Boxed;
+import edu.uci.megaguards.unbox.StaticBoxed;
+import edu.uci.megaguards.unbox.StaticUnboxer;
+
+/**
+ * Builds the environment of
+ *
+ * <pre>
+ * for i in range(len(c)):
+ *     c[i] = a[i] * b[i] + a[i + 1]
+ * </pre>
+ *
+ * the same way {@link edu.uci.megaguards.ast.MGTree} does for a guest loop, so the benchmarks do
+ * not need a guest language.
+ */
+public final class LoopKernel {
+
+    public static final String FUNCTION = "kernel";
+    public static final String INDUCTION_VAR = "i";
+
+    // the log options have to be registered before the first MGLog is created
+    private static final boolean optionsLoaded = MGOptions.optionsLoaded;
+
+    private final MGGlobalEnv env;
+    private final MGNode rootNode;
+    private final MGLog log;
+    private final long[] range;
+
+    public LoopKernel(double[] a, double[] b, double[] c) throws MGException {
+        this.env = new MGGlobalEnv(FUNCTION);
+        this.log = createLog();
+        this.range = new long[]{0, c.length, 1};
+
+        final MGStorage inductionVariable = env.setIteratorVar(INDUCTION_VAR, 0).copy();
+        final LoopInfo loopInfo = new LoopInfo(inductionVariable, range, new MGNodeOptions());
+        final HashMap<String, LoopInfo> loopInfos = new HashMap<>();
+        loopInfos.put(inductionVariable.getName(), loopInfo);
+        env.enterScop();
+        env.setGlobalLoopInfo(loopInfo, 0);
+        env.addLoopInfo(loopInfo);
+
+        final MGArray arrayA = addArray("a", a);
+        final MGArray arrayB = addArray("b", b);
+        final MGArray arrayC = addArray("c", c);
+
+        final MGNode i = new MGNodeOperand(inductionVariable);
+        final MGNode iPlusOne = new MGNodeBinOp(i.copy(), BinOpType.ADD, new MGNodeOperand(new MGIntLiteral(1)), DataType.Int);
+        final MGNode product = new MGNodeBinOp(access(arrayA, i.copy(), loopInfos, true), BinOpType.MUL, access(arrayB, i.copy(), loopInfos, true), DataType.Double);
+        final MGNode sum = new MGNodeBinOp(product, BinOpType.ADD, access(arrayA, iPlusOne, loopInfos, true), DataType.Double);
+        arrayC.setReadWrite();
+        this.rootNode = new MGNodeAssign(access(arrayC, i.copy(), loopInfos, false), sum);
+
+        env.mergeArgsDefUses();
+        env.mergePrivateParameters();
+        env.setRootNode(rootNode);
+    }
+
+    private MGArray addArray(String name, double[] values) throws MGException {
+        final StaticUnboxer unboxer = new StaticUnboxer.DoubleArray(values, new ArrayInfo(double[].class, values.length), values, false);
+        return env.addArrayParameter(name, new StaticBoxed(unboxer));
+    }
+
+    private MGNodeOperand access(MGArray array, MGNode index, HashMap<String, LoopInfo> loopInfos, boolean isRead) {
+        final MGArray element = (MGArray) array.copy();
+        element.addIndex(index);
+        element.setRelatedLoopInfos(loopInfos);
+        final MGNodeOperand operand = new MGNodeOperand(element);
+        env.getArrayReadWrite().addArrayAccess(operand, isRead);
+        env.addArrayAccess(operand);
+        return operand;
+    }
+
+    /**
+     * Runs the analyses the loop goes through before its first execution. See
+     * {@link edu.uci.megaguards.backend.MGFor}.
+     */
+    public FinalizedVariableValues prepare() throws MGException {
+        Boxed.UnboxAll(log);
+        final BoundNodeVisitor variableBounds = new BoundNodeVisitor(env, log);
+        variableBounds.processAllLoopInfos();
+        variableBounds.processBounds();
+        env.setVariableBounds(variableBounds);
+        final FinalizedVariableValues finalizedValues = new FinalizedVariableValues(env);
+        finalizedValues.boundCheck(false);
+        return finalizedValues;
+    }
+
+    public MGGlobalEnv getEnv() {
+        return env;
+    }
+
+    public MGNode getRootNode() {
+        return rootNode;
+    }
+
+    public MGLog getLog() {
+        return log;
+    }
+
+    public long[] getRange() {
+        return range;
+    }
+
+    public static MGLog createLog() {
+        assert optionsLoaded;
+        return new MGLog(null);
+    }
+
+    /**
+     * @return {@code [a, b, c]} sized so that {@code a[i + 1]} stays in bounds.
+     */
+    public static double[][] createData(int size) {
+        final double[] a = new double[size + 1];
+        final double[] b = new double[size];
+        final double[] c = new double[size];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i * 0.5;
+        }
+        for (int i = 0; i < b.length; i++) {
+            b[i] = size - i;
+        }
+        return new double[][]{a, b, c};
+    }
+
+}
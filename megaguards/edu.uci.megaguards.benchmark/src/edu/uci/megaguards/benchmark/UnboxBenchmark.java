@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.analysis.exception.MGException;
+import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.object.ArrayInfo;
+import edu.uci.megaguards.object.DataType;
+import edu.uci.megaguards.unbox.Boxed;
+import edu.uci.megaguards.unbox.UnboxCache;
+import edu.uci.megaguards.unbox.Unboxer;
+
+/**
+ * Unboxing of the guest lists a loop reads, with and without the {@link UnboxCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnboxBenchmark {
+
+    /**
+     * Copies a list of boxed doubles the way a guest list is unboxed.
+     */
+    static final class DoubleListUnboxer extends Unboxer {
+
+        DoubleListUnboxer(Double[] list) {
+            super(list, new ArrayInfo(double[].class, list.length), list, DataType.DoubleArray);
+        }
+
+        @Override
+        public Object unbox() {
+            final Double[] list = (Double[]) value;
+            final double[] unboxed = new double[list.length];
+            for (int i = 0; i < list.length; i++) {
+                unboxed[i] = list[i];
+            }
+            return unboxed;
+        }
+
+        @Override
+        public int getTypeSize() {
+            return Double.BYTES;
+        }
+
+    }
+
+    @Param({"1", "8"}) public int lists;
+
+    @Param({"1024", "65536"}) public int size;
+
+    @Param({"true", "false"}) public boolean cache;
+
+    private Double[][] data;
+    private MGLog log;
+    private boolean unboxCache;
+
+    @Setup
+    public void setup() {
+        data = new Double[lists][size];
+        for (int l = 0; l < lists; l++) {
+            for (int i = 0; i < size; i++) {
+                data[l][i] = (double) i;
+            }
+        }
+        log = LoopKernel.createLog();
+        unboxCache = MGOptions.Backend.unboxCache;
+        MGOptions.Backend.unboxCache = cache;
+    }
+
+    @TearDown
+    public void tearDown() {
+        MGOptions.Backend.unboxCache = unboxCache;
+        UnboxCache.clear();
+    }
+
+    @Benchmark
+    public Object unboxAll() throws MGException {
+        Unboxer last = null;
+        for (int l = 0; l < lists; l++) {
+            last = new DoubleListUnboxer(data[l]);
+        }
+        Boxed.UnboxAll(log);
+        return last.getValue();
+    }
+
+}
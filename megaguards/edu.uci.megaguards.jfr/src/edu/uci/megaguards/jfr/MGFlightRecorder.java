@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import edu.uci.megaguards.log.MGEvents;
+import edu.uci.megaguards.log.MGPhase;
+
+/**
+ * Records every {@link MGPhase} as a JDK Flight Recorder event of the <code>MegaGuards</code>
+ * category. An event is only allocated while a recording has its type enabled.
+ */
+public final class MGFlightRecorder extends MGEvents {
+
+    @Category("MegaGuards")
+    @StackTrace(false)
+    abstract static class PhaseEvent extends Event {
+
+        @Label("Loop Site")
+        @Description("Filename:Line of the loop")
+        String site;
+
+        @Label("Backend")
+        @Description("Truffle until a device is chosen, then JVM or OpenCL")
+        String backend;
+
+        @Label("Device")
+        String device;
+
+        @Label("Iterations")
+        @Description("Total parallel loop iterations")
+        long iterations;
+
+        @Label("Bytes Transferred")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("megaguards.Translation")
+    @Label("Translation")
+    static final class TranslationEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.Unbox")
+    @Label("Unbox")
+    static final class UnboxEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.BoundCheck")
+    @Label("Bound Check")
+    static final class BoundCheckEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.Dependence")
+    @Label("Dependence Analysis")
+    static final class DependenceEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.Profile")
+    @Label("Profile")
+    static final class ProfileEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.CodeGeneration")
+    @Label("Code Generation")
+    static final class CodeGenerationEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.Compilation")
+    @Label("Compilation")
+    static final class CompilationEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.DataTransfer")
+    @Label("Data Transfer")
+    static final class DataTransferEvent extends PhaseEvent {
+    }
+
+    @Name("megaguards.CoreExecution")
+    @Label("Core Execution")
+    static final class CoreExecutionEvent extends PhaseEvent {
+    }
+
+    /**
+     * One idle event per phase, to ask whether its type is enabled before allocating a new one.
+     */
+    private static final PhaseEvent[] enabled = new PhaseEvent[MGPhase.values().length];
+
+    static {
+        for (MGPhase phase : MGPhase.values()) {
+            final PhaseEvent event = create(phase);
+            FlightRecorder.register(event.getClass());
+            enabled[phase.ordinal()] = event;
+        }
+    }
+
+    private static PhaseEvent create(MGPhase phase) {
+        switch (phase) {
+            case Translation:
+                return new TranslationEvent();
+            case Unbox:
+                return new UnboxEvent();
+            case BoundCheck:
+                return new BoundCheckEvent();
+            case Dependence:
+                return new DependenceEvent();
+            case Profile:
+                return new ProfileEvent();
+            case CodeGeneration:
+                return new CodeGenerationEvent();
+            case Compilation:
+                return new CompilationEvent();
+            case DataTransfer:
+                return new DataTransferEvent();
+            case CoreExecution:
+                return new CoreExecutionEvent();
+        }
+        throw new IllegalArgumentException(phase.name());
+    }
+
+    @Override
+    protected Object start(MGPhase phase) {
+        if (!enabled[phase.ordinal()].isEnabled()) {
+            return null;
+        }
+        final PhaseEvent event = create(phase);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    protected void end(Object e, String site, String backend, String device, long iterations, long bytes) {
+        final PhaseEvent event = (PhaseEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.site = site;
+            event.backend = backend;
+            event.device = device;
+            event.iterations = iterations;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+}
@@ -36,6 +36,8 @@ public class MGEnvVars {
 
     private static final String MG_HOME = "MG_HOME";
 
+    private static final String MG_CACHE = "MG_CACHE";
+
     public static final Properties localEnvVars = new Properties();
 
     public static String MGHome = MGHome();
@@ -64,6 +66,15 @@ public class MGEnvVars {
         return MGHome;
     }
 
+    /**
+     * Directory for data persisted across runs. Defaults to $MG_HOME/cache.
+     */
+    public static Path MGCache(String name) {
+        final String cache = System.getenv(MG_CACHE);
+        final Path path = (cache != null) ? Paths.get(cache) : Paths.get(MGHome(), "cache");
+        return path.resolve(name);
+    }
+
     private static Path getMGHomePath() {
         Path path = Paths.get(MGEnvVars.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getParent();
         while (path != null) {
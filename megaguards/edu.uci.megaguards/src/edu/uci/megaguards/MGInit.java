@@ -24,10 +24,14 @@
  */
 package edu.uci.megaguards;
 
+import edu.uci.megaguards.analysis.bounds.ArrayValueScanner;
+import edu.uci.megaguards.analysis.parallel.DependenceCache;
+import edu.uci.megaguards.analysis.parallel.ParallelTasker;
 import edu.uci.megaguards.analysis.parallel.profile.ParallelNodeProfile;
 import edu.uci.megaguards.backend.parallel.LoadLibraries;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLExecuter;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.unbox.UnboxCache;
 
 public abstract class MGInit {
 
@@ -44,8 +48,12 @@ public abstract class MGInit {
             if ((MGOptions.Log.Summary))
                 MGLog.printSummary();
             if ((MGOptions.Log.NodeProfileJSON))
-                ParallelNodeProfile.profilesSummary();
+                ParallelNodeProfile.profilesSummary().printNodeProfileJSON();
+            ParallelTasker.shutdown();
+            DependenceCache.flush();
             OpenCLExecuter.cleanUp(true);
+            UnboxCache.clear();
+            ArrayValueScanner.clear();
         }
     }
 
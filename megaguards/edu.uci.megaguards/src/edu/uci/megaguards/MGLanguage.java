@@ -63,7 +63,6 @@ public class MGLanguage extends TruffleLanguage<MGContext> {
     @Option(help = "Scan arrays for Min and Max values", deprecated = false, category = OptionCategory.EXPERT) //
     public static final OptionKey<Boolean> ScanArrayMinMax = new OptionKey<>(true);
 
-    /*- FIXME: too slow */
     @Option(help = "Scan arrays for unique values", deprecated = false, category = OptionCategory.EXPERT) //
     public static final OptionKey<Boolean> ScanArrayUniqueValues = new OptionKey<>(false);
 
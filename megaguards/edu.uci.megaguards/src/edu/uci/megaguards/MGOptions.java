@@ -75,6 +75,12 @@ public class MGOptions {
 
         public static boolean concurrentCompiler = !Boolean.getBoolean(BACKEND + "ConcurrentCompiler"); // true
 
+        public static boolean backgroundCompiler = !Boolean.getBoolean(BACKEND + "SyncCompiler"); // true
+
+        public static int compilerThreads = Integer.getInteger(BACKEND + "CompilerThreads", 2);
+
+        public static int compilerQueueSize = Integer.getInteger(BACKEND + "CompilerQueueSize", 16);
+
         public static boolean AthenaPet = !Boolean.getBoolean(BACKEND + "AthenaPet"); // true
 
         public static int AthenaPetJNIDebug = 0;
@@ -85,6 +91,10 @@ public class MGOptions {
 
         public static long offloadThreshold = 1000;
 
+        public static boolean costModel = Boolean.getBoolean(BACKEND + "CostModel"); // false
+
+        public static String costParameters = System.getProperty(BACKEND + "CostParameters", ""); // name=value,...
+
         public static int RetryLimit = 5;
 
         public static boolean cleanup = Boolean.getBoolean(BACKEND + "AthenaPet");
@@ -101,8 +111,40 @@ public class MGOptions {
 
         public static boolean disableDataManagementOptimization = Boolean.getBoolean(BACKEND + "disableKDM");
 
+        public static boolean asyncTransfers = Boolean.getBoolean(BACKEND + "AsyncTransfers"); // false
+
+        public static boolean kernelCache = !Boolean.getBoolean(BACKEND + "NoKernelCache"); // true
+
+        public static long kernelCacheSize = Long.getLong(BACKEND + "KernelCacheSize", 64) * 1024 * 1024; // 64 MB
+
+        public static boolean unboxCache = !Boolean.getBoolean(BACKEND + "NoUnboxCache"); // true
+
+        public static long unboxCacheSize = Long.getLong(BACKEND + "UnboxCacheSize", 256) * 1024 * 1024; // 256 MB
+
+        public static int dirtyBlockSize = Integer.getInteger(BACKEND + "DirtyBlockSize", 16 * 1024); // elements
+
+        public static boolean dependenceCache = !Boolean.getBoolean(BACKEND + "NoDependenceCache"); // true
+
+        public static boolean loopTiling = !Boolean.getBoolean(BACKEND + "NoLoopTiling"); // true
+
+        public static boolean loopFusion = !Boolean.getBoolean(BACKEND + "NoLoopFusion"); // true
+
+        public static boolean loopVersioning = !Boolean.getBoolean(BACKEND + "NoLoopVersioning"); // true
+
+        public static long tilingCacheSize = Long.getLong(BACKEND + "TilingCacheSize", 256) * 1024; // 256 KB
+
+        public static boolean localMemoryTiling = Boolean.getBoolean(BACKEND + "LocalMemoryTiling"); // false
+
+        public static boolean localSizeTuning = !Boolean.getBoolean(BACKEND + "NoLocalSizeTuning"); // true
+
+        public static String pinnedLocalSizes = System.getProperty(BACKEND + "PinnedLocalSizes", ""); // file:line=size[xsize[xsize]];...
+
         public static int oclCPUNumCores = -1;
 
+        public static int jvmThreads = Runtime.getRuntime().availableProcessors();
+
+        public static int jvmChunksPerThread = 4;
+
         public static boolean allowInAccurateMathFunctions = !Boolean.getBoolean(BACKEND + "RelaxedMathFunctions");
 
         public static int AutoDiff = 5; // %5
@@ -111,6 +153,8 @@ public class MGOptions {
 
         public static int AutoMethod = 0; // min: 0, avg: 1
 
+        public static boolean autoDeviceCache = !Boolean.getBoolean(BACKEND + "NoAutoDeviceCache"); // true
+
         public static boolean reductionOptimization = false;
 
         private static HashSet<MathFunctionType> populateMathFunctionBlackList() {
@@ -130,6 +174,7 @@ public class MGOptions {
         public static boolean ExceptionGuestCode = false;
         public static boolean TraceUnboxing = false;
         public static boolean Summary = false;
+        public static int History = Integer.getInteger(Backend.MG + "log.History", 256);
 
         public static void updateLogOptions() {
             CSV = MGLogOption.isEnabled("CSV");
@@ -167,19 +212,40 @@ public class MGOptions {
         MGLogOption.addOption("TranslationTime", "Translation Time: %d", "translation_time", "Translation Time", 'i', true, false).setDefaultValue(0);
         MGLogOption.addOption("ProfileTime", "Profile Time: %d ms", "profile_time", "Profiling time", 'f', true, false).setDefaultValue(0);
         MGLogOption.addOption("UnboxTime", "Unboxed in %d ms", "unbox_time", "Trace Unboxing", 'g', true, false).setDefaultValue(0);
+        MGLogOption.addOption("UnboxCacheHits", "Unbox Cache Hits: %d", "unbox_cache_hits", "Unbox cache hits", 'U', true, false).setDefaultValue(0);
+        MGLogOption.addOption("UnboxCacheMisses", "Unbox Cache Misses: %d", "unbox_cache_misses", "Unbox cache misses", 'V', true, false).setDefaultValue(0);
         MGLogOption.addOption("DependenceTime", "Dependence Time: %d ms", "dependence_time", "Dependence Time", 'n', true, false).setDefaultValue(0);
+        MGLogOption.addOption("DependenceCacheHits", "Dependence Cache Hits: %d", "dependence_cache_hits", "Dependence cache hits", 'a', true, false).setDefaultValue(0);
+        MGLogOption.addOption("DependenceCacheMisses", "Dependence Cache Misses: %d", "dependence_cache_misses", "Dependence cache misses", 'z', true, false).setDefaultValue(0);
+        MGLogOption.addOption("CostModelDecision", "Cost Model: %s", "cost_model_decision", "Cost model decision and estimates", 'C', false, false).setDefaultValue("NULL");
+        MGLogOption.addOption("EstimatedWork", null, "estimated_work", null, '0', false, false).setDefaultValue(0);
+        MGLogOption.addOption("EstimatedTruffleTime", null, "estimated_truffle_time", null, '0', false, false).setDefaultValue(-1);
+        MGLogOption.addOption("EstimatedJVMTime", null, "estimated_jvm_time", null, '0', false, false).setDefaultValue(-1);
+        MGLogOption.addOption("EstimatedOpenCLTime", null, "estimated_opencl_time", null, '0', false, false).setDefaultValue(-1);
         MGLogOption.addOption("DependenceCount", null /*-"Dependence Count: %d"*/, "dependence_count", null, '0', true, false).setDefaultValue(0);
         MGLogOption.addOption("BoundCheckTime", "Bound Check Time: %d ms", "bound_check_time", "Bound Check Time", 'b', true, false).setDefaultValue(0);
+        MGLogOption.addOption("BoundCheckGuardHits", "Bound Check Guard Hits: %d", "bound_check_guard_hits", "Bound checks skipped for unchanged inputs", 'G', true, false).setDefaultValue(0);
+        MGLogOption.addOption("FusedLoops", "Fused Loops: %d", "fused_loops", "Adjacent loops fused into one", 'F', true, false).setDefaultValue(0);
+        MGLogOption.addOption("LocalTiledArrays", "Local Tiled Arrays: %d", "local_tiled_arrays", "Arrays staged into OpenCL local memory", 'L', true, false).setDefaultValue(0);
+        MGLogOption.addOption("TiledLoops", "Tiled Loops: %d", "tiled_loops", "Loop nests tiled on the Truffle back-end", 'T', true, false).setDefaultValue(0);
+        MGLogOption.addOption("VersionedLoops", "Versioned Loops: %d", "versioned_loops", "Loops with a check-free version on the Truffle back-end", 'R', true, false).setDefaultValue(0);
         MGLogOption.addOption("BoundCheckEnabled", null /*-"Bound Check Enabled: %s"*/, "bound_check_enabled", null, '0', true, false).setDefaultValue(MGOptions.boundCheck);
         MGLogOption.addOption("CompilationTime", "Compilation Time: %d ms", "compilation_time", "Compilation Time", 'm', true, false).setDefaultValue(0);
         MGLogOption.addOption("CodeGenerationTime", "Code Generation Time Time: %d ms", "code_generation_time", "Code Generation Time", 'o', true, false).setDefaultValue(0);
         MGLogOption.addOption("CoreExecutionTime", "Core Execution Time: %d ms", "core_execution_time", "Core Execution Time", 'u', true, false).setDefaultValue(0);
         MGLogOption.addOption("DataTransferTime", "Data Transfer Time: %d ms", "data_transfer_time", "Data Transfer Time", 'y', true, false).setDefaultValue(0);
         MGLogOption.addOption("TotalDataTransfer", "Total Data Transfer: %d byte", "total_data_transfer", "Total data transfer size", 'd', true, false).setDefaultValue(0);
+        MGLogOption.addOption("DeviceMemoryHits", "Device Memory Hits: %d", "device_memory_hits", "Buffers already resident on the device", 'H', true, false).setDefaultValue(0);
+        MGLogOption.addOption("DeviceMemoryMisses", "Device Memory Misses: %d", "device_memory_misses", "Buffers loaded to the device", 'M', true, false).setDefaultValue(0);
+        MGLogOption.addOption("DeviceMemoryEvictions", "Device Memory Evictions: %d", "device_memory_evictions", "Buffers evicted from the device", 'E', true, false).setDefaultValue(0);
+        MGLogOption.addOption("DeviceMemoryWriteBacks", "Device Memory Write-backs: %d", "device_memory_write_backs", "Dirty buffers read back before eviction", 'W', true, false).setDefaultValue(0);
+        MGLogOption.addOption("KernelCacheHits", "Kernel Cache Hits: %d", "kernel_cache_hits", "Kernel cache hits", 'h', true, false).setDefaultValue(0);
+        MGLogOption.addOption("KernelCacheMisses", "Kernel Cache Misses: %d", "kernel_cache_misses", "Kernel cache misses", 'w', true, false).setDefaultValue(0);
         MGLogOption.addOption("TotalParallelLoops", "Total Parallel Loops: %d", "total_parallel_loops", "Total parallel loops counts", 'l', true, false).setDefaultValue(0);
         MGLogOption.addOption("TotalGeneratedKernels", null, "total_generated_kernels", null, '0', true, false).setDefaultValue(0);
         MGLogOption.addOption("TotalKernelExecutions", null, "total_kernels_executions", null, '0', true, false).setDefaultValue(0);
         MGLogOption.addOption("TotalTruffleExecutions", null, "total_Truffle_executions", null, '0', true, false).setDefaultValue(0);
+        MGLogOption.addOption("TotalJVMExecutions", null, "total_JVM_executions", null, '0', true, false).setDefaultValue(0);
 
         return true;
     }
@@ -188,19 +254,41 @@ public class MGOptions {
         out.println("--mg-target= option:");
         out.println("               GPU: OpenCL GPU (default)");
         out.println("               CPU: OpenCL CPU");
+        out.println("               JVM: Multi-threaded JVM (fork/join)");
 
         out.println("--mg-target-no-bc:      Disable bound check");
+        out.println("--mg-target-async-transfers:      Pipeline the OpenCL host-device transfers with non-blocking commands");
+        out.println("--mg-target-sync-compile:      Compile OpenCL kernels on the guest thread");
         out.println("--mg-force:      Wait for all the compilation tasks");
         out.println("--mg-allow-int:  Allow creation of integer lists/arrays");
 
         out.println("--mg-log-file=<Logfile>:       Write logs to <Logfile>");
+        out.println("--mg-log-history=<value>  Number of recent executions kept with all their details ( default:" + Log.History + " )");
         out.println("--mg-log=:       print logs using option(s):");
         for (String o : MGLogOption.cmdOptions) {
             final MGLogOption opt = MGLogOption.logOptions.get(o);
             out.println(String.format("\t\t%s\t%s", opt.getCmdOption(), opt.getCmdDescription()));
         }
 
-        out.println("--mg-threshold=<value>  Specify a threshold ( default:" + Backend.offloadThreshold + " )");
+        out.println("--mg-target-threshold=<value>  Minimum estimated operations before parallelizing a loop ( default:" + Backend.offloadThreshold + " )");
+        out.println("--mg-target-cost-model:      Choose between Truffle and the selected target using the calibrated cost model");
+        out.println("--mg-target-cost=<name>=<value>[,...]  Override cost model parameters (loop, binop, math, array, branch, assign, jvm-overhead, opencl-overhead, gpu-speedup, cpu-vector-width, gpu-bandwidth, cpu-bandwidth)");
+        out.println("--mg-target-compiler-threads=<value>  Number of background compiler threads ( default:" + Backend.compilerThreads + " )");
+        out.println("--mg-target-jvm-threads=<value>  Number of JVM worker threads ( default:" + Backend.jvmThreads + " )");
+        out.println("--mg-target-no-auto-device-cache:      Do not persist the adaptive device selection");
+        out.println("--mg-target-no-dependence-cache:      Disable the on-disk dependence analysis cache");
+        out.println("--mg-target-no-unbox-cache:      Always copy the guest lists when unboxing");
+        out.println("--mg-target-unbox-cache-size=<MB>  Unboxed guest lists cache limit ( default:" + (Backend.unboxCacheSize / (1024 * 1024)) + " )");
+        out.println("--mg-target-dirty-block-size=<value>  Elements per block of the partial array uploads ( default:" + Backend.dirtyBlockSize + " )");
+        out.println("--mg-target-no-loop-fusion:      Do not fuse adjacent loops over the same range");
+        out.println("--mg-target-no-loop-tiling:      Do not tile nested loops on the Truffle back-end");
+        out.println("--mg-target-no-loop-versioning:      Keep the bound and overflow checks inside the loops on the Truffle back-end");
+        out.println("--mg-target-tiling-cache-size=<KB>  Cache size the loop tiles are fitted to ( default:" + (Backend.tilingCacheSize / 1024) + " )");
+        out.println("--mg-target-local-memory-tiling:      Stage the neighbouring reads of OpenCL kernels into local memory");
+        out.println("--mg-target-no-local-size-tuning:      Do not time candidate OpenCL work group sizes");
+        out.println("--mg-target-local-size=<file>:<line>=<size>[x<size>[x<size>]]  Pin the OpenCL work group size of a loop");
+        out.println("--mg-target-no-kernel-cache:      Disable the on-disk OpenCL kernel cache");
+        out.println("--mg-target-kernel-cache-size=<MB>  On-disk OpenCL kernel cache limit ( default:" + (Backend.kernelCacheSize / (1024 * 1024)) + " )");
 
     }
 
@@ -217,6 +305,12 @@ public class MGOptions {
             return true;
         }
 
+        if (arg.startsWith("--mg-log-history=")) {
+            String option = arg.replace("--mg-log-history=", "");
+            Log.History = Integer.valueOf(option);
+            return true;
+        }
+
         if (arg.startsWith("--mg-log=")) {
             String options = arg.replace("--mg-log=", "");
             logging = true;
@@ -229,6 +323,7 @@ public class MGOptions {
 
         if (arg.equals("--mg-force")) {
             Backend.concurrentCompiler = true;
+            Backend.backgroundCompiler = false;
             return true;
         }
 
@@ -248,6 +343,17 @@ public class MGOptions {
             return true;
         }
 
+        if (arg.equals("--mg-target-cost-model")) {
+            Backend.costModel = true;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-cost=")) {
+            String option = arg.replace("--mg-target-cost=", "");
+            Backend.costParameters += (Backend.costParameters.isEmpty() ? "" : ",") + option;
+            return true;
+        }
+
         if (arg.startsWith("--mg-target-athenapetjni-debug=")) {
             String option = arg.replace("--mg-target-athenapetjni-debug=", "");
             Backend.AthenaPetJNIDebug = Integer.valueOf(option);
@@ -273,16 +379,121 @@ public class MGOptions {
             return true;
         }
 
+        if (arg.equals("--mg-target-sync-compile")) {
+            Backend.backgroundCompiler = false;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-compiler-threads=")) {
+            String option = arg.replace("--mg-target-compiler-threads=", "");
+            Backend.compilerThreads = Integer.valueOf(option);
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-jvm-threads=")) {
+            String option = arg.replace("--mg-target-jvm-threads=", "");
+            Backend.jvmThreads = Integer.valueOf(option);
+            return true;
+        }
+
         if (arg.equals("--mg-target-no-dm-opt")) {
             Backend.disableDataManagementOptimization = true;
             return true;
         }
 
+        if (arg.equals("--mg-target-no-auto-device-cache")) {
+            Backend.autoDeviceCache = false;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-dependence-cache")) {
+            Backend.dependenceCache = false;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-unbox-cache")) {
+            Backend.unboxCache = false;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-unbox-cache-size=")) {
+            String option = arg.replace("--mg-target-unbox-cache-size=", "");
+            Backend.unboxCacheSize = Long.valueOf(option) * 1024 * 1024;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-dirty-block-size=")) {
+            String option = arg.replace("--mg-target-dirty-block-size=", "");
+            Backend.dirtyBlockSize = Integer.valueOf(option);
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-loop-fusion")) {
+            Backend.loopFusion = false;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-loop-tiling")) {
+            Backend.loopTiling = false;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-loop-versioning")) {
+            Backend.loopVersioning = false;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-local-size-tuning")) {
+            Backend.localSizeTuning = false;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-local-size=")) {
+            String option = arg.replace("--mg-target-local-size=", "");
+            Backend.pinnedLocalSizes += (Backend.pinnedLocalSizes.isEmpty() ? "" : ";") + option;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-local-memory-tiling")) {
+            Backend.localMemoryTiling = true;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-tiling-cache-size=")) {
+            String option = arg.replace("--mg-target-tiling-cache-size=", "");
+            Backend.tilingCacheSize = Long.valueOf(option) * 1024;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-no-kernel-cache")) {
+            Backend.kernelCache = false;
+            return true;
+        }
+
+        if (arg.startsWith("--mg-target-kernel-cache-size=")) {
+            String option = arg.replace("--mg-target-kernel-cache-size=", "");
+            Backend.kernelCacheSize = Long.valueOf(option) * 1024 * 1024;
+            return true;
+        }
+
+        if (arg.equals("--mg-target-async-transfers")) {
+            Backend.asyncTransfers = true;
+            return true;
+        }
+
         if (arg.equals("--mg-target-no-athenapet")) {
             Backend.AthenaPet = false;
             return true;
         }
 
+        if (arg.equals("--mg-target=jvm")) {
+            Backend.target = ExecutionMode.NormalCPU;
+            if (Debug > 0)
+                MGLog.printlnTagged("Selected: " + Backend.target);
+            MGOff = false;
+            return true;
+        }
+
         if (arg.equals("--mg-target") || arg.startsWith("--mg-target=")) {
             Backend.target = ExecutionMode.Truffle;
             if (System.getProperty("os.name", "generic").contains("Linux")) {
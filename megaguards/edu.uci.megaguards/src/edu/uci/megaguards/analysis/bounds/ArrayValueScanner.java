@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.analysis.bounds;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter;
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter.ReduceTask;
+import edu.uci.megaguards.object.WeakIdentityRegistry;
+import edu.uci.megaguards.unbox.Unboxer;
+
+/**
+ * Scans index arrays for their minimum, maximum and whether all their values are unique. The
+ * result is {min, max, isUnique} where isUnique is 1, 0 or -1 when it was not scanned.
+ */
+public final class ArrayValueScanner {
+
+    public static final long UNIQUE = 1;
+    public static final long NOT_UNIQUE = 0;
+    public static final long NOT_SCANNED = -1;
+
+    /*- Smaller arrays are scanned on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /*- A bitmap is used for uniqueness when the value range is at most this many times the size */
+    private static final long BITMAP_DENSITY = 8;
+
+    private static final class Scan {
+        private final long version;
+        private final int size;
+        private final long[] bounds;
+
+        private Scan(long version, int size, long[] bounds) {
+            this.version = version;
+            this.size = size;
+            this.bounds = bounds;
+        }
+    }
+
+    /*- Keyed by the guest object, so the result survives as long as it is not modified */
+    private static final WeakIdentityRegistry<Scan> scans = new WeakIdentityRegistry<>(null, null);
+
+    private ArrayValueScanner() {
+    }
+
+    @TruffleBoundary
+    public static long[] scan(Unboxer boxed, int size, boolean uniqueness) {
+        final Object origin = boxed.getOrigin();
+        final long version = origin != null ? boxed.getOriginVersion() : Unboxer.NO_VERSION;
+        final boolean cacheable = version != Unboxer.NO_VERSION && !boxed.isMarkedChanged();
+        if (cacheable) {
+            final Scan s = scans.get(origin);
+            if (s != null && s.version == version && s.size == size && (!uniqueness || s.bounds[2] != NOT_SCANNED))
+                return s.bounds;
+        }
+
+        final Object value = boxed.getValue();
+        final long[] bounds;
+        if (value instanceof long[]) {
+            bounds = scan((long[]) value, size, uniqueness);
+        } else if (value instanceof int[]) {
+            bounds = scan((int[]) value, size, uniqueness);
+        } else {
+            return null;
+        }
+
+        if (cacheable)
+            scans.put(origin, new Scan(version, size, bounds));
+        return bounds;
+    }
+
+    @TruffleBoundary
+    public static long[] scan(long[] array, int size, boolean uniqueness) {
+        final long[] minmax = minMax(array, size);
+        final long isUnique = uniqueness ? unique(array, size, minmax[0], minmax[1]) : NOT_SCANNED;
+        return new long[]{minmax[0], minmax[1], isUnique};
+    }
+
+    @TruffleBoundary
+    public static long[] scan(int[] array, int size, boolean uniqueness) {
+        final long[] minmax = minMax(array, size);
+        final long isUnique = uniqueness ? unique(array, size, minmax[0], minmax[1]) : NOT_SCANNED;
+        return new long[]{minmax[0], minmax[1], isUnique};
+    }
+
+    private static long[] minMax(long[] array, int from, int to) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            final long v = array[i];
+            min = min < v ? min : v;
+            max = max > v ? max : v;
+        }
+        return new long[]{min, max};
+    }
+
+    private static long[] minMax(int[] array, int from, int to) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            final int v = array[i];
+            min = min < v ? min : v;
+            max = max > v ? max : v;
+        }
+        return new long[]{min, max};
+    }
+
+    private static long[] combineMinMax(Object left, Object right) {
+        final long[] l = (long[]) left;
+        final long[] r = (long[]) right;
+        return new long[]{Math.min(l[0], r[0]), Math.max(l[1], r[1])};
+    }
+
+    private static long[] minMax(long[] array, int size) {
+        if (size < PARALLEL_THRESHOLD)
+            return minMax(array, 0, size);
+
+        return (long[]) JVMExecuter.reduceChunks(0, size, 1, new ReduceTask() {
+            public Object reduce(int from, int to) {
+                return minMax(array, from, to);
+            }
+
+            public Object combine(Object left, Object right) {
+                return combineMinMax(left, right);
+            }
+        });
+    }
+
+    private static long[] minMax(int[] array, int size) {
+        if (size < PARALLEL_THRESHOLD)
+            return minMax(array, 0, size);
+
+        return (long[]) JVMExecuter.reduceChunks(0, size, 1, new ReduceTask() {
+            public Object reduce(int from, int to) {
+                return minMax(array, from, to);
+            }
+
+            public Object combine(Object left, Object right) {
+                return combineMinMax(left, right);
+            }
+        });
+    }
+
+    private static boolean isDense(int size, long min, long max) {
+        // max - min may overflow for long values spanning the whole range
+        final long range = max - min;
+        return range >= 0 && range < BITMAP_DENSITY * size;
+    }
+
+    private static long unique(long[] array, int size, long min, long max) {
+        if (size <= 1)
+            return UNIQUE;
+        if (isDense(size, min, max)) {
+            if (max - min + 1 < size)
+                return NOT_UNIQUE;
+            final AtomicLongArray bits = new AtomicLongArray((int) ((max - min) / 64) + 1);
+            final AtomicBoolean duplicate = new AtomicBoolean(false);
+            forEach(size, (from, to) -> {
+                for (int i = from; i < to && !duplicate.get(); i++) {
+                    if (!mark(bits, array[i] - min)) {
+                        duplicate.set(true);
+                    }
+                }
+            });
+            return duplicate.get() ? NOT_UNIQUE : UNIQUE;
+        }
+
+        final long[] sorted = Arrays.copyOf(array, size);
+        Arrays.parallelSort(sorted);
+        final AtomicBoolean duplicate = new AtomicBoolean(false);
+        forEach(size, (from, to) -> {
+            for (int i = Math.max(1, from); i < to && !duplicate.get(); i++) {
+                if (sorted[i - 1] == sorted[i]) {
+                    duplicate.set(true);
+                }
+            }
+        });
+        return duplicate.get() ? NOT_UNIQUE : UNIQUE;
+    }
+
+    private static long unique(int[] array, int size, long min, long max) {
+        if (size <= 1)
+            return UNIQUE;
+        if (isDense(size, min, max)) {
+            if (max - min + 1 < size)
+                return NOT_UNIQUE;
+            final AtomicLongArray bits = new AtomicLongArray((int) ((max - min) / 64) + 1);
+            final AtomicBoolean duplicate = new AtomicBoolean(false);
+            forEach(size, (from, to) -> {
+                for (int i = from; i < to && !duplicate.get(); i++) {
+                    if (!mark(bits, array[i] - min)) {
+                        duplicate.set(true);
+                    }
+                }
+            });
+            return duplicate.get() ? NOT_UNIQUE : UNIQUE;
+        }
+
+        final int[] sorted = Arrays.copyOf(array, size);
+        Arrays.parallelSort(sorted);
+        final AtomicBoolean duplicate = new AtomicBoolean(false);
+        forEach(size, (from, to) -> {
+            for (int i = Math.max(1, from); i < to && !duplicate.get(); i++) {
+                if (sorted[i - 1] == sorted[i]) {
+                    duplicate.set(true);
+                }
+            }
+        });
+        return duplicate.get() ? NOT_UNIQUE : UNIQUE;
+    }
+
+    /**
+     * @return false if the bit was already set.
+     */
+    private static boolean mark(AtomicLongArray bits, long bit) {
+        final int word = (int) (bit >>> 6);
+        final long mask = 1L << bit;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0)
+                return false;
+        } while (!bits.compareAndSet(word, old, old | mask));
+        return true;
+    }
+
+    private static void forEach(int size, JVMExecuter.ChunkTask task) {
+        if (size < PARALLEL_THRESHOLD)
+            task.execute(0, size);
+        else
+            JVMExecuter.forEachChunk(0, size, 1, task);
+    }
+
+    @TruffleBoundary
+    public static void clear() {
+        scans.clear();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.analysis.bounds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.LoopInfo;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeOperand;
+import edu.uci.megaguards.backend.parallel.ParallelWorkload;
+import edu.uci.megaguards.object.ArrayInfo;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.unbox.Unboxer;
+
+/**
+ * Remembers the inputs of the last successful bound check verification: the loop ranges, the
+ * constant scalars, the array dimension sizes and the versions of the scanned index arrays. As
+ * long as none of them changes the verdict is the same and the verification can be skipped.
+ */
+public final class BoundCheckGuard {
+
+    private long[] inputs;
+    private int numInputs;
+    private long[] current;
+
+    private MGArray[] indexArrays;
+    private Object[] origins;
+    private long[] versions;
+
+    private boolean violated;
+    private long minimumValue;
+
+    public BoundCheckGuard() {
+        this.inputs = null;
+        this.numInputs = 0;
+        this.current = new long[16];
+    }
+
+    public boolean isViolated() {
+        return violated;
+    }
+
+    public long getMinValue() {
+        return minimumValue;
+    }
+
+    private int add(int n, long v) {
+        if (n == current.length)
+            current = Arrays.copyOf(current, n * 2);
+        current[n] = v;
+        return n + 1;
+    }
+
+    private int addDims(int n, ArrayInfo info) {
+        final int dims = info.getDim();
+        int i = add(n, dims);
+        for (int d = 0; d < dims; d++)
+            i = add(i, info.getSize(d));
+        return i;
+    }
+
+    @TruffleBoundary
+    private int collectInputs(MGGlobalEnv env) {
+        int n = 0;
+        final LoopInfo[] loops = env.getGlobalLoopInfos();
+        for (int i = 0; i < env.getIterationLevels(); i++) {
+            final long[] range = loops[i].getRange();
+            for (int j = 0; j < range.length; j++)
+                n = add(n, range[j]);
+        }
+        n = add(n, env.getConstantIntVars().size());
+        for (Long v : env.getConstantIntVars().values()) {
+            n = add(n, v != null ? 1 : 0);
+            n = add(n, v != null ? v : 0);
+        }
+        for (MGNode aa : env.getArrayaccesses()) {
+            final MGArray array = (MGArray) ((MGNodeOperand) aa).getValue();
+            if (!(array.getValue() instanceof ParallelWorkload))
+                n = addDims(n, array.getArrayInfo());
+        }
+        if (indexArrays != null) {
+            for (MGArray array : indexArrays)
+                n = addDims(n, array.getArrayInfo());
+        }
+        return n;
+    }
+
+    private static Unboxer getUnboxer(MGArray array) {
+        final Object value = array.getOrigin().getValue();
+        return value instanceof Unboxer ? (Unboxer) value : null;
+    }
+
+    @TruffleBoundary
+    public boolean matches(MGGlobalEnv env) {
+        if (inputs == null)
+            return false;
+
+        for (int i = 0; i < indexArrays.length; i++) {
+            final Unboxer boxed = getUnboxer(indexArrays[i]);
+            if (boxed == null || boxed.getOrigin() != origins[i] || boxed.getOriginVersion() != versions[i] || boxed.isMarkedChanged())
+                return false;
+        }
+
+        final int n = collectInputs(env);
+        if (n != numInputs)
+            return false;
+        for (int i = 0; i < n; i++) {
+            if (current[i] != inputs[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the inputs of a bound check that just passed. Nothing is recorded when the values of
+     * an index array were scanned but the guest does not version it.
+     */
+    @TruffleBoundary
+    public void record(MGGlobalEnv env, ArrayList<MGArray> scannedArrays, boolean isViolated, long minValue) {
+        invalidate();
+        final MGArray[] arrays = scannedArrays.toArray(new MGArray[scannedArrays.size()]);
+        final Object[] o = new Object[arrays.length];
+        final long[] v = new long[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            final Unboxer boxed = getUnboxer(arrays[i]);
+            o[i] = boxed != null ? boxed.getOrigin() : null;
+            v[i] = o[i] != null ? boxed.getOriginVersion() : Unboxer.NO_VERSION;
+            if (v[i] == Unboxer.NO_VERSION || boxed.isMarkedChanged())
+                return;
+        }
+        this.indexArrays = arrays;
+        this.origins = o;
+        this.versions = v;
+        this.numInputs = collectInputs(env);
+        this.inputs = Arrays.copyOf(current, numInputs);
+        this.violated = isViolated;
+        this.minimumValue = minValue;
+    }
+
+    public void invalidate() {
+        this.inputs = null;
+        this.indexArrays = null;
+        this.origins = null;
+        this.versions = null;
+    }
+}
@@ -24,8 +24,9 @@
  */
 package edu.uci.megaguards.analysis.bounds;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
@@ -60,8 +61,10 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
 
     private final MGGlobalEnv env;
     private boolean violated;
-    private final HashMap<Integer, long[]> arrayValuesBound;
+    private final IdentityHashMap<Object, long[]> arrayValuesBound;
     private long minimumValue;
+    private final ArrayList<MGArray> scannedArrays;
+    private final BoundCheckGuard guard;
 
     private HashMap<String, LoopInfo> currentLoopInfo;
     private boolean isSafe;
@@ -72,8 +75,10 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
         this.violated = false;
         this.currentLoopInfo = null;
         this.isSafe = true;
-        this.arrayValuesBound = new HashMap<>();
+        this.arrayValuesBound = new IdentityHashMap<>();
         this.minimumValue = 0;
+        this.scannedArrays = new ArrayList<>();
+        this.guard = new BoundCheckGuard();
     }
 
     public boolean isViolated() {
@@ -85,7 +90,7 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
     }
 
     @TruffleBoundary
-    public HashMap<Integer, long[]> getArrayValuesBound() {
+    public IdentityHashMap<Object, long[]> getArrayValuesBound() {
         return arrayValuesBound;
     }
 
@@ -249,8 +254,19 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
         }
     }
 
+    /**
+     * @return true if the verification was skipped because none of its inputs changed since the
+     *         last check.
+     */
     @TruffleBoundary
-    public void boundCheck(boolean justVerify) {
+    public boolean boundCheck(boolean justVerify) {
+        if (justVerify && guard.matches(env)) {
+            violated = guard.isViolated();
+            minimumValue = guard.getMinValue();
+            return true;
+        }
+        guard.invalidate();
+        scannedArrays.clear();
         for (MGNode aa : env.getArrayaccesses()) {
             final MGArray arrayValue = (MGArray) ((MGNodeOperand) aa).getValue();
             if (arrayValue.getValue() instanceof ParallelWorkload) {
@@ -295,6 +311,8 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
             }
         }
         currentLoopInfo = null;
+        guard.record(env, scannedArrays, violated, minimumValue);
+        return false;
     }
 
     private LoopInfo backwordLookup(String name) {
@@ -320,66 +338,13 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
     }
 
     @TruffleBoundary
-    private long[] scanArrayValues(long[] array, int size) {
-        if (arrayValuesBound.containsKey(array.hashCode()))
-            return arrayValuesBound.get(array.hashCode());
-
-        long min = Long.MAX_VALUE;
-        long max = Long.MIN_VALUE;
-        final long isUnique;
-        if (MGOptions.ScanArrayUniqueness) {
-            // too slow.. think about GPU sorting.
-            HashSet<Long> values = new HashSet<>();
-            for (int i = 0; i < size; i++) {
-                final long v = array[i];
-                min = min < v ? min : v;
-                max = max > v ? max : v;
-                values.add(v);
-            }
-            isUnique = values.size() == size ? 1 : 0;
-            values.clear();
-        } else {
-            for (int i = 0; i < size; i++) {
-                final long v = array[i];
-                min = min < v ? min : v;
-                max = max > v ? max : v;
-            }
-            isUnique = -1;
-        }
-        final long[] bounds = new long[]{min, max, isUnique};
-        arrayValuesBound.put(array.hashCode(), bounds);
-        return bounds;
-    }
-
-    @TruffleBoundary
-    private long[] scanArrayValues(int[] array, int size) {
-        if (arrayValuesBound.containsKey(array.hashCode()))
-            return arrayValuesBound.get(array.hashCode());
-
-        int min = Integer.MAX_VALUE;
-        int max = Integer.MIN_VALUE;
-        final long isUnique;
-        if (MGOptions.ScanArrayUniqueness) {
-            // too slow.. think about GPU sorting.
-            HashSet<Integer> values = new HashSet<>();
-            for (int i = 0; i < size; i++) {
-                final int v = array[i];
-                min = min < v ? min : v;
-                max = max > v ? max : v;
-                values.add(v);
-            }
-            isUnique = values.size() == size ? 1 : 0;
-            values.clear();
-        } else {
-            for (int i = 0; i < size; i++) {
-                final int v = array[i];
-                min = min < v ? min : v;
-                max = max > v ? max : v;
-            }
-            isUnique = -1;
+    private long[] scanArrayValues(Unboxer boxed, int size) {
+        final Object array = boxed.getValue();
+        long[] bounds = arrayValuesBound.get(array);
+        if (bounds == null) {
+            bounds = ArrayValueScanner.scan(boxed, size, MGOptions.ScanArrayUniqueness);
+            arrayValuesBound.put(array, bounds);
         }
-        final long[] bounds = new long[]{min, max, isUnique};
-        arrayValuesBound.put(array.hashCode(), bounds);
         return bounds;
     }
 
@@ -392,12 +357,8 @@ public class FinalizedVariableValues implements MGBoundVisitorIF<MGBoundNode> {
         shouldScan = shouldScan && (arrayValue.getOrigin().getDataType() == DataType.LongArray || arrayValue.getOrigin().getDataType() == DataType.IntArray);
 
         if (shouldScan) {
-            if (arrayValue.getOrigin().getDataType() == DataType.LongArray) {
-                return scanArrayValues((long[]) ((Unboxer) arrayValue.getOrigin().getValue()).getValue(), arrayValue.getArrayInfo().getSize(0));
-            } else if (arrayValue.getOrigin().getDataType() == DataType.IntArray) {
-                return scanArrayValues((int[]) ((Unboxer) arrayValue.getOrigin().getValue()).getValue(), arrayValue.getArrayInfo().getSize(0));
-
-            }
+            scannedArrays.add(arrayValue);
+            return scanArrayValues((Unboxer) arrayValue.getOrigin().getValue(), arrayValue.getArrayInfo().getSize(0));
         }
         isSafe = true;
         return null;
@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.analysis.parallel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.source.SourceSection;
+
+import edu.uci.megaguards.MGEnvVars;
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
+import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.env.MGPrivateEnv;
+import edu.uci.megaguards.ast.node.LoopInfo;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeAssign;
+import edu.uci.megaguards.ast.node.MGNodeAssignComplex;
+import edu.uci.megaguards.ast.node.MGNodeBinOp;
+import edu.uci.megaguards.ast.node.MGNodeBlock;
+import edu.uci.megaguards.ast.node.MGNodeBreak;
+import edu.uci.megaguards.ast.node.MGNodeBreakElse;
+import edu.uci.megaguards.ast.node.MGNodeBuiltinFunction;
+import edu.uci.megaguards.ast.node.MGNodeEmpty;
+import edu.uci.megaguards.ast.node.MGNodeFor;
+import edu.uci.megaguards.ast.node.MGNodeFunctionCall;
+import edu.uci.megaguards.ast.node.MGNodeIf;
+import edu.uci.megaguards.ast.node.MGNodeJumpFrom;
+import edu.uci.megaguards.ast.node.MGNodeJumpTo;
+import edu.uci.megaguards.ast.node.MGNodeMathFunction;
+import edu.uci.megaguards.ast.node.MGNodeOperand;
+import edu.uci.megaguards.ast.node.MGNodeOperandComplex;
+import edu.uci.megaguards.ast.node.MGNodeReturn;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGlobalBarrier;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGlobalID;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGlobalSize;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGroupID;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGroupSize;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalBarrier;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalID;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalSize;
+import edu.uci.megaguards.ast.node.MGNodeUnaryOp;
+import edu.uci.megaguards.ast.node.MGNodeUserFunction;
+import edu.uci.megaguards.ast.node.MGNodeWhile;
+import edu.uci.megaguards.ast.node.MGVisitorIF;
+import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.object.MGLiteral;
+import edu.uci.megaguards.object.MGObject;
+import edu.uci.megaguards.object.MGStorage;
+import edu.uci.megaguards.unbox.Unboxer;
+
+/**
+ * Persistent cache of data dependence verdicts. A verdict is keyed by a structural fingerprint of
+ * the loop body, the loop shapes and the constants the polyhedral test sees, and is replayed
+ * through {@link Verdict} instead of running the test again. The whole cache is discarded when
+ * the MegaGuards build changes, and the least recently used verdicts are dropped once it is full.
+ * New verdicts are written back in batches and by {@link #flush()} on shutdown.
+ */
+public class DependenceCache {
+
+    private static final int FORMAT = 2;
+
+    private static final String VERSION_KEY = "version";
+
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final int SAVE_BATCH = 64;
+
+    /*- verdicts from the least to the most recently used */
+    private static LinkedHashMap<String, String> entries = null;
+
+    private static String version = null;
+
+    private static Path cacheFile = null;
+
+    private static int unsaved = 0;
+
+    private static final class LRUEntries extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 6118245930587723461L;
+
+        LRUEntries() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    }
+
+    /**
+     * Identifies the analysis that produced the cached verdicts. Rebuilding or upgrading MegaGuards
+     * changes the time stamp of its code source.
+     */
+    @TruffleBoundary
+    private static String getVersion() {
+        long stamp = 0;
+        try {
+            final Path code = Paths.get(DependenceCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            stamp = Files.getLastModifiedTime(code).toMillis();
+        } catch (Exception e) {
+            // pass
+        }
+        final String impl = DependenceCache.class.getPackage().getImplementationVersion();
+        return FORMAT + ":" + (impl != null ? impl : "dev") + ":" + stamp;
+    }
+
+    /**
+     * Loads the cache file. Each stored verdict is prefixed by its rank in the least recently
+     * used order of the run that saved it.
+     */
+    @TruffleBoundary
+    private static LinkedHashMap<String, String> getEntries() {
+        if (entries != null)
+            return entries;
+
+        entries = new LRUEntries();
+        version = getVersion();
+        cacheFile = MGEnvVars.MGCache("dependence.properties");
+        final Properties stored = new Properties();
+        if (Files.exists(cacheFile)) {
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+                stored.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                stored.clear();
+            }
+        }
+        if (!version.equals(stored.getProperty(VERSION_KEY)))
+            return entries;
+
+        final TreeMap<Integer, String> ranked = new TreeMap<>();
+        for (String key : stored.stringPropertyNames()) {
+            final String value = stored.getProperty(key);
+            final int sep = value.indexOf(';');
+            try {
+                ranked.put(Integer.parseInt(value.substring(0, sep)), key);
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // the version or a malformed entry
+            }
+        }
+        for (String key : ranked.values()) {
+            final String value = stored.getProperty(key);
+            entries.put(key, value.substring(value.indexOf(';') + 1));
+        }
+        return entries;
+    }
+
+    @TruffleBoundary
+    private static void save() {
+        unsaved = 0;
+        final Properties stored = new Properties();
+        stored.setProperty(VERSION_KEY, version);
+        int rank = 0;
+        for (Entry<String, String> e : entries.entrySet()) {
+            stored.setProperty(e.getKey(), rank++ + ";" + e.getValue());
+        }
+        try {
+            final Path dir = cacheFile.getParent();
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, "dependence", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                stored.store(out, null);
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (MGOptions.Backend.Debug > 2) {
+                MGLog.printlnTagged("Failed to store dependence cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes back the verdicts that were stored since the last save.
+     */
+    @TruffleBoundary
+    public static synchronized void flush() {
+        if (entries != null && unsaved > 0)
+            save();
+    }
+
+    /**
+     * Returns the fingerprint of the given loop, or null if it cannot be computed.
+     */
+    @TruffleBoundary
+    public static String getKey(MGNode forBody, LoopInfo info, MGGlobalEnv env, FinalizedVariableValues finalizedValues) {
+        final Fingerprint fingerprint = new Fingerprint(finalizedValues);
+        final StringBuilder sb = fingerprint.sb;
+        fingerprint.loopInfo(info);
+        sb.append("min:").append(finalizedValues.getMinValue()).append(';');
+
+        final TreeMap<String, Long> constants = new TreeMap<>(env.getConstantIntVars());
+        for (MGPrivateEnv p : env.getPrivateEnvironments().values()) {
+            constants.putAll(p.getConstantIntVars());
+        }
+        for (Entry<String, Long> c : constants.entrySet()) {
+            sb.append("const:").append(c.getKey()).append('=').append(c.getValue()).append(';');
+        }
+        forBody.accept(fingerprint);
+
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder key = new StringBuilder();
+            for (byte b : md.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached verdict of the loop, or null on a cache miss.
+     */
+    @TruffleBoundary
+    public static synchronized DataDependence lookup(String key, MGNode forBody, LoopInfo info, MGGlobalEnv env, FinalizedVariableValues finalizedValues) {
+        if (key == null)
+            return null;
+
+        final String entry = getEntries().get(key);
+        if (entry == null)
+            return null;
+
+        final String[] fields = entry.split(";", 3);
+        final ArrayList<MGNodeFor> loops = collectLoops(forBody, finalizedValues);
+        if (fields.length != 3 || fields[1].length() != loops.size())
+            return null;
+
+        return new Verdict(forBody, info, env, finalizedValues, fields[0].equals("1"), fields[1], fields[2], loops);
+    }
+
+    @TruffleBoundary
+    public static synchronized void store(String key, MGNode forBody, FinalizedVariableValues finalizedValues, boolean independent, String reason) {
+        if (key == null)
+            return;
+
+        final StringBuilder loopDeps = new StringBuilder();
+        for (MGNodeFor f : collectLoops(forBody, finalizedValues)) {
+            loopDeps.append(f.isDependenceExists() ? '1' : '0');
+        }
+        getEntries().put(key, (independent ? "1" : "0") + ";" + loopDeps + ";" + reason);
+        if (++unsaved >= SAVE_BATCH)
+            save();
+    }
+
+    @TruffleBoundary
+    private static ArrayList<MGNodeFor> collectLoops(MGNode forBody, FinalizedVariableValues finalizedValues) {
+        final Fingerprint fingerprint = new Fingerprint(finalizedValues);
+        forBody.accept(fingerprint);
+        return fingerprint.loops;
+    }
+
+    /**
+     * Replays a cached dependence verdict, including the per loop results of the nested loops.
+     */
+    public static final class Verdict extends DataDependence {
+
+        private final boolean independent;
+        private final String loopDeps;
+        private final ArrayList<MGNodeFor> nestedLoops;
+
+        private Verdict(MGNode forBody, LoopInfo info, MGGlobalEnv env, FinalizedVariableValues finalizedValues, boolean independent, String loopDeps, String reason,
+                        ArrayList<MGNodeFor> nestedLoops) {
+            super(forBody, info, env, finalizedValues);
+            this.independent = independent;
+            this.loopDeps = loopDeps;
+            this.nestedLoops = nestedLoops;
+            this.ddreason = reason;
+        }
+
+        @Override
+        public boolean testDependence(String name, SourceSection source) {
+            for (int i = 0; i < nestedLoops.size(); i++) {
+                nestedLoops.get(i).setDependenceExists(loopDeps.charAt(i) == '1');
+            }
+            return independent;
+        }
+
+        @Override
+        public boolean testDependence(MGNode node) {
+            final int i = nestedLoops.indexOf(node);
+            return i >= 0 && loopDeps.charAt(i) == '0';
+        }
+
+    }
+
+    private static final class Fingerprint implements MGVisitorIF<Void> {
+
+        private final StringBuilder sb;
+        private final ArrayList<MGNodeFor> loops;
+        private final HashSet<String> calls;
+        private final FinalizedVariableValues finalizedValues;
+
+        private Fingerprint(FinalizedVariableValues finalizedValues) {
+            this.sb = new StringBuilder();
+            this.loops = new ArrayList<>();
+            this.calls = new HashSet<>();
+            this.finalizedValues = finalizedValues;
+        }
+
+        private void visit(MGNode node) {
+            if (node == null)
+                sb.append("null");
+            else
+                node.accept(this);
+            sb.append(',');
+        }
+
+        private void visit(ArrayList<MGNode> nodes) {
+            sb.append('[');
+            for (MGNode n : nodes)
+                visit(n);
+            sb.append(']');
+        }
+
+        private void loopInfo(LoopInfo info) {
+            sb.append("loop(").append(info.getInductionVariable().getName()).append(',');
+            sb.append(info.isSimpleRange()).append(',').append(Arrays.toString(info.getRange())).append(',');
+            sb.append(info.getStopOp()).append(',').append(info.getStepOp()).append(',');
+            if (info.getTargetVar() != null)
+                object(info.getTargetVar());
+            visit(info.getStartNode());
+            visit(info.getStopNode());
+            visit(info.getStepNode());
+            sb.append(')');
+        }
+
+        private void object(MGObject value) {
+            sb.append(value.getClass().getSimpleName()).append(':').append(value.getName()).append(':').append(value.getDataType());
+            if (value instanceof MGLiteral) {
+                sb.append('=').append(value.getValue());
+            } else if (value instanceof MGArray) {
+                final MGArray array = (MGArray) value;
+                sb.append(':').append(array.getDim()).append(':').append(array.getIndicesLen());
+                if (array.getDim() > 2)
+                    sb.append(':').append(Arrays.toString(array.getArrayInfo().getDimSizes()));
+                final Object boxed = array.getOrigin().getValue();
+                if (boxed instanceof Unboxer) {
+                    final long[] bounds = finalizedValues.getArrayValuesBound().get(((Unboxer) boxed).getValue());
+                    sb.append(':').append(bounds != null && bounds[2] == 1);
+                }
+                sb.append('[');
+                for (int i = 0; i < array.getIndicesLen(); i++)
+                    visit(array.getIndices()[i]);
+                sb.append(']');
+            } else if (value instanceof MGStorage) {
+                sb.append(':').append(((MGStorage) value).isDefine());
+            }
+        }
+
+        public Void visitOperandComplex(MGNodeOperandComplex node) {
+            sb.append("complex(");
+            visit(node.getReal());
+            visit(node.getImag());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitOperand(MGNodeOperand node) {
+            sb.append("op(");
+            object(node.getValue());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitAssignComplex(MGNodeAssignComplex node) {
+            sb.append("assigncomplex(");
+            visit(node.getReal());
+            visit(node.getImag());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitAssign(MGNodeAssign node) {
+            sb.append("assign(");
+            visit(node.getLeft());
+            visit(node.getRight());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitUnaryOp(MGNodeUnaryOp node) {
+            sb.append("unary(").append(node.getType()).append(',');
+            visit(node.getChild());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitBinOp(MGNodeBinOp node) {
+            sb.append("binop(").append(node.getType()).append(',');
+            visit(node.getLeft());
+            visit(node.getRight());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitBlock(MGNodeBlock node) {
+            sb.append("block");
+            visit(node.getChildren());
+            return null;
+        }
+
+        public Void visitBreak(MGNodeBreak node) {
+            sb.append("break");
+            return null;
+        }
+
+        public Void visitJumpFrom(MGNodeJumpFrom node) {
+            sb.append("goto(").append(node.getjLabel().getLabel()).append(')');
+            return null;
+        }
+
+        public Void visitJumpTo(MGNodeJumpTo node) {
+            sb.append("label(").append(node.getLabel()).append(')');
+            return null;
+        }
+
+        public Void visitBreakElse(MGNodeBreakElse node) {
+            sb.append("breakelse(");
+            visit(node.getForBody());
+            visit(node.getOrelse());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitBuiltinFunction(MGNodeBuiltinFunction node) {
+            sb.append("builtin(").append(node.getType()).append(',');
+            visit(node.getNodes());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitFor(MGNodeFor node) {
+            loops.add(node);
+            sb.append("for(");
+            loopInfo(node.getLoopInfo());
+            visit(node.getForBody());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitWhile(MGNodeWhile node) {
+            sb.append("while(");
+            visit(node.getCond());
+            visit(node.getBody());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitIf(MGNodeIf node) {
+            sb.append("if(");
+            visit(node.getCond());
+            visit(node.getThen());
+            visit(node.getOrelse());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitMathFunction(MGNodeMathFunction node) {
+            sb.append("math(").append(node.getType()).append(',');
+            visit(node.getNodes());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitEmpty(MGNodeEmpty node) {
+            sb.append("empty");
+            return null;
+        }
+
+        public Void visitFunctionCall(MGNodeFunctionCall node) {
+            final MGNodeUserFunction function = node.getFunctionNode();
+            sb.append("call(").append(function.getFunctionID()).append(',');
+            for (MGStorage p : function.getParameters())
+                sb.append(p.getName()).append(',');
+            if (node.getArgs() != null)
+                visit(node.getArgs());
+            if (calls.add(function.getFunctionID())) {
+                visit(function.getBody());
+                calls.remove(function.getFunctionID());
+            } else {
+                sb.append("recursive");
+            }
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitReturn(MGNodeReturn node) {
+            sb.append("return(");
+            visit(node.getRight());
+            sb.append(')');
+            return null;
+        }
+
+        public Void visitParallelNodeLocalBarrier(ParallelNodeLocalBarrier node) {
+            sb.append("localbarrier");
+            return null;
+        }
+
+        public Void visitParallelNodeGlobalBarrier(ParallelNodeGlobalBarrier node) {
+            sb.append("globalbarrier");
+            return null;
+        }
+
+        public Void visitParallelNodeLocalID(ParallelNodeLocalID node) {
+            sb.append("localid").append(node.getDim());
+            return null;
+        }
+
+        public Void visitParallelNodeLocalSize(ParallelNodeLocalSize node) {
+            sb.append("localsize").append(node.getDim());
+            return null;
+        }
+
+        public Void visitParallelNodeGroupID(ParallelNodeGroupID node) {
+            sb.append("groupid").append(node.getDim());
+            return null;
+        }
+
+        public Void visitParallelNodeGroupSize(ParallelNodeGroupSize node) {
+            sb.append("groupsize").append(node.getDim());
+            return null;
+        }
+
+        public Void visitParallelNodeGlobalID(ParallelNodeGlobalID node) {
+            sb.append("globalid").append(node.getDim());
+            return null;
+        }
+
+        public Void visitParallelNodeGlobalSize(ParallelNodeGlobalSize node) {
+            sb.append("globalsize").append(node.getDim());
+            return null;
+        }
+
+    }
+
+}
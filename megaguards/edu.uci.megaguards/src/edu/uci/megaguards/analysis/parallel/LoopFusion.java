@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.analysis.parallel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGNodeOptions;
+import edu.uci.megaguards.ast.node.LoopInfo;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeAssign;
+import edu.uci.megaguards.ast.node.MGNodeAssignComplex;
+import edu.uci.megaguards.ast.node.MGNodeBinOp;
+import edu.uci.megaguards.ast.node.MGNodeBlock;
+import edu.uci.megaguards.ast.node.MGNodeBreak;
+import edu.uci.megaguards.ast.node.MGNodeBreakElse;
+import edu.uci.megaguards.ast.node.MGNodeBuiltinFunction;
+import edu.uci.megaguards.ast.node.MGNodeEmpty;
+import edu.uci.megaguards.ast.node.MGNodeFor;
+import edu.uci.megaguards.ast.node.MGNodeFunctionCall;
+import edu.uci.megaguards.ast.node.MGNodeIf;
+import edu.uci.megaguards.ast.node.MGNodeJumpFrom;
+import edu.uci.megaguards.ast.node.MGNodeJumpTo;
+import edu.uci.megaguards.ast.node.MGNodeMathFunction;
+import edu.uci.megaguards.ast.node.MGNodeOperand;
+import edu.uci.megaguards.ast.node.MGNodeOperandComplex;
+import edu.uci.megaguards.ast.node.MGNodeReturn;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGlobalBarrier;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGlobalID;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGlobalSize;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGroupID;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeGroupSize;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalBarrier;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalID;
+import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalSize;
+import edu.uci.megaguards.ast.node.MGNodeUnaryOp;
+import edu.uci.megaguards.ast.node.MGNodeWhile;
+import edu.uci.megaguards.ast.node.MGVisitorIF;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.object.MGLiteral;
+import edu.uci.megaguards.object.MGObject;
+import edu.uci.megaguards.object.MGStorage;
+
+/**
+ * Merges adjacent loops over the same range.
+ *
+ * Two loops are fused only when neither reads a scalar the other one writes, so scalars flow
+ * between them as before. Array dependences that fusion would reverse become loop carried
+ * dependences of the fused loop, hence the caller must prove the fused loop free of them before
+ * using it.
+ */
+public final class LoopFusion {
+
+    private LoopFusion() {
+    }
+
+    /**
+     * @return true if {@code second} can be appended to the body of {@code first}.
+     */
+    @TruffleBoundary
+    public static boolean canFuse(MGNodeFor first, MGNodeFor second) {
+        final LoopInfo a = first.getLoopInfo();
+        final LoopInfo b = second.getLoopInfo();
+        if (first.hasBreak() || second.hasBreak() || a.getTargetVar() != null || b.getTargetVar() != null)
+            return false;
+        final MGNodeOptions options = a.getOptions();
+        if (options != b.getOptions() || (options != null && options.isDDOff()))
+            return false;
+        if (!a.getInductionVariable().getName().equals(b.getInductionVariable().getName()))
+            return false;
+        if (a.getStopOp() != b.getStopOp() || a.getStepOp() != b.getStepOp())
+            return false;
+        if (!sameBound(a.getStartNode(), b.getStartNode(), a.getRange()[0], b.getRange()[0]) ||
+                        !sameBound(a.getStopNode(), b.getStopNode(), a.getRange()[1], b.getRange()[1]) ||
+                        !sameBound(a.getStepNode(), b.getStepNode(), a.getRange()[2], b.getRange()[2]))
+            return false;
+
+        final VariableAccesses accessesA = new VariableAccesses(first);
+        final VariableAccesses accessesB = new VariableAccesses(second);
+        if (accessesA.unsupported || accessesB.unsupported)
+            return false;
+        for (String w : accessesA.written) {
+            if (accessesB.used.contains(w))
+                return false;
+        }
+        for (String w : accessesB.written) {
+            if (accessesA.used.contains(w))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a new loop running the body of {@code second} right after the body of {@code first}
+     *         in every iteration. The original loops are left untouched.
+     */
+    @TruffleBoundary
+    public static MGNodeFor fuse(MGNodeFor first, MGNodeFor second) {
+        final ArrayList<MGNode> body = new ArrayList<>();
+        body.add(first.getForBody().copy());
+        body.add(second.getForBody().copy());
+        final MGNodeFor fused = new MGNodeFor(new MGNodeBlock(body), first.getLoopInfo(), null);
+        fused.setParent(first.getParent());
+        fused.setSource(first.getSource());
+        return fused;
+    }
+
+    private static boolean sameBound(MGNode a, MGNode b, long la, long lb) {
+        if (a == null && b == null)
+            return la == lb;
+        return sameExpression(a, b);
+    }
+
+    private static boolean sameExpression(MGNode a, MGNode b) {
+        if (a == null || b == null)
+            return a == b;
+        if (a.getClass() != b.getClass())
+            return false;
+        if (a instanceof MGNodeOperand)
+            return sameObject(((MGNodeOperand) a).getValue(), ((MGNodeOperand) b).getValue());
+        if (a instanceof MGNodeBinOp) {
+            final MGNodeBinOp x = (MGNodeBinOp) a;
+            final MGNodeBinOp y = (MGNodeBinOp) b;
+            return x.getType() == y.getType() && sameExpression(x.getLeft(), y.getLeft()) && sameExpression(x.getRight(), y.getRight());
+        }
+        if (a instanceof MGNodeUnaryOp) {
+            final MGNodeUnaryOp x = (MGNodeUnaryOp) a;
+            final MGNodeUnaryOp y = (MGNodeUnaryOp) b;
+            return x.getType() == y.getType() && sameExpression(x.getChild(), y.getChild());
+        }
+        if (a instanceof MGNodeBuiltinFunction) {
+            final MGNodeBuiltinFunction x = (MGNodeBuiltinFunction) a;
+            final MGNodeBuiltinFunction y = (MGNodeBuiltinFunction) b;
+            return x.getType() == y.getType() && sameExpressions(x.getNodes(), y.getNodes());
+        }
+        if (a instanceof MGNodeMathFunction) {
+            final MGNodeMathFunction x = (MGNodeMathFunction) a;
+            final MGNodeMathFunction y = (MGNodeMathFunction) b;
+            return x.getType() == y.getType() && sameExpressions(x.getNodes(), y.getNodes());
+        }
+        return false;
+    }
+
+    private static boolean sameExpressions(ArrayList<MGNode> a, ArrayList<MGNode> b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!sameExpression(a.get(i), b.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean sameObject(MGObject a, MGObject b) {
+        if (a.getClass() != b.getClass() || a.getDataType() != b.getDataType())
+            return false;
+        if (a instanceof MGLiteral)
+            return a.getValue().equals(b.getValue());
+        if (!a.getName().equals(b.getName()))
+            return false;
+        if (a instanceof MGArray) {
+            final MGArray x = (MGArray) a;
+            final MGArray y = (MGArray) b;
+            if (x.getIndicesLen() != y.getIndicesLen())
+                return false;
+            for (int i = 0; i < x.getIndicesLen(); i++) {
+                if (!sameExpression(x.getIndices()[i], y.getIndices()[i]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the names of the variables a loop reads and the scalars it assigns. Reads of an
+     * induction variable within its own loop are not collected, so nested loops reusing the same
+     * induction variable do not prevent fusion.
+     */
+    private static final class VariableAccesses implements MGVisitorIF<Void> {
+
+        private final HashSet<String> used = new HashSet<>();
+        private final HashSet<String> written = new HashSet<>();
+        private final HashSet<String> inductionVars = new HashSet<>();
+        private boolean unsupported = false;
+
+        private VariableAccesses(MGNodeFor loop) {
+            visitFor(loop);
+        }
+
+        private void visit(MGNode node) {
+            if (node != null)
+                node.accept(this);
+        }
+
+        private void visit(ArrayList<MGNode> nodes) {
+            for (MGNode n : nodes)
+                visit(n);
+        }
+
+        private void use(MGObject value) {
+            if (!(value instanceof MGStorage))
+                return;
+            if (!inductionVars.contains(value.getName()))
+                used.add(value.getName());
+            if (value instanceof MGArray) {
+                final MGArray array = (MGArray) value;
+                for (int i = 0; i < array.getIndicesLen(); i++)
+                    visit(array.getIndices()[i]);
+            }
+        }
+
+        public Void visitOperandComplex(MGNodeOperandComplex node) {
+            visit(node.getReal());
+            visit(node.getImag());
+            return null;
+        }
+
+        public Void visitOperand(MGNodeOperand node) {
+            use(node.getValue());
+            return null;
+        }
+
+        public Void visitAssignComplex(MGNodeAssignComplex node) {
+            visit(node.getReal());
+            visit(node.getImag());
+            return null;
+        }
+
+        public Void visitAssign(MGNodeAssign node) {
+            visit(node.getRight());
+            final MGNode left = node.getLeft();
+            if (left instanceof MGNodeOperand) {
+                final MGObject target = ((MGNodeOperand) left).getValue();
+                if (!(target instanceof MGArray) || ((MGArray) target).getIndicesLen() == 0)
+                    written.add(target.getName());
+            }
+            visit(left);
+            return null;
+        }
+
+        public Void visitUnaryOp(MGNodeUnaryOp node) {
+            visit(node.getChild());
+            return null;
+        }
+
+        public Void visitBinOp(MGNodeBinOp node) {
+            visit(node.getLeft());
+            visit(node.getRight());
+            return null;
+        }
+
+        public Void visitBlock(MGNodeBlock node) {
+            visit(node.getChildren());
+            return null;
+        }
+
+        public Void visitBreak(MGNodeBreak node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitJumpFrom(MGNodeJumpFrom node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitJumpTo(MGNodeJumpTo node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitBreakElse(MGNodeBreakElse node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitBuiltinFunction(MGNodeBuiltinFunction node) {
+            visit(node.getNodes());
+            return null;
+        }
+
+        public Void visitFor(MGNodeFor node) {
+            final LoopInfo info = node.getLoopInfo();
+            final String iv = info.getInductionVariable().getName();
+            visit(info.getStartNode());
+            visit(info.getStopNode());
+            visit(info.getStepNode());
+            written.add(iv);
+            final boolean outermost = inductionVars.add(iv);
+            visit(node.getForBody());
+            if (outermost)
+                inductionVars.remove(iv);
+            return null;
+        }
+
+        public Void visitWhile(MGNodeWhile node) {
+            if (node.hasBreak())
+                unsupported = true;
+            visit(node.getCond());
+            visit(node.getBody());
+            return null;
+        }
+
+        public Void visitIf(MGNodeIf node) {
+            visit(node.getCond());
+            visit(node.getThen());
+            visit(node.getOrelse());
+            return null;
+        }
+
+        public Void visitMathFunction(MGNodeMathFunction node) {
+            visit(node.getNodes());
+            return null;
+        }
+
+        public Void visitEmpty(MGNodeEmpty node) {
+            return null;
+        }
+
+        public Void visitFunctionCall(MGNodeFunctionCall node) {
+            if (node.getArgs() != null)
+                visit(node.getArgs());
+            return null;
+        }
+
+        public Void visitReturn(MGNodeReturn node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitParallelNodeLocalBarrier(ParallelNodeLocalBarrier node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitParallelNodeGlobalBarrier(ParallelNodeGlobalBarrier node) {
+            unsupported = true;
+            return null;
+        }
+
+        public Void visitParallelNodeLocalID(ParallelNodeLocalID node) {
+            return null;
+        }
+
+        public Void visitParallelNodeLocalSize(ParallelNodeLocalSize node) {
+            return null;
+        }
+
+        public Void visitParallelNodeGroupID(ParallelNodeGroupID node) {
+            return null;
+        }
+
+        public Void visitParallelNodeGroupSize(ParallelNodeGroupSize node) {
+            return null;
+        }
+
+        public Void visitParallelNodeGlobalID(ParallelNodeGlobalID node) {
+            return null;
+        }
+
+        public Void visitParallelNodeGlobalSize(ParallelNodeGlobalSize node) {
+            return null;
+        }
+
+    }
+}
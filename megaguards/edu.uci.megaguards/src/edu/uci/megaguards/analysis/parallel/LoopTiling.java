@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.analysis.parallel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNode;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeArray;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeBinOp;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeBuiltinFunction;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeEither;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeFail;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeFunctionCall;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeLimit;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeLiteral;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeMathFunction;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeRange;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeVariable;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundVisitorIF;
+import edu.uci.megaguards.ast.env.MGBaseEnv;
+import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.LoopInfo;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeBlock;
+import edu.uci.megaguards.ast.node.MGNodeFor;
+import edu.uci.megaguards.ast.node.MGNodeOperand;
+import edu.uci.megaguards.backend.parallel.ParallelWorkload;
+import edu.uci.megaguards.object.DataType;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.object.MGStorage;
+
+/**
+ * Finds the perfectly nested loops that can be tiled and picks their tile size.
+ *
+ * Tiling a band of loops is legal when it is fully permutable. We only tile bands where AthenaPet
+ * proved every loop but the innermost one free of loop carried dependences, so every dependence
+ * inside the band is carried by the innermost loop and stays lexicographically positive.
+ */
+public final class LoopTiling {
+
+    public static final int MAX_LEVELS = 3;
+
+    /*- Multiple of a cache line of doubles */
+    private static final int TILE_ALIGNMENT = 8;
+
+    private LoopTiling() {
+    }
+
+    private static MGNode unwrap(MGNode node) {
+        MGNode n = node;
+        while (n instanceof MGNodeBlock && ((MGNodeBlock) n).getChildren().size() == 1)
+            n = ((MGNodeBlock) n).getChildren().get(0);
+        return n;
+    }
+
+    /**
+     * @return the loops perfectly nested in {@code body}, outermost first. Their ranges do not
+     *         depend on the induction variables in {@code outerVars}, on each other or on variables
+     *         assigned within {@code env}.
+     */
+    @TruffleBoundary
+    public static ArrayList<MGNodeFor> getNest(MGBaseEnv env, MGNode body, HashSet<String> outerVars, int maxLoops) {
+        final ArrayList<MGNodeFor> nest = new ArrayList<>();
+        final HashSet<String> vars = new HashSet<>(outerVars);
+        MGNode n = unwrap(body);
+        while (nest.size() < maxLoops && n instanceof MGNodeFor) {
+            final MGNodeFor f = (MGNodeFor) n;
+            final LoopInfo info = f.getLoopInfo();
+            if (!isTileable(f) || !isInvariant(env, info, vars))
+                break;
+            nest.add(f);
+            vars.add(info.getInductionVariable().getName());
+            n = unwrap(f.getForBody());
+        }
+        return nest;
+    }
+
+    /**
+     * @return true for counted loops with a positive constant step.
+     */
+    public static boolean isTileable(MGNodeFor loop) {
+        final LoopInfo info = loop.getLoopInfo();
+        if (loop.hasBreak() || info.getTargetVar() != null)
+            return false;
+        return info.getStepNode() == null && info.getRange()[2] > 0;
+    }
+
+    /**
+     * @return true if all the loops of the band but the innermost one are free of loop carried
+     *         dependences.
+     */
+    public static boolean isPermutable(ArrayList<MGNodeFor> band, int from) {
+        for (int i = from; i < band.size() - 1; i++) {
+            if (band.get(i).isDependenceExists())
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isInvariant(MGBaseEnv env, LoopInfo info, HashSet<String> vars) {
+        if (info.getStartNode() == null && info.getStopNode() == null)
+            return true;
+        final MGBoundNodeRange bounds = info.getBounds();
+        if (bounds == null)
+            return false;
+        final VariantCheck check = new VariantCheck(vars, env.getDefUse().keySet());
+        return !(check.visit(bounds.getStart()) || check.visit(bounds.getStop()));
+    }
+
+    /**
+     * @return true if the global loop of {@code env} has perfectly nested loops over arrays large
+     *         enough to be tiled. Without AthenaPet the band cannot be proven permutable, the loop
+     *         is then kept untiled.
+     */
+    @TruffleBoundary
+    public static boolean isCandidate(MGGlobalEnv env) {
+        if (!MGOptions.Backend.loopTiling || !MGOptions.Backend.AthenaPet || env.isOuterBreak())
+            return false;
+        final HashSet<String> outerVars = new HashSet<>();
+        outerVars.add(env.getIteratorVar()[0].getName());
+        return getNest(env, env.getMGRootNode(), outerVars, MAX_LEVELS - 1).size() > 0 && getTileSize(env) > 0;
+    }
+
+    /**
+     * Square tiles, so that a tile of each accessed array fits in {@link MGOptions.Backend#tilingCacheSize}.
+     *
+     * @return the tile size or 0 if the arrays are too small to benefit from tiling.
+     */
+    @TruffleBoundary
+    public static int getTileSize(MGGlobalEnv env) {
+        final HashSet<MGStorage> arrays = new HashSet<>();
+        int elementSize = 4;
+        int maxDimSize = 0;
+        for (MGNode aa : env.getArrayaccesses()) {
+            final MGArray array = (MGArray) ((MGNodeOperand) aa).getValue();
+            if (array.getValue() instanceof ParallelWorkload || array.getArrayInfo() == null || !arrays.add(array.getOrigin()))
+                continue;
+            if (array.getDataType() == DataType.DoubleArray || array.getDataType() == DataType.LongArray)
+                elementSize = 8;
+            for (int d = 0; d < array.getArrayInfo().getDim(); d++)
+                maxDimSize = Math.max(maxDimSize, array.getArrayInfo().getSize(d));
+        }
+        if (arrays.isEmpty())
+            return 0;
+
+        int tile = (int) Math.sqrt((double) MGOptions.Backend.tilingCacheSize / (arrays.size() * elementSize));
+        tile -= tile % TILE_ALIGNMENT;
+        tile = Math.max(tile, TILE_ALIGNMENT);
+        return maxDimSize > tile ? tile : 0;
+    }
+
+    /**
+     * Returns true for bounds that may change within the band.
+     */
+    private static final class VariantCheck implements MGBoundVisitorIF<Boolean> {
+
+        private final HashSet<String> vars;
+        private final Set<String> assigned;
+
+        private VariantCheck(HashSet<String> vars, Set<String> assigned) {
+            this.vars = vars;
+            this.assigned = assigned;
+        }
+
+        private boolean visit(MGBoundNode node) {
+            if (node == null)
+                return false;
+            try {
+                return node.accept(this);
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
+        public Boolean visitArray(MGBoundNodeArray node) {
+            return true;
+        }
+
+        public Boolean visitBinOp(MGBoundNodeBinOp node) {
+            return visit(node.getLeft()) || visit(node.getRight());
+        }
+
+        public Boolean visitBuiltinFunction(MGBoundNodeBuiltinFunction node) {
+            return visit(node.getArg1()) || visit(node.getArg2());
+        }
+
+        public Boolean visitEither(MGBoundNodeEither node) {
+            return visit(node.getThen()) || visit(node.getOrelse());
+        }
+
+        public Boolean visitLimit(MGBoundNodeLimit node) {
+            return visit(node.getMin()) || visit(node.getMax());
+        }
+
+        public Boolean visitLiteral(MGBoundNodeLiteral node) {
+            return false;
+        }
+
+        public Boolean visitMathFunction(MGBoundNodeMathFunction node) {
+            return visit(node.getArg());
+        }
+
+        public Boolean visitRange(MGBoundNodeRange node) {
+            return visit(node.getStart()) || visit(node.getStop()) || visit(node.getStep());
+        }
+
+        public Boolean visitVariable(MGBoundNodeVariable node) {
+            return vars.contains(node.getVariable()) || assigned.contains(node.getVariable());
+        }
+
+        public Boolean visitFunctionCall(MGBoundNodeFunctionCall node) {
+            return true;
+        }
+
+        public Boolean visitFail(MGBoundNodeFail node) {
+            return true;
+        }
+    }
+}
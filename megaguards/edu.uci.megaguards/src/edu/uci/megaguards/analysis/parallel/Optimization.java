@@ -37,6 +37,9 @@ import edu.uci.megaguards.ast.node.MGNodeFor;
 
 public class Optimization {
 
+    /*- OpenCL supports up to three work-item dimensions */
+    public static final int MAX_LEVELS = 3;
+
     private MGNode root;
     private MGGlobalEnv env;
     private MGNodeOptions options;
@@ -50,57 +53,31 @@ public class Optimization {
     @TruffleBoundary
     public MGNode optimizeLoop(FinalizedVariableValues finalizedValues) {
         MGNode optimized = root;
-        MGNodeFor forNode_level1 = root instanceof MGNodeFor ? (MGNodeFor) root : null;
+        // Inline the perfectly nested independent loops as extra dimensions of the NDRange
+        for (int level = 1; level < MAX_LEVELS; level++) {
+            final MGNodeFor forNode = optimized instanceof MGNodeFor ? (MGNodeFor) optimized : null;
+            if (forNode == null)
+                break;
 
-        if (forNode_level1 != null) {
-            LoopInfo loopInfo1 = forNode_level1.getLoopInfo();
-            if (loopInfo1.getTargetVar() != null)
-                return optimized;
+            final LoopInfo loopInfo = forNode.getLoopInfo();
+            if (loopInfo.getTargetVar() != null)
+                break;
 
-            if (forNode_level1.hasBreak())
-                return optimized;
+            if (forNode.hasBreak())
+                break;
 
-            if (finalizedValues.finalizeLoopInfo(loopInfo1) == null)
-                return optimized;
+            if (finalizedValues.finalizeLoopInfo(loopInfo) == null)
+                break;
 
-            boolean dd = checkDataDependence(forNode_level1, finalizedValues);
-            if (!dd)
-                return optimized;
+            if (!checkDataDependence(forNode, finalizedValues))
+                break;
 
-            // Now we should inline forNode body
             // replace root nodes with this forNode body
-            optimized = forNode_level1.getForBody();
+            optimized = forNode.getForBody();
 
             env.increaseLevel();
-            env.setIteratorVar(loopInfo1.getInductionVariable(), 1);
-            env.setGlobalLoopInfo(loopInfo1, 1);
-            // add to codeWriter
-            // it has been inline.. This is the 2nd inner loop
-            MGNodeFor forNode_level2 = optimized instanceof MGNodeFor ? (MGNodeFor) optimized : null;
-            if (forNode_level2 != null) {
-                LoopInfo loopInfo2 = forNode_level2.getLoopInfo();
-                if (loopInfo2.getTargetVar() != null)
-                    return optimized;
-
-                if (forNode_level2.hasBreak())
-                    return optimized;
-
-                if (finalizedValues.finalizeLoopInfo(loopInfo2) == null)
-                    return optimized;
-
-                dd = checkDataDependence(forNode_level2, finalizedValues);
-                if (!dd)
-                    return optimized;
-
-                // Now we should inline forNode body
-                // replace root nodes with this forNode body
-                optimized = forNode_level2.getForBody();
-
-                env.increaseLevel();
-                env.setIteratorVar(loopInfo2.getInductionVariable(), 2);
-                env.setGlobalLoopInfo(loopInfo2, 2);
-
-            }
+            env.setIteratorVar(loopInfo.getInductionVariable(), level);
+            env.setGlobalLoopInfo(loopInfo, level);
         }
 
         return optimized;
@@ -79,7 +79,14 @@ public class ParallelFunctions {
             return false;
         }
 
-        public static void checkWhitelist(MGNodeFunctionCall call) throws CoverageException {
+        public enum Operator {
+            ADD,
+            MUL,
+            MIN,
+            MAX
+        }
+
+        public static Operator getOperator(MGNodeFunctionCall call) {
             final String name1 = call.getFunctionNode().getParameters().get(0).getName();
             final String name2 = call.getFunctionNode().getParameters().get(1).getName();
             final MGNode ret = call.getFunctionNode().getBody();
@@ -93,7 +100,7 @@ public class ParallelFunctions {
                         final MGNode n2 = ((MGNodeBinOp) node).getRight();
 
                         if (isBothOperands(name1, name2, n1, n2)) {
-                            return;
+                            return ((MGNodeBinOp) node).getType() == BinOpType.ADD ? Operator.ADD : Operator.MUL;
                         }
                     }
                 }
@@ -105,11 +112,18 @@ public class ParallelFunctions {
                         final MGNode n2 = ((MGNodeBuiltinFunction) node).getNodes().get(1);
 
                         if (isBothOperands(name1, name2, n1, n2)) {
-                            return;
+                            return ((MGNodeBuiltinFunction) node).getType() == BuiltinFunctionType.MIN ? Operator.MIN : Operator.MAX;
                         }
                     }
                 }
             }
+            return null;
+        }
+
+        public static void checkWhitelist(MGNodeFunctionCall call) throws CoverageException {
+            if (getOperator(call) != null)
+                return;
+
             throw CoverageException.INSTANCE.message("Possible non-commutative reduction function. Please add \"\"\"" + MGNodeOptions.REDUCE_ON + "\"\"\" to bypass this check.");
         }
 
@@ -24,19 +24,33 @@
  */
 package edu.uci.megaguards.analysis.parallel;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.source.SourceSection;
 
 import edu.uci.megaguards.MGNodeOptions;
+import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
 import edu.uci.megaguards.ast.node.MGNode;
 import edu.uci.megaguards.backend.MGParallel;
 import edu.uci.megaguards.log.MGLog;
 
-public class ParallelTasker extends Thread {
+/**
+ * Prepares an {@link MGParallel} loop on a bounded pool of compiler threads while the guest keeps
+ * running the Truffle version of the loop.
+ *
+ * The preparation runs the dependence analysis, generates the kernel source and compiles it. It
+ * works on its own translation of the loop, so the guest never waits for it and only polls
+ * {@link #isReady()} before swapping in the prepared loop.
+ */
+public class ParallelTasker implements Runnable {
 
-    private static Compilation compiling = Compilation.getInstance();
+    private static ThreadPoolExecutor pool = null;
 
     private MGParallel parallelNode;
     private final MGGlobalEnv env;
@@ -47,8 +61,8 @@ public class ParallelTasker extends Thread {
     private final FinalizedVariableValues finalizedValues;
     private final MGLog log;
     private Exception err;
-    private boolean isReady;
-    private boolean isFailed;
+    private volatile boolean isReady;
+    private volatile boolean isFailed;
 
     @TruffleBoundary
     public ParallelTasker(SourceSection sourceSection, MGNodeOptions options, MGNode rootNode, MGNode coreComputeNode, MGGlobalEnv env, FinalizedVariableValues finalizedValues, MGLog log) {
@@ -66,12 +80,51 @@ public class ParallelTasker extends Thread {
         this.isFailed = false;
     }
 
-    public void prepare() {
+    @TruffleBoundary
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            final AtomicInteger count = new AtomicInteger();
+            final int threads = Math.max(1, MGOptions.Backend.compilerThreads);
+            pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, MGOptions.Backend.compilerQueueSize)), r -> {
+                final Thread t = new Thread(r, "MegaGuards-Compiler-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return pool;
+    }
+
+    /**
+     * Queues the preparation of a loop. When the queue is full the loop is prepared on the calling
+     * thread instead. The environment is owned by the preparation from now on.
+     */
+    @TruffleBoundary
+    public static ParallelTasker submit(SourceSection sourceSection, MGNodeOptions options, MGNode rootNode, MGNode coreComputeNode, MGGlobalEnv env, FinalizedVariableValues finalizedValues,
+                    MGLog log) {
+        final ParallelTasker tasker = new ParallelTasker(sourceSection, options, rootNode, coreComputeNode, env, finalizedValues, log);
+        getPool().execute(tasker);
+        return tasker;
+    }
+
+    @TruffleBoundary
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // pass
+            }
+            pool = null;
+        }
+    }
+
+    @TruffleBoundary
+    private void analyze() {
         try {
             long startTime = System.currentTimeMillis();
-            parallelNode = MGParallel.createLoop(sourceSection, options, rootNode, coreComputeNode, env, finalizedValues, log);
+            parallelNode = MGParallel.createDeferredLoop(sourceSection, options, rootNode, coreComputeNode, env, finalizedValues, log);
             log.setOptionValue("TotalTime", log.getOptionValueLong("TotalTime") + (System.currentTimeMillis() - startTime));
-            this.isReady = true;
         } catch (Exception e) {
             this.err = e;
             this.isFailed = true;
@@ -82,88 +135,53 @@ public class ParallelTasker extends Thread {
     @TruffleBoundary
     @Override
     public void run() {
-        synchronized (compiling) {
-            if (compiling.isCompilationInProgress()) {
-                try {
-                    compiling.wait();
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-            }
+        analyze();
+        if (!isFailed) {
             try {
-                compiling.setCompilationInProgress();
-                prepare();
-                compiling.releaseCompilationInProgress();
+                long startTime = System.currentTimeMillis();
+                parallelNode.getExecuter().precompile();
+                log.setOptionValue("TotalTime", log.getOptionValueLong("TotalTime") + (System.currentTimeMillis() - startTime));
             } catch (Exception e) {
                 this.err = e;
                 this.isFailed = true;
+                log.printException(e);
             }
-            compiling.notify();
         }
+        // the prepared loop reloads the values on every execution
+        env.clearValues();
+        log.setOptionValue("Executed", false);
+        this.isReady = true;
     }
 
-    @TruffleBoundary
-    public synchronized void execute(int offset) throws Exception {
-        long startTime = System.currentTimeMillis();
-        log.setOptionValue("OffloadOffset", offset);
-        parallelNode.getExecuter().execute(offset);
-        log.setOptionValue("TotalTime", log.getOptionValueLong("TotalTime") + (System.currentTimeMillis() - startTime));
-
-        log.setOptionValue("TotalKernelExecutions", 1);
+    public MGParallel getParallelNode() {
+        return parallelNode;
     }
 
-    @TruffleBoundary
-    public synchronized void executeReduction() throws Exception {
-        long startTime = System.currentTimeMillis();
-        parallelNode.getExecuter().executeReduction();
-        log.setOptionValue("TotalTime", log.getOptionValueLong("TotalTime") + (System.currentTimeMillis() - startTime));
-
-        log.setOptionValue("TotalKernelExecutions", 1);
+    public MGGlobalEnv getEnv() {
+        return env;
     }
 
-    @TruffleBoundary
-    public boolean isCompiled() {
-        return parallelNode.getExecuter().isReady();
+    public FinalizedVariableValues getFinalizedValues() {
+        return finalizedValues;
     }
 
-    public MGParallel getParallelNode() {
-        return parallelNode;
+    public MGLog getLog() {
+        return log;
     }
 
     public Exception getErr() {
         return err;
     }
 
-    @TruffleBoundary
-    public synchronized boolean isReady() {
-        return isReady && !this.isAlive();
+    /**
+     * Whether the preparation is over, successfully or not.
+     */
+    public boolean isReady() {
+        return isReady;
     }
 
     public boolean isFailed() {
         return isFailed;
     }
 
-    private static class Compilation {
-
-        private static final Compilation INSTANCE = new Compilation();
-
-        public static Compilation getInstance() {
-            return INSTANCE;
-        }
-
-        private boolean compiling = false;
-
-        public synchronized void setCompilationInProgress() {
-            compiling = true;
-        }
-
-        public synchronized void releaseCompilationInProgress() {
-            compiling = false;
-        }
-
-        public synchronized boolean isCompilationInProgress() {
-            return compiling;
-        }
-
-    }
 }
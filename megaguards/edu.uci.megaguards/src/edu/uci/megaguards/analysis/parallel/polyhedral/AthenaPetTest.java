@@ -219,7 +219,7 @@ public class AthenaPetTest extends DataDependence implements MGVisitorIF<AthenaP
         final MGNode[] indices = arrayIndices.getIndices();
         final int indicesLen = arrayIndices.getIndicesLen();
         if (subscriptProcessing) {
-            final long[] bounds = finalizedValues.getArrayValuesBound().get(((Unboxer) arrayValue.getOrigin().getValue()).getValue().hashCode());
+            final long[] bounds = finalizedValues.getArrayValuesBound().get(((Unboxer) arrayValue.getOrigin().getValue()).getValue());
             if (bounds != null && bounds[2] == 1 && indicesLen == 1) {
                 // this array has unique values, so use it's subscripts instead.
                 return visitor(indices[0]);
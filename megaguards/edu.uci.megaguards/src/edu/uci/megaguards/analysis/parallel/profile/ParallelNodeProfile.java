@@ -64,7 +64,10 @@ import edu.uci.megaguards.ast.node.MGNodeSpecial.ParallelNodeLocalSize;
 import edu.uci.megaguards.ast.node.MGNodeUnaryOp;
 import edu.uci.megaguards.ast.node.MGNodeWhile;
 import edu.uci.megaguards.ast.node.MGVisitorIF;
+import edu.uci.megaguards.log.MGLatency;
+import edu.uci.megaguards.log.MGLatencyHistogram;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGLogSite;
 import edu.uci.megaguards.object.DataType;
 import edu.uci.megaguards.object.MGArray;
 
@@ -358,6 +361,11 @@ public class ParallelNodeProfile implements MGVisitorIF<Object> {
         jsonOut.add("if_per_iter", summary.getIfStatementsPerIter());
         jsonOut.add("binary_op_per_iter", summary.getNumBinOpPerIter());
         jsonOut.add("array_access_per_iter", summary.getNumArrayAccessesPerIter());
+        final MGLogSite site = log.getSite();
+        for (MGLatency latency : MGLatency.values()) {
+            final MGLatencyHistogram h = site != null ? site.getLatency(latency) : MGLogSite.getTotalLatency(latency);
+            h.addJSONFields(jsonOut, latency.getJsonName());
+        }
         String prettyJSON = jsonOut.toString();
         prettyJSON = prettyJSON.replace(", ", ",\n");
         prettyJSON = prettyJSON.replace("{", "{\n").replace("}", "\n}");
@@ -24,18 +24,241 @@
  */
 package edu.uci.megaguards.analysis.parallel.profile;
 
+import java.util.HashMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
 import edu.uci.megaguards.MGOptions;
-import edu.uci.megaguards.analysis.parallel.exception.ThresholdException;
 import edu.uci.megaguards.backend.ExecutionMode;
+import edu.uci.megaguards.log.MGLog;
 
+/**
+ * Decides whether a loop is worth parallelizing. A loop below
+ * {@link MGOptions.Backend#offloadThreshold} estimated operations stays on Truffle, any other
+ * loop runs on the configured target unless the cost model is enabled.
+ *
+ * The cost model derives the estimates from the per-iteration operation counts of
+ * {@link ParallelNodeProfile} and the unboxed data size. Its parameters are rough defaults that
+ * can be overridden with <code>--mg-target-cost=name=value,...</code>. Each back-end's estimates
+ * are scaled by a correction factor, which is calibrated from the measured execution times of
+ * the loops.
+ */
 public class ParallelThreshold {
 
-    @SuppressWarnings("unused")
-    public static ExecutionMode calculateThreshold(ParallelNodeProfile profile, long totalParallelLoops) throws ThresholdException {
-        long threshold = MGOptions.Backend.offloadThreshold;
-// if (totalParallelLoops < threshold)
-// throw ThresholdException.INSTANCE.message("threshold : " + totalParallelLoops + " < " +
-// threshold);
-        return MGOptions.Backend.target;
+    private static final String[] PARAMETERS = {"loop", "binop", "math", "array", "branch", "assign", "jvm-overhead", "opencl-overhead", "gpu-speedup", "cpu-vector-width",
+                    "gpu-bandwidth", "cpu-bandwidth"};
+
+    /*-
+     * Defaults of the parameters above. The operation costs and overheads are in nanoseconds on
+     * the sequential Truffle back-end, the bandwidths in bytes per nanosecond. They are not
+     * measured, the calibration corrects them for the machine at hand.
+     */
+    private static final double[] DEFAULTS = {1.0, 1.0, 20.0, 2.0, 1.5, 0.5, 20_000.0, 50_000.0, 32.0, 4.0, 6.0, 12.0};
+
+    private static final int LOOP = 0;
+    private static final int BINOP = 1;
+    private static final int MATH = 2;
+    private static final int ARRAY = 3;
+    private static final int BRANCH = 4;
+    private static final int ASSIGN = 5;
+    private static final int JVM_OVERHEAD = 6;
+    private static final int OPENCL_OVERHEAD = 7;
+    private static final int GPU_SPEEDUP = 8;
+    private static final int CPU_VECTOR_WIDTH = 9;
+    private static final int GPU_BANDWIDTH = 10;
+    private static final int CPU_BANDWIDTH = 11;
+
+    private static double[] parameters = null;
+
+    /*- measured over estimated time of the Truffle, JVM and OpenCL back-ends */
+    private static final double[] correction = {1.0, 1.0, 1.0};
+
+    // weight of a new measurement in the correction factors
+    private static final double CALIBRATION_WEIGHT = 0.25;
+
+    // a single measurement moves a correction factor by this factor at most
+    private static final double MAX_CORRECTION_STEP = 16.0;
+
+    /**
+     * A loop that was kept off the configured target is reconsidered once its iteration count
+     * grows by this factor.
+     */
+    public static final long REEVALUATE_GROWTH = 4;
+
+    /**
+     * The decision for a loop together with what its estimates were derived from, so that the
+     * measured executions of the loop can calibrate the model.
+     */
+    public static final class Estimate {
+        private final ExecutionMode mode;
+        private final double work;
+        private final long dataSize;
+
+        private Estimate(ExecutionMode mode, double work, long dataSize) {
+            this.mode = mode;
+            this.work = work;
+            this.dataSize = dataSize;
+        }
+
+        public ExecutionMode getMode() {
+            return mode;
+        }
+
+        /**
+         * Calibrates the back-end that ran the loop with its measured execution time.
+         */
+        @TruffleBoundary
+        public void calibrate(ExecutionMode backend, long iterations, long nanos) {
+            if (work <= 0 || iterations <= 0 || nanos <= 0)
+                return;
+            final double estimated = estimate(backend, work * iterations, iterations, dataSize, false);
+            if (estimated > 0)
+                ParallelThreshold.calibrate(backend, nanos / estimated);
+        }
+    }
+
+    @TruffleBoundary
+    private static synchronized double[] getParameters() {
+        if (parameters == null) {
+            final HashMap<String, Integer> names = new HashMap<>();
+            for (int i = 0; i < PARAMETERS.length; i++)
+                names.put(PARAMETERS[i], i);
+            final double[] p = DEFAULTS.clone();
+            for (String param : MGOptions.Backend.costParameters.split(",")) {
+                final int eq = param.indexOf('=');
+                if (eq <= 0)
+                    continue;
+                final Integer index = names.get(param.substring(0, eq).trim());
+                try {
+                    final double value = Double.parseDouble(param.substring(eq + 1).trim());
+                    if (index == null || !(value > 0))
+                        throw new NumberFormatException();
+                    p[index] = value;
+                } catch (NumberFormatException e) {
+                    MGLog.printlnErrTagged("Invalid cost model parameter '" + param + "'");
+                }
+            }
+            parameters = p;
+        }
+        return parameters;
+    }
+
+    private static int getBackend(ExecutionMode mode) {
+        switch (mode) {
+            case Truffle:
+                return 0;
+            case NormalCPU:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    private static synchronized double getCorrection(ExecutionMode mode) {
+        return correction[getBackend(mode)];
+    }
+
+    private static synchronized void calibrate(ExecutionMode mode, double ratio) {
+        final int b = getBackend(mode);
+        final double bounded = Math.max(correction[b] / MAX_CORRECTION_STEP, Math.min(correction[b] * MAX_CORRECTION_STEP, ratio));
+        correction[b] = (1 - CALIBRATION_WEIGHT) * correction[b] + CALIBRATION_WEIGHT * bounded;
+    }
+
+    public static double estimateWork(ParallelNodeProfile profile) {
+        final double[] p = getParameters();
+        return p[LOOP] + profile.getForStatements() * p[LOOP] + profile.getNumBinOp() * p[BINOP] + profile.getNumMathFunc() * p[MATH] +
+                        profile.getNumArrayAccesses() * p[ARRAY] + profile.getIfStatements() * p[BRANCH] + profile.getAssignStatements() * p[ASSIGN];
+    }
+
+    public static long countOperations(ParallelNodeProfile profile) {
+        return 1 + profile.getForStatements() + profile.getNumBinOp() + profile.getNumMathFunc() + profile.getNumArrayAccesses() + profile.getIfStatements() +
+                        profile.getAssignStatements();
+    }
+
+    private static double estimateJVM(double work, long iterations) {
+        final long threads = Math.min(MGOptions.Backend.jvmThreads, iterations);
+        if (threads <= 1)
+            return -1;
+        return getParameters()[JVM_OVERHEAD] + work / threads;
+    }
+
+    private static double estimateOpenCL(ExecutionMode target, double work, long dataSize) {
+        final double[] p = getParameters();
+        final double gpu = p[OPENCL_OVERHEAD] + dataSize / p[GPU_BANDWIDTH] + work / p[GPU_SPEEDUP];
+        final int cores = MGOptions.Backend.oclCPUNumCores > 0 ? MGOptions.Backend.oclCPUNumCores : Runtime.getRuntime().availableProcessors();
+        final double cpu = p[OPENCL_OVERHEAD] + dataSize / p[CPU_BANDWIDTH] + work / (cores * p[CPU_VECTOR_WIDTH]);
+        switch (target) {
+            case OpenCLGPU:
+                return gpu;
+            case OpenCLCPU:
+                return cpu;
+            default:
+                return Math.min(gpu, cpu);
+        }
+    }
+
+    /**
+     * @return the estimated time in nanoseconds, or -1 if the back-end cannot run the loop.
+     */
+    private static double estimate(ExecutionMode backend, double work, long iterations, long dataSize, boolean corrected) {
+        final double estimate;
+        switch (backend) {
+            case Truffle:
+                estimate = work;
+                break;
+            case NormalCPU:
+                estimate = estimateJVM(work, iterations);
+                break;
+            default:
+                estimate = estimateOpenCL(backend, work, dataSize);
+                break;
+        }
+        return estimate < 0 || !corrected ? estimate : estimate * getCorrection(backend);
+    }
+
+    private static long toMicros(double ns) {
+        return ns < 0 ? -1 : (long) Math.ceil(ns / 1000.0);
+    }
+
+    /**
+     * Picks Truffle for loops below the threshold and the configured target otherwise. With the
+     * cost model, the cheapest of Truffle and the configured target is picked instead. The
+     * threaded JVM loop is only considered when it is the target: an OpenCL target translates
+     * inner loops of the region for OpenCL, which must not run concurrently from the JVM worker
+     * threads.
+     *
+     * @param profile per-iteration profile of the loop body
+     * @param iterations number of iterations of the parallel loop
+     * @param dataSize bytes that would be copied to the device
+     */
+    @TruffleBoundary
+    public static Estimate calculateThreshold(ParallelNodeProfile profile, long iterations, long dataSize, MGLog log) {
+        final ExecutionMode target = MGOptions.Backend.target;
+        final long operations = countOperations(profile) * iterations;
+        final double work = estimateWork(profile);
+
+        if (target == ExecutionMode.Truffle || operations < MGOptions.Backend.offloadThreshold) {
+            log.setOptionValue("EstimatedWork", operations);
+            log.setOptionValue("CostModelDecision", String.format("%s (operations: %d below the threshold %d)", ExecutionMode.Truffle, operations, MGOptions.Backend.offloadThreshold));
+            return new Estimate(ExecutionMode.Truffle, work, dataSize);
+        }
+        if (!MGOptions.Backend.costModel) {
+            log.setOptionValue("EstimatedWork", operations);
+            return new Estimate(target, work, dataSize);
+        }
+
+        final double truffle = estimate(ExecutionMode.Truffle, work * iterations, iterations, dataSize, true);
+        final double offload = estimate(target, work * iterations, iterations, dataSize, true);
+        final ExecutionMode mode = offload >= 0 && offload < truffle ? target : ExecutionMode.Truffle;
+        final double jvm = target == ExecutionMode.NormalCPU ? offload : -1;
+        final double opencl = target.isOpenCL() ? offload : -1;
+
+        log.setOptionValue("EstimatedWork", operations);
+        log.setOptionValue("EstimatedTruffleTime", toMicros(truffle));
+        log.setOptionValue("EstimatedJVMTime", toMicros(jvm));
+        log.setOptionValue("EstimatedOpenCLTime", toMicros(opencl));
+        log.setOptionValue("CostModelDecision", String.format("%s (operations: %d, transfer: %d byte, truffle: %d us, jvm: %d us, opencl: %d us, correction: %.2f/%.2f)", mode,
+                        operations, dataSize, toMicros(truffle), toMicros(jvm), toMicros(opencl), getCorrection(ExecutionMode.Truffle), getCorrection(target)));
+        return new Estimate(mode, work, dataSize);
     }
 }
@@ -46,22 +46,22 @@ public class ReductionWorkload extends ParallelWorkload {
                 case Int:
                     final int[] i = new int[len];
                     this.info = new ArrayInfo(int[].class, len);
-                    this.boxed = new StaticUnboxer.IntArray(i, info, i.hashCode(), true);
+                    this.boxed = new StaticUnboxer.IntArray(i, info, i, true);
                     return true;
                 case Long:
                     final long[] l = new long[len];
                     this.info = new ArrayInfo(long[].class, len);
-                    this.boxed = new StaticUnboxer.LongArray(l, info, l.hashCode(), true);
+                    this.boxed = new StaticUnboxer.LongArray(l, info, l, true);
                     return true;
                 case Double:
                     final double[] d = new double[len];
                     this.info = new ArrayInfo(double[].class, len);
-                    this.boxed = new StaticUnboxer.DoubleArray(d, info, d.hashCode(), true);
+                    this.boxed = new StaticUnboxer.DoubleArray(d, info, d, true);
                     return true;
                 case Bool:
                     final boolean[] b = new boolean[len];
                     this.info = new ArrayInfo(boolean[].class, len);
-                    this.boxed = new StaticUnboxer.BooleanArray(b, info, b.hashCode(), true);
+                    this.boxed = new StaticUnboxer.BooleanArray(b, info, b, true);
                     return true;
             }
         }
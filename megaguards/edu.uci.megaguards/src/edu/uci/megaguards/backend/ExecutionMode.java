@@ -29,5 +29,9 @@ public enum ExecutionMode {
     OpenCLAuto,
     OpenCLGPU,
     OpenCLCPU,
-    Truffle
+    Truffle;
+
+    public boolean isOpenCL() {
+        return this == OpenCLAuto || this == OpenCLGPU || this == OpenCLCPU;
+    }
 }
@@ -25,6 +25,7 @@
 package edu.uci.megaguards.backend;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.DirectCallNode;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
@@ -36,10 +37,17 @@ import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
 import edu.uci.megaguards.analysis.exception.BoundInvalidateException;
 import edu.uci.megaguards.analysis.exception.MGException;
+import edu.uci.megaguards.analysis.parallel.ParallelTasker;
+import edu.uci.megaguards.analysis.parallel.profile.ParallelThreshold;
 import edu.uci.megaguards.ast.MGTree;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter;
 import edu.uci.megaguards.fallback.MGFallbackHandler;
+import edu.uci.megaguards.log.MGEvents;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGLogSite;
+import edu.uci.megaguards.log.MGPhase;
 import edu.uci.megaguards.object.MGStorage;
 
 public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
@@ -84,10 +92,12 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
 
         public void translateTruffleForNode(VirtualFrame frame, MGNodeOptions options, MGGlobalEnv env, MGLog log, T iv, T body, long[] range) throws MGException {
             final long s = System.currentTimeMillis();
+            final Object phase = MGEvents.begin(MGPhase.Translation);
             baseTree.create(env, frame, log).buildForLoopTree(this, iv, body, range, options);
             env.mergePrivateParameters();
             env.setRootNode(rootNode);
             log.setOptionValue("TranslationTime", (System.currentTimeMillis() - s));
+            MGEvents.commit(phase, log);
         }
 
         @Override
@@ -101,6 +111,9 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
             Type t = Type.TRUFFLE;
             final MGNodeOptions options = MGNodeOptions.getOptions(body.hashCode());
             String logKey = "TotalTruffleExecutions";
+            ParallelTasker pending = null;
+            long modelIterations = 0;
+            ParallelThreshold.Estimate estimate = null;
             try {
                 translateTruffleForNode(frame, options, env, log, iv, body, new long[]{start, stop, step});
                 processBoxedData(log);
@@ -109,6 +122,15 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
                 boolean isDone = false;
                 CompilerDirectives.transferToInterpreterAndInvalidate();
                 if (MGOptions.Backend.target != ExecutionMode.Truffle) {
+                    ExecutionMode mode = MGOptions.Backend.target;
+                    if (!(env.isOuterBreak() || env.isIllegalForOpenCL())) {
+                        final long iterations = JVMExecuter.getIterations(start, stop, step);
+                        estimate = MGParallel.selectExecutionMode(env, finalizedValues, iterations, log);
+                        mode = estimate.getMode();
+                        if (mode != MGOptions.Backend.target)
+                            modelIterations = Math.max(1, iterations);
+                    }
+
                     if (env.isOuterBreak() || env.isIllegalForOpenCL()) {
                         try {
                             MGParallel.dataDependenceAnalysis(options, env, coreComputeNode, finalizedValues, log);
@@ -116,6 +138,33 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
                             // pass through to use Truffle back-end
                         }
 
+                    } else if (mode == ExecutionMode.Truffle) {
+                        // too small to pay off the parallel overhead
+                    } else if (mode == ExecutionMode.NormalCPU) {
+                        try {
+                            final MGTruffle threadedInvoke = MGTruffle.createThreadedLoop(options, coreComputeNode, env, finalizedValues, log);
+                            log.setOptionValue("ExecutionMode", JVMExecuter.DEVICE_NAME);
+                            log.setOptionValue("FinalExecutionMode", JVMExecuter.DEVICE_NAME);
+                            log.setOptionValue("TotalParallelLoops", JVMExecuter.getIterations(start, stop, step));
+                            final DirectCallNode call = threadedInvoke.createCallNode();
+                            call.call(new Object[]{start, stop, step, log});
+                            newCall = call;
+                            invoke = threadedInvoke;
+                            logKey = "TotalJVMExecutions";
+                            t = Type.JVM;
+                            isDone = true;
+                        } catch (MGException e) {
+                            // pass through to use Truffle back-end
+                        }
+                    } else if (MGOptions.Backend.backgroundCompiler) {
+                        try {
+                            if (!MGOptions.Backend.allowInAccurateMathFunctions) {
+                                checkMathFunctions(env);
+                            }
+                            pending = submitBackground(frame, s, fn, options, iv, body, new long[]{start, stop, step});
+                        } catch (MGException e) {
+                            // pass through to use Truffle back-end
+                        }
                     } else {
                         try {
                             if (!MGOptions.Backend.allowInAccurateMathFunctions) {
@@ -139,7 +188,7 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
                 }
 
                 if (!isDone) {
-                    final MGTruffle truffleInvoke = MGTruffle.createLoop(env, log);
+                    final MGTruffle truffleInvoke = MGTruffle.createLoop(options, coreComputeNode, env, finalizedValues, log);
                     final DirectCallNode call = truffleInvoke.createCallNode();
                     call.call(new Object[]{start, stop, step, log});
                     newCall = call;
@@ -166,7 +215,29 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
 
             fallback.resetLimit();
 
-            return new Ready<>(this, env, s, logKey, finalizedValues, invoke, newCall, t);
+            return new Ready<>(this, env, s, logKey, finalizedValues, invoke, newCall, t, pending, modelIterations, estimate);
+        }
+
+        /**
+         * Translates the loop once more for the background preparation, so that the guest keeps
+         * running the Truffle version on its own environment without waiting for the analysis.
+         */
+        private ParallelTasker submitBackground(VirtualFrame frame, SourceSection s, String fn, MGNodeOptions options, T iv, T body, long[] range) throws MGException {
+            final MGNode truffleRootNode = rootNode;
+            final MGNode truffleCoreComputeNode = coreComputeNode;
+            final MGGlobalEnv env = new MGGlobalEnv(fn);
+            final MGLog log = new MGLog(s);
+            final FinalizedVariableValues finalizedValues = new FinalizedVariableValues(env);
+            try {
+                translateTruffleForNode(frame, options, env, log, iv, body, range);
+                processBoxedData(log);
+                translateBounds(env, log);
+                boundCheck(finalizedValues, false, log);
+                return ParallelTasker.submit(s, options, rootNode, coreComputeNode, env, finalizedValues, log);
+            } finally {
+                setMGRootNode(truffleRootNode);
+                setCoreComputeNode(truffleCoreComputeNode);
+            }
         }
 
     }
@@ -181,22 +252,47 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
         protected final String logKey;
         private final MGStorage[] list;
         private final Object[] values;
+        private final ParallelTasker pending;
+        private final long modelIterations;
+        private final ParallelThreshold.Estimate estimate;
+        private final MGLogSite site;
+        @CompilationFinal private boolean reconsider;
 
         public Ready(MGFor<T, R> baseCall, MGGlobalEnv env, SourceSection source, String logKey, FinalizedVariableValues finalizedValues, MGInvoke invoke, DirectCallNode callNode, Type type) {
+            this(baseCall, env, source, logKey, finalizedValues, invoke, callNode, type, null);
+        }
+
+        public Ready(MGFor<T, R> baseCall, MGGlobalEnv env, SourceSection source, String logKey, FinalizedVariableValues finalizedValues, MGInvoke invoke, DirectCallNode callNode, Type type,
+                        ParallelTasker pending) {
+            this(baseCall, env, source, logKey, finalizedValues, invoke, callNode, type, pending, 0, null);
+        }
+
+        /**
+         * @param modelIterations iteration count at which the cost model kept this loop off the
+         *            configured target, or zero.
+         * @param estimate the cost model estimate that the measured executions calibrate, or null.
+         */
+        public Ready(MGFor<T, R> baseCall, MGGlobalEnv env, SourceSection source, String logKey, FinalizedVariableValues finalizedValues, MGInvoke invoke, DirectCallNode callNode, Type type,
+                        ParallelTasker pending, long modelIterations, ParallelThreshold.Estimate estimate) {
             super(baseCall, type);
+            this.pending = pending;
+            this.modelIterations = modelIterations;
+            this.estimate = estimate;
+            this.reconsider = false;
             this.invoke = invoke;
             this.callNode = callNode;
             this.env = env;
             this.source = source;
             this.finalizedValues = finalizedValues;
             this.logKey = logKey;
+            this.site = MGLogSite.get(source);
             list = env.getStorageList();
             values = new Object[list.length];
         }
 
         @Override
         public boolean isUninitialized() {
-            return false;
+            return reconsider;
         }
 
         private void reloadGlobalLoopInfos() {
@@ -214,13 +310,28 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
             }
         }
 
+        private ExecutionMode getExecutionMode() {
+            switch (type) {
+                case JVM:
+                    return ExecutionMode.NormalCPU;
+                case OPENCL:
+                    return MGOptions.Backend.target;
+                default:
+                    return ExecutionMode.Truffle;
+            }
+        }
+
         public void execute(long startTime, int start, int stop, int step, MGLog log) {
+            final long callTime = System.nanoTime();
             try {
                 callNode.call(new Object[]{start, stop, step, log});
             } catch (MGException e) {
                 fallback.handleException(e);
                 throw e;
             }
+            if (estimate != null && MGOptions.Backend.costModel) {
+                estimate.calibrate(getExecutionMode(), JVMExecuter.getIterations(start, stop, step), System.nanoTime() - callTime);
+            }
             finalizedValues.reset();
             env.clearValues();
             log.setOptionValue("TotalTime", System.currentTimeMillis() - startTime);
@@ -238,14 +349,44 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
 
         }
 
+        private Ready<T, R> swapPending() {
+            if (pending.isFailed()) {
+                return new Ready<>(this, env, source, logKey, finalizedValues, invoke, invoke.createCallNode(), type, null, modelIterations, estimate);
+            }
+            final MGLog compileLog = pending.getLog();
+            MGLog.addLog(compileLog);
+            if (MGOptions.logging)
+                compileLog.printLog();
+
+            final MGParallel parallelInvoke = pending.getParallelNode();
+            return new Ready<>(this, pending.getEnv(), source, "TotalKernelExecutions", pending.getFinalizedValues(), parallelInvoke, parallelInvoke.createCallNode(), Type.OPENCL, null, 0, estimate);
+        }
+
         @Override
         public void forLoop(VirtualFrame frame, int start, int stop, int step) {
+            if (pending != null) {
+                if (pending.isReady()) {
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    replace(swapPending()).forLoop(frame, start, stop, step);
+                    return;
+                }
+                // still being prepared, keep running the Truffle version
+            }
+            if (modelIterations > 0 && !reconsider && JVMExecuter.getIterations(start, stop, step) >= modelIterations * ParallelThreshold.REEVALUATE_GROWTH) {
+                // let the next call go through the cost model again
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                reconsider = true;
+            }
             long startTime = System.currentTimeMillis();
+            MGLog log = site.begin();
             megaguard(frame);
             env.reloadConstantLongValues();
             // guard();
             env.setRanges(new long[]{start, stop, step}, 0);
-            MGLog log = new MGLog(source);
+            if (type == Type.JVM) {
+                log.setOptionValue("ExecutionMode", JVMExecuter.DEVICE_NAME);
+                log.setOptionValue("TotalParallelLoops", JVMExecuter.getIterations(start, stop, step));
+            }
             try {
                 processBoxedData(log);
                 reloadGlobalLoopInfos();
@@ -258,7 +399,7 @@ public abstract class MGFor<T extends Node, R> extends MGRoot<T, R> {
                     } else {
                         CompilerDirectives.transferToInterpreterAndInvalidate();
                         final MGInvoke truffleInvoke = invoke.invalidate(log);
-                        replace(new Ready<>(this, env, source, logKey, finalizedValues, truffleInvoke, truffleInvoke.createCallNode(), type)).execute(startTime, start, stop, step, log);
+                        replace(new Ready<>(this, env, source, logKey, finalizedValues, truffleInvoke, truffleInvoke.createCallNode(), type, pending, modelIterations, estimate)).execute(startTime, start, stop, step, log);
                         return;
                     }
                 }
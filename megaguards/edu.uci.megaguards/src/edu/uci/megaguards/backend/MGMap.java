@@ -45,8 +45,12 @@ import edu.uci.megaguards.analysis.parallel.reduction.MapWorkload;
 import edu.uci.megaguards.ast.MGTree;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
 import edu.uci.megaguards.ast.node.MGArgs;
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter;
 import edu.uci.megaguards.fallback.MGFallbackHandler;
+import edu.uci.megaguards.log.MGEvents;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGLogSite;
+import edu.uci.megaguards.log.MGPhase;
 import edu.uci.megaguards.object.MGArray;
 import edu.uci.megaguards.object.MGStorage;
 
@@ -93,12 +97,14 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
         public MapWorkload<T> translateTruffleMapNode(VirtualFrame frame, MGNodeOptions options, MGGlobalEnv env, MGLog log, R function, long[] range, Object iterable, Object... otherIterable)
                         throws MGException {
             long s = System.currentTimeMillis();
+            final Object phase = MGEvents.begin(MGPhase.Translation);
             MapWorkload<T> result = baseTree.create(env, frame, log).buildMapTree(this, function, range, options, iterable, otherIterable);
             if (!MGOptions.Backend.allowInAccurateMathFunctions) {
                 checkMathFunctions(env);
             }
             env.mergePrivateParameters();
             log.setOptionValue("TranslationTime", (System.currentTimeMillis() - s));
+            MGEvents.commit(phase, log);
             return result;
         }
 
@@ -113,6 +119,7 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
             final long[] range = new long[]{start, stop, step};
             final MGNodeOptions options = MGNodeOptions.getOptions(mappingFunction.hashCode());
             Object ret = null;
+            String logKey = "TotalKernelExecutions";
             try {
                 VirtualFrame frame = Truffle.getRuntime().createVirtualFrame(new Object[]{}, fd);
                 MapWorkload<T> result = translateTruffleMapNode(frame, options, env, log, mappingFunction, range, iterable, otherIterable);
@@ -120,18 +127,32 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
                 translateBounds(env, log);
                 final FinalizedVariableValues finalizedValues = new FinalizedVariableValues(env);
                 boundCheck(finalizedValues, false, log);
-                MGParallel parallelInvoke = MGParallel.createMap(s, options, rootNode, coreComputeNode, env, finalizedValues, log);
-                final DirectCallNode call = parallelInvoke.createCallNode();
-                call.call(new Object[]{start, stop, step, log});
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                ret = result.boxedResult();
-                replace(new Ready<>(this, mappingFunction.hashCode(), fd, env, s, finalizedValues, parallelInvoke, call, result), "MegaGuard Opt");
+                if (MGOptions.Backend.target == ExecutionMode.NormalCPU) {
+                    final MGTruffle threadedInvoke = MGTruffle.createThreadedLoop(options, coreComputeNode, env, finalizedValues, log);
+                    log.setOptionValue("ExecutionMode", JVMExecuter.DEVICE_NAME);
+                    log.setOptionValue("FinalExecutionMode", JVMExecuter.DEVICE_NAME);
+                    log.setOptionValue("TotalParallelLoops", stop);
+                    result.ensureCapacity(stop);
+                    final DirectCallNode call = threadedInvoke.createCallNode();
+                    call.call(new Object[]{start, stop, step, log});
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    ret = result.boxedResult();
+                    replace(new Ready<>(this, mappingFunction.hashCode(), fd, env, s, finalizedValues, threadedInvoke, call, result, Type.JVM), "MegaGuard Opt");
+                    logKey = "TotalJVMExecutions";
+                } else {
+                    MGParallel parallelInvoke = MGParallel.createMap(s, options, rootNode, coreComputeNode, env, finalizedValues, log);
+                    final DirectCallNode call = parallelInvoke.createCallNode();
+                    call.call(new Object[]{start, stop, step, log});
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    ret = result.boxedResult();
+                    replace(new Ready<>(this, mappingFunction.hashCode(), fd, env, s, finalizedValues, parallelInvoke, call, result, Type.OPENCL), "MegaGuard Opt");
+                }
             } catch (MGException e) {
                 fallback.handleException(e);
                 throw e;
             }
             log.setOptionValue("TotalTime", System.currentTimeMillis() - startTime);
-            log.setOptionValue("TotalKernelExecutions", 1);
+            log.setOptionValue(logKey, 1);
             MGLog.addLog(log);
 
             if (MGOptions.logging)
@@ -145,7 +166,7 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
 
     public static class Ready<T extends Node, R> extends MGMap<T, R> {
 
-        @Child protected MGParallel invoke;
+        @Child protected MGInvoke invoke;
         @Child protected DirectCallNode callNode;
         protected final MGGlobalEnv env;
         protected final SourceSection source;
@@ -154,12 +175,13 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
         protected final FrameDescriptor fd;
         private final MGStorage[] list;
         private final Object[] values;
+        private final MGLogSite site;
 
         private final MapWorkload<T> result;
 
-        public Ready(MGMap<T, R> baseCall, int hashCode, FrameDescriptor fd, MGGlobalEnv env, SourceSection source, FinalizedVariableValues finalizedValues, MGParallel invoke,
-                        DirectCallNode callNode, MapWorkload<T> result) {
-            super(baseCall, Type.OPENCL);
+        public Ready(MGMap<T, R> baseCall, int hashCode, FrameDescriptor fd, MGGlobalEnv env, SourceSection source, FinalizedVariableValues finalizedValues, MGInvoke invoke,
+                        DirectCallNode callNode, MapWorkload<T> result, Type type) {
+            super(baseCall, type);
             this.invoke = invoke;
             this.callNode = callNode;
             this.env = env;
@@ -167,6 +189,7 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
             this.finalizedValues = finalizedValues;
             this.originMappingFunction = hashCode;
             this.fd = fd;
+            this.site = MGLogSite.get(source);
             list = env.getStorageList();
             values = new Object[list.length];
 
@@ -216,6 +239,7 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
                 throw TypeException.INSTANCE.message("Guard Failed! (map function miss-match)");
             }
             long startTime = System.currentTimeMillis();
+            MGLog log = site.begin();
             final int start = 0;
             final int stop = iterableLen;
             final int step = 1;
@@ -228,11 +252,15 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
             }
             megaguard(frame, args);
             env.setRanges(range, 0);
-            MGLog log = new MGLog(source);
             try {
                 processBoxedData(log);
                 reloadGlobalLoopInfos();
                 boundCheck(finalizedValues, true, log);
+                if (type == Type.JVM) {
+                    log.setOptionValue("ExecutionMode", JVMExecuter.DEVICE_NAME);
+                    log.setOptionValue("TotalParallelLoops", stop);
+                    result.ensureCapacity(stop);
+                }
                 callNode.call(new Object[]{start, stop, step, log});
                 ret = result.boxedResult();
             } catch (MGException e) {
@@ -242,7 +270,7 @@ public abstract class MGMap<T extends Node, R> extends MGRoot<T, R> {
             finalizedValues.reset();
             env.clearValues();
             log.setOptionValue("TotalTime", System.currentTimeMillis() - startTime);
-            log.setOptionValue("TotalKernelExecutions", 1);
+            log.setOptionValue(type == Type.JVM ? "TotalJVMExecutions" : "TotalKernelExecutions", 1);
             MGLog.addLog(log);
 
             if (MGOptions.logging)
@@ -25,22 +25,25 @@
 package edu.uci.megaguards.backend;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
+import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.parallel.exception.CompilationException;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLData;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLDevice;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLMGR;
+import edu.uci.megaguards.unbox.DirtyBlocks;
 
 public class MGObjectTracker {
 
-    private final HashMap<Integer, Integer> HashtoIndex;
-    private final int[] IndexToHash;
+    private final IdentityHashMap<Object, Integer> ObjectToIndex;
+    private final Object[] IndexToObject;
     private final boolean[] RestoreTruffleChanges;
     private final boolean[] TruffleChanged;
     private final boolean[] OpenCLChanged;
+    private final DirtyBlocks[] TruffleChangedBlocks;
     private int currentIndex;
 
     private OpenCLDevice device;
@@ -50,26 +53,31 @@ public class MGObjectTracker {
         this.TruffleChanged = new boolean[sizeOfChangeList];
         this.RestoreTruffleChanges = new boolean[sizeOfChangeList];
         this.OpenCLChanged = new boolean[sizeOfChangeList];
-        this.IndexToHash = new int[sizeOfChangeList];
-        this.HashtoIndex = new HashMap<>(sizeOfChangeList);
+        this.TruffleChangedBlocks = new DirtyBlocks[sizeOfChangeList];
+        this.IndexToObject = new Object[sizeOfChangeList];
+        this.ObjectToIndex = new IdentityHashMap<>(sizeOfChangeList);
         this.currentIndex = 0;
         this.device = OpenCLMGR.MGR.getDevice();
         Arrays.fill(TruffleChanged, false);
         Arrays.fill(RestoreTruffleChanges, false);
         Arrays.fill(OpenCLChanged, false);
-        Arrays.fill(IndexToHash, -1);
     }
 
     @TruffleBoundary
-    public int getIndex(int hashCode) {
-        if (!HashtoIndex.containsKey(hashCode)) {
-            HashtoIndex.put(hashCode, currentIndex);
-            IndexToHash[currentIndex] = hashCode;
+    public int getIndex(Object array) {
+        final Integer index = ObjectToIndex.get(array);
+        if (index == null) {
+            ObjectToIndex.put(array, currentIndex);
+            IndexToObject[currentIndex] = array;
             currentIndex++;
             return currentIndex - 1;
         }
 
-        return HashtoIndex.get(hashCode);
+        return index;
+    }
+
+    public boolean isTracked(int index, Object array) {
+        return index >= 0 && index < currentIndex && IndexToObject[index] == array;
     }
 
     public void getAllOpenCLData() {
@@ -92,8 +100,7 @@ public class MGObjectTracker {
 
     @TruffleBoundary
     private void getDataFromOpenCL(int index) {
-        final int hashCode = IndexToHash[index];
-        final OpenCLData d = OpenCLData.getData(hashCode);
+        final OpenCLData d = OpenCLData.getData(IndexToObject[index]);
         assert device != null;
         if (d.getOnDeviceData(device).isLoaded()) {
             boolean success = d.getOnDeviceData(device).get();
@@ -117,6 +124,35 @@ public class MGObjectTracker {
         RestoreTruffleChanges[index] = true;
     }
 
+    /**
+     * Same as {@link #setTruffleChanged(int)} but also records the modified block, so only the
+     * modified part of the array has to be uploaded again.
+     */
+    public void setTruffleChanged(int index, int element, int numElements) {
+        setTruffleChanged(index);
+        DirtyBlocks blocks = TruffleChangedBlocks[index];
+        if (blocks == null || blocks.getNumElements() != numElements) {
+            blocks = createBlocks(index, numElements);
+        }
+        blocks.mark(element);
+    }
+
+    @TruffleBoundary
+    private DirtyBlocks createBlocks(int index, int numElements) {
+        final DirtyBlocks blocks = new DirtyBlocks(numElements, MGOptions.Backend.dirtyBlockSize);
+        TruffleChangedBlocks[index] = blocks;
+        return blocks;
+    }
+
+    /**
+     * @return the blocks modified by Truffle since the last call, or null.
+     */
+    public DirtyBlocks takeTruffleChangedBlocks(int index) {
+        final DirtyBlocks blocks = TruffleChangedBlocks[index];
+        TruffleChangedBlocks[index] = null;
+        return blocks;
+    }
+
     public boolean shouldTruffleRestore(int index) {
         if (RestoreTruffleChanges[index]) {
             RestoreTruffleChanges[index] = false;
@@ -140,10 +176,11 @@ public class MGObjectTracker {
     @TruffleBoundary
     public void reset() {
         currentIndex = 0;
-        HashtoIndex.clear();
+        ObjectToIndex.clear();
         Arrays.fill(TruffleChanged, false);
         Arrays.fill(RestoreTruffleChanges, false);
         Arrays.fill(OpenCLChanged, false);
-        Arrays.fill(IndexToHash, -1);
+        Arrays.fill(TruffleChangedBlocks, null);
+        Arrays.fill(IndexToObject, null);
     }
 }
@@ -34,17 +34,22 @@ import edu.uci.megaguards.MGNodeOptions;
 import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
 import edu.uci.megaguards.analysis.parallel.DataDependence;
+import edu.uci.megaguards.analysis.parallel.DependenceCache;
 import edu.uci.megaguards.analysis.parallel.Optimization;
 import edu.uci.megaguards.analysis.parallel.ParallelFunctions;
 import edu.uci.megaguards.analysis.parallel.exception.DataDependenceException;
 import edu.uci.megaguards.analysis.parallel.polyhedral.AthenaPetTest;
 import edu.uci.megaguards.analysis.parallel.profile.ParallelNodeProfile;
+import edu.uci.megaguards.analysis.parallel.profile.ParallelThreshold;
 import edu.uci.megaguards.ast.env.MGBaseEnv;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.LoopInfo;
 import edu.uci.megaguards.ast.node.MGNode;
 import edu.uci.megaguards.ast.node.MGNodeFunctionCall;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLExecuter;
+import edu.uci.megaguards.log.MGEvents;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGPhase;
 
 public class MGParallel extends MGInvoke {
 
@@ -88,12 +93,27 @@ public class MGParallel extends MGInvoke {
         DataDependence checkDDep = null;
         if (!(options != null && options.isDDOff())) {
             long s = System.currentTimeMillis();
-            checkDDep = new AthenaPetTest(coreComputeNode, env.getExistingLoopInfos().get(0), env, finalizedValues);
-            boolean ddResult = checkDDep.testDependence("for", log.getSourceSection());
+            final Object phase = MGEvents.begin(MGPhase.Dependence);
+            final LoopInfo info = env.getExistingLoopInfos().get(0);
+            final String key = MGOptions.Backend.dependenceCache ? DependenceCache.getKey(coreComputeNode, info, env, finalizedValues) : null;
+            checkDDep = DependenceCache.lookup(key, coreComputeNode, info, env, finalizedValues);
+            boolean ddResult;
+            if (checkDDep != null) {
+                ddResult = checkDDep.testDependence("for", log.getSourceSection());
+                log.setOptionValue("DependenceCacheHits", 1);
+            } else {
+                checkDDep = new AthenaPetTest(coreComputeNode, info, env, finalizedValues);
+                ddResult = checkDDep.testDependence("for", log.getSourceSection());
+                if (key != null) {
+                    DependenceCache.store(key, coreComputeNode, finalizedValues, ddResult, checkDDep.getReason());
+                    log.setOptionValue("DependenceCacheMisses", 1);
+                }
+            }
             ddResult = (ddResult) ? checkDDep.testArrayReferences(env) : ddResult;
             if (!ddResult)
                 throw DataDependenceException.INSTANCE.message(checkDDep.getReason());
             log.setOptionValue("DependenceTime", (System.currentTimeMillis() - s));
+            MGEvents.commit(phase, log);
             log.setOptionValue("DependenceCount", 1);
         }
         return checkDDep;
@@ -111,15 +131,29 @@ public class MGParallel extends MGInvoke {
     public static ParallelNodeProfile profileParallelNode(MGGlobalEnv env, FinalizedVariableValues finalizedValues, MGLog log) {
         ParallelNodeProfile profile = new ParallelNodeProfile(log, env.getMGRootNode(), finalizedValues);
         long s = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.Profile);
         profile.profile();
         log.setOptionValue("ProfileTime", (System.currentTimeMillis() - s));
+        MGEvents.commit(phase, log);
         return profile;
 
     }
 
+    @TruffleBoundary
+    public static ParallelThreshold.Estimate selectExecutionMode(MGGlobalEnv env, FinalizedVariableValues finalizedValues, long iterations, MGLog log) {
+        final ParallelNodeProfile profile = profileParallelNode(env, finalizedValues, log);
+        return ParallelThreshold.calculateThreshold(profile, iterations, log.getOptionValueLong("TotalDataTransfer"), log);
+    }
+
     @SuppressWarnings("fallthrough")
     @TruffleBoundary
     public static OpenCLExecuter getOpenCLExecuter(SourceSection sourceSection, MGGlobalEnv env, MGNode rn, MGLog log) {
+        return getOpenCLExecuter(sourceSection, env, rn, log, false);
+    }
+
+    @SuppressWarnings("fallthrough")
+    @TruffleBoundary
+    public static OpenCLExecuter getOpenCLExecuter(SourceSection sourceSection, MGGlobalEnv env, MGNode rn, MGLog log, boolean deferred) {
         OpenCLExecuter executer = null;
 
         ExecutionMode mode = MGOptions.Backend.target;
@@ -127,7 +161,7 @@ public class MGParallel extends MGInvoke {
             case OpenCLAuto:
             case OpenCLCPU:
             case OpenCLGPU:
-                executer = new OpenCLExecuter(sourceSection, env, rn, log);
+                executer = new OpenCLExecuter(sourceSection, env, rn, log, deferred);
                 break;
         }
 
@@ -143,6 +177,19 @@ public class MGParallel extends MGInvoke {
         return new MGParallel(env, executer);
     }
 
+    /**
+     * Same as {@link #createLoop} but leaves the kernel compilation to
+     * {@link OpenCLExecuter#precompile()}.
+     */
+    public static MGParallel createDeferredLoop(SourceSection sourceSection, MGNodeOptions options, MGNode rootNode, MGNode coreComputeNode, MGGlobalEnv env,
+                    FinalizedVariableValues finalizedValues, MGLog log) {
+        checkRecursion(env);
+        dataDependenceAnalysis(options, env, coreComputeNode, finalizedValues, log);
+        MGNode opt = maximizeThreads(options, env, rootNode, finalizedValues, log);
+        final OpenCLExecuter executer = getOpenCLExecuter(sourceSection, env, opt, log, true);
+        return new MGParallel(env, executer);
+    }
+
     public static MGParallel createInternalLoop(MGNodeOptions options, SourceSection sourceSection, MGNode rootNode, MGGlobalEnv env, MGLog log) {
         final MGNode opt = maximizeThreads(options, env, rootNode, env.getFinalizedValues(), log);
         final OpenCLExecuter executer = getOpenCLExecuter(sourceSection, env, opt, log);
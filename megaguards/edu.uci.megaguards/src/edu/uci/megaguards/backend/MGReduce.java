@@ -43,8 +43,14 @@ import edu.uci.megaguards.analysis.parallel.reduction.ReductionWorkload;
 import edu.uci.megaguards.ast.MGTree;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
 import edu.uci.megaguards.ast.node.MGArgs;
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter;
+import edu.uci.megaguards.backend.parallel.jvm.JVMReduction;
 import edu.uci.megaguards.fallback.MGFallbackHandler;
+import edu.uci.megaguards.log.MGEvents;
+import edu.uci.megaguards.log.MGLatency;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGLogSite;
+import edu.uci.megaguards.log.MGPhase;
 import edu.uci.megaguards.object.MGStorage;
 import edu.uci.megaguards.unbox.StaticUnboxer;
 
@@ -91,6 +97,7 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
         public void translateTruffleReduceNode(VirtualFrame frame, MGNodeOptions options, MGGlobalEnv env, MGLog log, R function, Object iterable, Object initializer, boolean hasInitializer,
                         long[] range) {
             long s = System.currentTimeMillis();
+            final Object phase = MGEvents.begin(MGPhase.Translation);
             Object result = baseTree.create(env, frame, log).buildReduceTree(this, function, iterable, initializer, hasInitializer /*- initializer instanceof PNone*/, range, options);
             if (!MGOptions.Backend.allowInAccurateMathFunctions) {
                 checkMathFunctions(env);
@@ -99,6 +106,7 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
             env.setResultsSize(1);
             env.setResult(result, 0);
             log.setOptionValue("TranslationTime", (System.currentTimeMillis() - s));
+            MGEvents.commit(phase, log);
         }
 
         @Override
@@ -111,6 +119,7 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
             final int step = 1;
             final long[] range = new long[]{start, stop, step};
             final MGNodeOptions options = MGNodeOptions.getOptions(mappingFunction.hashCode());
+            String logKey = "TotalKernelExecutions";
             try {
                 VirtualFrame frame = Truffle.getRuntime().createVirtualFrame(new Object[]{}, fd);
                 translateTruffleReduceNode(frame, options, env, log, mappingFunction, iterable, initializer, hasInitializer, range);
@@ -118,18 +127,37 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
                 translateBounds(env, log);
                 final FinalizedVariableValues finalizedValues = new FinalizedVariableValues(env);
                 boundCheck(finalizedValues, false, log);
-                MGParallel parallelInvoke = MGParallel.createReduce(s, options, rootNode, coreComputeNode, env, finalizedValues, log);
-                final DirectCallNode call = parallelInvoke.createCallNode();
-                call.call(new Object[]{start, stop, step, log});
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                env.clearValues();
-                replace(new Ready<>(this, mappingFunction.hashCode(), fd, env, s, finalizedValues, parallelInvoke, call), "MegaGuard Opt");
+                if (MGOptions.Backend.target == ExecutionMode.NormalCPU) {
+                    final JVMReduction reduction = JVMReduction.create(options, coreComputeNode);
+                    MGParallel.dataDependenceAnalysis(options, env, coreComputeNode, finalizedValues, log);
+                    log.setOptionValue("ExecutionMode", JVMExecuter.DEVICE_NAME);
+                    log.setOptionValue("FinalExecutionMode", JVMExecuter.DEVICE_NAME);
+                    log.setOptionValue("TotalParallelLoops", stop);
+                    final long s1 = System.currentTimeMillis();
+                    final Object phase = MGEvents.begin(MGPhase.CoreExecution);
+                    final long ns = System.nanoTime();
+                    env.setResult(reduction.execute(env, stop), 0);
+                    log.setOptionValue("CoreExecutionTime", System.currentTimeMillis() - s1);
+                    log.addLatency(MGLatency.Kernel, System.nanoTime() - ns);
+                    MGEvents.commit(phase, log);
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    env.clearValues();
+                    replace(new Ready<>(this, mappingFunction.hashCode(), fd, env, s, finalizedValues, reduction), "MegaGuard Opt");
+                    logKey = "TotalJVMExecutions";
+                } else {
+                    MGParallel parallelInvoke = MGParallel.createReduce(s, options, rootNode, coreComputeNode, env, finalizedValues, log);
+                    final DirectCallNode call = parallelInvoke.createCallNode();
+                    call.call(new Object[]{start, stop, step, log});
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    env.clearValues();
+                    replace(new Ready<>(this, mappingFunction.hashCode(), fd, env, s, finalizedValues, parallelInvoke, call), "MegaGuard Opt");
+                }
             } catch (MGException e) {
                 fallback.handleException(e);
                 throw e;
             }
             log.setOptionValue("TotalTime", System.currentTimeMillis() - startTime);
-            log.setOptionValue("TotalKernelExecutions", 1);
+            log.setOptionValue(logKey, 1);
             MGLog.addLog(log);
 
             if (MGOptions.logging)
@@ -150,19 +178,32 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
         protected final FinalizedVariableValues finalizedValues;
         protected final int originMappingFunction;
         protected final FrameDescriptor fd;
+        protected final JVMReduction reduction;
         private final MGStorage[] list;
         private final Object[] values;
+        private final MGLogSite site;
 
         public Ready(MGReduce<T, R> baseCall, int hashCode, FrameDescriptor fd, MGGlobalEnv env, SourceSection source, FinalizedVariableValues finalizedValues, MGParallel invoke,
                         DirectCallNode callNode) {
-            super(baseCall, Type.OPENCL);
+            this(baseCall, hashCode, fd, env, source, finalizedValues, invoke, callNode, null, Type.OPENCL);
+        }
+
+        public Ready(MGReduce<T, R> baseCall, int hashCode, FrameDescriptor fd, MGGlobalEnv env, SourceSection source, FinalizedVariableValues finalizedValues, JVMReduction reduction) {
+            this(baseCall, hashCode, fd, env, source, finalizedValues, null, null, reduction, Type.JVM);
+        }
+
+        private Ready(MGReduce<T, R> baseCall, int hashCode, FrameDescriptor fd, MGGlobalEnv env, SourceSection source, FinalizedVariableValues finalizedValues, MGParallel invoke,
+                        DirectCallNode callNode, JVMReduction reduction, Type type) {
+            super(baseCall, type);
             this.invoke = invoke;
             this.callNode = callNode;
+            this.reduction = reduction;
             this.env = env;
             this.source = source;
             this.finalizedValues = finalizedValues;
             this.originMappingFunction = hashCode;
             this.fd = fd;
+            this.site = MGLogSite.get(source);
             list = env.getStorageList();
             values = new Object[list.length];
         }
@@ -193,24 +234,36 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
                 throw TypeException.INSTANCE.message("Guard Failed! (map function miss-match)");
             }
             long startTime = System.currentTimeMillis();
+            MGLog log = site.begin();
             final int start = 0;
             final int stop = iterableLen;
             final int step = 1;
             final long[] range = new long[]{start, stop, step};
-            StaticUnboxer ret = null;
+            Object ret = null;
             VirtualFrame frame = Truffle.getRuntime().createVirtualFrame(new Object[]{}, fd);
             final MGArgs args = new MGArgs().addArg(ParallelFunctions.Map.iterableList, iterable);
             args.addArg(ParallelFunctions.Reduce.initialFlag, hasInitializer ? 1 : 0);
             args.addArg(ParallelFunctions.Reduce.initializerValue, initializer);
             megaguard(frame, args);
             env.setRanges(range, 0);
-            MGLog log = new MGLog(source);
             try {
                 processBoxedData(log);
                 reloadGlobalLoopInfos();
                 boundCheck(finalizedValues, true, log);
-                callNode.call(new Object[]{start, stop, step, log});
-                ret = (StaticUnboxer) ((ReductionWorkload) env.getResult(0)).getBoxed();
+                if (type == Type.JVM) {
+                    log.setOptionValue("ExecutionMode", JVMExecuter.DEVICE_NAME);
+                    log.setOptionValue("TotalParallelLoops", stop);
+                    final long s = System.currentTimeMillis();
+                    final Object phase = MGEvents.begin(MGPhase.CoreExecution);
+                    final long ns = System.nanoTime();
+                    ret = reduction.execute(env, stop);
+                    log.setOptionValue("CoreExecutionTime", System.currentTimeMillis() - s);
+                    log.addLatency(MGLatency.Kernel, System.nanoTime() - ns);
+                    MGEvents.commit(phase, log);
+                } else {
+                    callNode.call(new Object[]{start, stop, step, log});
+                    ret = ((StaticUnboxer) ((ReductionWorkload) env.getResult(0)).getBoxed()).getFirstValue();
+                }
             } catch (MGException e) {
                 fallback.handleException(e);
                 throw e;
@@ -218,7 +271,7 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
             finalizedValues.reset();
             env.clearValues();
             log.setOptionValue("TotalTime", System.currentTimeMillis() - startTime);
-            log.setOptionValue("TotalKernelExecutions", 1);
+            log.setOptionValue(type == Type.JVM ? "TotalJVMExecutions" : "TotalKernelExecutions", 1);
             MGLog.addLog(log);
 
             if (MGOptions.logging)
@@ -229,7 +282,7 @@ public abstract class MGReduce<T extends Node, R> extends MGRoot<T, R> {
             }
 
             fallback.resetLimit();
-            return ret.getFirstValue();
+            return ret;
         }
 
         @Override
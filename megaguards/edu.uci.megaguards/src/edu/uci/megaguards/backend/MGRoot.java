@@ -37,13 +37,17 @@ import edu.uci.megaguards.ast.MGTree;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
 import edu.uci.megaguards.ast.node.MGNode;
 import edu.uci.megaguards.ast.node.MGNodeMathFunction.MathFunctionType;
+import edu.uci.megaguards.log.MGEvents;
+import edu.uci.megaguards.log.MGLatency;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGPhase;
 import edu.uci.megaguards.unbox.Boxed;
 
 public abstract class MGRoot<T extends Node, R> extends Node {
 
     protected static enum Type {
         TRUFFLE,
+        JVM,
         OPENCL,
         UNINITIALIZED
     }
@@ -96,26 +100,37 @@ public abstract class MGRoot<T extends Node, R> extends Node {
     @TruffleBoundary
     protected void translateBounds(MGGlobalEnv env, MGLog log) throws CoverageException {
         long s = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.BoundCheck);
+        final long ns = System.nanoTime();
         BoundNodeVisitor variableBounds = new BoundNodeVisitor(env, log);
         variableBounds.processAllLoopInfos();
         variableBounds.processBounds();
         env.setVariableBounds(variableBounds);
         log.setOptionValue("BoundCheckTime", (System.currentTimeMillis() - s));
+        log.addLatency(MGLatency.Guard, System.nanoTime() - ns);
+        MGEvents.commit(phase, log);
 
     }
 
     @TruffleBoundary
     protected void processBoxedData(MGLog log) throws MGException {
         long s = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.Unbox);
         Boxed.UnboxAll(log);
         log.setOptionValue("UnboxTime", (System.currentTimeMillis() - s));
+        MGEvents.commit(phase, log);
     }
 
     protected void boundCheck(FinalizedVariableValues finalizedValues, boolean justVerify, MGLog log) throws BoundException {
         if (MGOptions.boundCheck) {
             long s = System.currentTimeMillis();
-            finalizedValues.boundCheck(justVerify);
+            final Object phase = MGEvents.begin(MGPhase.BoundCheck);
+            final long ns = System.nanoTime();
+            if (finalizedValues.boundCheck(justVerify))
+                log.setOptionValue("BoundCheckGuardHits", 1);
             log.setOptionValue("BoundCheckTime", log.getOptionValueLong("BoundCheckTime") + (System.currentTimeMillis() - s));
+            log.addLatency(MGLatency.Guard, System.nanoTime() - ns);
+            MGEvents.commit(phase, log);
         }
     }
 
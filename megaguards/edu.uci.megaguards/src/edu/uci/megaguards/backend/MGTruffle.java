@@ -30,8 +30,13 @@ import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.DirectCallNode;
 
+import edu.uci.megaguards.MGNodeOptions;
+import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
+import edu.uci.megaguards.analysis.exception.MGException;
+import edu.uci.megaguards.analysis.parallel.LoopTiling;
 import edu.uci.megaguards.ast.env.MGBaseEnv;
 import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.MGNode;
 import edu.uci.megaguards.ast.node.MGNodeUserFunction;
 import edu.uci.megaguards.backend.truffle.TruffleTranslator;
 import edu.uci.megaguards.backend.truffle.exception.MGTReturnException;
@@ -44,6 +49,9 @@ public class MGTruffle extends MGInvoke {
 
     @Child protected MGTNode<?> body;
 
+    /*- The global loop was proven independent and tiled with its nested loops */
+    private boolean outerIndependent;
+
     public MGTruffle(MGGlobalEnv env) {
         super(env);
     }
@@ -57,12 +65,42 @@ public class MGTruffle extends MGInvoke {
         return translator.translateToLoop(env);
     }
 
+    /**
+     * Same as {@link #createLoop(MGGlobalEnv, MGLog)} but runs the dependence analysis first when
+     * the loop nest is worth tiling.
+     */
+    public static MGTruffle createLoop(MGNodeOptions options, MGNode coreComputeNode, MGGlobalEnv env, FinalizedVariableValues finalizedValues, MGLog log) {
+        boolean outerIndependent = false;
+        if (LoopTiling.isCandidate(env)) {
+            try {
+                MGParallel.checkRecursion(env);
+                MGParallel.dataDependenceAnalysis(options, env, coreComputeNode, finalizedValues, log);
+                outerIndependent = true;
+            } catch (MGException e) {
+                // keep the original loop order
+            }
+        }
+        TruffleTranslator translator = new TruffleTranslator(log);
+        return translator.translateToLoop(env, outerIndependent);
+    }
+
+    public static MGTruffle createThreadedLoop(MGNodeOptions options, MGNode coreComputeNode, MGGlobalEnv env, FinalizedVariableValues finalizedValues, MGLog log) {
+        MGParallel.checkRecursion(env);
+        MGParallel.dataDependenceAnalysis(options, env, coreComputeNode, finalizedValues, log);
+        TruffleTranslator translator = new TruffleTranslator(log);
+        return translator.translateToThreadedLoop(env);
+    }
+
     /*-
     public static MGTruffle createCall(MGGlobalEnv env, MGLog log) {
         TruffleTranslator translator = new TruffleTranslator(log);
         return translator.translateToCall(env);
     }
     */
+    public void setOuterIndependent(boolean outerIndependent) {
+        this.outerIndependent = outerIndependent;
+    }
+
     public void setBody(MGTNode<?> body) {
         this.body = body;
         adoptChildren();
@@ -80,9 +118,28 @@ public class MGTruffle extends MGInvoke {
     @Override
     public MGInvoke invalidate(MGLog log) {
         CompilerDirectives.transferToInterpreterAndInvalidate();
+        if (outerIndependent) {
+            TruffleTranslator translator = new TruffleTranslator(log);
+            return translator.translateToLoop((MGGlobalEnv) env, true);
+        }
         return createLoop((MGGlobalEnv) env, log);
     }
 
+    public static class ThreadedLoop extends MGTruffle {
+
+        public ThreadedLoop(MGBaseEnv env, FrameDescriptor frameDescriptor) {
+            super(env, frameDescriptor);
+        }
+
+        @Override
+        public MGInvoke invalidate(MGLog log) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            TruffleTranslator translator = new TruffleTranslator(log);
+            return translator.translateToThreadedLoop((MGGlobalEnv) env);
+        }
+
+    }
+
     public static class FunctionRoot extends MGTruffle {
 
         protected final MGNodeUserFunction function;
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.parallel.jvm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.FrameSlotTypeException;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+
+import edu.uci.megaguards.MGOptions;
+
+public class JVMExecuter {
+
+    public static final String DEVICE_NAME = "JVM";
+
+    private static ForkJoinPool pool = null;
+
+    public interface ChunkTask {
+
+        /**
+         * Executes the iterations [from, to) of the original loop (in induction variable values).
+         */
+        void execute(int from, int to);
+
+    }
+
+    public interface ReduceTask {
+
+        /**
+         * Reduces the iterations [from, to) of the original loop (in induction variable values).
+         */
+        Object reduce(int from, int to);
+
+        /**
+         * Combines two partial results. The left partial always covers the earlier iterations.
+         */
+        Object combine(Object left, Object right);
+
+    }
+
+    @TruffleBoundary
+    public static synchronized ForkJoinPool getPool() {
+        final int threads = Math.max(1, MGOptions.Backend.jvmThreads);
+        if (pool == null || pool.getParallelism() != threads) {
+            if (pool != null)
+                pool.shutdown();
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    public static int getParallelism() {
+        return getPool().getParallelism();
+    }
+
+    public static long getIterations(long start, long stop, long step) {
+        if (step <= 0 || stop <= start)
+            return 0;
+        return (stop - start + step - 1) / step;
+    }
+
+    private static long getChunks(long iterations, ForkJoinPool p) {
+        return Math.min(iterations, (long) p.getParallelism() * Math.max(1, MGOptions.Backend.jvmChunksPerThread));
+    }
+
+    @TruffleBoundary
+    public static void forEachChunk(int start, int stop, int step, ChunkTask task) {
+        reduceChunks(start, stop, step, new ReduceTask() {
+
+            public Object reduce(int from, int to) {
+                task.execute(from, to);
+                return null;
+            }
+
+            public Object combine(Object left, Object right) {
+                return null;
+            }
+
+        });
+    }
+
+    /**
+     * Reduces [start, stop) in parallel. Every chunk is reduced by a single worker, and the partial
+     * results are combined pairwise following the fork/join tree. Returns null for an empty range.
+     */
+    @TruffleBoundary
+    public static Object reduceChunks(int start, int stop, int step, ReduceTask task) {
+        final long iterations = getIterations(start, stop, step);
+        if (iterations == 0)
+            return null;
+
+        final ForkJoinPool p = getPool();
+        final long chunks = getChunks(iterations, p);
+        if (chunks <= 1) {
+            return task.reduce(start, stop);
+        }
+
+        final long chunkSize = (iterations + chunks - 1) / chunks;
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final Object result = p.invoke(new Chunk(task, start, stop, step, chunkSize, 0, (iterations + chunkSize - 1) / chunkSize, failure));
+
+        // rethrow on the guest thread to keep MegaGuards exceptions intact
+        if (failure.get() != null)
+            throw failure.get();
+
+        return result;
+    }
+
+    /**
+     * Every worker runs on its own frame. Parameters and locals that were set before the parallel
+     * region are copied over, so the loop body can run unmodified.
+     */
+    @TruffleBoundary
+    public static MaterializedFrame createWorkerFrame(MaterializedFrame parent) {
+        final FrameDescriptor fd = parent.getFrameDescriptor();
+        final MaterializedFrame frame = Truffle.getRuntime().createMaterializedFrame(parent.getArguments(), fd);
+        try {
+            for (FrameSlot slot : fd.getSlots()) {
+                switch (fd.getFrameSlotKind(slot)) {
+                    case Int:
+                        if (parent.isInt(slot))
+                            frame.setInt(slot, parent.getInt(slot));
+                        break;
+                    case Long:
+                        if (parent.isLong(slot))
+                            frame.setLong(slot, parent.getLong(slot));
+                        break;
+                    case Double:
+                        if (parent.isDouble(slot))
+                            frame.setDouble(slot, parent.getDouble(slot));
+                        break;
+                    case Boolean:
+                        if (parent.isBoolean(slot))
+                            frame.setBoolean(slot, parent.getBoolean(slot));
+                        break;
+                    default:
+                        if (parent.isObject(slot))
+                            frame.setObject(slot, parent.getObject(slot));
+                        break;
+                }
+            }
+        } catch (FrameSlotTypeException e) {
+            throw new IllegalStateException();
+        }
+        return frame;
+    }
+
+    private static final class Chunk extends RecursiveTask<Object> {
+
+        private static final long serialVersionUID = 2914876311958226418L;
+
+        private final ReduceTask task;
+        private final int start;
+        private final int stop;
+        private final int step;
+        private final long chunkSize;
+        private final long low;
+        private final long high;
+        private final AtomicReference<RuntimeException> failure;
+
+        Chunk(ReduceTask task, int start, int stop, int step, long chunkSize, long low, long high, AtomicReference<RuntimeException> failure) {
+            this.task = task;
+            this.start = start;
+            this.stop = stop;
+            this.step = step;
+            this.chunkSize = chunkSize;
+            this.low = low;
+            this.high = high;
+            this.failure = failure;
+        }
+
+        @Override
+        protected Object compute() {
+            if (high - low > 1) {
+                final long mid = (low + high) >>> 1;
+                final Chunk left = new Chunk(task, start, stop, step, chunkSize, low, mid, failure);
+                final Chunk right = new Chunk(task, start, stop, step, chunkSize, mid, high, failure);
+                left.fork();
+                final Object r = right.compute();
+                final Object l = left.join();
+                if (failure.get() != null)
+                    return null;
+
+                try {
+                    return task.combine(l, r);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    return null;
+                }
+            }
+
+            if (failure.get() != null)
+                return null;
+
+            final long from = start + low * chunkSize * step;
+            final long to = Math.min(stop, from + chunkSize * step);
+            try {
+                return task.reduce((int) from, (int) to);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                return null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.parallel.jvm;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGNodeOptions;
+import edu.uci.megaguards.analysis.exception.CoverageException;
+import edu.uci.megaguards.analysis.exception.ReductionException;
+import edu.uci.megaguards.analysis.parallel.ParallelFunctions;
+import edu.uci.megaguards.analysis.parallel.ParallelFunctions.Reduce.Operator;
+import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeFunctionCall;
+import edu.uci.megaguards.object.DataType;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.object.MGStorage;
+
+public class JVMReduction {
+
+    private final Operator operator;
+    private final DataType type;
+
+    private JVMReduction(Operator operator, DataType type) {
+        this.operator = operator;
+        this.type = type;
+    }
+
+    public static JVMReduction create(MGNodeOptions options, MGNode coreComputeNode) {
+        final Operator op = ParallelFunctions.Reduce.getOperator((MGNodeFunctionCall) coreComputeNode);
+        if (op == null) {
+            if (options != null && options.isReduceOn())
+                throw CoverageException.INSTANCE.message("Reduction function is not supported by the JVM backend");
+            // reports the same reason as the OpenCL backend
+            ParallelFunctions.Reduce.checkWhitelist((MGNodeFunctionCall) coreComputeNode);
+        }
+
+        final DataType type = coreComputeNode.getExpectedType();
+        if (type != DataType.Int && type != DataType.Long && type != DataType.Double)
+            throw CoverageException.INSTANCE.message("Reduction type " + type + " is not supported by the JVM backend");
+
+        return new JVMReduction(op, type);
+    }
+
+    /**
+     * Reduces list[0:length] using the unboxed parameters of the reduce environment.
+     */
+    @TruffleBoundary
+    public Object execute(MGGlobalEnv env, int length) {
+        final Object values = ((MGArray) env.getParameters().get(ParallelFunctions.Reduce.iterableList)).getBoxed().getValue();
+        if (!(type == DataType.Int && values instanceof int[]) &&
+                        !(type == DataType.Long && (values instanceof long[] || values instanceof int[])) &&
+                        !(type == DataType.Double && values instanceof double[]))
+            throw CoverageException.INSTANCE.message("Reduction list type does not match " + type);
+
+        final MGStorage flag = env.getParameters().get(ParallelFunctions.Reduce.initialFlag);
+        final boolean hasInitializer = ((Number) flag.getValue()).intValue() == 1;
+
+        Object result = JVMExecuter.reduceChunks(0, length, 1, new JVMExecuter.ReduceTask() {
+
+            @Override
+            public Object reduce(int from, int to) {
+                return JVMReduction.this.reduce(values, from, to);
+            }
+
+            @Override
+            public Object combine(Object left, Object right) {
+                return JVMReduction.this.combine(left, right);
+            }
+
+        });
+
+        if (hasInitializer) {
+            final Object initializer = env.getParameters().get(ParallelFunctions.Reduce.initializerValue).getValue();
+            final Object init = cast((Number) initializer);
+            result = (result == null) ? init : combine(init, result);
+        }
+
+        if (result == null)
+            throw CoverageException.INSTANCE.message("reduce() of empty sequence with no initial value");
+
+        return result;
+    }
+
+    private Object cast(Number n) {
+        switch (type) {
+            case Int:
+                return n.intValue();
+            case Long:
+                return n.longValue();
+            default:
+                return n.doubleValue();
+        }
+    }
+
+    private Object reduce(Object list, int from, int to) {
+        switch (type) {
+            case Int:
+                return reduceInt((int[]) list, from, to);
+            case Long:
+                if (list instanceof int[])
+                    return reduceLong((int[]) list, from, to);
+                return reduceLong((long[]) list, from, to);
+            default:
+                return reduceDouble((double[]) list, from, to);
+        }
+    }
+
+    private Object combine(Object left, Object right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+
+        switch (type) {
+            case Int:
+                return applyInt((int) left, (int) right);
+            case Long:
+                return applyLong((long) left, (long) right);
+            default:
+                return applyDouble((double) left, (double) right);
+        }
+    }
+
+    private int applyInt(int a, int b) {
+        try {
+            switch (operator) {
+                case ADD:
+                    return Math.addExact(a, b);
+                case MUL:
+                    return Math.multiplyExact(a, b);
+                case MIN:
+                    return Math.min(a, b);
+                default:
+                    return Math.max(a, b);
+            }
+        } catch (ArithmeticException e) {
+            throw ReductionException.INSTANCE.message("Reduction overflow");
+        }
+    }
+
+    private long applyLong(long a, long b) {
+        try {
+            switch (operator) {
+                case ADD:
+                    return Math.addExact(a, b);
+                case MUL:
+                    return Math.multiplyExact(a, b);
+                case MIN:
+                    return Math.min(a, b);
+                default:
+                    return Math.max(a, b);
+            }
+        } catch (ArithmeticException e) {
+            throw ReductionException.INSTANCE.message("Reduction overflow");
+        }
+    }
+
+    private double applyDouble(double a, double b) {
+        switch (operator) {
+            case ADD:
+                return a + b;
+            case MUL:
+                return a * b;
+            case MIN:
+                return Math.min(a, b);
+            default:
+                return Math.max(a, b);
+        }
+    }
+
+    private int reduceInt(int[] l, int from, int to) {
+        int acc = l[from];
+        for (int i = from + 1; i < to; i++)
+            acc = applyInt(acc, l[i]);
+        return acc;
+    }
+
+    private long reduceLong(long[] l, int from, int to) {
+        long acc = l[from];
+        for (int i = from + 1; i < to; i++)
+            acc = applyLong(acc, l[i]);
+        return acc;
+    }
+
+    private long reduceLong(int[] l, int from, int to) {
+        long acc = l[from];
+        for (int i = from + 1; i < to; i++)
+            acc = applyLong(acc, l[i]);
+        return acc;
+    }
+
+    private double reduceDouble(double[] l, int from, int to) {
+        double acc = l[from];
+        for (int i = from + 1; i < to; i++)
+            acc = applyDouble(acc, l[i]);
+        return acc;
+    }
+
+}
@@ -24,16 +24,34 @@
  */
 package edu.uci.megaguards.backend.parallel.opencl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Properties;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
+import edu.uci.megaguards.MGEnvVars;
 import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.log.MGLog;
 
+/**
+ * Adaptive selection between the best OpenCL CPU and GPU devices. Decisions are made per kernel
+ * and per power-of-two bucket of the iteration count. Every kernel execution also feeds a per
+ * device cost model, so that buckets that were never tried can be decided without trial runs. The
+ * decisions and the models are persisted across runs.
+ */
 public class OpenCLAutoDevice {
 
-    private static final HashMap<String, HashMap<Long, OpenCLAutoDevice>> SELECTIONS = new HashMap<>();
+    private static final HashMap<String, KernelModel> SELECTIONS = new HashMap<>();
 
     private static final int TRIES = MGOptions.Backend.AutoTries;
 
@@ -43,30 +61,273 @@ public class OpenCLAutoDevice {
     private static final double SPEEDUPDIFF = ((double) MGOptions.Backend.AutoDiff) / 100;
 
     @TruffleBoundary
-    public static OpenCLDevice getDevice(String kernel, MGLog log) {
-        final long totalParallelLoops = log.getOptionValueLong("TotalParallelLoops");
-        reportIterationCount(kernel, log);
-        return SELECTIONS.get(kernel).get(totalParallelLoops).getDevice(log);
+    public static synchronized OpenCLDevice getDevice(String kernel, MGLog log) {
+        final KernelModel model = getModel(kernel);
+        final OpenCLAutoDevice auto = model.getBucket(log);
+        if (auto.isTrying()) {
+            final Mode predicted = model.predict(log);
+            if (predicted != null) {
+                auto.mode = predicted;
+                model.save();
+                if (MGOptions.Backend.Debug > 0) {
+                    log.print(String.format("Iter: %-16d\tPredicted Device: %s\n", log.getOptionValueLong("TotalParallelLoops"), predicted));
+                }
+            }
+        }
+        final boolean decided = !auto.isTrying();
+        final OpenCLDevice device = auto.getDevice(log);
+        if (!decided && !auto.isTrying()) {
+            model.save();
+        }
+        return device;
     }
 
     @TruffleBoundary
-    public static void reportIterationCount(String kernel, MGLog log) {
-        final long totalParallelLoops = log.getOptionValueLong("TotalParallelLoops");
-        if (!SELECTIONS.containsKey(kernel)) {
-            SELECTIONS.put(kernel, new HashMap<>());
+    private static KernelModel getModel(String kernel) {
+        KernelModel model = SELECTIONS.get(kernel);
+        if (model == null) {
+            model = new KernelModel(kernel);
+            SELECTIONS.put(kernel, model);
         }
+        return model;
+    }
 
-        if (!SELECTIONS.get(kernel).containsKey(totalParallelLoops)) {
-            SELECTIONS.get(kernel).put(totalParallelLoops, new OpenCLAutoDevice());
+    @TruffleBoundary
+    public static synchronized void reportIterationCount(String kernel, MGLog log) {
+        getModel(kernel).getBucket(log);
+    }
+
+    @TruffleBoundary
+    public static synchronized void reportKernelTime(String kernel, MGLog log, long time) {
+        final KernelModel model = getModel(kernel);
+        final OpenCLAutoDevice auto = model.getBucket(log);
+        final Mode mode = auto.mode;
+        if (mode == Mode.GPU || mode == Mode.TRYGPU) {
+            model.gpu.add(log, time);
+        } else {
+            model.cpu.add(log, time);
         }
+        auto.setKernelTime(time);
+    }
 
+    private static int getBucketIndex(long iterations) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(iterations, 0));
     }
 
-    public static void reportKernelTime(String kernel, MGLog log, long time) {
-        final long totalParallelLoops = log.getOptionValueLong("TotalParallelLoops");
-        final HashMap<Long, OpenCLAutoDevice> iterationDevice = SELECTIONS.get(kernel);
-        final OpenCLAutoDevice auto = iterationDevice.get(totalParallelLoops);
-        auto.setKernelTime(time);
+    /**
+     * Weighted least squares fit of time = a + b * iterations + c * data size. Samples are weighted
+     * by their inverse squared time, so that the relative error is minimized across sizes that
+     * differ by orders of magnitude.
+     */
+    static final class CostModel {
+
+        private static final double RIDGE = 1e-6;
+
+        private static final double SCALE = 1e-6;
+
+        private final double[][] xtx = new double[3][3];
+        private final double[] xty = new double[3];
+        private int minBucket = Integer.MAX_VALUE;
+        private int maxBucket = Integer.MIN_VALUE;
+
+        private static double[] features(MGLog log) {
+            final long iterations = log.getOptionValueLong("TotalParallelLoops");
+            final long dataSize = log.getOptionValueLong("TotalDataTransfer");
+            return new double[]{1, iterations * SCALE, dataSize * SCALE};
+        }
+
+        void add(MGLog log, long time) {
+            final double[] x = features(log);
+            final double y = Math.max(time, 1) * SCALE;
+            final double w = 1 / (y * y);
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++)
+                    xtx[i][j] += w * x[i] * x[j];
+                xty[i] += w * x[i] * y;
+            }
+            final int bucket = getBucketIndex(log.getOptionValueLong("TotalParallelLoops"));
+            minBucket = Math.min(minBucket, bucket);
+            maxBucket = Math.max(maxBucket, bucket);
+        }
+
+        /**
+         * The model only extrapolates once it has seen at least two iteration buckets.
+         */
+        boolean isReady() {
+            return maxBucket > minBucket;
+        }
+
+        double predict(MGLog log) {
+            final double[][] a = new double[3][4];
+            for (int i = 0; i < 3; i++) {
+                System.arraycopy(xtx[i], 0, a[i], 0, 3);
+                a[i][i] += (i > 0) ? RIDGE * xtx[0][0] : 0;
+                a[i][3] = xty[i];
+            }
+            for (int c = 0; c < 3; c++) {
+                int pivot = c;
+                for (int r = c + 1; r < 3; r++)
+                    if (Math.abs(a[r][c]) > Math.abs(a[pivot][c]))
+                        pivot = r;
+                final double[] t = a[c];
+                a[c] = a[pivot];
+                a[pivot] = t;
+                if (Math.abs(a[c][c]) < 1e-12)
+                    return Double.NaN;
+                for (int r = 0; r < 3; r++) {
+                    if (r == c)
+                        continue;
+                    final double f = a[r][c] / a[c][c];
+                    for (int k = c; k < 4; k++)
+                        a[r][k] -= f * a[c][k];
+                }
+            }
+            final double[] x = features(log);
+            double y = 0;
+            for (int i = 0; i < 3; i++)
+                y += x[i] * a[i][3] / a[i][i];
+            return y;
+        }
+
+        String serialize() {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 3; i++)
+                for (int j = 0; j < 3; j++)
+                    sb.append(xtx[i][j]).append(',');
+            for (int i = 0; i < 3; i++)
+                sb.append(xty[i]).append(',');
+            return sb.append(minBucket).append(',').append(maxBucket).toString();
+        }
+
+        void deserialize(String value) {
+            final String[] v = value.split(",");
+            if (v.length != 14)
+                return;
+            for (int i = 0; i < 3; i++)
+                for (int j = 0; j < 3; j++)
+                    xtx[i][j] = Double.parseDouble(v[i * 3 + j]);
+            for (int i = 0; i < 3; i++)
+                xty[i] = Double.parseDouble(v[9 + i]);
+            minBucket = Integer.parseInt(v[12]);
+            maxBucket = Integer.parseInt(v[13]);
+        }
+    }
+
+    static final class KernelModel {
+
+        private final HashMap<Integer, OpenCLAutoDevice> buckets;
+        private final CostModel gpu;
+        private final CostModel cpu;
+        private final Path file;
+
+        @TruffleBoundary
+        KernelModel(String kernel) {
+            this.buckets = new HashMap<>();
+            this.gpu = new CostModel();
+            this.cpu = new CostModel();
+            this.file = MGOptions.Backend.autoDeviceCache ? getFile(kernel) : null;
+            load();
+        }
+
+        @TruffleBoundary
+        private static Path getFile(String kernel) {
+            if (OpenCLMGR.MGR.getBestGPU() == null || OpenCLMGR.MGR.getBestCPU() == null)
+                return null;
+
+            try {
+                final MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(OpenCLMGR.MGR.getBestGPU().getDeviceName().getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(OpenCLMGR.MGR.getBestCPU().getDeviceName().getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(kernel.getBytes(StandardCharsets.UTF_8));
+                final StringBuilder key = new StringBuilder();
+                for (byte b : md.digest()) {
+                    key.append(String.format("%02x", b));
+                }
+                return MGEnvVars.MGCache("autodevice").resolve(key + ".properties");
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+        }
+
+        OpenCLAutoDevice getBucket(MGLog log) {
+            final int bucket = getBucketIndex(log.getOptionValueLong("TotalParallelLoops"));
+            OpenCLAutoDevice auto = buckets.get(bucket);
+            if (auto == null) {
+                auto = new OpenCLAutoDevice();
+                buckets.put(bucket, auto);
+            }
+            return auto;
+        }
+
+        Mode predict(MGLog log) {
+            if (!gpu.isReady() || !cpu.isReady())
+                return null;
+
+            final double timeGPU = gpu.predict(log);
+            final double timeCPU = cpu.predict(log);
+            if (Double.isNaN(timeGPU) || Double.isNaN(timeCPU) || timeGPU <= 0 || timeCPU <= 0)
+                return null;
+            final double speedup = timeGPU / timeCPU;
+            if (speedup > (1.0 + SPEEDUPDIFF))
+                return Mode.CPU;
+            if (speedup < (1.0 - SPEEDUPDIFF))
+                return Mode.GPU;
+            return null;
+        }
+
+        @TruffleBoundary
+        private void load() {
+            if (file == null || !Files.exists(file))
+                return;
+
+            final Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                p.load(in);
+                for (String name : p.stringPropertyNames()) {
+                    final String value = p.getProperty(name);
+                    if (name.equals("gpu")) {
+                        gpu.deserialize(value);
+                    } else if (name.equals("cpu")) {
+                        cpu.deserialize(value);
+                    } else if (name.startsWith("bucket.")) {
+                        final OpenCLAutoDevice auto = new OpenCLAutoDevice();
+                        auto.mode = Mode.valueOf(value);
+                        buckets.put(Integer.valueOf(name.substring(7)), auto);
+                    }
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                buckets.clear();
+            }
+        }
+
+        @TruffleBoundary
+        void save() {
+            if (file == null)
+                return;
+
+            final Properties p = new Properties();
+            p.setProperty("gpu", gpu.serialize());
+            p.setProperty("cpu", cpu.serialize());
+            for (Entry<Integer, OpenCLAutoDevice> b : buckets.entrySet()) {
+                if (!b.getValue().isTrying())
+                    p.setProperty("bucket." + b.getKey(), b.getValue().mode.name());
+            }
+            try {
+                final Path dir = file.getParent();
+                Files.createDirectories(dir);
+                final Path tmp = Files.createTempFile(dir, "autodevice", ".tmp");
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    p.store(out, null);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (MGOptions.Backend.Debug > 2) {
+                    MGLog.printlnTagged("Failed to store device selection model: " + e.getMessage());
+                }
+            }
+        }
     }
 
     public static OpenCLDevice getLockedDeviceAndUnlock() {
@@ -174,6 +435,10 @@ public class OpenCLAutoDevice {
         return device;
     }
 
+    private boolean isTrying() {
+        return mode == Mode.TRYGPU || mode == Mode.TRYCPU;
+    }
+
     public void setKernelTime(long time) {
         if (mode == Mode.TRYGPU) {
             if (MGOptions.Backend.AutoMethod == 0)
@@ -197,7 +462,10 @@ public class OpenCLAutoDevice {
     }
 
     @TruffleBoundary
-    public static void clean() {
+    public static synchronized void clean() {
+        for (KernelModel model : SELECTIONS.values()) {
+            model.save();
+        }
         SELECTIONS.clear();
     }
 
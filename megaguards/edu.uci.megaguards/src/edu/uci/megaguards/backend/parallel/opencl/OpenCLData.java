@@ -24,12 +24,18 @@
  */
 package edu.uci.megaguards.backend.parallel.opencl;
 
+import static org.jocl.CL.CL_FALSE;
 import static org.jocl.CL.CL_MEM_READ_WRITE;
 import static org.jocl.CL.CL_TRUE;
 import static org.jocl.CL.clCreateBuffer;
 import static org.jocl.CL.clEnqueueReadBuffer;
 import static org.jocl.CL.clEnqueueWriteBuffer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
@@ -49,6 +55,8 @@ import edu.uci.megaguards.object.DataType;
 import edu.uci.megaguards.object.MGArray;
 import edu.uci.megaguards.object.MGObject;
 import edu.uci.megaguards.object.MGStorage;
+import edu.uci.megaguards.object.WeakIdentityRegistry;
+import edu.uci.megaguards.unbox.DirtyBlocks;
 import edu.uci.megaguards.unbox.Unboxer;
 
 public class OpenCLData {
@@ -56,17 +64,22 @@ public class OpenCLData {
     private enum STATE {
         INIT,
         BUFFERED,
+        PARTIAL,
         LOADED
     }
 
-    private final static HashMap<Integer, OpenCLData> allData = new HashMap<>();
+    /**
+     * Keyed by the identity of the unboxed host array. The device buffers of an entry are released
+     * once its host array is collected.
+     */
+    private final static WeakIdentityRegistry<OpenCLData> allData = new WeakIdentityRegistry<>(d -> d.internalClean(), d -> d.getDataSize());
 
     private final DataType dataType;
 
     private final long dataSize;
     private final int dataTypeSize;
 
-    private final int hashCode;
+    private WeakIdentityRegistry.Ref host;
     private final int[] dims;
     private final int numDims;
     private final int dataPointerLen;
@@ -88,7 +101,7 @@ public class OpenCLData {
         final Unboxer boxed = (array.getValue() instanceof ParallelWorkload) ? ((ParallelWorkload) array.getValue()).getBoxed() : (Unboxer) array.getValue();
         this.reduceResult = array.getValue() instanceof ReductionWorkload;
         this.dataSize = boxed.getInfo().sizeEstimate(dataTypeSize);
-        this.hashCode = boxed.getValue().hashCode();
+        this.host = null;
         this.dims = boxed.getInfo().getDimSizes();
         this.numDims = boxed.getInfo().getDim();
         this.dataPointerLen = boxed.getInfo().getSize(0, numDims - 1);
@@ -111,8 +124,11 @@ public class OpenCLData {
         return dataSize;
     }
 
-    public int getHashCode() {
-        return hashCode;
+    /**
+     * @return the unboxed host array or null if it was collected.
+     */
+    public Object getHost() {
+        return host != null ? host.get() : null;
     }
 
     @TruffleBoundary
@@ -125,16 +141,21 @@ public class OpenCLData {
         for (Entry<OpenCLDevice, OnDevice> d : onDeviceData.entrySet()) {
             if (d.getKey() == device)
                 continue;
-            if (d.getValue().state == STATE.LOADED)
-                d.getValue().state = STATE.BUFFERED;
+            d.getValue().invalidate();
         }
     }
 
     @TruffleBoundary
     private void invalidateDevicesData() {
         for (Entry<OpenCLDevice, OnDevice> entry : onDeviceData.entrySet()) {
-            if (entry.getValue().state == STATE.LOADED)
-                entry.getValue().state = STATE.BUFFERED;
+            entry.getValue().invalidate();
+        }
+    }
+
+    @TruffleBoundary
+    private void invalidateDevicesData(DirtyBlocks blocks) {
+        for (Entry<OpenCLDevice, OnDevice> entry : onDeviceData.entrySet()) {
+            entry.getValue().invalidate(blocks);
         }
     }
 
@@ -149,8 +170,12 @@ public class OpenCLData {
 
     @TruffleBoundary
     public static void clean() {
-        for (Entry<Integer, OpenCLData> d : allData.entrySet()) {
-            d.getValue().internalClean();
+        allData.drain();
+        for (OpenCLData d : allData.values()) {
+            d.internalClean();
+        }
+        if (MGOptions.Backend.Debug > 0) {
+            MGLog.printlnTagged("OpenCL data registry " + allData.getStatistics());
         }
     }
 
@@ -211,17 +236,20 @@ public class OpenCLData {
             boxed = (Unboxer) array.getValue();
 
         boolean changed = boxed.isChanged();
-        int hashCode = boxed.getValue().hashCode();
-        OpenCLData d = allData.get(hashCode);
+        final DirtyBlocks blocks = changed ? null : boxed.takeChangedBlocks();
+        final Object value = boxed.getValue();
+        OpenCLData d = allData.get(value);
         if (d == null) {
             d = new OpenCLData(array);
-            allData.put(hashCode, d);
+            d.host = allData.put(value, d);
         } else {
             d.writeOnly = array.isWriteOnly();
         }
         d.addName(array.getName());
         if (changed || MGOptions.Backend.disableDataManagementOptimization) {
             d.invalidateDevicesData();
+        } else if (blocks != null) {
+            d.invalidateDevicesData(blocks);
         }
 
         if (!d.onDeviceData.containsKey(device)) {
@@ -236,51 +264,89 @@ public class OpenCLData {
             boxed = ((ParallelWorkload) array.getValue()).getBoxed();
         else
             boxed = (Unboxer) array.getValue();
-        int hashCode = boxed.getValue().hashCode();
-        return allData.get(hashCode);
+        return allData.get(boxed.getValue());
     }
 
     @TruffleBoundary
-    public static OpenCLData getData(int hashCode) {
-        return allData.get(hashCode);
+    public static OpenCLData getData(Object value) {
+        return allData.get(value);
     }
 
     public class OnDevice {
 
         private final OpenCLData data;
         private final OpenCLDevice device;
-        private Pointer[] dataPointer;
+        /*- Destination of a pending asynchronous read */
+        private ByteBuffer staging;
         private org.jocl.cl_mem dataOnDevice;
         private STATE state;
         private int usedCount;
+        private boolean dirty;
+        private DirtyBlocks pending;
 
         public OnDevice(OpenCLDevice device, OpenCLData data) {
             this.data = data;
             this.device = device;
-            this.dataPointer = null;
+            this.staging = null;
             this.dataOnDevice = null;
             this.state = STATE.INIT;
             this.usedCount = 0;
+            this.dirty = false;
+            this.pending = null;
         }
 
         public boolean isLoaded() {
             return this.state == STATE.LOADED;
         }
 
+        /**
+         * The device copy holds results that were not read back to the host yet.
+         */
+        public boolean isDirty() {
+            return dirty && state == STATE.LOADED;
+        }
+
+        public void setDirty() {
+            this.dirty = true;
+        }
+
+        private void invalidate() {
+            if (state == STATE.LOADED || state == STATE.PARTIAL) {
+                state = STATE.BUFFERED;
+                pending = null;
+            }
+        }
+
+        /**
+         * Only the given blocks of the host array changed. A loaded buffer keeps the rest and
+         * uploads just these blocks on the next {@link #put}.
+         */
+        private void invalidate(DirtyBlocks blocks) {
+            if (state != STATE.LOADED && state != STATE.PARTIAL)
+                return;
+            if (blocks.getNumElements() != data.numElements) {
+                invalidate();
+            } else if (pending == null) {
+                pending = blocks.copy();
+                state = STATE.PARTIAL;
+            } else {
+                pending.merge(blocks);
+            }
+        }
+
         @TruffleBoundary
-        private boolean convertToPointer(Object o) {
-            boolean success = true;
-            this.dataPointer = new Pointer[this.data.dataPointerLen];
+        private Pointer[] toPointers(Object o) {
+            final Pointer[] pointers = new Pointer[this.data.dataPointerLen];
             if (numDims == 1) {
                 switch (dataType) {
                     case LongArray:
-                        this.dataPointer[0] = Pointer.to((long[]) o);
+                        pointers[0] = Pointer.to((long[]) o);
                         break;
                     case DoubleArray:
-                        this.dataPointer[0] = Pointer.to((double[]) o);
+                        pointers[0] = Pointer.to((double[]) o);
                         break;
                     case IntArray:
-                        this.dataPointer[0] = Pointer.to((int[]) o);
+                        pointers[0] = Pointer.to((int[]) o);
                         break;
                 }
             } else {
@@ -289,24 +355,161 @@ public class OpenCLData {
                     case LongArray:
                         long[][] l = (long[][]) o;
                         for (int i = 0; i < this.data.dataPointerLen; i++) {
-                            this.dataPointer[i] = Pointer.to(l[i]);
+                            pointers[i] = Pointer.to(l[i]);
                         }
                         break;
                     case DoubleArray:
                         double[][] d = (double[][]) o;
                         for (int i = 0; i < this.data.dataPointerLen; i++) {
-                            this.dataPointer[i] = Pointer.to(d[i]);
+                            pointers[i] = Pointer.to(d[i]);
                         }
                         break;
                     case IntArray:
                         int[][] n = (int[][]) o;
                         for (int i = 0; i < this.data.dataPointerLen; i++) {
-                            this.dataPointer[i] = Pointer.to(n[i]);
+                            pointers[i] = Pointer.to(n[i]);
                         }
                         break;
                 }
 
             }
+            return pointers;
+        }
+
+        /**
+         * JOCL only allows non-blocking transfers from direct buffers. The host rows are packed
+         * into one contiguous buffer, which also turns the per row transfers into a single one.
+         * The buffer only lives for one transfer, so resident arrays do not keep a second host
+         * copy.
+         */
+        private ByteBuffer allocateStaging(int elements) {
+            return ByteBuffer.allocateDirect(data.dataTypeSize * elements).order(ByteOrder.nativeOrder());
+        }
+
+        @TruffleBoundary
+        private ByteBuffer pack(Object host) {
+            final ByteBuffer b = allocateStaging(data.numElements);
+            switch (dataType) {
+                case LongArray:
+                    final LongBuffer l = b.asLongBuffer();
+                    if (numDims == 1)
+                        l.put((long[]) host);
+                    else
+                        for (long[] row : (long[][]) host)
+                            l.put(row);
+                    break;
+                case DoubleArray:
+                    final DoubleBuffer d = b.asDoubleBuffer();
+                    if (numDims == 1)
+                        d.put((double[]) host);
+                    else
+                        for (double[] row : (double[][]) host)
+                            d.put(row);
+                    break;
+                case IntArray:
+                    final IntBuffer n = b.asIntBuffer();
+                    if (numDims == 1)
+                        n.put((int[]) host);
+                    else
+                        for (int[] row : (int[][]) host)
+                            n.put(row);
+                    break;
+            }
+            return b;
+        }
+
+        @TruffleBoundary
+        private void unpack(Object host, int rowLength) {
+            final ByteBuffer b = staging;
+            b.clear();
+            switch (dataType) {
+                case LongArray:
+                    final LongBuffer l = b.asLongBuffer();
+                    if (numDims == 1)
+                        l.get((long[]) host, 0, rowLength);
+                    else
+                        for (long[] row : (long[][]) host)
+                            l.get(row, 0, rowLength);
+                    break;
+                case DoubleArray:
+                    final DoubleBuffer d = b.asDoubleBuffer();
+                    if (numDims == 1)
+                        d.get((double[]) host, 0, rowLength);
+                    else
+                        for (double[] row : (double[][]) host)
+                            d.get(row, 0, rowLength);
+                    break;
+                case IntArray:
+                    final IntBuffer n = b.asIntBuffer();
+                    if (numDims == 1)
+                        n.get((int[]) host, 0, rowLength);
+                    else
+                        for (int[] row : (int[][]) host)
+                            n.get(row, 0, rowLength);
+                    break;
+            }
+        }
+
+        /**
+         * Copies the elements {@code [from, to)} to the start of a new staging buffer.
+         */
+        @TruffleBoundary
+        private ByteBuffer packRange(Object host, int from, int to) {
+            final ByteBuffer b = allocateStaging(to - from);
+            final int rowLength = data.dims[numDims - 1];
+            int e = from;
+            while (e < to) {
+                final int row = e / rowLength;
+                final int col = e % rowLength;
+                final int len = Math.min(to - e, rowLength - col);
+                switch (dataType) {
+                    case LongArray:
+                        final LongBuffer l = b.asLongBuffer();
+                        l.position(e - from);
+                        l.put(numDims == 1 ? (long[]) host : ((long[][]) host)[row], col, len);
+                        break;
+                    case DoubleArray:
+                        final DoubleBuffer d = b.asDoubleBuffer();
+                        d.position(e - from);
+                        d.put(numDims == 1 ? (double[]) host : ((double[][]) host)[row], col, len);
+                        break;
+                    case IntArray:
+                        final IntBuffer n = b.asIntBuffer();
+                        n.position(e - from);
+                        n.put(numDims == 1 ? (int[]) host : ((int[][]) host)[row], col, len);
+                        break;
+                }
+                e += len;
+            }
+            return b;
+        }
+
+        /**
+         * Uploads the dirty block ranges of {@link #pending}, one transfer per contiguous range.
+         */
+        @TruffleBoundary
+        private boolean putBlocks(Object host) {
+            boolean success = true;
+            final int blockSize = pending.getBlockSize();
+            final boolean async = MGOptions.Backend.asyncTransfers;
+            int b = pending.nextDirty(0);
+            while (b < pending.getNumBlocks()) {
+                final int end = pending.nextClean(b);
+                final int from = b * blockSize;
+                final int to = (int) Math.min((long) end * blockSize, this.data.numElements);
+                final ByteBuffer buffer = packRange(host, from, to);
+                final long offset = (long) this.data.dataTypeSize * from;
+                final org.jocl.cl_event event = async ? new org.jocl.cl_event() : null;
+                final boolean s = CL.CL_SUCCESS == clEnqueueWriteBuffer(device.getCommandQueue(),
+                                this.dataOnDevice, async ? CL_FALSE : CL_TRUE,
+                                offset, (long) this.data.dataTypeSize * (to - from),
+                                Pointer.to(buffer), async ? device.getNumPendingEvents() : 0, async ? device.getPendingEvents() : null, event);
+                if (s && async)
+                    device.addPendingEvent(event, buffer);
+                success = success && s;
+                b = pending.nextDirty(end);
+            }
+            pending = null;
             return success;
         }
 
@@ -332,30 +535,48 @@ public class OpenCLData {
         public boolean put(Object o, boolean force) {
             boolean success = true;
             this.usedCount++;
-            String msg = String.format("put(%s: %d) ", data.lastVarName, data.hashCode);
-            if (force && state == STATE.LOADED && !data.writeOnly) {
+            String msg = String.format("put(%s: %d) ", data.lastVarName, System.identityHashCode(o));
+            if (force && (state == STATE.LOADED || state == STATE.PARTIAL) && !data.writeOnly) {
                 state = STATE.BUFFERED;
+                pending = null;
             }
             if (state == STATE.INIT) {
-                convertToPointer(o);
                 createBuffer();
                 device.addData(data);
                 state = (this.data.writeOnly) ? STATE.LOADED : STATE.BUFFERED;
                 msg += String.format("(buffer created size: %d byte) ", data.dataSize);
             }
 
-            if (state == STATE.BUFFERED) {
+            if (state == STATE.PARTIAL) {
+                msg += String.format("(%d of %d blocks loading) ", pending.getDirtyBlocks(), pending.getNumBlocks());
+                success = putBlocks(o);
+                state = STATE.LOADED;
+            } else if (state == STATE.BUFFERED && MGOptions.Backend.asyncTransfers) {
+                final ByteBuffer buffer = pack(o);
+                final org.jocl.cl_event event = new org.jocl.cl_event();
+                success = CL.CL_SUCCESS == clEnqueueWriteBuffer(device.getCommandQueue(),
+                                this.dataOnDevice, CL_FALSE,
+                                0, this.data.dataTypeSize * this.data.numElements,
+                                Pointer.to(buffer), device.getNumPendingEvents(), device.getPendingEvents(), event);
+                if (success)
+                    device.addPendingEvent(event, buffer);
+                state = STATE.LOADED;
+                dirty = false;
+                msg += "(data loading) ";
+            } else if (state == STATE.BUFFERED) {
+                final Pointer[] dataPointer = toPointers(o);
                 for (int i = 0; i < this.data.dataPointerLen; i++) {
                     final int offset = this.data.dataTypeSize * i * this.data.dims[this.data.numDims - 1];
                     final int length = this.data.dataTypeSize * this.data.dims[this.data.numDims - 1];
                     success = success && CL.CL_SUCCESS == clEnqueueWriteBuffer(device.getCommandQueue(),
                                     this.dataOnDevice, CL_TRUE,
                                     offset, length,
-                                    this.dataPointer[i], 0, null, null);
+                                    dataPointer[i], 0, null, null);
                 }
                 // CL.clFlush(device.getCommandQueue());
                 // CL.clFinish(device.getCommandQueue());
                 state = STATE.LOADED;
+                dirty = false;
                 msg += "(data loaded) ";
             }
 
@@ -371,15 +592,24 @@ public class OpenCLData {
 
         @TruffleBoundary
         public boolean get() {
+            final Object host = data.getHost();
+            if (host == null) {
+                // Nobody can observe the result anymore
+                dirty = false;
+                return true;
+            }
             boolean success = true;
+            final Pointer[] dataPointer = toPointers(host);
             final int l = reduceResult ? 1 : this.data.dims[this.data.numDims - 1];
             for (int i = 0; i < this.data.dataPointerLen; i++) {
                 final int offset = this.data.dataTypeSize * i * l;
                 final int length = this.data.dataTypeSize * l;
                 success = success && CL.CL_SUCCESS == clEnqueueReadBuffer(device.getCommandQueue(), this.dataOnDevice, CL_TRUE,
                                 offset, length,
-                                this.dataPointer[i], 0, null, null);
+                                dataPointer[i], 0, null, null);
             }
+            if (success)
+                dirty = false;
 
             if (MGOptions.Backend.target == ExecutionMode.OpenCLAuto)
                 invalidateOtherDeviceData(device);
@@ -388,6 +618,34 @@ public class OpenCLData {
             return success;
         }
 
+        /**
+         * Starts an asynchronous read of the whole buffer. The host arrays are only updated by
+         * {@link #completeGet()}, after the pending events have been waited for.
+         */
+        @TruffleBoundary
+        public boolean enqueueGet() {
+            final int l = reduceResult ? 1 : this.data.dims[this.data.numDims - 1];
+            staging = allocateStaging(l * this.data.dataPointerLen);
+            final org.jocl.cl_event event = new org.jocl.cl_event();
+            final boolean success = CL.CL_SUCCESS == clEnqueueReadBuffer(device.getCommandQueue(), this.dataOnDevice, CL_FALSE,
+                            0, this.data.dataTypeSize * l * this.data.dataPointerLen,
+                            Pointer.to(staging), device.getNumPendingEvents(), device.getPendingEvents(), event);
+            if (success)
+                device.addPendingEvent(event);
+            return success;
+        }
+
+        @TruffleBoundary
+        public void completeGet() {
+            final Object host = data.getHost();
+            if (host != null)
+                unpack(host, reduceResult ? 1 : this.data.dims[this.data.numDims - 1]);
+            staging = null;
+            dirty = false;
+            if (MGOptions.Backend.target == ExecutionMode.OpenCLAuto)
+                invalidateOtherDeviceData(device);
+        }
+
         public int getUsedCount() {
             return usedCount;
         }
@@ -400,8 +658,10 @@ public class OpenCLData {
             }
             device.delData(data);
             this.usedCount = 0;
+            this.dirty = false;
+            this.pending = null;
             this.dataOnDevice = null;
-            this.dataPointer = null;
+            this.staging = null;
         }
 
         public org.jocl.cl_mem getCLMem() {
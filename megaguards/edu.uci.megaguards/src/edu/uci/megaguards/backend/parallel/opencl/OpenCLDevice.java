@@ -56,14 +56,13 @@ import static org.jocl.CL.CL_QUEUE_PROFILING_ENABLE;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jocl.CL;
 import org.jocl.Pointer;
@@ -74,6 +73,7 @@ import com.oracle.truffle.api.utilities.JSONHelper;
 import com.oracle.truffle.api.utilities.JSONHelper.JSONObjectBuilder;
 
 import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.log.MGLog;
 
 @SuppressWarnings("deprecation")
 public class OpenCLDevice {
@@ -86,7 +86,7 @@ public class OpenCLDevice {
         Unknown
     }
 
-    public final HashMap<String, org.jocl.cl_kernel> kernels = new HashMap<>();
+    public final ConcurrentHashMap<String, org.jocl.cl_kernel> kernels = new ConcurrentHashMap<>();
 
     private final org.jocl.cl_platform_id platform;
     private final org.jocl.cl_device_id device;
@@ -119,30 +119,17 @@ public class OpenCLDevice {
 
     private final String summary;
 
-    private long memoryUtilzation;
+    private final OpenCLMemoryManager memory;
 
-    private final HashSet<OpenCLData> data;
+    private final ArrayList<org.jocl.cl_event> pendingEvents;
 
-    private class DataComparator implements Comparator<OpenCLData> {
-        private final OpenCLDevice device;
-
-        public DataComparator(OpenCLDevice device) {
-            this.device = device;
-        }
-
-        @TruffleBoundary
-        public int compare(OpenCLData o1, OpenCLData o2) {
-            int left = o1.getOnDeviceData(device).getUsedCount();
-            int right = o2.getOnDeviceData(device).getUsedCount();
-            // return left - right; // descending order
-            return right - left; // ascending order
-        }
-
-    }
+    /*- Host buffers the pending transfers read from */
+    private final ArrayList<Buffer> pendingBuffers;
 
     @TruffleBoundary
     public OpenCLDevice(org.jocl.cl_platform_id platform, org.jocl.cl_device_id device) {
-        this.data = new HashSet<>();
+        this.pendingEvents = new ArrayList<>();
+        this.pendingBuffers = new ArrayList<>();
         this.extensions = new HashSet<>();
         this.platform = platform;
         this.device = device;
@@ -152,7 +139,6 @@ public class OpenCLDevice {
         // #clCreateCommandQueue on OpenCL 1.2 (deprecated for OpenCL 2.0)
         this.commandQueue = org.jocl.CL.clCreateCommandQueue(context, device, 0, null);
 
-        this.memoryUtilzation = 0;
         this.openCLVer = processOpenCLVer();
 
         this.platformName = getString(platform, CL_PLATFORM_NAME);
@@ -199,6 +185,7 @@ public class OpenCLDevice {
         this.singleFpConfig = getLong(device, CL_DEVICE_SINGLE_FP_CONFIG);
 
         this.summary = description();
+        this.memory = new OpenCLMemoryManager(this, globalMemSize);
     }
 
     private String description() {
@@ -401,64 +388,34 @@ public class OpenCLDevice {
         return values;
     }
 
-    private long getMemoryProportion() {
-        return (long) (globalMemSize * MGOptions.Backend.deviceMemoryPortion);
+    public OpenCLMemoryManager getMemoryManager() {
+        return memory;
     }
 
     public long getMemoryAvailable() {
-        return (long) (globalMemSize * MGOptions.Backend.deviceMemoryPortion) - memoryUtilzation;
+        return memory.getAvailable();
     }
 
     @TruffleBoundary
     public void addData(OpenCLData d) {
-        data.add(d);
-        memoryUtilzation += d.getDataSize();
+        memory.add(d);
     }
 
     @TruffleBoundary
     public void delData(OpenCLData d) {
-        data.remove(d);
-        memoryUtilzation -= d.getDataSize();
+        memory.remove(d);
     }
 
     @TruffleBoundary
-    public boolean ensureMemoryAllocation(ArrayList<OpenCLData> readOnly, ArrayList<OpenCLData> writes, long totalDataSize) {
-        boolean success = true;
-        long localTotalDataSize = totalDataSize;
-        final HashSet<Integer> dataHashes = new HashSet<>();
-        for (OpenCLData d : readOnly) {
-            if (d.getOnDeviceData(this).isLoaded()) {
-                localTotalDataSize -= d.getDataSize();
-            }
-            dataHashes.add(d.getHashCode());
-        }
-
-        for (OpenCLData d : writes) {
-            if (d.getOnDeviceData(this).isLoaded()) {
-                localTotalDataSize -= d.getDataSize();
-            }
-            dataHashes.add(d.getHashCode());
-        }
-
-        if (localTotalDataSize > getMemoryAvailable()) {
-            if (localTotalDataSize > getMemoryProportion()) {
-                success = false;
-            } else {
-                final ArrayList<OpenCLData> d = new ArrayList<>(data);
-                Collections.sort(d, new DataComparator(this));
-                for (int i = 0; i < d.size() && localTotalDataSize > getMemoryAvailable(); i++) {
-                    OpenCLData o = d.get(i);
-                    if (dataHashes.contains(o.getHashCode()))
-                        continue;
-                    o.getOnDeviceData(this).clean();
-                }
-            }
-        }
-        return success;
+    public boolean ensureMemoryAllocation(ArrayList<OpenCLData> readOnly, ArrayList<OpenCLData> writes, long totalDataSize, MGLog log) {
+        return memory.reserve(readOnly, writes, totalDataSize, log);
     }
 
     @TruffleBoundary
     public void clean() {
+        if (MGOptions.Backend.Debug > 0) {
+            MGLog.printlnTagged(getDeviceName() + " memory " + memory.getStatistics());
+        }
         for (Entry<String, org.jocl.cl_kernel> k : kernels.entrySet()) {
             org.jocl.CL.clReleaseKernel(k.getValue());
         }
@@ -474,6 +431,55 @@ public class OpenCLDevice {
         return commandQueue;
     }
 
+    public int getNumPendingEvents() {
+        return pendingEvents.size();
+    }
+
+    /**
+     * Wait list for the next asynchronous command. Every enqueued command depends on all the
+     * commands that are still pending, which keeps the ordering even on out-of-order queues.
+     */
+    @TruffleBoundary
+    public org.jocl.cl_event[] getPendingEvents() {
+        if (pendingEvents.isEmpty())
+            return null;
+        return pendingEvents.toArray(new org.jocl.cl_event[pendingEvents.size()]);
+    }
+
+    @TruffleBoundary
+    public void addPendingEvent(org.jocl.cl_event event) {
+        pendingEvents.add(event);
+    }
+
+    /**
+     * The host buffer of an asynchronous transfer is kept reachable until the transfer completes.
+     */
+    @TruffleBoundary
+    public void addPendingEvent(org.jocl.cl_event event, Buffer buffer) {
+        pendingEvents.add(event);
+        pendingBuffers.add(buffer);
+    }
+
+    @TruffleBoundary
+    public boolean waitForPendingEvents() {
+        if (pendingEvents.isEmpty())
+            return true;
+        try {
+            return CL.CL_SUCCESS == CL.clWaitForEvents(pendingEvents.size(), getPendingEvents());
+        } finally {
+            releasePendingEvents();
+        }
+    }
+
+    @TruffleBoundary
+    private void releasePendingEvents() {
+        for (org.jocl.cl_event e : pendingEvents) {
+            CL.clReleaseEvent(e);
+        }
+        pendingEvents.clear();
+        pendingBuffers.clear();
+    }
+
     public float getOpenCLVersion() {
         return openCLVer;
     }
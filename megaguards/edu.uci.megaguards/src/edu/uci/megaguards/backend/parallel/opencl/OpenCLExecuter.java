@@ -33,6 +33,7 @@ import static org.jocl.CL.clWaitForEvents;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -57,11 +58,16 @@ import edu.uci.megaguards.backend.ExecutionMode;
 import edu.uci.megaguards.backend.MGObjectTracker;
 import edu.uci.megaguards.backend.parallel.ParallelWorkload;
 import edu.uci.megaguards.backend.parallel.ParallelWorkload.LoadType;
+import edu.uci.megaguards.log.MGEvents;
+import edu.uci.megaguards.log.MGLatency;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGPhase;
 import edu.uci.megaguards.object.ArrayInfo;
 import edu.uci.megaguards.object.MGArray;
 import edu.uci.megaguards.object.MGLongArray;
 import edu.uci.megaguards.object.MGStorage;
+import edu.uci.megaguards.object.WeakIdentityRegistry;
+import edu.uci.megaguards.unbox.DirtyBlocks;
 import edu.uci.megaguards.unbox.StaticUnboxer;
 import edu.uci.megaguards.unbox.Unboxer;
 
@@ -74,12 +80,14 @@ public class OpenCLExecuter {
     protected ArrayList<MGNodeUserFunction> localFunctions;
     protected String kernelFile;
     protected String kernelName;
+    protected String loopSite;
     protected Map<String, MGStorage> parameters;
     protected String[] orderedParameters;
 
     protected String generatedSrc;
+    protected final ArrayList<OpenCLLocalTile> localTiles;
 
-    protected static final HashMap<Integer, String> generatedSrcs = new HashMap<>();
+    protected static final WeakIdentityRegistry<String> generatedSrcs = new WeakIdentityRegistry<>(null, src -> src.length());
 
     protected long[][] ranges;
     protected boolean ready;
@@ -98,9 +106,9 @@ public class OpenCLExecuter {
     private OpenCLData deviceBoundFlag;
     private OpenCLData deviceOFFlag;
     private final ArrayList<OpenCLData> readOnly;
-    private final HashMap<Integer, OpenCLData> write;
+    private final IdentityHashMap<Object, OpenCLData> write;
     private final HashMap<MGArray, OpenCLData> workloads;
-    private final HashMap<Integer, Object> dataHashes;
+    private final HashMap<OpenCLData, Object> hostValues;
     private final HashMap<String, String> swapParameter;
     private long totalDataSize;
     private OpenCLDevice device;
@@ -109,8 +117,23 @@ public class OpenCLExecuter {
     private long[] groupSize;
     private long[] globalSize;
 
+    private long kernelStartTime;
+    private long kernelStartNano;
+    // CoreExecution phase of an asynchronous execution, committed once the kernel is waited for
+    private Object kernelPhase;
+
     @TruffleBoundary
     public OpenCLExecuter(SourceSection source, MGGlobalEnv env, MGNode rootNode, MGLog log) {
+        this(source, env, rootNode, log, false);
+    }
+
+    /**
+     * A deferred executer only generates the kernel source. The device selection and the data
+     * initialization happen on its first {@link #init()}, and {@link #precompile()} can build the
+     * kernel beforehand without touching the environment.
+     */
+    @TruffleBoundary
+    public OpenCLExecuter(SourceSection source, MGGlobalEnv env, MGNode rootNode, MGLog log, boolean deferred) {
 
         this.env = env;
         levels = env.getIterationLevels();
@@ -124,12 +147,13 @@ public class OpenCLExecuter {
             int bend = source.getSource().getName().length();
             namePostfix += source.getSource().getName().substring(bstart + 1, bend).replaceAll("[^\\w\\s]", "");
             namePostfix += "_" + source.getStartLine();
+            loopSite = source.getSource().getName().substring(bstart + 1, bend) + ":" + source.getStartLine();
         }
 
         kernelName = "Parallel_" + "_" + namePostfix;
         kernelFile = null;
 
-        generatedSrc = generatedSrcs.get(kernelBody.hashCode());
+        generatedSrc = generatedSrcs.get(kernelBody);
         if (generatedSrc == null) {
             this.localFunctions = new ArrayList<>();
             for (Entry<String, MGPrivateEnv> entry : env.getPrivateEnvironments().entrySet()) {
@@ -138,6 +162,8 @@ public class OpenCLExecuter {
             }
         }
 
+        localTiles = OpenCLLocalTile.getLocalTiles(env);
+
         ranges = env.getRanges();
         this.changesTracker = null;
         this.lockDevice = OpenCLAutoDevice.deviceLocked;
@@ -152,9 +178,9 @@ public class OpenCLExecuter {
         this.groupSize = new long[]{1};
         this.globalSize = new long[]{1};
         this.readOnly = new ArrayList<>();
-        this.write = new HashMap<>();
+        this.write = new IdentityHashMap<>();
         this.workloads = new HashMap<>();
-        this.dataHashes = new HashMap<>();
+        this.hostValues = new HashMap<>();
         this.swapParameter = new HashMap<>();
         this.totalDataSize = 0;
 
@@ -163,7 +189,7 @@ public class OpenCLExecuter {
         this.boundFlag = new MGLongArray(OpenCLTranslator.BOUNDFLAG,
                         new StaticUnboxer.LongArray(boundFlagVal,
                                         new ArrayInfo(long[].class, 1),
-                                        boundFlagVal.hashCode(),
+                                        boundFlagVal,
                                         true),
                         null);
 
@@ -172,19 +198,64 @@ public class OpenCLExecuter {
         this.ofFlag = new MGLongArray(OpenCLTranslator.OVERFLOWFLAG,
                         new StaticUnboxer.LongArray(ofFlagVal,
                                         new ArrayInfo(long[].class, 1),
-                                        ofFlagVal.hashCode(),
+                                        ofFlagVal,
                                         true),
                         null);
-        init();
+        if (deferred) {
+            generateSource();
+        } else {
+            init();
+        }
         // log.setOptionValue("GeneratedCode", this.generatedSrc);
     }
 
+    @TruffleBoundary
+    private void generateSource() {
+        if (generatedSrc == null) {
+            long st = System.currentTimeMillis();
+            final Object phase = MGEvents.begin(MGPhase.CodeGeneration);
+            OpenCLTranslator translator = new OpenCLTranslator(env, parameters, orderedParameters, localFunctions, kernelName, kernelFile, log);
+            translator.setLocalTiles(localTiles);
+            this.generatedSrc = translator.generateSrc(kernelBody);
+            log.setOptionValue("Recycled", false);
+            log.setOptionValue("CodeGenerationTime", (System.currentTimeMillis() - st));
+            MGEvents.commit(phase, log);
+            log.setOptionValue("GeneratedCode", this.generatedSrc);
+            log.setOptionValue("TotalGeneratedKernels", 1);
+            generatedSrcs.put(kernelBody, generatedSrc);
+            log.printGeneratedCode(this.generatedSrc);
+        }
+    }
+
+    /**
+     * Builds the kernel for every device {@link #init()} may select.
+     */
+    @TruffleBoundary
+    public void precompile() {
+        final ArrayList<OpenCLDevice> devices = new ArrayList<>(2);
+        if (OpenCLMGR.MGR.isValidAutoDevice(false)) {
+            devices.add(OpenCLMGR.MGR.getBestGPU());
+            devices.add(OpenCLMGR.MGR.getBestCPU());
+        } else if (MGOptions.Backend.target == ExecutionMode.OpenCLCPU) {
+            devices.add(OpenCLMGR.MGR.getBestCPU());
+        } else {
+            devices.add(OpenCLMGR.MGR.getBestGPU());
+        }
+        for (OpenCLDevice d : devices) {
+            if (d == null)
+                continue;
+            this.device = d;
+            if (!isReady())
+                compile();
+        }
+    }
+
     @TruffleBoundary
     public void init() {
         ranges = env.getRanges();
         long totalIterations = 1;
-        for (int i = 0; i < levels; i++)
-            totalIterations *= (ranges[0][1] - ranges[0][0]);
+        for (long size : OpenCLUtil.getGlobalWorkSize(ranges, levels))
+            totalIterations *= size;
         log.setOptionValue("TotalParallelLoops", totalIterations);
 
         if (MGOptions.Backend.Debug > 3)
@@ -192,17 +263,7 @@ public class OpenCLExecuter {
 
         if (!initialized) {
             initialized = true;
-            if (generatedSrc == null) {
-                long st = System.currentTimeMillis();
-                OpenCLTranslator translator = new OpenCLTranslator(env, parameters, orderedParameters, localFunctions, kernelName, kernelFile, log);
-                this.generatedSrc = translator.generateSrc(kernelBody);
-                log.setOptionValue("Recycled", false);
-                log.setOptionValue("CodeGenerationTime", (System.currentTimeMillis() - st));
-                log.setOptionValue("GeneratedCode", this.generatedSrc);
-                log.setOptionValue("TotalGeneratedKernels", 1);
-                generatedSrcs.put(kernelBody.hashCode(), generatedSrc);
-                log.printGeneratedCode(this.generatedSrc);
-            }
+            generateSource();
 
             if (OpenCLMGR.MGR.isValidAutoDevice()) {
                 this.device = OpenCLAutoDevice.getDevice(generatedSrc, log);
@@ -237,11 +298,14 @@ public class OpenCLExecuter {
         this.initialized = false;
         this.readOnly.clear();
         this.write.clear();
-        this.dataHashes.clear();
+        this.hostValues.clear();
         this.swapParameter.clear();
         this.totalDataSize = 0;
         this.boundFlagVal[0] = 0;
         this.ofFlagVal[0] = 0;
+        this.kernelStartTime = 0;
+        this.kernelStartNano = 0;
+        this.kernelPhase = null;
     }
 
     private long getWorkloadSize(ParallelWorkload load) {
@@ -307,7 +371,6 @@ public class OpenCLExecuter {
             if (value instanceof Unboxer) {
                 Unboxer boxed = ((Unboxer) value);
                 value = boxed.getValue();
-                final int hashCode = value.hashCode();
                 if (entry.getValue().getOrigin() instanceof MGArray) {
                     final MGArray array = (MGArray) entry.getValue().getOrigin();
 
@@ -315,11 +378,16 @@ public class OpenCLExecuter {
                         changesTracker.setDevice(device);
                         @SuppressWarnings("unused")
                         final String name = array.getName();
-                        final int index = changesTracker.getIndex(hashCode);
+                        final int index = changesTracker.getIndex(value);
                         final boolean changed = changesTracker.updateDataForOpenCL(index);
 
                         if (changed) {
-                            boxed.setChanged(true);
+                            final DirtyBlocks blocks = changesTracker.takeTruffleChangedBlocks(index);
+                            if (blocks != null) {
+                                boxed.setChanged(blocks);
+                            } else {
+                                boxed.setChanged(true);
+                            }
                         }
                     }
 
@@ -328,9 +396,9 @@ public class OpenCLExecuter {
                     if (entry.getValue().getOrigin().isReadOnly()) {
                         this.readOnly.add(d);
                     } else {
-                        this.write.put(d.getHashCode(), d);
+                        this.write.put(value, d);
                     }
-                    this.dataHashes.put(hashCode, value);
+                    this.hostValues.put(d, value);
                     this.totalDataSize += d.getDataSize();
                 }
             }
@@ -342,12 +410,18 @@ public class OpenCLExecuter {
     private boolean loadReadOnly() {
         boolean success = true;
         long st = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.DataTransfer);
+        final long ns = System.nanoTime();
         for (OpenCLData d : this.readOnly) {
-            Object value = dataHashes.get(d.getHashCode());
+            Object value = hostValues.get(d);
             success = success && (value != null);
             success = success && d.getOnDeviceData(device).put(value, MGOptions.Backend.disableDataManagementOptimization);
         }
         log.setOptionValue("DataTransferTime", log.getOptionValueLong("DataTransferTime") + (System.currentTimeMillis() - st));
+        // an asynchronous transfer is only enqueued here, its copy time is not known
+        if (!MGOptions.Backend.asyncTransfers)
+            log.addLatency(MGLatency.Transfer, System.nanoTime() - ns);
+        MGEvents.commit(phase, log);
         return success;
     }
 
@@ -355,22 +429,32 @@ public class OpenCLExecuter {
     private boolean loadWrites() {
         boolean success = true;
         long st = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.DataTransfer);
+        final long ns = System.nanoTime();
         for (OpenCLData d : this.write.values()) {
-            Object value = dataHashes.get(d.getHashCode());
+            Object value = hostValues.get(d);
             success = success && (value != null);
             success = success && d.getOnDeviceData(device).put(value, MGOptions.Backend.disableDataManagementOptimization);
         }
 
         log.setOptionValue("DataTransferTime", log.getOptionValueLong("DataTransferTime") + (System.currentTimeMillis() - st));
+        // an asynchronous transfer is only enqueued here, its copy time is not known
+        if (!MGOptions.Backend.asyncTransfers)
+            log.addLatency(MGLatency.Transfer, System.nanoTime() - ns);
+        MGEvents.commit(phase, log);
         return success;
     }
 
     @TruffleBoundary
     private void preExecution() {
+        // a previously failed execution may not have been reset
+        kernelStartTime = 0;
+        kernelStartNano = 0;
+        kernelPhase = null;
 
         prepareData();
 
-        boolean success = device.ensureMemoryAllocation(readOnly, new ArrayList<>(write.values()), totalDataSize);
+        boolean success = device.ensureMemoryAllocation(readOnly, new ArrayList<>(write.values()), totalDataSize, log);
         if (!success) {
             throw CompilationException.INSTANCE.message("Data too large for '" + device.getDeviceName() + "' memory.");
         }
@@ -401,9 +485,20 @@ public class OpenCLExecuter {
 
     @TruffleBoundary
     protected void internalCompile() throws CompilationException {
-        org.jocl.cl_program program = clCreateProgramWithSource(device.getContext(), 1, new String[]{generatedSrc}, null, null);
+        org.jocl.cl_program program = MGOptions.Backend.kernelCache ? OpenCLKernelCache.load(device, generatedSrc) : null;
         int[] errcode_ret = new int[1];
-        boolean success = CL.CL_SUCCESS == clBuildProgram(program, 0, null, "", null, errcode_ret);
+        boolean success = true;
+        if (program != null) {
+            log.setOptionValue("KernelCacheHits", 1);
+        } else {
+            program = clCreateProgramWithSource(device.getContext(), 1, new String[]{generatedSrc}, null, null);
+            success = CL.CL_SUCCESS == clBuildProgram(program, 0, null, "", null, errcode_ret);
+            if (MGOptions.Backend.kernelCache) {
+                log.setOptionValue("KernelCacheMisses", 1);
+                if (success)
+                    OpenCLKernelCache.store(device, generatedSrc, program);
+            }
+        }
         org.jocl.cl_kernel kernel = clCreateKernel(program, kernelName, errcode_ret);
         success = success && errcode_ret[0] == CL.CL_SUCCESS;
         if (!success) {
@@ -416,9 +511,11 @@ public class OpenCLExecuter {
     @TruffleBoundary
     public void compile() {
         long start = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.Compilation);
         if (!device.kernels.containsKey(generatedSrc))
             internalCompile();
         log.setOptionValue("CompilationTime", (System.currentTimeMillis() - start));
+        MGEvents.commit(phase, log);
         ready = true;
     }
 
@@ -436,11 +533,11 @@ public class OpenCLExecuter {
             MGStorage s = this.parameters.get(argName);
             Object o = s.getValue();
             if (o instanceof Unboxer) {
-                OpenCLData d = OpenCLData.getData(((Unboxer) o).getValue().hashCode());
+                OpenCLData d = OpenCLData.getData(((Unboxer) o).getValue());
                 success = success && CL.CL_SUCCESS == clSetKernelArg(kernel, argv++, Sizeof.cl_mem, Pointer.to(d.getOnDeviceData(device).getCLMem()));
             } else if (o instanceof ParallelWorkload) {
                 if (((ParallelWorkload) o).getType() != LoadType.LocalSize) {
-                    OpenCLData d = OpenCLData.getData(((ParallelWorkload) o).getBoxed().getValue().hashCode());
+                    OpenCLData d = OpenCLData.getData(((ParallelWorkload) o).getBoxed().getValue());
                     success = success && CL.CL_SUCCESS == clSetKernelArg(kernel, argv++, Sizeof.cl_mem, Pointer.to(d.getOnDeviceData(device).getCLMem()));
                 } else {
                     final long size = getWorkloadSize((ParallelWorkload) o);
@@ -458,6 +555,10 @@ public class OpenCLExecuter {
             success = success && CL.CL_SUCCESS == clSetKernelArg(kernel, argv++, Sizeof.cl_uint, Pointer.to(new int[]{((Long) ranges[i][2]).intValue()}));
         }
 
+        for (OpenCLLocalTile tile : localTiles) {
+            success = success && CL.CL_SUCCESS == clSetKernelArg(kernel, argv++, tile.getLocalMemorySize(localSize, ranges), null);
+        }
+
         success = success && CL.CL_SUCCESS == clSetKernelArg(kernel, argv++, Sizeof.cl_mem, Pointer.to(deviceBoundFlag.getOnDeviceData(device).getCLMem()));
         success = success && CL.CL_SUCCESS == clSetKernelArg(kernel, argv++, Sizeof.cl_mem, Pointer.to(deviceOFFlag.getOnDeviceData(device).getCLMem()));
         return success;
@@ -467,10 +568,13 @@ public class OpenCLExecuter {
     private void getWrites() {
         boolean success = true;
         long st = System.currentTimeMillis();
+        final Object phase = MGEvents.begin(MGPhase.DataTransfer);
+        final long ns = System.nanoTime();
         if (changesTracker != null) {
-            for (int hashCode : this.write.keySet()) {
-                final int index = changesTracker.getIndex(hashCode);
+            for (Entry<Object, OpenCLData> entry : this.write.entrySet()) {
+                final int index = changesTracker.getIndex(entry.getKey());
                 changesTracker.setOpenCLChanged(index);
+                entry.getValue().getOnDeviceData(device).setDirty();
             }
         } else {
             for (OpenCLData d : this.write.values()) {
@@ -485,9 +589,27 @@ public class OpenCLExecuter {
             }
         }
         log.setOptionValue("DataTransferTime", log.getOptionValueLong("DataTransferTime") + (System.currentTimeMillis() - st));
+        log.addLatency(MGLatency.Transfer, System.nanoTime() - ns);
+        MGEvents.commit(phase, log);
 
     }
 
+    @TruffleBoundary
+    private ArrayList<OpenCLData.OnDevice> getWriteBacks() {
+        final ArrayList<OpenCLData.OnDevice> writeBacks = new ArrayList<>();
+        if (changesTracker == null) {
+            for (OpenCLData d : this.write.values()) {
+                writeBacks.add(d.getOnDeviceData(device));
+            }
+        }
+        for (Entry<MGArray, OpenCLData> entry : this.workloads.entrySet()) {
+            if (!entry.getKey().isReadOnly()) {
+                writeBacks.add(entry.getValue().getOnDeviceData(device));
+            }
+        }
+        return writeBacks;
+    }
+
     @TruffleBoundary
     private void discardWrites() {
         for (OpenCLData d : this.write.values()) {
@@ -495,8 +617,66 @@ public class OpenCLExecuter {
         }
     }
 
+    /**
+     * Asynchronous counterpart of {@link #postExecution()}. The bound and overflow flags are read
+     * together with the write-back arrays, and the whole execution is waited for once. The host
+     * arrays are only updated when both flags are clear.
+     */
+    @TruffleBoundary
+    private void postExecutionAsync() throws BoundException {
+        final OpenCLData.OnDevice boundFlagData = deviceBoundFlag.getOnDeviceData(device);
+        final OpenCLData.OnDevice ofFlagData = deviceOFFlag.getOnDeviceData(device);
+        final ArrayList<OpenCLData.OnDevice> writeBacks = getWriteBacks();
+        boolean success = boundFlagData.enqueueGet() && ofFlagData.enqueueGet();
+        for (OpenCLData.OnDevice d : writeBacks) {
+            success = success && d.enqueueGet();
+        }
+        success = device.waitForPendingEvents() && success;
+        log.setOptionValue("CoreExecutionTime", (System.currentTimeMillis() - kernelStartTime));
+        log.addLatency(MGLatency.Kernel, System.nanoTime() - kernelStartNano);
+        MGEvents.commit(kernelPhase, log);
+        kernelPhase = null;
+        if (MGOptions.Backend.target == ExecutionMode.OpenCLAuto) {
+            OpenCLAutoDevice.reportKernelTime(generatedSrc, log, (System.nanoTime() - kernelStartNano));
+        }
+        if (!success) {
+            discardWrites();
+            throw CompilationException.INSTANCE.message(String.format("Failed to execute the kernel '%s'", kernelName));
+        }
+
+        boundFlagData.completeGet();
+        ofFlagData.completeGet();
+        success = ((long[]) ((Unboxer) boundFlag.getValue()).getValue())[0] == 0;
+        success = success && ((long[]) ((Unboxer) ofFlag.getValue()).getValue())[0] == 0;
+        if (success) {
+            boundFlagData.clean();
+            ofFlagData.clean();
+            long st = System.currentTimeMillis();
+            final Object phase = MGEvents.begin(MGPhase.DataTransfer);
+            if (changesTracker != null) {
+                for (Entry<Object, OpenCLData> entry : this.write.entrySet()) {
+                    final int index = changesTracker.getIndex(entry.getKey());
+                    changesTracker.setOpenCLChanged(index);
+                    entry.getValue().getOnDeviceData(device).setDirty();
+                }
+            }
+            for (OpenCLData.OnDevice d : writeBacks) {
+                d.completeGet();
+            }
+            log.setOptionValue("DataTransferTime", log.getOptionValueLong("DataTransferTime") + (System.currentTimeMillis() - st));
+            MGEvents.commit(phase, log);
+        } else {
+            discardWrites();
+            throw BoundException.INSTANCE.message("Runtime bound violation or overflowed (Execution discarded)!");
+        }
+    }
+
     @TruffleBoundary
     private void postExecution() throws BoundException {
+        if (MGOptions.Backend.asyncTransfers) {
+            postExecutionAsync();
+            return;
+        }
         deviceBoundFlag.getOnDeviceData(device).get();
         deviceOFFlag.getOnDeviceData(device).get();
         boolean success = ((long[]) ((Unboxer) boundFlag.getValue()).getValue())[0] == 0;
@@ -520,37 +700,86 @@ public class OpenCLExecuter {
                 log.println("Adaptive execution using '" + device.getDeviceName() + "'.");
             }
         }
-        preExecution();
-        org.jocl.cl_kernel kernel = device.kernels.get(generatedSrc);
-        globalSize = OpenCLUtil.getGlobalWorkSize(ranges, levels);
-        populateWorkloadStorage();
-        boolean success = false;
-        while (!success) {
-            localSize = OpenCLUtil.createLocalSize(kernel, device, globalSize, levels, log);
-            setKernelArgs();
-            final int lastLevel = levels - 1;
-            if (env.getGlobalLoopInfos()[lastLevel].isReductionOpt()) {
-                final long v = Math.max(Math.min(globalSize[lastLevel], localSize[lastLevel]), 1);
-                globalSize[lastLevel] = v > 2 && v % 2 == 1 ? v - 1 : v;
-                localSize[lastLevel] = globalSize[lastLevel];
-            }
-            try {
-                success = internalKernalExecution(kernel, null, globalSize, localSize);
-                if (!success) {
-                    OpenCLUtil.reportLocalSizeFailure(kernel, device, localSize);
+        try {
+            preExecution();
+            org.jocl.cl_kernel kernel = device.kernels.get(generatedSrc);
+            globalSize = OpenCLUtil.getGlobalWorkSize(ranges, levels);
+            populateWorkloadStorage();
+            final OpenCLLocalSizeTuner tuner = OpenCLLocalSizeTuner.getTuner(generatedSrc, kernel, device);
+            final boolean reductionOpt = env.getGlobalLoopInfos()[levels - 1].isReductionOpt();
+            boolean success = false;
+            while (!success) {
+                localSize = tuner.getLocalSize(globalSize, levels, loopSite, !reductionOpt, log);
+                if (!localTiles.isEmpty()) {
+                    // the tiles are sized for the work group, it cannot be left to the runtime
+                    final boolean smallest = localSize == null || isSmallestLocalSize(localSize);
+                    if (localSize == null)
+                        localSize = new long[]{1, 1, 1};
+                    if (getLocalTilesSize() > device.getLocalMemSize()) {
+                        if (smallest) {
+                            // no work group is small enough, retrying would never end
+                            throw CompilationException.INSTANCE.message(String.format("Local tiles of the kernel '%s' do not fit in '%s' local memory", kernelName,
+                                            device.getDeviceName()));
+                        }
+                        tuner.reportFailure(globalSize, levels, localSize);
+                        continue;
+                    }
                 }
-            } catch (CLException e) {
-                OpenCLUtil.reportLocalSizeFailure(kernel, device, localSize);
+                setKernelArgs();
+                final int lastLevel = levels - 1;
+                if (reductionOpt) {
+                    final long v = Math.max(Math.min(globalSize[lastLevel], localSize[lastLevel]), 1);
+                    globalSize[lastLevel] = v > 2 && v % 2 == 1 ? v - 1 : v;
+                    localSize[lastLevel] = globalSize[lastLevel];
+                }
+                final boolean trial = !reductionOpt && tuner.isTrial(globalSize, levels, loopSite);
+                try {
+                    // a trial is timed alone, without the pending transfers
+                    if (trial && MGOptions.Backend.asyncTransfers && !device.waitForPendingEvents()) {
+                        throw CompilationException.INSTANCE.message(String.format("Failed to load the data of the kernel '%s'", kernelName));
+                    }
+                    final long st = System.nanoTime();
+                    success = internalKernalExecution(kernel, null, globalSize, localSize);
+                    if (trial && MGOptions.Backend.asyncTransfers) {
+                        success = device.waitForPendingEvents() && success;
+                    }
+                    if (!success) {
+                        tuner.reportFailure(globalSize, levels, localSize);
+                    } else if (trial) {
+                        tuner.reportTime(globalSize, levels, System.nanoTime() - st);
+                    }
+                } catch (CLException e) {
+                    tuner.reportFailure(globalSize, levels, localSize);
 
+                }
             }
+            // CL.clFinish(device.getCommandQueue());
+            // CL.clFlush(device.getCommandQueue());
+            postExecution();
+        } catch (RuntimeException e) {
+            // a failed execution must not leave transfers or events behind for the next one
+            if (MGOptions.Backend.asyncTransfers)
+                device.waitForPendingEvents();
+            throw e;
         }
-        // CL.clFinish(device.getCommandQueue());
-        // CL.clFlush(device.getCommandQueue());
-        postExecution();
 
         internalClean();
     }
 
+    private static boolean isSmallestLocalSize(long[] size) {
+        for (long s : size)
+            if (s > 1)
+                return false;
+        return true;
+    }
+
+    private long getLocalTilesSize() {
+        long size = 0;
+        for (OpenCLLocalTile tile : localTiles)
+            size += tile.getLocalMemorySize(localSize, ranges);
+        return size;
+    }
+
     @TruffleBoundary
     public synchronized boolean internalKernalExecution(org.jocl.cl_kernel kernel, long[] globalWorkOffset, long[] globalWorkSize, long[] localWorkSize) {
 
@@ -558,6 +787,24 @@ public class OpenCLExecuter {
         long st = System.currentTimeMillis();
         org.jocl.cl_event event = new org.jocl.cl_event();
 
+        if (MGOptions.Backend.asyncTransfers) {
+            // the kernel is waited for in postExecution, together with the reads
+            if (kernelStartTime == 0) {
+                kernelStartTime = st;
+                kernelStartNano = nano;
+                kernelPhase = MGEvents.begin(MGPhase.CoreExecution);
+            }
+            final boolean success = CL.CL_SUCCESS == clEnqueueNDRangeKernel(
+                            device.getCommandQueue(),
+                            kernel, levels, globalWorkOffset,
+                            globalWorkSize, localWorkSize, device.getNumPendingEvents(), device.getPendingEvents(), event);
+            if (success)
+                device.addPendingEvent(event);
+            return success;
+        }
+
+        final Object phase = MGEvents.begin(MGPhase.CoreExecution);
+        final long ns = System.nanoTime();
         boolean success = CL.CL_SUCCESS == clEnqueueNDRangeKernel(
                         device.getCommandQueue(),
                         kernel, levels, globalWorkOffset,
@@ -565,6 +812,8 @@ public class OpenCLExecuter {
 
         success = success && CL.CL_SUCCESS == clWaitForEvents(1, new org.jocl.cl_event[]{event});
         log.setOptionValue("CoreExecutionTime", (System.currentTimeMillis() - st));
+        log.addLatency(MGLatency.Kernel, System.nanoTime() - ns);
+        MGEvents.commit(phase, log);
         if (MGOptions.Backend.target == ExecutionMode.OpenCLAuto) {
             OpenCLAutoDevice.reportKernelTime(generatedSrc, log, (System.nanoTime() - nano));
         }
@@ -573,7 +822,7 @@ public class OpenCLExecuter {
 
     @TruffleBoundary
     private void internalClean() {
-        this.dataHashes.clear();
+        this.hostValues.clear();
         this.readOnly.clear();
         this.write.clear();
         this.workloads.clear();
@@ -584,13 +833,14 @@ public class OpenCLExecuter {
         OpenCLData.clean();
         if (totalClean) {
             OpenCLAutoDevice.clean();
+            OpenCLLocalSizeTuner.clean();
             OpenCLMGR.MGR.clean();
         }
     }
 
     @TruffleBoundary
     public void executeReduction() {
-        long s = System.currentTimeMillis();
+        long s = System.nanoTime();
         if (MGOptions.Backend.target == ExecutionMode.OpenCLAuto) {
             if (MGOptions.Backend.Debug > 0) {
                 log.println("Adaptive execution using '" + device.getDeviceName() + "'.");
@@ -599,6 +849,9 @@ public class OpenCLExecuter {
 
         preExecution();
         long st = System.currentTimeMillis();
+        // asynchronous kernels are accounted for in postExecution once they completed
+        final Object phase = MGOptions.Backend.asyncTransfers ? null : MGEvents.begin(MGPhase.CoreExecution);
+        final long ns = System.nanoTime();
         org.jocl.cl_kernel kernel = device.kernels.get(generatedSrc);
         OpenCLUtil.setWorkloadSizes(device, ranges, levels, globalSize, localSize, groupSize);
         populateWorkloadStorage();
@@ -633,6 +886,9 @@ public class OpenCLExecuter {
             result1 = false;
         }
         log.setOptionValue("CoreExecutionTime", (System.currentTimeMillis() - st));
+        if (!MGOptions.Backend.asyncTransfers)
+            log.addLatency(MGLatency.Kernel, System.nanoTime() - ns);
+        MGEvents.commit(phase, log);
 
         postExecution();
         final int idx = result1 ? 1 : 2;
@@ -644,7 +900,7 @@ public class OpenCLExecuter {
         }
 
         if (MGOptions.Backend.target == ExecutionMode.OpenCLAuto) {
-            OpenCLAutoDevice.reportKernelTime(generatedSrc, log, (System.currentTimeMillis() - s));
+            OpenCLAutoDevice.reportKernelTime(generatedSrc, log, (System.nanoTime() - s));
         }
         internalClean();
     }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.parallel.opencl;
+
+import static org.jocl.CL.CL_PROGRAM_BINARIES;
+import static org.jocl.CL.CL_PROGRAM_BINARY_SIZES;
+import static org.jocl.CL.clBuildProgram;
+import static org.jocl.CL.clCreateProgramWithBinary;
+import static org.jocl.CL.clGetProgramInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGEnvVars;
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.log.MGLog;
+
+/**
+ * On-disk cache of OpenCL program binaries. Entries are keyed by the generated source, the device
+ * and the driver version, and the least recently used ones are evicted once the cache grows over
+ * {@link MGOptions.Backend#kernelCacheSize}.
+ */
+public class OpenCLKernelCache {
+
+    private static final String SUFFIX = ".bin";
+
+    private static Path cacheDir = null;
+
+    @TruffleBoundary
+    private static synchronized Path getCacheDir() {
+        if (cacheDir == null) {
+            cacheDir = MGEnvVars.MGCache("kernels");
+        }
+        return cacheDir;
+    }
+
+    @TruffleBoundary
+    public static String getKey(OpenCLDevice device, String src) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(device.getDeviceName().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(device.getDriverVersion().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(src.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder key = new StringBuilder();
+            for (byte b : md.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a built program for the given source, or null on a cache miss.
+     */
+    @TruffleBoundary
+    public static org.jocl.cl_program load(OpenCLDevice device, String src) {
+        final String key = getKey(device, src);
+        if (key == null)
+            return null;
+
+        final Path file = getCacheDir().resolve(key + SUFFIX);
+        if (!Files.exists(file))
+            return null;
+
+        org.jocl.cl_program program = null;
+        try {
+            final byte[] binary = Files.readAllBytes(file);
+            final int[] binaryStatus = new int[1];
+            final int[] errcode = new int[1];
+            program = clCreateProgramWithBinary(device.getContext(), 1, new org.jocl.cl_device_id[]{device.getDevice()}, new long[]{binary.length}, new byte[][]{binary}, binaryStatus,
+                            errcode);
+            if (errcode[0] != CL.CL_SUCCESS || binaryStatus[0] != CL.CL_SUCCESS || clBuildProgram(program, 0, null, "", null, null) != CL.CL_SUCCESS) {
+                throw new IOException("invalid binary");
+            }
+            // keeps the LRU order
+            file.toFile().setLastModified(System.currentTimeMillis());
+            return program;
+        } catch (IOException | CLException e) {
+            if (program != null)
+                CL.clReleaseProgram(program);
+            delete(file);
+            if (MGOptions.Backend.Debug > 2) {
+                MGLog.printlnTagged("Kernel cache entry " + key + " discarded: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    @TruffleBoundary
+    public static void store(OpenCLDevice device, String src, org.jocl.cl_program program) {
+        final String key = getKey(device, src);
+        if (key == null)
+            return;
+
+        try {
+            final long[] sizes = new long[1];
+            clGetProgramInfo(program, CL_PROGRAM_BINARY_SIZES, Sizeof.size_t, Pointer.to(sizes), null);
+            if (sizes[0] <= 0 || sizes[0] > MGOptions.Backend.kernelCacheSize)
+                return;
+
+            final byte[] binary = new byte[(int) sizes[0]];
+            clGetProgramInfo(program, CL_PROGRAM_BINARIES, Sizeof.POINTER, Pointer.to(Pointer.to(binary)), null);
+
+            final Path dir = getCacheDir();
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tmp, binary);
+            Files.move(tmp, dir.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict(dir);
+        } catch (IOException | CLException e) {
+            if (MGOptions.Backend.Debug > 2) {
+                MGLog.printlnTagged("Failed to store kernel cache entry " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @TruffleBoundary
+    private static void evict(Path dir) {
+        final File[] entries = dir.toFile().listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (entries == null)
+            return;
+
+        long total = 0;
+        for (File f : entries) {
+            total += f.length();
+        }
+        if (total <= MGOptions.Backend.kernelCacheSize)
+            return;
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length && total > MGOptions.Backend.kernelCacheSize; i++) {
+            total -= entries[i].length();
+            delete(entries[i].toPath());
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.parallel.opencl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGEnvVars;
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.analysis.parallel.exception.CompilationException;
+import edu.uci.megaguards.log.MGLog;
+
+/**
+ * Empirical selection of the work group size of a kernel on a device. For every power-of-two
+ * class of the global size, the first launch warms the kernel up and the following launches time
+ * a few candidate sizes, taking the median of {@link #TRIALS} launches each. The fastest per work
+ * item wins and is used from then on. The
+ * winners and the local size limit left by failed launches are persisted across runs, keyed by the
+ * kernel source and the device name. A size pinned to the loop by the user always wins.
+ */
+public class OpenCLLocalSizeTuner {
+
+    // a compiled kernel belongs to one device, the tuner goes away with the kernel
+    private static final WeakHashMap<org.jocl.cl_kernel, OpenCLLocalSizeTuner> TUNERS = new WeakHashMap<>();
+
+    private static final long[] GROUP_SIZES = {256, 128, 64, 32};
+
+    /**
+     * Timed launches per candidate, a single launch is too noisy to rank the candidates.
+     */
+    private static final int TRIALS = 3;
+
+    private static HashMap<String, long[]> pinned = null;
+
+    private static final class SizeClass {
+        private long[][] candidates;
+        private double[] times;
+        private double[] samples;
+        private int sample;
+        private int trial;
+        private long[] winner;
+    }
+
+    private final OpenCLDevice device;
+    private final Path file;
+    private final HashMap<String, SizeClass> classes;
+    private Long[] localLimit;
+
+    @TruffleBoundary
+    private OpenCLLocalSizeTuner(String kernel, OpenCLDevice device) {
+        this.device = device;
+        this.classes = new HashMap<>();
+        this.localLimit = OpenCLUtil.getDefaultLocalLimit();
+        this.file = MGOptions.Backend.localSizeTuning ? getFile(kernel, device) : null;
+        load();
+    }
+
+    @TruffleBoundary
+    public static synchronized OpenCLLocalSizeTuner getTuner(String source, org.jocl.cl_kernel kernel, OpenCLDevice device) {
+        OpenCLLocalSizeTuner tuner = TUNERS.get(kernel);
+        if (tuner == null) {
+            tuner = new OpenCLLocalSizeTuner(source, device);
+            TUNERS.put(kernel, tuner);
+        }
+        return tuner;
+    }
+
+    @TruffleBoundary
+    private static Path getFile(String kernel, OpenCLDevice device) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(device.getDeviceName().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(kernel.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder key = new StringBuilder();
+            for (byte b : md.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return MGEnvVars.MGCache("localsize").resolve(key + ".properties");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static String getClassKey(long[] globalSize, int levels) {
+        String key = "";
+        for (int d = 0; d < levels; d++)
+            key += (d == 0 ? "" : "x") + (64 - Long.numberOfLeadingZeros(Math.max(globalSize[d], 0)));
+        return key;
+    }
+
+    /**
+     * Parses the sizes pinned with <code>--mg-target-local-size=file:line=size[xsize[xsize]]</code>.
+     */
+    @TruffleBoundary
+    private static synchronized long[] getPinned(String loopSite) {
+        if (pinned == null) {
+            pinned = new HashMap<>();
+            for (String pin : MGOptions.Backend.pinnedLocalSizes.split(";")) {
+                final int eq = pin.lastIndexOf('=');
+                if (eq <= 0)
+                    continue;
+                final String[] dims = pin.substring(eq + 1).split("x");
+                final long[] size = new long[]{1, 1, 1};
+                try {
+                    for (int d = 0; d < dims.length && d < 3; d++)
+                        size[d] = Long.parseLong(dims[d].trim());
+                } catch (NumberFormatException e) {
+                    MGLog.printlnErrTagged("Invalid pinned local size '" + pin + "'");
+                    continue;
+                }
+                pinned.put(pin.substring(0, eq).trim(), size);
+            }
+        }
+        return loopSite == null ? null : pinned.get(loopSite);
+    }
+
+    private boolean isValid(long[] localSize, long[] globalSize, int levels) {
+        if (localSize == null)
+            return false;
+        long size = 1;
+        for (int d = 0; d < levels; d++) {
+            if (localSize[d] < 1 || localSize[d] > Math.min(device.getMaxWorkItemSizes()[d], localLimit[d]) || globalSize[d] % localSize[d] != 0)
+                return false;
+            size *= localSize[d];
+        }
+        return size <= device.getMaxWorkGroupSize();
+    }
+
+    /**
+     * A candidate tuned for another global size of the same class, shrunk to the largest sizes
+     * that divide this global size.
+     */
+    private long[] fit(long[] localSize, long[] globalSize, int levels) {
+        final long[] fitted = new long[]{1, 1, 1};
+        for (int d = 0; d < levels; d++) {
+            long f = Math.min(localSize[d], Math.min(device.getMaxWorkItemSizes()[d], localLimit[d]));
+            while (f > 1 && globalSize[d] % f != 0)
+                f--;
+            fitted[d] = Math.max(f, 1);
+        }
+        return isValid(fitted, globalSize, levels) ? fitted : null;
+    }
+
+    private long[] getDefault(long[] globalSize, int levels, MGLog log) {
+        return OpenCLUtil.createLocalSize(device, globalSize, levels, localLimit, device.getMaxWorkGroupSize(), log);
+    }
+
+    @TruffleBoundary
+    private long[][] createCandidates(long[] globalSize, int levels, MGLog log) {
+        final ArrayList<long[]> candidates = new ArrayList<>();
+        final long[] greedy = getDefault(globalSize, levels, log);
+        if (greedy != null)
+            candidates.add(greedy);
+        for (long groupSize : GROUP_SIZES) {
+            if (groupSize >= device.getMaxWorkGroupSize())
+                continue;
+            final long[] c = OpenCLUtil.createLocalSize(device, globalSize, levels, localLimit, groupSize, null);
+            boolean exists = c == null;
+            for (int i = 0; i < candidates.size() && !exists; i++)
+                exists = Arrays.equals(candidates.get(i), c);
+            if (!exists)
+                candidates.add(c);
+        }
+        return candidates.toArray(new long[candidates.size()][]);
+    }
+
+    /**
+     * The local size of the next launch. It is <code>null</code> when no valid size exists, the
+     * runtime picks one then.
+     */
+    @TruffleBoundary
+    public synchronized long[] getLocalSize(long[] globalSize, int levels, String loopSite, boolean tune, MGLog log) {
+        final long[] pin = getPinned(loopSite);
+        if (pin != null) {
+            if (isValid(pin, globalSize, levels))
+                return pin.clone();
+            if (MGOptions.Backend.Debug > 0)
+                log.println(String.format("Pinned local size %s of '%s' does not fit the global size %s", Arrays.toString(pin), loopSite, Arrays.toString(globalSize)));
+        }
+
+        if (!MGOptions.Backend.localSizeTuning || !tune)
+            return getDefault(globalSize, levels, log);
+
+        final String key = getClassKey(globalSize, levels);
+        SizeClass c = classes.get(key);
+        if (c == null) {
+            c = new SizeClass();
+            classes.put(key, c);
+        }
+
+        if (c.winner == null && c.candidates == null) {
+            final long[][] candidates = createCandidates(globalSize, levels, log);
+            if (candidates.length == 0)
+                return null;
+            c.candidates = candidates;
+            c.times = new double[c.candidates.length];
+            c.samples = new double[TRIALS];
+            c.sample = 0;
+            c.trial = -1;
+            if (c.candidates.length < 2)
+                finish(c, key);
+        }
+
+        if (c.winner != null) {
+            final long[] localSize = fit(c.winner, globalSize, levels);
+            return localSize != null ? localSize : getDefault(globalSize, levels, log);
+        }
+
+        if (c.trial < 0) {
+            final long[] localSize = fit(c.candidates[0], globalSize, levels);
+            return localSize != null ? localSize : getDefault(globalSize, levels, log);
+        }
+
+        while (c.trial < c.candidates.length) {
+            final long[] localSize = fit(c.candidates[c.trial], globalSize, levels);
+            if (localSize != null)
+                return localSize;
+            c.times[c.trial++] = Double.MAX_VALUE;
+        }
+        finish(c, key);
+        return getLocalSize(globalSize, levels, loopSite, tune, log);
+    }
+
+    /**
+     * Whether the next launch of this global size is a trial whose time should be reported.
+     */
+    @TruffleBoundary
+    public synchronized boolean isTrial(long[] globalSize, int levels, String loopSite) {
+        if (!MGOptions.Backend.localSizeTuning || getPinned(loopSite) != null)
+            return false;
+        final SizeClass c = classes.get(getClassKey(globalSize, levels));
+        return c != null && c.winner == null && c.candidates != null;
+    }
+
+    @TruffleBoundary
+    public synchronized void reportTime(long[] globalSize, int levels, long time) {
+        final String key = getClassKey(globalSize, levels);
+        final SizeClass c = classes.get(key);
+        if (c == null || c.winner != null || c.candidates == null)
+            return;
+
+        if (c.trial >= 0) {
+            long workItems = 1;
+            for (int d = 0; d < levels; d++)
+                workItems *= globalSize[d];
+            c.samples[c.sample++] = ((double) time) / Math.max(workItems, 1);
+            if (c.sample < TRIALS)
+                return;
+            Arrays.sort(c.samples);
+            c.times[c.trial] = c.samples[TRIALS / 2];
+            c.sample = 0;
+        }
+        if (++c.trial >= c.candidates.length)
+            finish(c, key);
+    }
+
+    @TruffleBoundary
+    public synchronized void reportFailure(long[] globalSize, int levels, long[] localSize) throws CompilationException {
+        localLimit = OpenCLUtil.reduceLocalLimit(localSize);
+        final String key = getClassKey(globalSize, levels);
+        final SizeClass c = classes.get(key);
+        if (c != null) {
+            // the candidates are rebuilt under the new limit
+            c.candidates = null;
+            c.winner = null;
+        }
+        save();
+    }
+
+    private void finish(SizeClass c, String key) {
+        int best = -1;
+        for (int i = 0; i < c.candidates.length; i++)
+            if (c.times[i] != Double.MAX_VALUE && (best < 0 || c.times[i] < c.times[best]))
+                best = i;
+        c.winner = best >= 0 ? c.candidates[best] : null;
+        c.candidates = null;
+        c.times = null;
+        c.samples = null;
+        if (c.winner == null)
+            return;
+        if (MGOptions.Backend.Debug > 0)
+            MGLog.printlnTagged(String.format("Tuned local size %s for the global size class %s on '%s'", Arrays.toString(c.winner), key, device.getDeviceName()));
+        save();
+    }
+
+    private static String serialize(Object[] values) {
+        String s = "";
+        for (int i = 0; i < values.length; i++)
+            s += (i == 0 ? "" : ",") + values[i];
+        return s;
+    }
+
+    private static long[] deserialize(String value) {
+        final String[] v = value.split(",");
+        if (v.length != 3)
+            throw new IllegalArgumentException(value);
+        return new long[]{Long.parseLong(v[0]), Long.parseLong(v[1]), Long.parseLong(v[2])};
+    }
+
+    @TruffleBoundary
+    private void load() {
+        if (file == null || !Files.exists(file))
+            return;
+
+        final Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            p.load(in);
+            for (String name : p.stringPropertyNames()) {
+                final long[] value = deserialize(p.getProperty(name));
+                if (name.equals("limit")) {
+                    localLimit = new Long[]{value[0], value[1], value[2]};
+                } else if (name.startsWith("class.")) {
+                    final SizeClass c = new SizeClass();
+                    c.winner = value;
+                    classes.put(name.substring(6), c);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            classes.clear();
+            localLimit = OpenCLUtil.getDefaultLocalLimit();
+        }
+    }
+
+    @TruffleBoundary
+    private void save() {
+        if (file == null)
+            return;
+
+        final Properties p = new Properties();
+        p.setProperty("limit", serialize(localLimit));
+        for (Entry<String, SizeClass> c : classes.entrySet()) {
+            if (c.getValue().winner != null) {
+                final long[] w = c.getValue().winner;
+                p.setProperty("class." + c.getKey(), serialize(new Long[]{w[0], w[1], w[2]}));
+            }
+        }
+        try {
+            final Path dir = file.getParent();
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, "localsize", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                p.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (MGOptions.Backend.Debug > 2) {
+                MGLog.printlnTagged("Failed to store tuned local sizes: " + e.getMessage());
+            }
+        }
+    }
+
+    @TruffleBoundary
+    public static synchronized void clean() {
+        TUNERS.clear();
+        pinned = null;
+    }
+
+}
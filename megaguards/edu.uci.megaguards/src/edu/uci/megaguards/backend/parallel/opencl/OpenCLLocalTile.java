@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.parallel.opencl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map.Entry;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNode;
+import edu.uci.megaguards.analysis.parallel.ArrayAccesses;
+import edu.uci.megaguards.analysis.parallel.ArrayAccesses.ArrayAccess;
+import edu.uci.megaguards.ast.env.MGGlobalEnv;
+import edu.uci.megaguards.ast.node.MGNode;
+import edu.uci.megaguards.ast.node.MGNodeBinOp;
+import edu.uci.megaguards.ast.node.MGNodeBinOp.BinOpType;
+import edu.uci.megaguards.ast.node.MGNodeOperand;
+import edu.uci.megaguards.backend.parallel.ParallelWorkload;
+import edu.uci.megaguards.object.MGArray;
+import edu.uci.megaguards.object.MGIntLiteral;
+import edu.uci.megaguards.object.MGLongLiteral;
+import edu.uci.megaguards.object.MGStorage;
+
+/**
+ * A read-only array whose elements are read by neighbouring work items. Every access indexes
+ * dimension <code>d</code> with the induction variable of the kernel dimension <code>d</code> plus
+ * a constant, so a work group reads a box of the array that only grows by the spread of these
+ * constants. The box is staged once into <code>__local</code> memory and the accesses read it from
+ * there.
+ */
+public final class OpenCLLocalTile {
+
+    public static final int MAX_HALO = 16;
+
+    private final MGArray array;
+    private final int[] min;
+    private final int[] max;
+
+    private OpenCLLocalTile(MGArray array, int dims) {
+        this.array = array;
+        this.min = new int[dims];
+        this.max = new int[dims];
+    }
+
+    public String getName() {
+        return array.getName();
+    }
+
+    public MGArray getArray() {
+        return array;
+    }
+
+    public String getTileName() {
+        return array.getName() + "$tile";
+    }
+
+    public String getBase(int dim) {
+        return array.getName() + "$tileBase" + dim;
+    }
+
+    public String getSize(int dim) {
+        return array.getName() + "$tileSize" + dim;
+    }
+
+    public int getMin(int dim) {
+        return min[dim];
+    }
+
+    public int getMax(int dim) {
+        return max[dim];
+    }
+
+    /**
+     * Bytes of local memory the tile needs for the given work group size.
+     */
+    public long getLocalMemorySize(long[] localSize, long[][] ranges) {
+        long size = OpenCLData.getTypeSize(array);
+        for (int d = 0; d < min.length; d++)
+            size *= (localSize[d] - 1) * Math.abs(ranges[d][2]) + (max[d] - min[d]) + 1;
+        return size;
+    }
+
+    private static int getOffset(MGNode index, MGStorage iv) {
+        if (index instanceof MGNodeOperand) {
+            final Object value = ((MGNodeOperand) index).getValue();
+            if (value instanceof MGStorage && ((MGStorage) value).getName().equals(iv.getName()))
+                return 0;
+        } else if (index instanceof MGNodeBinOp) {
+            final MGNodeBinOp binOp = (MGNodeBinOp) index;
+            if (binOp.getType() != BinOpType.ADD && binOp.getType() != BinOpType.SUB)
+                return Integer.MIN_VALUE;
+            final int sign = binOp.getType() == BinOpType.ADD ? 1 : -1;
+            if (getOffset(binOp.getLeft(), iv) == 0 && getConstant(binOp.getRight()) != null)
+                return sign * getConstant(binOp.getRight());
+            if (sign == 1 && getOffset(binOp.getRight(), iv) == 0 && getConstant(binOp.getLeft()) != null)
+                return getConstant(binOp.getLeft());
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private static Integer getConstant(MGNode node) {
+        if (!(node instanceof MGNodeOperand))
+            return null;
+        final Object value = ((MGNodeOperand) node).getValue();
+        if (!(value instanceof MGIntLiteral) && !(value instanceof MGLongLiteral))
+            return null;
+        final long c = ((Number) ((MGNodeOperand) node).getValue().getValue()).longValue();
+        return Math.abs(c) <= MAX_HALO ? (int) c : null;
+    }
+
+    /**
+     * The constant added to each induction variable by this access, or <code>null</code> when the
+     * access does not fit the tile pattern.
+     */
+    @TruffleBoundary
+    public static int[] getOffsets(MGArray access, MGStorage[] iterVar, int levels) {
+        if (access.getArrayInfo().getDim() != levels || access.getIndicesLen() != levels)
+            return null;
+        final int[] offsets = new int[levels];
+        for (int d = 0; d < levels; d++) {
+            if (!access.isNoBounds()) {
+                final MGBoundNode bound = access.getBounds()[d];
+                if (bound != null && bound.isRequireBoundCheck())
+                    return null;
+            }
+            offsets[d] = getOffset(access.getIndices()[d], iterVar[d]);
+            if (offsets[d] == Integer.MIN_VALUE)
+                return null;
+        }
+        return offsets;
+    }
+
+    @TruffleBoundary
+    public int[] getOffsets(MGArray access, MGStorage[] iterVar) {
+        if (!access.getName().equals(getName()))
+            return null;
+        return getOffsets(access, iterVar, min.length);
+    }
+
+    /**
+     * Finds the arrays of the kernel worth staging into local memory. Kernels calling functions,
+     * using parallel workloads or the reduction work group size are left as they are.
+     */
+    @TruffleBoundary
+    public static ArrayList<OpenCLLocalTile> getLocalTiles(MGGlobalEnv env) {
+        final ArrayList<OpenCLLocalTile> tiles = new ArrayList<>();
+        final int levels = env.getIterationLevels();
+        if (!MGOptions.Backend.localMemoryTiling || !env.getPrivateEnvironments().isEmpty())
+            return tiles;
+        if (env.getGlobalLoopInfos()[levels - 1] == null || env.getGlobalLoopInfos()[levels - 1].isReductionOpt())
+            return tiles;
+        for (MGStorage p : env.getParameters().values())
+            if (p.getValue() instanceof ParallelWorkload)
+                return tiles;
+
+        final MGStorage[] iterVar = env.getIteratorVar();
+        final ArrayAccesses accesses = env.getArrayReadWrite();
+        for (Entry<String, ArrayAccess> entry : accesses.getReadWrites().entrySet()) {
+            final String name = entry.getKey();
+            final MGStorage param = env.getParameters().get(name);
+            if (!(param instanceof MGArray) || !param.getOrigin().isReadOnly() || !accesses.getWrites(name).isEmpty())
+                continue;
+            switch (param.getDataType()) {
+                case DoubleArray:
+                case IntArray:
+                case LongArray:
+                    break;
+                default:
+                    continue;
+            }
+            final OpenCLLocalTile tile = new OpenCLLocalTile((MGArray) param, levels);
+            final HashSet<Long> distinct = new HashSet<>();
+            boolean valid = true;
+            for (MGArray read : accesses.getReads(name)) {
+                final int[] offsets = getOffsets(read, iterVar, levels);
+                if (offsets == null) {
+                    valid = false;
+                    break;
+                }
+                long key = 0;
+                for (int d = 0; d < levels; d++) {
+                    tile.min[d] = distinct.isEmpty() ? offsets[d] : Math.min(tile.min[d], offsets[d]);
+                    tile.max[d] = distinct.isEmpty() ? offsets[d] : Math.max(tile.max[d], offsets[d]);
+                    key = key * (2 * MAX_HALO + 1) + offsets[d] + MAX_HALO;
+                }
+                distinct.add(key);
+            }
+            // a single offset per work item has nothing to reuse
+            if (valid && distinct.size() > 1)
+                tiles.add(tile);
+        }
+        return tiles;
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.parallel.opencl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGOptions;
+import edu.uci.megaguards.log.MGLog;
+
+/**
+ * Accounts the buffers allocated on one {@link OpenCLDevice} and picks eviction victims with
+ * GreedyDual-Size-Frequency. The priority of a buffer is the inflation value at its last use
+ * plus its use count times its reload cost per byte, so small, hot and dirty buffers are kept
+ * while large and cold ones go first. Buffers that stop being used age out as every eviction
+ * raises the inflation value.
+ */
+public class OpenCLMemoryManager {
+
+    // estimated host-device transfer latency in nanoseconds and bandwidth in bytes per nanosecond
+    private static final double TRANSFER_LATENCY = 10_000.0;
+    private static final double TRANSFER_BANDWIDTH = 6.0;
+
+    private final class Resident implements Comparable<Resident> {
+        private final OpenCLData data;
+        private final long id;
+        private double priority;
+        private long uses;
+
+        private Resident(OpenCLData data, long id) {
+            this.data = data;
+            this.id = id;
+            this.uses = 0;
+        }
+
+        public int compareTo(Resident o) {
+            final int c = Double.compare(priority, o.priority);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+    }
+
+    private final OpenCLDevice device;
+    private final long globalMemSize;
+
+    private final HashMap<OpenCLData, Resident> residents;
+    private final TreeSet<Resident> queue;
+
+    private double inflation;
+    private long nextId;
+    private long used;
+    private long peak;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedBytes;
+    private long writeBacks;
+
+    public OpenCLMemoryManager(OpenCLDevice device, long globalMemSize) {
+        this.device = device;
+        this.globalMemSize = globalMemSize;
+        this.residents = new HashMap<>();
+        this.queue = new TreeSet<>();
+        this.inflation = 0;
+        this.nextId = 0;
+        this.used = 0;
+        this.peak = 0;
+    }
+
+    public long getCapacity() {
+        return (long) (globalMemSize * MGOptions.Backend.deviceMemoryPortion);
+    }
+
+    public long getAvailable() {
+        return getCapacity() - used;
+    }
+
+    public long getUsed() {
+        return used;
+    }
+
+    private static double reloadCost(OpenCLData d, boolean dirty) {
+        final double transfer = TRANSFER_LATENCY + d.getDataSize() / TRANSFER_BANDWIDTH;
+        // a dirty buffer has to be read back before it can be dropped
+        return (dirty ? 2 : 1) * transfer / Math.max(1, d.getDataSize());
+    }
+
+    private void prioritize(Resident r) {
+        final OpenCLData.OnDevice onDevice = r.data.getOnDeviceData(device);
+        r.priority = inflation + r.uses * reloadCost(r.data, onDevice != null && onDevice.isDirty());
+    }
+
+    @TruffleBoundary
+    public void add(OpenCLData d) {
+        if (residents.containsKey(d))
+            return;
+        final Resident r = new Resident(d, nextId++);
+        r.uses = 1;
+        prioritize(r);
+        residents.put(d, r);
+        queue.add(r);
+        used += d.getDataSize();
+        peak = Math.max(peak, used);
+    }
+
+    @TruffleBoundary
+    public void remove(OpenCLData d) {
+        final Resident r = residents.remove(d);
+        if (r == null)
+            return;
+        queue.remove(r);
+        used -= d.getDataSize();
+    }
+
+    @TruffleBoundary
+    private void touch(OpenCLData d) {
+        final Resident r = residents.get(d);
+        if (r == null)
+            return;
+        queue.remove(r);
+        r.uses++;
+        prioritize(r);
+        queue.add(r);
+    }
+
+    @TruffleBoundary
+    private boolean evictOne(HashSet<OpenCLData> pinned) {
+        Resident victim = null;
+        for (Resident r : queue) {
+            if (!pinned.contains(r.data)) {
+                victim = r;
+                break;
+            }
+        }
+        if (victim == null)
+            return false;
+
+        inflation = victim.priority;
+        final OpenCLData.OnDevice onDevice = victim.data.getOnDeviceData(device);
+        if (onDevice.isDirty()) {
+            if (!onDevice.get())
+                return false;
+            writeBacks++;
+        }
+        evictions++;
+        evictedBytes += victim.data.getDataSize();
+        onDevice.clean();
+        // clean() normally releases the accounting through OpenCLDevice.delData
+        remove(victim.data);
+        return true;
+    }
+
+    /**
+     * Makes room for the buffers of the next kernel execution. Buffers that are already
+     * allocated on the device are not counted again and are never evicted by this call.
+     *
+     * @return false if the buffers can not fit in the device memory.
+     */
+    @TruffleBoundary
+    public boolean reserve(ArrayList<OpenCLData> readOnly, ArrayList<OpenCLData> writes, long totalDataSize, MGLog log) {
+        long required = totalDataSize;
+        long localHits = 0;
+        long localMisses = 0;
+        final long localEvictions = evictions;
+        final long localWriteBacks = writeBacks;
+        final HashSet<OpenCLData> pinned = new HashSet<>();
+        final ArrayList<OpenCLData> all = new ArrayList<>(readOnly);
+        all.addAll(writes);
+        for (OpenCLData d : all) {
+            if (!pinned.add(d))
+                continue;
+            final OpenCLData.OnDevice onDevice = d.getOnDeviceData(device);
+            if (onDevice.isLoaded())
+                localHits++;
+            else
+                localMisses++;
+            if (residents.containsKey(d)) {
+                required -= d.getDataSize();
+                touch(d);
+            }
+        }
+        hits += localHits;
+        misses += localMisses;
+
+        boolean success = required <= getCapacity();
+        while (success && required > getAvailable()) {
+            success = evictOne(pinned);
+        }
+
+        if (log != null) {
+            log.setOptionValue("DeviceMemoryHits", localHits);
+            log.setOptionValue("DeviceMemoryMisses", localMisses);
+            log.setOptionValue("DeviceMemoryEvictions", evictions - localEvictions);
+            log.setOptionValue("DeviceMemoryWriteBacks", writeBacks - localWriteBacks);
+        }
+        return success;
+    }
+
+    @TruffleBoundary
+    public String getStatistics() {
+        return String.format("resident: %d buffers %s (peak %s of %s), hits: %d, misses: %d, evictions: %d (%s), write-backs: %d", residents.size(),
+                        OpenCLDevice.humanReadableByteCount(used, false), OpenCLDevice.humanReadableByteCount(peak, false), OpenCLDevice.humanReadableByteCount(getCapacity(), false),
+                        hits, misses, evictions, OpenCLDevice.humanReadableByteCount(evictedBytes, false), writeBacks);
+    }
+}
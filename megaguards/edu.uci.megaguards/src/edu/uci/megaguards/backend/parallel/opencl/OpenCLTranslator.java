@@ -93,6 +93,16 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
 
     protected final static String STEP = "_step$";
 
+    protected final static String LOCALID = "_localID$";
+
+    protected final static String LOCALSIZE = "_localSize$";
+
+    protected final static String TILEID = "_tile$";
+
+    protected final static String TILEREM = "_tileRem$";
+
+    protected final static String TILEIDX = "_tileIdx$";
+
     // Array Bound Check
     public static final String BOUNDFLAG = "_boundFlag$";
 
@@ -166,6 +176,7 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
 
     protected ArrayList<String> methods;
     protected boolean requireDouble;
+    protected ArrayList<OpenCLLocalTile> localTiles;
 
     private final MGLog log;
     private final HashSet<String> definedVars;
@@ -190,6 +201,7 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
         runtimeBoundCheck = env.isRuntimeBoundCheck();
 
         methods = new ArrayList<>();
+        localTiles = new ArrayList<>();
         this.log = log;
         this.definedVars = new HashSet<>();
         this.variablesDefinitions = new HashSet<>();
@@ -207,6 +219,10 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
 
     }
 
+    public void setLocalTiles(ArrayList<OpenCLLocalTile> localTiles) {
+        this.localTiles = localTiles;
+    }
+
     @TruffleBoundary
     public void clearDefinitions() {
         definedVars.clear();
@@ -403,11 +419,16 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
             args += "const int " + OFFSET + i + ", " + "const int " + STEP + i + ", ";
         }
 
+        for (OpenCLLocalTile tile : localTiles) {
+            args += __local + " " + DataTypeOpenCL(tile.getArray().getDataType()) + tile.getTileName() + ", ";
+        }
+
         args += __global + " long *" + BOUNDFLAG + ", ";
         args += __global + " long *" + OVERFLOWFLAG;
 
         src += newLine() + "__kernel void " + kernelName + "(" + args + ") {" + //
                         globalIDs() + //
+                        localTiles() + //
                         body + //
                         newLine() + "}";
 
@@ -432,6 +453,88 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
         return globalIds;
     }
 
+    /**
+     * Work items of a group load the tiles together, each one every {@link #LOCALSIZE} element.
+     * Elements outside the array are skipped, the accesses that would read them are out of bounds
+     * in the original kernel too. All work items reach the barrier, it comes before the body.
+     */
+    @TruffleBoundary
+    private String localTiles() {
+        if (localTiles.isEmpty())
+            return "";
+
+        log.setOptionValue("LocalTiledArrays", localTiles.size());
+        String s = newLine() + "int " + LOCALID + " = get_local_id(0);";
+        String localSize = "get_local_size(0)";
+        for (int d = 1; d < levels; d++) {
+            s += newLine() + LOCALID + " = " + LOCALID + " * get_local_size(" + d + ") + get_local_id(" + d + ");";
+            localSize += " * get_local_size(" + d + ")";
+        }
+        s += newLine() + "const int " + LOCALSIZE + " = " + localSize + ";";
+
+        for (OpenCLLocalTile tile : localTiles)
+            s += localTile(tile);
+
+        s += newLine() + "barrier(CLK_LOCAL_MEM_FENCE);";
+        return s;
+    }
+
+    @TruffleBoundary
+    private String localTile(OpenCLLocalTile tile) {
+        final String ds = tile.getName() + MGBaseEnv.DIMSIZE;
+        String s = newLine() + "// " + tile.getName() + " staged into local memory";
+        String tileSize = "";
+        for (int d = 0; d < levels; d++) {
+            final String first = "((int) (get_group_id(" + d + ") * get_local_size(" + d + ")) * " + STEP + d + ") + " + OFFSET + d;
+            final String span = "((int) get_local_size(" + d + ") - 1) * " + STEP + d;
+            s += newLine() + "const int " + tile.getBase(d) + " = min(" + first + ", " + first + " + " + span + ") + (" + tile.getMin(d) + ");";
+            s += newLine() + "const int " + tile.getSize(d) + " = abs(" + span + ") + " + (tile.getMax(d) - tile.getMin(d) + 1) + ";";
+            tileSize += (d == 0) ? tile.getSize(d) : " * " + tile.getSize(d);
+        }
+
+        s += newLine() + "for (int " + TILEID + " = " + LOCALID + "; " + TILEID + " < " + tileSize + "; " + TILEID + " += " + LOCALSIZE + ") {";
+        in();
+        s += newLine() + "int " + TILEREM + " = " + TILEID + ";";
+        for (int d = levels - 1; d >= 0; d--) {
+            s += newLine() + "const int " + TILEIDX + d + " = " + tile.getBase(d) + " + " + TILEREM + " % " + tile.getSize(d) + ";";
+            if (d > 0)
+                s += newLine() + TILEREM + " /= " + tile.getSize(d) + ";";
+        }
+
+        String inBounds = "";
+        String index = TILEIDX + 0;
+        for (int d = 0; d < levels; d++) {
+            inBounds += (d == 0 ? "" : " && ") + TILEIDX + d + " >= 0 && " + TILEIDX + d + " < " + ds + d;
+            if (d > 0)
+                index = "(" + index + ") * " + ds + d + " + " + TILEIDX + d;
+        }
+        s += newLine() + "if (" + inBounds + ")";
+        in();
+        s += newLine() + tile.getTileName() + "[" + TILEID + "] = " + tile.getName() + "[" + index + "];";
+        out();
+        out();
+        s += newLine() + "}";
+        return s;
+    }
+
+    private OpenCLLocalTile getLocalTile(MGArray arrayValue) {
+        for (OpenCLLocalTile tile : localTiles)
+            if (tile.getName().equals(arrayValue.getName()))
+                return tile;
+        return null;
+    }
+
+    private String openclAccessLocalTile(OpenCLLocalTile tile, int[] offsets) {
+        String index = "";
+        for (int d = 0; d < levels; d++) {
+            String i = iterVar[d].getName() + " - " + tile.getBase(d);
+            if (offsets[d] != 0)
+                i += " + (" + offsets[d] + ")";
+            index = (d == 0) ? i : "(" + index + ") * " + tile.getSize(d) + " + " + i;
+        }
+        return tile.getTileName() + "[" + index + "]";
+    }
+
     public String visitor(MGNode root) {
         try {
             return root.accept(this);
@@ -883,6 +986,11 @@ public class OpenCLTranslator implements MGVisitorIF<String> {
     }
 
     public String openclAccessArray(MGArray arrayValue) {
+        final OpenCLLocalTile tile = getLocalTile(arrayValue);
+        final int[] offsets = tile != null ? tile.getOffsets(arrayValue, iterVar) : null;
+        if (offsets != null)
+            return openclAccessLocalTile(tile, offsets);
+
         int dims = arrayValue.getArrayInfo().getDim();
         String s = arrayValue.getName();
         String ds = arrayValue.getName() + MGBaseEnv.DIMSIZE;
@@ -25,7 +25,6 @@
 package edu.uci.megaguards.backend.parallel.opencl;
 
 import java.util.Arrays;
-import java.util.HashMap;
 
 import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.parallel.exception.CompilationException;
@@ -35,8 +34,6 @@ public class OpenCLUtil {
 
     private final static long MAXLOCALSIZE = 1024;
 
-    private final static HashMap<String, Long[]> kernelDeviceLocalLimit = new HashMap<>();
-
     public static long[] getGlobalWorkSize(long[][] ranges, int levels) {
         final long globalWorkSize1D = (long) Math.ceil((ranges[0][1] - ranges[0][0]) / (double) ranges[0][2]);
 
@@ -78,7 +75,7 @@ public class OpenCLUtil {
         final long factors[] = new long[maxGroupSize.intValue()];
         int i = 0;
 
-        for (long f = 1; f <= maxLocalSize; f++) {
+        for (long f = 1; f <= Math.min(maxLocalSize, maxGroupSize); f++) {
             if ((globalSize % f) == 0) {
                 factors[i++] = f;
             }
@@ -87,74 +84,73 @@ public class OpenCLUtil {
         return Arrays.copyOf(factors, i);
     }
 
-    public static void reportLocalSizeFailure(org.jocl.cl_kernel kernel, OpenCLDevice device, long[] localSize) throws CompilationException {
-        String key = kernel.hashCode() + "" + device.hashCode();
+    /**
+     * The local size limit after a launch with the given local size failed.
+     */
+    public static Long[] reduceLocalLimit(long[] localSize) throws CompilationException {
         if (localSize == null)
             throw CompilationException.INSTANCE.message("Kernel execution failed");
         long currentLocalSize = localSize[0] * localSize[1] * localSize[2];
         if (currentLocalSize == 1)
             throw CompilationException.INSTANCE.message("Kernel execution failed");
-        kernelDeviceLocalLimit.put(key, new Long[]{Math.max(localSize[0] - 1, 1), Math.max(localSize[1] - 1, 1), Math.max(localSize[2] - 1, 1)});
+        return new Long[]{Math.max(localSize[0] - 1, 1), Math.max(localSize[1] - 1, 1), Math.max(localSize[2] - 1, 1)};
     }
 
-    public static long[] createLocalSize(org.jocl.cl_kernel kernel, OpenCLDevice device, long[] globalSize, int levels, MGLog log) {
-        final Long[] localLimit;
-        if (kernelDeviceLocalLimit.containsKey(kernel.hashCode() + "" + device.hashCode())) {
-            localLimit = kernelDeviceLocalLimit.get(kernel.hashCode() + "" + device.hashCode());
-        } else {
-            localLimit = new Long[]{MAXLOCALSIZE, MAXLOCALSIZE, MAXLOCALSIZE};
-        }
+    public static Long[] getDefaultLocalLimit() {
+        return new Long[]{MAXLOCALSIZE, MAXLOCALSIZE, MAXLOCALSIZE};
+    }
 
+    public static long[] createLocalSize(OpenCLDevice device, long[] globalSize, int levels, Long[] localLimit, long maxGroupSize, MGLog log) {
         String s = String.format("Range: Dim: %d", levels);
         long[] localSize = null;
         if (levels == 1) {
-            localSize = createLocalSize1D(device, globalSize, localLimit);
+            localSize = createLocalSize1D(device, globalSize, localLimit, maxGroupSize);
             s += String.format("\tGlobal: %d", globalSize[0]);
             if (localSize != null)
                 s += String.format("\tLocal: %d", localSize[0]);
         }
 
         if (levels == 2) {
-            localSize = createLocalSize2D(device, globalSize, localLimit);
+            localSize = createLocalSize2D(device, globalSize, localLimit, maxGroupSize);
             s += String.format("\tGlobal: %d x %d", globalSize[0], globalSize[1]);
             if (localSize != null)
                 s += String.format("\tLocal: %d x %d", localSize[0], localSize[1]);
         }
         if (levels == 3) {
-            localSize = createLocalSize3D(device, globalSize, localLimit);
+            localSize = createLocalSize3D(device, globalSize, localLimit, maxGroupSize);
             s += String.format("\tGlobal: %d x %d x %d", globalSize[0], globalSize[1], globalSize[2]);
             if (localSize != null)
                 s += String.format("\tLocal: %d x %d x %d", localSize[0], localSize[1], localSize[2]);
         }
-        if (MGOptions.Backend.Debug > 0) {
+        if (MGOptions.Backend.Debug > 0 && log != null) {
             log.println(s);
         }
 
         return localSize;
     }
 
-    public static long[] createLocalSize1D(OpenCLDevice device, long[] globalSize, Long[] LocalLimit) {
+    public static long[] createLocalSize1D(OpenCLDevice device, long[] globalSize, Long[] LocalLimit, long maxGroupSize) {
         long[] localSize = new long[]{1, 1, 1};
 
         if (globalSize[0] == 0) {
             return localSize;
         }
 
-        final long[] factors = getFactors(globalSize[0], Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0]), device.getMaxWorkGroupSize());
+        final long[] factors = getFactors(globalSize[0], Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0]), maxGroupSize);
 
         localSize[0] = factors[factors.length - 1];
 
-        boolean valid = ((localSize[0] > 0) && (localSize[0] <= Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0])) && (localSize[0] <= device.getMaxWorkGroupSize()) &&
+        boolean valid = ((localSize[0] > 0) && (localSize[0] <= Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0])) && (localSize[0] <= maxGroupSize) &&
                         ((globalSize[0] % localSize[0]) == 0));
 
         return valid ? localSize : null;
     }
 
-    public static long[] createLocalSize2D(OpenCLDevice device, long[] globalSize, Long[] LocalLimit) {
+    public static long[] createLocalSize2D(OpenCLDevice device, long[] globalSize, Long[] LocalLimit, long maxGroupSize) {
         long[] localSize = new long[]{1, 1, 1};
 
-        final long[] widthFactors = getFactors(globalSize[0], Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0]), device.getMaxWorkGroupSize());
-        final long[] heightFactors = getFactors(globalSize[1], Math.min(device.getMaxWorkItemSizes()[1], LocalLimit[1]), device.getMaxWorkGroupSize());
+        final long[] widthFactors = getFactors(globalSize[0], Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0]), maxGroupSize);
+        final long[] heightFactors = getFactors(globalSize[1], Math.min(device.getMaxWorkItemSizes()[1], LocalLimit[1]), maxGroupSize);
 
         localSize[0] = 1;
         localSize[1] = 1;
@@ -164,7 +160,7 @@ public class OpenCLUtil {
         for (final long w : widthFactors) {
             for (final long h : heightFactors) {
                 final long size = w * h;
-                if (size > device.getMaxWorkGroupSize()) {
+                if (size > maxGroupSize) {
                     break;
                 }
 
@@ -186,17 +182,17 @@ public class OpenCLUtil {
 
         boolean valid = ((localSize[0] > 0) && (localSize[1] > 0) && (localSize[0] <= Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0])) &&
                         (localSize[1] <= Math.min(device.getMaxWorkItemSizes()[1], LocalLimit[1])) &&
-                        ((localSize[0] * localSize[1]) <= device.getMaxWorkGroupSize()) && ((globalSize[0] % localSize[0]) == 0) && ((globalSize[1] % localSize[1]) == 0));
+                        ((localSize[0] * localSize[1]) <= maxGroupSize) && ((globalSize[0] % localSize[0]) == 0) && ((globalSize[1] % localSize[1]) == 0));
 
         return valid ? localSize : null;
     }
 
-    public static long[] createLocalSize3D(OpenCLDevice device, long[] globalSize, Long[] LocalLimit) {
+    public static long[] createLocalSize3D(OpenCLDevice device, long[] globalSize, Long[] LocalLimit, long maxGroupSize) {
         long[] localSize = new long[]{1, 1, 1};
 
-        final long[] widthFactors = getFactors(globalSize[0], Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0]), device.getMaxWorkGroupSize());
-        final long[] heightFactors = getFactors(globalSize[1], Math.min(device.getMaxWorkItemSizes()[1], LocalLimit[1]), device.getMaxWorkGroupSize());
-        final long[] depthFactors = getFactors(globalSize[2], Math.min(device.getMaxWorkItemSizes()[2], LocalLimit[2]), device.getMaxWorkGroupSize());
+        final long[] widthFactors = getFactors(globalSize[0], Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0]), maxGroupSize);
+        final long[] heightFactors = getFactors(globalSize[1], Math.min(device.getMaxWorkItemSizes()[1], LocalLimit[1]), maxGroupSize);
+        final long[] depthFactors = getFactors(globalSize[2], Math.min(device.getMaxWorkItemSizes()[2], LocalLimit[2]), maxGroupSize);
 
         localSize[0] = 1;
         localSize[1] = 1;
@@ -209,7 +205,7 @@ public class OpenCLUtil {
             for (final long h : heightFactors) {
                 for (final long d : depthFactors) {
                     final long size = w * h * d;
-                    if (size > device.getMaxWorkGroupSize()) {
+                    if (size > maxGroupSize) {
                         break;
                     }
 
@@ -231,7 +227,7 @@ public class OpenCLUtil {
             }
         }
 
-        boolean valid = ((localSize[0] > 0) && (localSize[1] > 0) && (localSize[2] > 0) && ((localSize[0] * localSize[1] * localSize[2]) <= device.getMaxWorkGroupSize()) &&
+        boolean valid = ((localSize[0] > 0) && (localSize[1] > 0) && (localSize[2] > 0) && ((localSize[0] * localSize[1] * localSize[2]) <= maxGroupSize) &&
                         (localSize[0] <= Math.min(device.getMaxWorkItemSizes()[0], LocalLimit[0])) && (localSize[1] <= Math.min(device.getMaxWorkItemSizes()[1], LocalLimit[1])) &&
                         (localSize[2] <= Math.min(device.getMaxWorkItemSizes()[2], LocalLimit[2])) &&
                         ((globalSize[0] % localSize[0]) == 0) && ((globalSize[1] % localSize[1]) == 0) && ((globalSize[2] % localSize[2]) == 0));
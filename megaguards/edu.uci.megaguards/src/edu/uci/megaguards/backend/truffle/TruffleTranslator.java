@@ -25,9 +25,13 @@
 package edu.uci.megaguards.backend.truffle;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.FrameDescriptor;
@@ -38,7 +42,17 @@ import edu.uci.megaguards.MGNodeOptions;
 import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.bounds.FinalizedVariableValues;
 import edu.uci.megaguards.analysis.bounds.node.MGBoundNode;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeBinOp;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeBuiltinFunction;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeEither;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeLimit;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeLiteral;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeRange;
+import edu.uci.megaguards.analysis.bounds.node.MGBoundNodeVariable;
 import edu.uci.megaguards.analysis.exception.CoverageException;
+import edu.uci.megaguards.analysis.exception.MGException;
+import edu.uci.megaguards.analysis.parallel.LoopFusion;
+import edu.uci.megaguards.analysis.parallel.LoopTiling;
 import edu.uci.megaguards.analysis.parallel.exception.DataDependenceException;
 import edu.uci.megaguards.ast.env.MGBaseEnv;
 import edu.uci.megaguards.ast.env.MGEnvASTCheck;
@@ -54,6 +68,7 @@ import edu.uci.megaguards.ast.node.MGNodeBlock;
 import edu.uci.megaguards.ast.node.MGNodeBreak;
 import edu.uci.megaguards.ast.node.MGNodeBreakElse;
 import edu.uci.megaguards.ast.node.MGNodeBuiltinFunction;
+import edu.uci.megaguards.ast.node.MGNodeBuiltinFunction.BuiltinFunctionType;
 import edu.uci.megaguards.ast.node.MGNodeEmpty;
 import edu.uci.megaguards.ast.node.MGNodeFor;
 import edu.uci.megaguards.ast.node.MGNodeFunctionCall;
@@ -85,6 +100,7 @@ import edu.uci.megaguards.backend.parallel.ParallelWorkload;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLAutoDevice;
 import edu.uci.megaguards.backend.truffle.node.MGTBinaryArithmetic;
 import edu.uci.megaguards.backend.truffle.node.MGTBinaryBoolean;
+import edu.uci.megaguards.backend.truffle.node.MGTBoundGuard;
 import edu.uci.megaguards.backend.truffle.node.MGTCall;
 import edu.uci.megaguards.backend.truffle.node.MGTCall.MGTCallVoid;
 import edu.uci.megaguards.backend.truffle.node.MGTControl;
@@ -110,6 +126,10 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
 
     private static final String RETURN = "<ret_val>";
     private static final String BACKUP = "<backup>";
+    private static final String RANGE = "<range>";
+
+    /*- Nested versioned loops double the translated code at each level */
+    private static final int MAX_VERSIONING_DEPTH = 2;
 
     private MGTOperand<?> returnFrame;
     private FrameDescriptor frameDescriptor;
@@ -124,6 +144,20 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
 
     private MGObjectTracker changesTracker;
 
+    /*- Loops are already running on the worker threads */
+    private boolean parallelRegion;
+    /*- Loops produced by fusion, proven free of loop carried dependences */
+    private final Set<MGNodeFor> fusedLoops;
+
+    /*- Runtime checks met while translating the body of the loops being versioned */
+    private ArrayList<VersionedCheck> versionChecks;
+    /*- Checks verified by the guard of an enclosing check-free loop version */
+    private final Set<MGBoundNode> provenBounds;
+    /*- Induction variables of the versioned loops being translated, outermost first */
+    private final ArrayList<MGTOperand<Integer>> versionedLoops;
+    /*- Translating the check-free copy of a loop body */
+    private boolean uncheckedCopy;
+
     @TruffleBoundary
     public TruffleTranslator(MGLog log) {
         this.log = log;
@@ -134,6 +168,11 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
         this.truffleArrayUse = new HashSet<>();
         this.restoresList = null;
         this.backupsList = null;
+        this.versionChecks = null;
+        this.provenBounds = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.fusedLoops = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.versionedLoops = new ArrayList<>();
+        this.uncheckedCopy = false;
     }
 
     @TruffleBoundary
@@ -190,29 +229,131 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
 
     @TruffleBoundary
     public MGTruffle translateToCall(MGGlobalEnv env) {
-        return translate(env, false);
+        return translate(env, false, false);
     }
 
     @SuppressWarnings("unchecked")
     @TruffleBoundary
-    private MGTLoop.For processGlobalTruffleLoop(MGGlobalEnv env) {
-        final MGTNode<?> body = visitor(env.getMGRootNode());
+    private MGTLoop processGlobalTruffleLoop(MGGlobalEnv env, boolean threaded, boolean outerIndependent) {
         final MGTOperand<Integer> inductionVar = (MGTOperand<Integer>) localVarOperand(env.getIteratorVar()[0].getName(), DataType.Int);
         final MGTNode<Integer> start = new MGTOperand.ArgOperand<>(0, DataType.Int);
         final MGTNode<Integer> stop = new MGTOperand.ArgOperand<>(1, DataType.Int);
         final MGTNode<Integer> step = new MGTOperand.ArgOperand<>(2, DataType.Int);
-        final MGTLoop.For fornode = new MGTLoop.For(inductionVar, start, stop, step, body);
-        return fornode;
+        if (!threaded && outerIndependent && MGOptions.Backend.loopTiling) {
+            final HashSet<String> outerVars = new HashSet<>();
+            outerVars.add(env.getIteratorVar()[0].getName());
+            final ArrayList<MGNodeFor> nest = LoopTiling.getNest(env, env.getMGRootNode(), outerVars, LoopTiling.MAX_LEVELS - 1);
+            if (nest.size() > 0 && LoopTiling.isPermutable(nest, 0)) {
+                final MGTLoop tiled = processTiledLoops(inductionVar, new MGTNode<?>[]{start, stop, step}, nest);
+                if (tiled != null)
+                    return tiled;
+            }
+        }
+        if (threaded) {
+            final MGTLoop collapsed = processCollapsedLoops(env, inductionVar, new MGTNode<?>[]{start, stop, step});
+            if (collapsed != null)
+                return collapsed;
+        }
+        if (threaded)
+            return versionedLoop(MGTLoop.For.ParallelFor::new, inductionVar, start, stop, step, env.getMGRootNode());
+        return versionedLoop(MGTLoop.For::new, inductionVar, start, stop, step, env.getMGRootNode());
+    }
+
+    /**
+     * Collapses the global loop with the independent loops perfectly nested in it, so that all of
+     * them are split among the JVM workers.
+     *
+     * @return null if there is no such nested loop.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @TruffleBoundary
+    private MGTLoop processCollapsedLoops(MGGlobalEnv env, MGTOperand<Integer> inductionVar, MGTNode<?>[] range) {
+        final HashSet<String> outerVars = new HashSet<>();
+        outerVars.add(env.getIteratorVar()[0].getName());
+        final ArrayList<MGNodeFor> nest = LoopTiling.getNest(env, env.getMGRootNode(), outerVars, Integer.MAX_VALUE);
+        int levels = 1;
+        while (levels <= nest.size() && !nest.get(levels - 1).isDependenceExists())
+            levels++;
+        if (levels == 1)
+            return null;
+
+        final MGTOperand<Integer>[] inductionVars = new MGTOperand[levels];
+        final MGTNode<Integer>[] starts = new MGTNode[levels];
+        final MGTNode<Integer>[] stops = new MGTNode[levels];
+        final MGTNode<Integer>[] steps = new MGTNode[levels];
+        inductionVars[0] = inductionVar;
+        starts[0] = (MGTNode<Integer>) range[0];
+        stops[0] = (MGTNode<Integer>) range[1];
+        steps[0] = (MGTNode<Integer>) range[2];
+        for (int l = 1; l < levels; l++) {
+            final LoopInfo info = nest.get(l - 1).getLoopInfo();
+            final MGTNode<?>[] r = processRange(info);
+            inductionVars[l] = (MGTOperand<Integer>) processOperand(info.getInductionVariable());
+            starts[l] = (MGTNode<Integer>) r[0];
+            stops[l] = (MGTNode<Integer>) r[1];
+            steps[l] = (MGTNode<Integer>) r[2];
+        }
+        final MGTNode<?> body = visitor(nest.get(levels - 2).getForBody());
+        if (MGOptions.Backend.Debug > 0)
+            log.println("Collapsed " + levels + " loops");
+
+        return new MGTLoop.CollapsedParallelFor(inductionVars, starts, stops, steps, body);
+    }
+
+    /**
+     * Tiles the loop of {@code inductionVar} together with the perfectly nested loops of
+     * {@code nest}.
+     *
+     * @return null if the accessed arrays are too small to benefit from tiling.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @TruffleBoundary
+    private MGTLoop processTiledLoops(MGTOperand<Integer> inductionVar, MGTNode<?>[] range, ArrayList<MGNodeFor> nest) {
+        final int tileSize = LoopTiling.getTileSize(currentEnv.getGlobalEnv());
+        if (tileSize == 0)
+            return null;
+
+        final int levels = nest.size() + 1;
+        final MGTOperand<Integer>[] inductionVars = new MGTOperand[levels];
+        final MGTNode<Integer>[] starts = new MGTNode[levels];
+        final MGTNode<Integer>[] stops = new MGTNode[levels];
+        final MGTNode<Integer>[] steps = new MGTNode[levels];
+        final int[] tileSizes = new int[levels];
+        inductionVars[0] = inductionVar;
+        starts[0] = (MGTNode<Integer>) range[0];
+        stops[0] = (MGTNode<Integer>) range[1];
+        steps[0] = (MGTNode<Integer>) range[2];
+        for (int l = 1; l < levels; l++) {
+            final LoopInfo info = nest.get(l - 1).getLoopInfo();
+            final MGTNode<?>[] r = processRange(info);
+            inductionVars[l] = (MGTOperand<Integer>) processOperand(info.getInductionVariable());
+            starts[l] = (MGTNode<Integer>) r[0];
+            stops[l] = (MGTNode<Integer>) r[1];
+            steps[l] = (MGTNode<Integer>) r[2];
+        }
+        Arrays.fill(tileSizes, tileSize);
+        final MGTNode<?> body = visitor(nest.get(nest.size() - 1).getForBody());
+        log.setOptionValue("TiledLoops", 1);
+        if (MGOptions.Backend.Debug > 0)
+            log.println("Tiled " + levels + " loops with tile size " + tileSize);
+
+        return new MGTLoop.TiledFor(inductionVars, starts, stops, steps, tileSizes, body);
+    }
+
+    @TruffleBoundary
+    private MGTruffle translate(MGGlobalEnv env, boolean isLoop, boolean threaded) {
+        return translate(env, isLoop, threaded, false);
     }
 
     @TruffleBoundary
-    private MGTruffle translate(MGGlobalEnv env, boolean isLoop) {
-        final boolean TruffleMode = MGOptions.Backend.target == ExecutionMode.Truffle;
+    private MGTruffle translate(MGGlobalEnv env, boolean isLoop, boolean threaded, boolean outerIndependent) {
+        final boolean TruffleMode = !MGOptions.Backend.target.isOpenCL();
+        parallelRegion = threaded;
         changesTracker = new MGObjectTracker(env.sizeOfChangeList());
         processUserFunctions(env);
         currentEnv = env;
         frameDescriptor = new FrameDescriptor();
-        final MGTruffle root = new MGTruffle(env, frameDescriptor);
+        final MGTruffle root = threaded ? new MGTruffle.ThreadedLoop(env, frameDescriptor) : new MGTruffle(env, frameDescriptor);
         restoresList = new HashMap<>();
         backupsList = new HashMap<>();
         final MGTNode<?>[] params = new MGTNode<?>[currentEnv.getParameters().size() - currentEnv.getNumLocalParams()];
@@ -233,7 +374,7 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
 
         final MGTNode<?> rootNode;
         if (isLoop) {
-            rootNode = processGlobalTruffleLoop(env);
+            rootNode = processGlobalTruffleLoop(env, threaded, outerIndependent);
         } else {
             rootNode = visitor(env.getMGRootNode());
         }
@@ -293,7 +434,23 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
 
     @TruffleBoundary
     public MGTruffle translateToLoop(MGGlobalEnv env) {
-        return translate(env, true);
+        return translate(env, true, false);
+    }
+
+    /**
+     * @param outerIndependent the global loop is free of loop carried dependences and can be
+     *            tiled with its nested loops.
+     */
+    @TruffleBoundary
+    public MGTruffle translateToLoop(MGGlobalEnv env, boolean outerIndependent) {
+        final MGTruffle root = translate(env, true, false, outerIndependent);
+        root.setOuterIndependent(outerIndependent);
+        return root;
+    }
+
+    @TruffleBoundary
+    public MGTruffle translateToThreadedLoop(MGGlobalEnv env) {
+        return translate(env, true, true);
     }
 
     private MGTNode<?> visitor(MGNode root) {
@@ -359,7 +516,9 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
         final String name = arrayValue.getName();
         final MGBoundNode bound = arrayValue.getBounds()[i];
         final MGTNode<Integer> dimSize = (MGTNode<Integer>) localVarOperand(name + MGBaseEnv.DIMSIZE + i, DataType.Int);
-        if (bound != null && bound.isRequireBoundCheck()) {
+        if (bound != null && bound.isRequireBoundCheck() && !provenBounds.contains(bound)) {
+            if (versionChecks != null)
+                versionChecks.add(new VersionedCheck(bound, arrayValue, i, DataType.Int));
             if (MGOptions.Backend.BoundCheckDebug > 0) {
                 MGLog.printlnErrTagged(" Runtime Bound Check set '" + arrayValue.getName() + "[ " + idx + " ]' dimension: " + i);
             }
@@ -720,6 +879,14 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
         return NotSupported();
     }
 
+    private boolean overflowCheck(MGNodeBinOp node) {
+        if (!node.overflowCheck() || provenBounds.contains(node.getBound()))
+            return false;
+        if (versionChecks != null && node.getBound() != null)
+            versionChecks.add(new VersionedCheck(node.getBound(), null, 0, node.getExpectedType()));
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     public MGTNode<?> visitBinOp(MGNodeBinOp node) {
         DataType ltype = node.getLeft().getExpectedType();
@@ -753,17 +920,17 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
                 rightL = ensureLong(visitor(node.getRight()));
                 switch (node.getType()) {
                     case ADD:
-                        if (node.overflowCheck())
+                        if (overflowCheck(node))
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticLong.AddOFNode(leftL, rightL);
                         else
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticLong.AddNode(leftL, rightL);
                     case MUL:
-                        if (node.overflowCheck())
+                        if (overflowCheck(node))
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticLong.MulOFNode(leftL, rightL);
                         else
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticLong.MulNode(leftL, rightL);
                     case SUB:
-                        if (node.overflowCheck())
+                        if (overflowCheck(node))
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticLong.SubOFNode(leftL, rightL);
                         else
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticLong.SubNode(leftL, rightL);
@@ -791,17 +958,17 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
                 rightI = ensureInt(visitor(node.getRight()));
                 switch (node.getType()) {
                     case ADD:
-                        if (node.overflowCheck())
+                        if (overflowCheck(node))
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticInt.AddOFNode(leftI, rightI);
                         else
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticInt.AddNode(leftI, rightI);
                     case MUL:
-                        if (node.overflowCheck())
+                        if (overflowCheck(node))
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticInt.MulOFNode(leftI, rightI);
                         else
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticInt.MulNode(leftI, rightI);
                     case SUB:
-                        if (node.overflowCheck())
+                        if (overflowCheck(node))
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticInt.SubOFNode(leftI, rightI);
                         else
                             return new MGTBinaryArithmetic.MGTBinaryArithmeticInt.SubNode(leftI, rightI);
@@ -899,13 +1066,84 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
     }
 
     public MGTNode<?> visitBlock(MGNodeBlock node) {
-        MGTNode<?>[] block = new MGTNode<?>[node.getChildren().size()];
-        for (int i = 0; i < node.getChildren().size(); i++)
-            block[i] = visitor(node.getChildren().get(i));
+        final ArrayList<MGNode> children = isLoopFusion() ? fuseLoops(node.getChildren()) : node.getChildren();
+        MGTNode<?>[] block = new MGTNode<?>[children.size()];
+        for (int i = 0; i < children.size(); i++)
+            block[i] = visitor(children.get(i));
 
         return new MGTControl.Block(block);
     }
 
+    private boolean isLoopFusion() {
+        return MGOptions.Backend.loopFusion && MGOptions.Backend.target != ExecutionMode.Truffle;
+    }
+
+    /**
+     * Replaces runs of adjacent loops over the same range by a single loop, as long as the fused
+     * loop is still free of loop carried dependences.
+     */
+    @TruffleBoundary
+    private ArrayList<MGNode> fuseLoops(ArrayList<MGNode> children) {
+        final ArrayList<MGNode> fusedChildren = new ArrayList<>(children.size());
+        MGNodeFor current = null;
+        int fused = 0;
+        for (MGNode n : children) {
+            if (current != null && n instanceof MGNodeFor && LoopFusion.canFuse(current, (MGNodeFor) n)) {
+                final MGNodeFor candidate = LoopFusion.fuse(current, (MGNodeFor) n);
+                if (isIndependent(candidate)) {
+                    current = candidate;
+                    fused++;
+                    continue;
+                }
+            }
+            if (current != null)
+                addFused(fusedChildren, current, children);
+            current = null;
+            if (n instanceof MGNodeFor)
+                current = (MGNodeFor) n;
+            else
+                fusedChildren.add(n);
+        }
+        if (current != null)
+            addFused(fusedChildren, current, children);
+        if (fused == 0)
+            return children;
+
+        if (!uncheckedCopy)
+            log.setOptionValue("FusedLoops", log.getOptionValueLong("FusedLoops") + fused);
+        if (MGOptions.Backend.Debug > 0)
+            log.println("Fused " + fused + " loops");
+        return fusedChildren;
+    }
+
+    private void addFused(ArrayList<MGNode> fusedChildren, MGNodeFor loop, ArrayList<MGNode> children) {
+        if (!children.contains(loop))
+            fusedLoops.add(loop);
+        fusedChildren.add(loop);
+    }
+
+    /**
+     * @return true if the loop was proven free of loop carried dependences.
+     */
+    @TruffleBoundary
+    private boolean isIndependent(MGNodeFor node) {
+        if (node.hasBreak() || !MGOptions.Backend.AthenaPet)
+            return false;
+        if (!node.isDependenceExists())
+            return true;
+        try {
+            final MGGlobalEnv loopEnv = MGEnvBuilder.createInternalEnv(currentEnv, currentEnv.getGlobalEnv(), node);
+            MGEnvASTCheck.checkAST(loopEnv, node);
+            final FinalizedVariableValues finalizedValues = new FinalizedVariableValues(loopEnv);
+            finalizedValues.reloadGlobalLoopInfos();
+            MGParallel.dataDependenceAnalysis(node.getLoopInfo().getOptions(), loopEnv, node.getForBody(), loopEnv.getFinalizedValues(), log);
+        } catch (MGException e) {
+            return false;
+        }
+        node.setDependenceExists(false);
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     public MGTNode<?> visitBreakElse(MGNodeBreakElse node) {
         LoopInfo info = node.getForBody().getLoopInfo();
@@ -1035,9 +1273,7 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
     }
 
     @SuppressWarnings("unchecked")
-    public MGTNode<?> visitFor(MGNodeFor node) {
-        final LoopInfo info = node.getLoopInfo();
-        MGTOperand<Integer> i = (MGTOperand<Integer>) processOperand(info.getInductionVariable());
+    private MGTNode<?>[] processRange(LoopInfo info) {
         MGTNode<Integer> start, step, stop;
         if (info.getStartNode() != null)
             start = ensureInt(visitor(info.getStartNode()));
@@ -1054,7 +1290,20 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
         else
             step = new MGTOperand.ConstOperand<>(((Long) info.getRange()[2]).intValue(), DataType.Int);
 
-        if (MGOptions.Backend.target != ExecutionMode.Truffle) {
+        return new MGTNode<?>[]{start, stop, step};
+    }
+
+    @SuppressWarnings("unchecked")
+    public MGTNode<?> visitFor(MGNodeFor node) {
+        final LoopInfo info = node.getLoopInfo();
+        MGTOperand<Integer> i = (MGTOperand<Integer>) processOperand(info.getInductionVariable());
+        final MGTNode<?>[] range = processRange(info);
+        final MGTNode<Integer> start = (MGTNode<Integer>) range[0];
+        final MGTNode<Integer> stop = (MGTNode<Integer>) range[1];
+        final MGTNode<Integer> step = (MGTNode<Integer>) range[2];
+
+        // inner loops of a threaded region run on the JVM workers and must not launch OpenCL
+        if (MGOptions.Backend.target.isOpenCL() && !parallelRegion) {
             try {
                 final MGTNode<?> parallel = processParallel(node, start, step, stop);
                 if (parallel != null)
@@ -1066,12 +1315,234 @@ public class TruffleTranslator implements MGVisitorIF<MGTNode<?>> {
             }
         }
 
-        final MGTNode<?> body = visitor(node.getForBody());
+        // a fused chain was proven independent while fusing, it is spread over the worker threads
+        if (MGOptions.Backend.target == ExecutionMode.NormalCPU && !parallelRegion && fusedLoops.contains(node)) {
+            parallelRegion = true;
+            final MGTLoop parallel = versionedLoop(MGTLoop.For.ParallelFor::new, i, start, stop, step, node.getForBody());
+            parallelRegion = false;
+            return parallel;
+        }
+
+        if (MGOptions.Backend.loopTiling && !node.isDependenceExists() && LoopTiling.isTileable(node)) {
+            final HashSet<String> outerVars = new HashSet<>();
+            outerVars.add(info.getInductionVariable().getName());
+            final ArrayList<MGNodeFor> nest = LoopTiling.getNest(currentEnv, node.getForBody(), outerVars, LoopTiling.MAX_LEVELS - 1);
+            if (nest.size() > 0 && LoopTiling.isPermutable(nest, 0)) {
+                final MGTLoop tiled = processTiledLoops(i, range, nest);
+                if (tiled != null)
+                    return tiled;
+            }
+        }
+
         if (node.hasBreak())
-            return new MGTLoop.For.ForBreak(i, start, stop, step, body);
+            return versionedLoop(MGTLoop.For.ForBreak::new, i, start, stop, step, node.getForBody());
         else
-            return new MGTLoop.For(i, start, stop, step, body);
+            return versionedLoop(MGTLoop.For::new, i, start, stop, step, node.getForBody());
+
+    }
+
+    private interface LoopFactory {
+        MGTLoop create(MGTOperand<Integer> inductionVar, MGTNode<Integer> start, MGTNode<Integer> stop, MGTNode<Integer> step, MGTNode<?> body);
+    }
+
+    private static final class VersionedCheck {
+        private final MGBoundNode bound;
+        /*- null for overflow checks */
+        private final MGArray array;
+        private final int dim;
+        private final DataType type;
+
+        private VersionedCheck(MGBoundNode bound, MGArray array, int dim, DataType type) {
+            this.bound = bound;
+            this.array = array;
+            this.dim = dim;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Translates {@code body} twice when some of its runtime bound and overflow checks can be
+     * evaluated at loop entry: once with the checks and once without the ones a
+     * {@link MGTBoundGuard} verifies for the actual range before the loop starts. Checks that
+     * depend on values changing inside the loop stay in both versions.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @TruffleBoundary
+    private MGTLoop versionedLoop(LoopFactory factory, MGTOperand<Integer> i, MGTNode<Integer> start, MGTNode<Integer> stop, MGTNode<Integer> step, MGNode body) {
+        if (!MGOptions.Backend.loopVersioning || MGOptions.Backend.target.isOpenCL() || versionedLoops.size() >= MAX_VERSIONING_DEPTH)
+            return factory.create(i, start, stop, step, visitor(body));
+
+        final ArrayList<VersionedCheck> outerChecks = versionChecks;
+        versionChecks = new ArrayList<>();
+        versionedLoops.add(i);
+        final MGTNode<?> checkedBody = visitor(body);
+        final ArrayList<VersionedCheck> checks = versionChecks;
+        versionChecks = outerChecks;
+        if (outerChecks != null)
+            outerChecks.addAll(checks);
+
+        final String name = i.getName();
+        final MGTOperand<Integer>[] range = new MGTOperand[3];
+        for (int r = 0; r < 3; r++)
+            range[r] = (MGTOperand<Integer>) localVarOperand(name + RANGE + r, DataType.Int);
+
+        final ArrayList<MGTBoundGuard.Check> guards = new ArrayList<>();
+        final ArrayList<MGBoundNode> proven = new ArrayList<>();
+        for (VersionedCheck c : checks) {
+            final HashMap<String, LoopInfo> related = c.array != null ? c.array.getRelatedLoopInfos() : null;
+            final MGTBoundGuard.Interval value = guardInterval(c.bound, related, range, 0);
+            if (value == null)
+                continue;
+            if (c.array != null)
+                guards.add(new MGTBoundGuard.InBounds(value, (MGTNode<Integer>) localVarOperand(c.array.getName() + MGBaseEnv.DIMSIZE + c.dim, DataType.Int)));
+            else
+                guards.add(new MGTBoundGuard.NoOverflow(value, c.type));
+            proven.add(c.bound);
+        }
+
+        if (guards.size() == 0) {
+            versionedLoops.remove(versionedLoops.size() - 1);
+            return factory.create(i, start, stop, step, checkedBody);
+        }
+
+        final boolean outerCopy = uncheckedCopy;
+        provenBounds.addAll(proven);
+        versionChecks = null;
+        uncheckedCopy = true;
+        final MGTNode<?> uncheckedBody = visitor(body);
+        uncheckedCopy = outerCopy;
+        versionChecks = outerChecks;
+        provenBounds.removeAll(proven);
+        versionedLoops.remove(versionedLoops.size() - 1);
+
+        final MGTNode<?>[] assigns = new MGTNode<?>[3];
+        assigns[0] = new MGTControl.Assign<>((MGTOperand<Integer>) range[0].copy(), start);
+        assigns[1] = new MGTControl.Assign<>((MGTOperand<Integer>) range[1].copy(), stop);
+        assigns[2] = new MGTControl.Assign<>((MGTOperand<Integer>) range[2].copy(), step);
+        final MGTLoop checked = factory.create(i, (MGTNode<Integer>) range[0].copy(), (MGTNode<Integer>) range[1].copy(), (MGTNode<Integer>) range[2].copy(), checkedBody);
+        final MGTLoop unchecked = factory.create((MGTOperand<Integer>) i.copy(), range[0], range[1], range[2], uncheckedBody);
+        final MGTBoundGuard guard = new MGTBoundGuard(guards.toArray(new MGTBoundGuard.Check[guards.size()]));
+
+        if (!uncheckedCopy)
+            log.setOptionValue("VersionedLoops", log.getOptionValueLong("VersionedLoops") + 1);
+        if (MGOptions.Backend.Debug > 0)
+            log.println("Versioned loop '" + name + "': " + proven.size() + " of " + checks.size() + " checks hoisted to loop entry");
+
+        return new MGTLoop.Versioned(new MGTControl.Block(assigns), guard, checked, unchecked);
+    }
+
+    /**
+     * @return an interval node computing the values {@code bound} takes during the loop ranging
+     *         over {@code range}, or null if some of them are unknown at loop entry.
+     */
+    @TruffleBoundary
+    private MGTBoundGuard.Interval guardInterval(MGBoundNode bound, HashMap<String, LoopInfo> related, MGTOperand<Integer>[] range, int depth) {
+        if (bound == null || depth > 16)
+            return null;
+
+        if (bound instanceof MGBoundNodeLiteral) {
+            if (bound.getType() == DataType.Double)
+                return null;
+            return new MGTBoundGuard.Const(((MGBoundNodeLiteral) bound).getLiteral());
+        }
 
+        if (bound instanceof MGBoundNodeVariable)
+            return guardVariable((MGBoundNodeVariable) bound, related, range, depth);
+
+        if (bound instanceof MGBoundNodeBinOp) {
+            final MGBoundNodeBinOp binop = (MGBoundNodeBinOp) bound;
+            if (bound.getType() != DataType.Int && bound.getType() != DataType.Long)
+                return null;
+            switch (binop.getBinOpType()) {
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case MOD:
+                    break;
+                default:
+                    return null;
+            }
+            final MGTBoundGuard.Interval left = guardInterval(binop.getLeft(), related, range, depth);
+            final MGTBoundGuard.Interval right = guardInterval(binop.getRight(), related, range, depth);
+            if (left == null || right == null)
+                return null;
+            return new MGTBoundGuard.Arith(binop.getBinOpType(), left, right, bound.getType());
+        }
+
+        if (bound instanceof MGBoundNodeRange)
+            return null;
+
+        if (bound instanceof MGBoundNodeBuiltinFunction) {
+            final MGBoundNodeBuiltinFunction builtin = (MGBoundNodeBuiltinFunction) bound;
+            if (builtin.getBuiltinType() != BuiltinFunctionType.MIN && builtin.getBuiltinType() != BuiltinFunctionType.MAX)
+                return null;
+            final MGTBoundGuard.Interval arg1 = guardInterval(builtin.getArg1(), related, range, depth);
+            final MGTBoundGuard.Interval arg2 = guardInterval(builtin.getArg2(), related, range, depth);
+            if (arg1 == null || arg2 == null)
+                return null;
+            return new MGTBoundGuard.MinMax(builtin.getBuiltinType() == BuiltinFunctionType.MIN, arg1, arg2);
+        }
+
+        final MGBoundNode left;
+        final MGBoundNode right;
+        if (bound instanceof MGBoundNodeLimit) {
+            left = ((MGBoundNodeLimit) bound).getMin();
+            right = ((MGBoundNodeLimit) bound).getMax();
+        } else if (bound instanceof MGBoundNodeEither) {
+            left = ((MGBoundNodeEither) bound).getThen();
+            right = ((MGBoundNodeEither) bound).getOrelse();
+        } else {
+            // array values, math functions and calls are not known before the loop runs
+            return null;
+        }
+        final MGTBoundGuard.Interval l = guardInterval(left, related, range, depth);
+        final MGTBoundGuard.Interval r = guardInterval(right, related, range, depth);
+        if (l == null || r == null)
+            return null;
+        return new MGTBoundGuard.Union(l, r);
+    }
+
+    @TruffleBoundary
+    private MGTBoundGuard.Interval guardVariable(MGBoundNodeVariable var, HashMap<String, LoopInfo> related, MGTOperand<Integer>[] range, int depth) {
+        final String name = var.getVariable();
+
+        // The induction variable of the versioned loop
+        final MGTOperand<Integer> own = versionedLoops.get(versionedLoops.size() - 1);
+        if (own.getName().equals(name))
+            return new MGTBoundGuard.Induction(new MGTBoundGuard.Value((MGTNode<?>) range[0].copy()), new MGTBoundGuard.Value((MGTNode<?>) range[1].copy()), new MGTBoundGuard.Value((MGTNode<?>) range[2].copy()));
+
+        // Enclosing loops keep their induction variables during the whole loop
+        for (int l = versionedLoops.size() - 2; l >= 0; l--) {
+            if (versionedLoops.get(l).getName().equals(name))
+                return new MGTBoundGuard.Value((MGTNode<?>) versionedLoops.get(l).copy());
+        }
+
+        // Global Variable
+        final MGStorage param = currentEnv.getParameters().get(name);
+        final boolean constant = currentEnv.getConstantIntVars().containsKey(name) || (!currentEnv.isGlobalEnv() && currentEnv.getGlobalEnv().getConstantIntVars().containsKey(name));
+        if (constant && param != null && (param.getDataType() == DataType.Int || param.getDataType() == DataType.Long))
+            return new MGTBoundGuard.Value(localVarOperand(name, param.getDataType()));
+
+        // Nested loops
+        LoopInfo info = related != null ? related.get(name) : null;
+        if (info == null) {
+            for (LoopInfo existing : currentEnv.getExistingLoopInfos()) {
+                if (existing != null && existing.getInductionVariable().getName().equals(name)) {
+                    if (info != null)
+                        return null;
+                    info = existing;
+                }
+            }
+        }
+        if (info == null || info.getBounds() == null)
+            return null;
+        final MGTBoundGuard.Interval start = guardInterval(info.getBounds().getStart(), related, range, depth + 1);
+        final MGTBoundGuard.Interval stop = guardInterval(info.getBounds().getStop(), related, range, depth + 1);
+        final MGTBoundGuard.Interval step = guardInterval(info.getBounds().getStep(), related, range, depth + 1);
+        if (start == null || stop == null || step == null)
+            return null;
+        return new MGTBoundGuard.Induction(start, stop, step);
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.backend.truffle.node;
+
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.Node;
+
+import edu.uci.megaguards.ast.node.MGNodeBinOp.BinOpType;
+import edu.uci.megaguards.object.DataType;
+
+/**
+ * Evaluates, at loop entry, the index and overflow bounds that could not be proven at translation
+ * time. Each bound is computed as an interval from the current values of the loop range and of
+ * the invariant variables it depends on.
+ *
+ * @return true if every index stays within its dimension and no arithmetic overflows during the
+ *         whole loop.
+ */
+public final class MGTBoundGuard extends MGTNode<Boolean> {
+
+    @Children private final Check[] checks;
+
+    public MGTBoundGuard(Check[] checks) {
+        super(DataType.Bool);
+        this.checks = checks;
+    }
+
+    @ExplodeLoop
+    @Override
+    public Boolean execute(VirtualFrame frame) {
+        final long[] range = new long[2];
+        for (Check c : checks) {
+            if (!c.execute(frame, range))
+                return false;
+        }
+        return true;
+    }
+
+    public abstract static class Check extends Node {
+
+        @Child protected Interval value;
+
+        protected Check(Interval value) {
+            this.value = value;
+        }
+
+        public abstract boolean execute(VirtualFrame frame, long[] range);
+
+    }
+
+    public static final class InBounds extends Check {
+
+        @Child private MGTNode<Integer> dimSize;
+
+        public InBounds(Interval value, MGTNode<Integer> dimSize) {
+            super(value);
+            this.dimSize = dimSize;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            if (!value.execute(frame, range))
+                return false;
+            return range[0] >= 0 && range[1] < dimSize.execute(frame);
+        }
+
+    }
+
+    public static final class NoOverflow extends Check {
+
+        private final DataType type;
+
+        public NoOverflow(Interval value, DataType type) {
+            super(value);
+            this.type = type;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            if (!value.execute(frame, range))
+                return false;
+            if (type == DataType.Int)
+                return range[0] >= Integer.MIN_VALUE && range[1] <= Integer.MAX_VALUE;
+            return true;
+        }
+
+    }
+
+    /**
+     * Writes the smallest and the largest value an expression can take into {@code range}.
+     *
+     * @return false if the interval cannot be computed.
+     */
+    public abstract static class Interval extends Node {
+
+        public abstract boolean execute(VirtualFrame frame, long[] range);
+
+    }
+
+    public static final class Const extends Interval {
+
+        private final long value;
+
+        public Const(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            range[0] = value;
+            range[1] = value;
+            return true;
+        }
+
+    }
+
+    /**
+     * The current value of a variable that does not change inside the loop.
+     */
+    public static final class Value extends Interval {
+
+        @Child private MGTNode<?> node;
+
+        public Value(MGTNode<?> node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            final Object v = node.execute(frame);
+            final long l;
+            if (v instanceof Integer)
+                l = (int) v;
+            else if (v instanceof Long)
+                l = (long) v;
+            else
+                return false;
+            range[0] = l;
+            range[1] = l;
+            return true;
+        }
+
+    }
+
+    /**
+     * The values an induction variable takes while its loop runs with an increasing step.
+     */
+    public static final class Induction extends Interval {
+
+        @Child private Interval start;
+        @Child private Interval stop;
+        @Child private Interval step;
+
+        public Induction(Interval start, Interval stop, Interval step) {
+            this.start = start;
+            this.stop = stop;
+            this.step = step;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            final long[] r = new long[2];
+            if (!step.execute(frame, r) || r[0] <= 0)
+                return false;
+            if (!stop.execute(frame, r))
+                return false;
+            final long last = r[1] - 1;
+            if (!start.execute(frame, range))
+                return false;
+            range[1] = last;
+            return true;
+        }
+
+    }
+
+    public static final class Arith extends Interval {
+
+        private final BinOpType op;
+        private final DataType type;
+        @Child private Interval left;
+        @Child private Interval right;
+
+        public Arith(BinOpType op, Interval left, Interval right, DataType type) {
+            this.op = op;
+            this.type = type;
+            this.left = left;
+            this.right = right;
+        }
+
+        private static long ceilDiv(long x, long y) {
+            return -Math.floorDiv(-x, y);
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            final long[] r = new long[2];
+            if (!left.execute(frame, range) || !right.execute(frame, r))
+                return false;
+            final long lo;
+            final long hi;
+            try {
+                switch (op) {
+                    case ADD:
+                        lo = Math.addExact(range[0], r[0]);
+                        hi = Math.addExact(range[1], r[1]);
+                        break;
+                    case SUB:
+                        lo = Math.subtractExact(range[0], r[1]);
+                        hi = Math.subtractExact(range[1], r[0]);
+                        break;
+                    case MUL:
+                        final long a = Math.multiplyExact(range[0], r[0]);
+                        final long b = Math.multiplyExact(range[0], r[1]);
+                        final long c = Math.multiplyExact(range[1], r[0]);
+                        final long d = Math.multiplyExact(range[1], r[1]);
+                        lo = Math.min(Math.min(a, b), Math.min(c, d));
+                        hi = Math.max(Math.max(a, b), Math.max(c, d));
+                        break;
+                    case DIV:
+                        // Only positive divisors, which keep the quotient monotonic.
+                        if (r[0] != r[1] || r[0] <= 0)
+                            return false;
+                        lo = Math.floorDiv(range[0], r[0]);
+                        hi = ceilDiv(range[1], r[0]);
+                        break;
+                    case MOD:
+                        if (r[0] != r[1] || r[0] <= 0)
+                            return false;
+                        lo = range[0] >= 0 ? 0 : 1 - r[0];
+                        hi = range[0] >= 0 ? Math.min(range[1], r[0] - 1) : r[0] - 1;
+                        break;
+                    default:
+                        return false;
+                }
+            } catch (ArithmeticException e) {
+                return false;
+            }
+            if (type == DataType.Int && (lo < Integer.MIN_VALUE || hi > Integer.MAX_VALUE))
+                return false;
+            range[0] = lo;
+            range[1] = hi;
+            return true;
+        }
+
+    }
+
+    public static final class MinMax extends Interval {
+
+        private final boolean isMin;
+        @Child private Interval left;
+        @Child private Interval right;
+
+        public MinMax(boolean isMin, Interval left, Interval right) {
+            this.isMin = isMin;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            final long[] r = new long[2];
+            if (!left.execute(frame, range) || !right.execute(frame, r))
+                return false;
+            if (isMin) {
+                range[0] = Math.min(range[0], r[0]);
+                range[1] = Math.min(range[1], r[1]);
+            } else {
+                range[0] = Math.max(range[0], r[0]);
+                range[1] = Math.max(range[1], r[1]);
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * A value that comes from either side, or lies between them.
+     */
+    public static final class Union extends Interval {
+
+        @Child private Interval left;
+        @Child private Interval right;
+
+        public Union(Interval left, Interval right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean execute(VirtualFrame frame, long[] range) {
+            final long[] r = new long[2];
+            if (!left.execute(frame, range) || !right.execute(frame, r))
+                return false;
+            range[0] = Math.min(range[0], r[0]);
+            range[1] = Math.max(range[1], r[1]);
+            return true;
+        }
+
+    }
+
+}
@@ -25,8 +25,11 @@
 package edu.uci.megaguards.backend.truffle.node;
 
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.frame.VirtualFrame;
 
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter;
 import edu.uci.megaguards.backend.truffle.exception.MGTBreakException;
 import edu.uci.megaguards.object.DataType;
 
@@ -117,6 +120,246 @@ public abstract class MGTLoop extends MGTControl {
             }
 
         }
+
+        public static final class ParallelFor extends For {
+
+            public ParallelFor(MGTOperand<Integer> inductionVar, MGTNode<Integer> start, MGTNode<Integer> stop, MGTNode<Integer> step, MGTNode<?> body) {
+                super(inductionVar, start, stop, step, body);
+            }
+
+            private void executeChunk(VirtualFrame frame, int from, int to, int t) {
+                for (int s = from; s < to; s += t) {
+                    inductionVar.executeWrite(frame, s);
+                    body.execute(frame);
+                }
+            }
+
+            @TruffleBoundary
+            private void executeParallel(MaterializedFrame frame, int s, int e, int t) {
+                JVMExecuter.forEachChunk(s, e, t, (from, to) -> executeChunk(JVMExecuter.createWorkerFrame(frame), from, to, t));
+            }
+
+            @Override
+            public Object execute(VirtualFrame frame) {
+                int s = start.execute(frame);
+                int t = step.execute(frame);
+                int e = stop.execute(frame);
+                executeParallel(frame.materialize(), s, e, t);
+                return null;
+            }
+
+        }
+    }
+
+    /**
+     * Two versions of the same loop, one of them without the bound and overflow checks its guard
+     * verifies at loop entry. The range is evaluated once by {@code entry} and shared by the guard
+     * and both versions.
+     */
+    public static final class Versioned extends MGTLoop {
+        @Child private MGTNode<?> entry;
+        @Child private MGTBoundGuard guard;
+        @Child private MGTLoop unchecked;
+
+        public Versioned(MGTNode<?> entry, MGTBoundGuard guard, MGTLoop checked, MGTLoop unchecked) {
+            this.entry = entry;
+            this.guard = guard;
+            this.body = checked;
+            this.unchecked = unchecked;
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            entry.execute(frame);
+            if (guard.execute(frame))
+                unchecked.execute(frame);
+            else
+                body.execute(frame);
+            return null;
+        }
+
+    }
+
+    /**
+     * Perfectly nested independent loops with invariant ranges linearized into a single iteration
+     * space, which is split among the JVM workers. Only the outermost levels are collapsed if the
+     * whole iteration space does not fit in an int.
+     */
+    public static final class CollapsedParallelFor extends MGTLoop {
+        @Children private final MGTOperand<Integer>[] inductionVars;
+        @Children private final MGTNode<Integer>[] starts;
+        @Children private final MGTNode<Integer>[] stops;
+        @Children private final MGTNode<Integer>[] steps;
+
+        public CollapsedParallelFor(MGTOperand<Integer>[] inductionVars, MGTNode<Integer>[] starts, MGTNode<Integer>[] stops, MGTNode<Integer>[] steps, MGTNode<?> body) {
+            this.inductionVars = inductionVars;
+            this.starts = starts;
+            this.stops = stops;
+            this.steps = steps;
+            this.body = body;
+        }
+
+        private void executeInner(VirtualFrame frame, int level, int[] s, int[] t, long[] count) {
+            final int n = inductionVars.length;
+            final long[] idx = new long[n];
+            for (int l = level; l < n; l++)
+                inductionVars[l].executeWrite(frame, s[l]);
+            while (true) {
+                body.execute(frame);
+                int l = n - 1;
+                for (; l >= level; l--) {
+                    if (++idx[l] < count[l]) {
+                        inductionVars[l].executeWrite(frame, (int) (s[l] + idx[l] * t[l]));
+                        break;
+                    }
+                    idx[l] = 0;
+                    inductionVars[l].executeWrite(frame, s[l]);
+                }
+                if (l < level)
+                    return;
+            }
+        }
+
+        private void executeChunk(VirtualFrame frame, int from, int to, int collapsed, int[] s, int[] t, long[] count) {
+            final long[] idx = new long[collapsed];
+            long rest = from;
+            for (int l = collapsed - 1; l >= 0; l--) {
+                idx[l] = rest % count[l];
+                rest /= count[l];
+            }
+            for (int x = from; x < to; x++) {
+                for (int l = 0; l < collapsed; l++)
+                    inductionVars[l].executeWrite(frame, (int) (s[l] + idx[l] * t[l]));
+                executeInner(frame, collapsed, s, t, count);
+                for (int l = collapsed - 1; l >= 0; l--) {
+                    if (++idx[l] < count[l])
+                        break;
+                    idx[l] = 0;
+                }
+            }
+        }
+
+        @TruffleBoundary
+        private void executeParallel(MaterializedFrame frame, int total, int collapsed, int[] s, int[] t, long[] count) {
+            JVMExecuter.forEachChunk(0, total, 1, (from, to) -> executeChunk(JVMExecuter.createWorkerFrame(frame), from, to, collapsed, s, t, count));
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            final int n = inductionVars.length;
+            final int[] s = new int[n];
+            final int[] t = new int[n];
+            final long[] count = new long[n];
+            for (int l = 0; l < n; l++) {
+                s[l] = starts[l].execute(frame);
+                t[l] = steps[l].execute(frame);
+                count[l] = JVMExecuter.getIterations(s[l], stops[l].execute(frame), t[l]);
+                if (count[l] == 0)
+                    return null;
+            }
+            long total = count[0];
+            int collapsed = 1;
+            while (collapsed < n && total * count[collapsed] <= Integer.MAX_VALUE) {
+                total *= count[collapsed];
+                collapsed++;
+            }
+            executeParallel(frame.materialize(), (int) total, collapsed, s, t, count);
+            return null;
+        }
+
+    }
+
+    /**
+     * Perfectly nested loops with invariant ranges traversed tile by tile. A tile size of zero
+     * leaves the level untiled.
+     */
+    public static final class TiledFor extends MGTLoop {
+        @Children private final MGTOperand<Integer>[] inductionVars;
+        @Children private final MGTNode<Integer>[] starts;
+        @Children private final MGTNode<Integer>[] stops;
+        @Children private final MGTNode<Integer>[] steps;
+        @CompilationFinal(dimensions = 1) private final int[] tileSizes;
+
+        public TiledFor(MGTOperand<Integer>[] inductionVars, MGTNode<Integer>[] starts, MGTNode<Integer>[] stops, MGTNode<Integer>[] steps, int[] tileSizes, MGTNode<?> body) {
+            this.inductionVars = inductionVars;
+            this.starts = starts;
+            this.stops = stops;
+            this.steps = steps;
+            this.tileSizes = tileSizes;
+            this.body = body;
+        }
+
+        private void executeTile(VirtualFrame frame, int[] lo, int[] hi, int[] t) {
+            final int inner = inductionVars.length - 1;
+            final int[] p = new int[inner];
+            for (int l = 0; l < inner; l++) {
+                p[l] = lo[l];
+                inductionVars[l].executeWrite(frame, p[l]);
+            }
+            while (true) {
+                for (int x = lo[inner]; x < hi[inner]; x += t[inner]) {
+                    inductionVars[inner].executeWrite(frame, x);
+                    body.execute(frame);
+                }
+                int l = inner - 1;
+                for (; l >= 0; l--) {
+                    p[l] += t[l];
+                    if (p[l] < hi[l])
+                        break;
+                    p[l] = lo[l];
+                }
+                if (l < 0)
+                    return;
+                for (; l < inner; l++)
+                    inductionVars[l].executeWrite(frame, p[l]);
+            }
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            final int n = inductionVars.length;
+            final int[] s = new int[n];
+            final int[] e = new int[n];
+            final int[] t = new int[n];
+            final long[] span = new long[n];
+            for (int l = 0; l < n; l++) {
+                s[l] = starts[l].execute(frame);
+                t[l] = steps[l].execute(frame);
+                e[l] = stops[l].execute(frame);
+                if (s[l] >= e[l]) {
+                    // Nothing reaches the body, only the outer induction variables advance.
+                    for (int o = 0; o < l; o++)
+                        inductionVars[o].executeWrite(frame, s[o] + ((e[o] - 1 - s[o]) / t[o]) * t[o]);
+                    return null;
+                }
+                span[l] = tileSizes[l] == 0 || t[l] <= 0 ? (long) e[l] - s[l] : (long) tileSizes[l] * t[l];
+            }
+
+            final int[] lo = new int[n];
+            final int[] hi = new int[n];
+            for (int l = 0; l < n; l++) {
+                lo[l] = s[l];
+                hi[l] = (int) Math.min(s[l] + span[l], e[l]);
+            }
+            while (true) {
+                executeTile(frame, lo, hi, t);
+                int l = n - 1;
+                for (; l >= 0; l--) {
+                    final long next = lo[l] + span[l];
+                    if (next < e[l]) {
+                        lo[l] = (int) next;
+                        hi[l] = (int) Math.min(next + span[l], e[l]);
+                        break;
+                    }
+                    lo[l] = s[l];
+                    hi[l] = (int) Math.min(s[l] + span[l], e[l]);
+                }
+                if (l < 0)
+                    break;
+            }
+            return null;
+        }
+
     }
 
     public static final class WhileNode extends MGTLoop {
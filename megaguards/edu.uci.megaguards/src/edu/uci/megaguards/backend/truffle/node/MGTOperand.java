@@ -30,7 +30,6 @@ import com.oracle.truffle.api.frame.FrameSlotTypeException;
 import com.oracle.truffle.api.frame.VirtualFrame;
 
 import edu.uci.megaguards.MGOptions;
-import edu.uci.megaguards.backend.ExecutionMode;
 import edu.uci.megaguards.backend.MGObjectTracker;
 import edu.uci.megaguards.object.DataType;
 import edu.uci.megaguards.object.MGArray;
@@ -44,7 +43,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
     public MGTOperand(DataType t, FrameSlot frameSlot) {
         super(t);
         this.frameSlot = frameSlot;
-        this.trackChanges = MGOptions.Backend.target != ExecutionMode.Truffle;
+        this.trackChanges = MGOptions.Backend.target.isOpenCL();
     }
 
     public abstract void executeWrite(VirtualFrame frame, T v);
@@ -204,7 +203,6 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
     public static abstract class Var1DOperand<T> extends MGTOperand<T> {
 
         protected final MGObjectTracker changesTracker;
-        protected int currentHashCode;
         protected int changedIndex;
         protected final MGArray object;
         @Child protected MGTNode<Integer> index1;
@@ -214,7 +212,6 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
             this.index1 = index1;
             this.object = object;
             this.changesTracker = changesTracker;
-            this.currentHashCode = -1;
             this.changedIndex = -1;
         }
 
@@ -223,16 +220,15 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
             return object.getName();
         }
 
-        protected void updatedData(int hashCode) {
-            if (currentHashCode != hashCode) {
-                currentHashCode = hashCode;
-                changedIndex = changesTracker.getIndex(hashCode);
+        protected void updatedData(Object array) {
+            if (!changesTracker.isTracked(changedIndex, array)) {
+                changedIndex = changesTracker.getIndex(array);
             }
             changesTracker.updateDataForTruffle(changedIndex);
         }
 
-        protected void notifyChanges() {
-            changesTracker.setTruffleChanged(changedIndex);
+        protected void notifyChanges(int element, int numElements) {
+            changesTracker.setTruffleChanged(changedIndex, element, numElements);
         }
 
         public static final class Int1DOperand extends Var1DOperand<Integer> {
@@ -247,7 +243,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final int[] array = ((int[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx];
                 } catch (FrameSlotTypeException e) {
@@ -262,7 +258,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((int[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -270,7 +266,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx = index1.execute(frame);
                 array[idx] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    notifyChanges(idx, array.length);
                 }
             }
 
@@ -288,7 +284,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final long[] array = ((long[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx];
                 } catch (FrameSlotTypeException e) {
@@ -302,7 +298,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((long[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -310,7 +306,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx = index1.execute(frame);
                 array[idx] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    notifyChanges(idx, array.length);
                 }
             }
 
@@ -328,7 +324,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final double[] array = ((double[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx];
                 } catch (FrameSlotTypeException e) {
@@ -342,7 +338,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((double[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -350,7 +346,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx = index1.execute(frame);
                 array[idx] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    notifyChanges(idx, array.length);
                 }
             }
 
@@ -368,7 +364,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final boolean[] array = ((boolean[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx];
                 } catch (FrameSlotTypeException e) {
@@ -382,7 +378,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((boolean[]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -390,7 +386,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx = index1.execute(frame);
                 array[idx] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    notifyChanges(idx, array.length);
                 }
             }
 
@@ -420,7 +416,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final int[][] array = ((int[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx1][idx2];
                 } catch (FrameSlotTypeException e) {
@@ -434,7 +430,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((int[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -443,7 +439,8 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx2 = index2.execute(frame);
                 array[idx1][idx2] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    final int rowLength = array[idx1].length;
+                    notifyChanges(idx1 * rowLength + idx2, array.length * rowLength);
                 }
             }
 
@@ -462,7 +459,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final long[][] array = ((long[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx1][idx2];
                 } catch (FrameSlotTypeException e) {
@@ -476,7 +473,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((long[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -485,7 +482,8 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx2 = index2.execute(frame);
                 array[idx1][idx2] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    final int rowLength = array[idx1].length;
+                    notifyChanges(idx1 * rowLength + idx2, array.length * rowLength);
                 }
             }
 
@@ -504,7 +502,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final double[][] array = ((double[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx1][idx2];
                 } catch (FrameSlotTypeException e) {
@@ -518,7 +516,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((double[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -527,7 +525,8 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx2 = index2.execute(frame);
                 array[idx1][idx2] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    final int rowLength = array[idx1].length;
+                    notifyChanges(idx1 * rowLength + idx2, array.length * rowLength);
                 }
             }
 
@@ -546,7 +545,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     final boolean[][] array = ((boolean[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                     return array[idx1][idx2];
                 } catch (FrameSlotTypeException e) {
@@ -560,7 +559,7 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 try {
                     array = ((boolean[][]) frame.getObject(frameSlot));
                     if (trackChanges) {
-                        updatedData(array.hashCode());
+                        updatedData(array);
                     }
                 } catch (FrameSlotTypeException e) {
                     throw new IllegalStateException();
@@ -569,7 +568,8 @@ public abstract class MGTOperand<T> extends MGTNode<T> {
                 final int idx2 = index2.execute(frame);
                 array[idx1][idx2] = v;
                 if (trackChanges) {
-                    notifyChanges();
+                    final int rowLength = array[idx1].length;
+                    notifyChanges(idx1 * rowLength + idx2, array.length * rowLength);
                 }
             }
 
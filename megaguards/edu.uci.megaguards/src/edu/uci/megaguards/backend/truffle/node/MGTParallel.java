@@ -38,7 +38,10 @@ import edu.uci.megaguards.backend.MGParallel;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLAutoDevice;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLDevice;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLMGR;
+import edu.uci.megaguards.log.MGEvents;
 import edu.uci.megaguards.log.MGLog;
+import edu.uci.megaguards.log.MGLogSite;
+import edu.uci.megaguards.log.MGPhase;
 import edu.uci.megaguards.object.DataType;
 import edu.uci.megaguards.object.MGStorage;
 
@@ -54,6 +57,7 @@ public final class MGTParallel extends MGTNode<Object> {
     protected final MGStorage[] local;
     protected final Object[] values;
     protected final SourceSection sourceSection;
+    protected final MGLogSite site;
 
     public MGTParallel(MGParallel funcRoot, MGGlobalEnv loopEnv, MGTNode<Integer> start, MGTNode<Integer> stop, MGTNode<Integer> step, MGStorage[] local, MGTNode<?>[] valueNodes, MGLog log) {
         super(DataType.None);
@@ -66,6 +70,7 @@ public final class MGTParallel extends MGTNode<Object> {
         this.valueNodes = valueNodes;
         this.values = local == null ? null : new Object[local.length];
         this.sourceSection = log.getSourceSection();
+        this.site = MGLogSite.get(sourceSection);
         this.callNode = funcRoot.createCallNode();
     }
 
@@ -81,7 +86,7 @@ public final class MGTParallel extends MGTNode<Object> {
         loopEnv.getRanges()[0][0] = s;
         loopEnv.getRanges()[0][1] = t;
         loopEnv.getRanges()[0][2] = e;
-        final MGLog log = new MGLog(sourceSection);
+        final MGLog log = site.begin();
         for (int i = 0; i < valueNodes.length; i++) {
             values[i] = valueNodes[i].execute(frame);
         }
@@ -131,10 +136,12 @@ public final class MGTParallel extends MGTNode<Object> {
                 throw new IllegalStateException("Device is NULL!");
 
             long st = System.currentTimeMillis();
+            final Object phase = MGEvents.begin(MGPhase.DataTransfer);
 
             changesTracker.getAllOpenCLData();
 
             sharedDTLog.setOptionValue("DataTransferTime", sharedDTLog.getOptionValueLong("DataTransferTime") + (System.currentTimeMillis() - st));
+            MGEvents.commit(phase, sharedDTLog);
             changesTracker.reset();
         }
 
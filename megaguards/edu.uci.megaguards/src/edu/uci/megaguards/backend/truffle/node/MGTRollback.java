@@ -29,7 +29,6 @@ import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
 
 import edu.uci.megaguards.MGOptions;
-import edu.uci.megaguards.backend.ExecutionMode;
 import edu.uci.megaguards.backend.MGObjectTracker;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLData;
 import edu.uci.megaguards.backend.parallel.opencl.OpenCLDevice;
@@ -241,7 +240,7 @@ public abstract class MGTRollback extends MGTControl {
         public Restore(MGTOperand<Object> src, MGTOperand<Object> dest, DataType t, MGObjectTracker changesTracker) {
             super(src, dest, t);
             this.changesTracker = changesTracker;
-            this.trackChanges = MGOptions.Backend.target != ExecutionMode.Truffle;
+            this.trackChanges = MGOptions.Backend.target.isOpenCL();
         }
 
         public static final class OpenCLRestore extends Restore {
@@ -280,7 +279,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final int[] backup = (int[]) src.execute(frame);
                 final int[] array = (int[]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 copyArray(backup, array, array.length);
@@ -298,7 +297,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final int[][] backup = (int[][]) src.execute(frame);
                 final int[][] array = (int[][]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 for (int i = 0; i < array.length; i++) {
@@ -319,7 +318,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final long[] backup = (long[]) src.execute(frame);
                 final long[] array = (long[]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 copyArray(backup, array, array.length);
@@ -338,7 +337,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final long[][] backup = (long[][]) src.execute(frame);
                 final long[][] array = (long[][]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 for (int i = 0; i < array.length; i++) {
@@ -359,7 +358,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final double[] backup = (double[]) src.execute(frame);
                 final double[] array = (double[]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 copyArray(backup, array, array.length);
@@ -378,7 +377,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final double[][] backup = (double[][]) src.execute(frame);
                 final double[][] array = (double[][]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 for (int i = 0; i < array.length; i++) {
@@ -399,7 +398,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final boolean[] backup = (boolean[]) src.execute(frame);
                 final boolean[] array = (boolean[]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 copyArray(backup, array, array.length);
@@ -418,7 +417,7 @@ public abstract class MGTRollback extends MGTControl {
             public Object execute(VirtualFrame frame) {
                 final boolean[][] backup = (boolean[][]) src.execute(frame);
                 final boolean[][] array = (boolean[][]) dest.execute(frame);
-                final int index = changesTracker.getIndex(array.hashCode());
+                final int index = changesTracker.getIndex(array);
                 if (trackChanges && !changesTracker.shouldTruffleRestore(index))
                     return null;
                 for (int i = 0; i < array.length; i++) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.log;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.backend.parallel.jvm.JVMExecuter;
+
+/**
+ * Receives an event for each {@link MGPhase} of a loop invocation, e.g. to hand it to a profiler.
+ * The first implementation found by {@link ServiceLoader} is used, without one every phase is
+ * dropped as soon as it begins.
+ *
+ * A phase is wrapped as:
+ *
+ * <pre>
+ * final Object event = MGEvents.begin(MGPhase.Compilation);
+ * ...
+ * MGEvents.commit(event, log);
+ * </pre>
+ *
+ * and {@link #commit(Object, MGLog)} reads the log only when {@link #begin(MGPhase)} returned an
+ * event.
+ */
+public abstract class MGEvents {
+
+    private static final MGEvents INSTANCE = load();
+
+    private static MGEvents load() {
+        try {
+            final Iterator<MGEvents> providers = ServiceLoader.load(MGEvents.class, MGEvents.class.getClassLoader()).iterator();
+            if (providers.hasNext()) {
+                return providers.next();
+            }
+        } catch (Throwable e) {
+            MGLog.printlnErrTagged("Phase events are disabled: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return the started event of <code>phase</code>, or <code>null</code> when it is not being
+     *         recorded.
+     */
+    protected abstract Object start(MGPhase phase);
+
+    /**
+     * Ends and records an event returned by {@link #start(MGPhase)}.
+     *
+     * @param site <code>Filename:Line</code> of the loop
+     * @param backend <code>Truffle</code> until a device is chosen, then <code>JVM</code> or
+     *            <code>OpenCL</code>
+     */
+    protected abstract void end(Object event, String site, String backend, String device, long iterations, long bytes);
+
+    @TruffleBoundary
+    public static Object begin(MGPhase phase) {
+        if (INSTANCE == null) {
+            return null;
+        }
+        return INSTANCE.start(phase);
+    }
+
+    @TruffleBoundary
+    public static void commit(Object event, MGLog log) {
+        if (event == null) {
+            return;
+        }
+        final MGLogSite site = log.getSite();
+        final String device = log.isSet("ExecutionMode") ? log.getOptionValueString("ExecutionMode") : null;
+        final String backend;
+        if (device == null) {
+            backend = "Truffle";
+        } else if (JVMExecuter.DEVICE_NAME.equals(device)) {
+            backend = "JVM";
+        } else {
+            backend = "OpenCL";
+        }
+        INSTANCE.end(event, site != null ? site.getFilename() : null, backend, device, log.getOptionValueLong("TotalParallelLoops"), log.getOptionValueLong("TotalDataTransfer"));
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.log;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.utilities.JSONHelper.JSONObjectBuilder;
+
+/**
+ * Counts nanosecond latencies in log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so a percentile is reported within 1/{@value #SUB_BUCKETS}
+ * of the recorded value. Latencies of 2^41 ns (about 37 minutes) and more share
+ * the last bucket and are reported as the exact maximum.
+ */
+public final class MGLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private long[] counts;
+    private long count;
+    private long max;
+
+    public MGLatencyHistogram() {
+        this.counts = null;
+        this.count = 0;
+        this.max = 0;
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        final int exponent = Math.min(63 - Long.numberOfLeadingZeros(nanos), MAX_EXPONENT);
+        final long sub = Math.min(nanos >>> (exponent - SUB_BUCKET_BITS), 2 * SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) sub - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest latency that falls into <code>bucket</code>.
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        final long v = Math.max(nanos, 0);
+        if (counts == null) {
+            counts = new long[BUCKETS];
+        }
+        counts[bucket(v)]++;
+        count++;
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    public void add(MGLatencyHistogram h) {
+        if (h.count == 0) {
+            return;
+        }
+        if (counts == null) {
+            counts = new long[BUCKETS];
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += h.counts[i];
+        }
+        count += h.count;
+        max = Math.max(max, h.max);
+    }
+
+    public void clear() {
+        if (counts != null) {
+            Arrays.fill(counts, 0);
+        }
+        count = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the latency that <code>percentile</code> percent of the recorded ones do not exceed,
+     *         or 0 when nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? max : Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void addJSONFields(JSONObjectBuilder json, String prefix) {
+        json.add(prefix + "_count", count);
+        json.add(prefix + "_p50_ns", getValueAtPercentile(50));
+        json.add(prefix + "_p99_ns", getValueAtPercentile(99));
+        json.add(prefix + "_max_ns", max);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %d ns, p99 %d ns, max %d ns (%d samples)", getValueAtPercentile(50), getValueAtPercentile(99), max, count);
+    }
+
+}
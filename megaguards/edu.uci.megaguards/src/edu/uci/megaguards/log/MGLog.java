@@ -28,6 +28,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
@@ -42,7 +43,11 @@ import edu.uci.megaguards.backend.truffle.node.MGTParallel;
 
 public class MGLog {
 
-    private static final ArrayList<MGLog> logs = new ArrayList<>();
+    private static MGLog[] history = null;
+    private static int historyNext = 0;
+    private static long totalLogs = 0;
+    private static MGLogSite firstSite = null;
+
     private static PrintStream out = System.out;
     private static PrintStream err = System.err;
     private static PrintStream json = System.out;
@@ -53,19 +58,121 @@ public class MGLog {
 
     private static long ldload = 0;
 
-    public final HashMap<String, MGLogValue<?>> values;
+    // slots indexed by MGLogOption.getIndex(), booleans are kept as 0 or 1
+    private long[] longValues;
+    private String[] stringValues;
+    private boolean[] set;
+
+    // nanoseconds indexed by MGLatency.ordinal(), -1 when not measured
+    private final long[] latencies;
+    private long startNanos;
 
-    private final SourceSection sourceSection;
+    private SourceSection sourceSection;
+    private MGLogSite site;
 
     @TruffleBoundary
     public MGLog(SourceSection source) {
-        this.sourceSection = source;
-        this.values = new HashMap<>();
-        if (source != null) {
-            setOptionValue("Filename", source.getSource().getName() + ":" + source.getStartLine());
-            setOptionValue("Line", source.getStartLine());
-            setOptionValue("GuestCode", source.getCharacters().toString());
+        this(source == null ? null : MGLogSite.get(source));
+    }
+
+    MGLog(MGLogSite site) {
+        final int count = MGLogOption.getCount();
+        this.longValues = new long[count];
+        this.stringValues = new String[count];
+        this.set = new boolean[count];
+        this.latencies = new long[MGLatency.values().length];
+        Arrays.fill(latencies, -1);
+        this.startNanos = System.nanoTime();
+        this.site = site;
+        this.sourceSection = null;
+        setSource();
+    }
+
+    private void setSource() {
+        if (site != null && site.getSource() != null) {
+            this.sourceSection = site.getSource();
+            setOptionValue("Filename", site.getFilename());
+            setOptionValue("Line", site.getLine());
+            setOptionValue("GuestCode", site.getGuestCode());
+        }
+    }
+
+    /**
+     * Clears the values of the previous invocation.
+     */
+    void reset() {
+        Arrays.fill(set, false);
+        Arrays.fill(latencies, -1);
+        startNanos = System.nanoTime();
+        setSource();
+    }
+
+    private void copyFrom(MGLog l) {
+        if (longValues.length != l.longValues.length) {
+            longValues = new long[l.longValues.length];
+            stringValues = new String[l.longValues.length];
+            set = new boolean[l.longValues.length];
+        }
+        System.arraycopy(l.longValues, 0, longValues, 0, longValues.length);
+        System.arraycopy(l.stringValues, 0, stringValues, 0, stringValues.length);
+        System.arraycopy(l.set, 0, set, 0, set.length);
+        System.arraycopy(l.latencies, 0, latencies, 0, latencies.length);
+        this.startNanos = l.startNanos;
+        this.sourceSection = l.sourceSection;
+        this.site = l.site;
+    }
+
+    private int slot(MGLogOption o) {
+        if (o == null || o.getIndex() < 0)
+            return -1;
+        final int index = o.getIndex();
+        if (index >= set.length) {
+            final int count = MGLogOption.getCount();
+            longValues = Arrays.copyOf(longValues, count);
+            stringValues = Arrays.copyOf(stringValues, count);
+            set = Arrays.copyOf(set, count);
         }
+        return index;
+    }
+
+    boolean isSet(int index) {
+        return index < set.length && set[index];
+    }
+
+    long getLong(int index) {
+        return longValues[index];
+    }
+
+    /**
+     * Adds <code>nanos</code> to the latency of this invocation, measured with
+     * {@link System#nanoTime()}.
+     */
+    @TruffleBoundary
+    public void addLatency(MGLatency latency, long nanos) {
+        final int i = latency.ordinal();
+        latencies[i] = (latencies[i] < 0 ? 0 : latencies[i]) + nanos;
+    }
+
+    /**
+     * @return the nanoseconds spent on <code>latency</code>, or -1 when it was not measured.
+     */
+    public long getLatency(MGLatency latency) {
+        return latencies[latency.ordinal()];
+    }
+
+    @TruffleBoundary
+    public boolean isSet(String option) {
+        final MGLogOption o = MGLogOption.logOptions.get(option);
+        return o != null && isSet(o.getIndex());
+    }
+
+    String getOptionValueStringIfSet(String option) {
+        final MGLogOption o = MGLogOption.logOptions.get(option);
+        return o != null && isSet(o.getIndex()) ? stringValues[o.getIndex()] : null;
+    }
+
+    public MGLogSite getSite() {
+        return site;
     }
 
     public static long getLdload() {
@@ -126,75 +233,122 @@ public class MGLog {
 
     @TruffleBoundary
     public void setOptionValue(String option, long v) {
-        if (values.containsKey(option)) {
-            ((MGLogValue.OptionLong) this.values.get(option)).setValue(v);
-        } else {
-            this.values.put(option, new MGLogValue.OptionLong(getOption(option), v));
+        final int i = slot(getOption(option));
+        if (i >= 0) {
+            longValues[i] = v;
+            set[i] = true;
         }
     }
 
     @TruffleBoundary
     public void setOptionValue(String option, boolean v) {
-        if (values.containsKey(option)) {
-            ((MGLogValue.OptionBoolean) this.values.get(option)).setValue(v);
-        } else {
-            this.values.put(option, new MGLogValue.OptionBoolean(getOption(option), v));
-        }
+        setOptionValue(option, v ? 1L : 0L);
     }
 
     @TruffleBoundary
     public void setOptionValue(String option, String v) {
-        if (values.containsKey(option)) {
-            ((MGLogValue.OptionString) this.values.get(option)).setValue(v);
-        } else {
-            this.values.put(option, new MGLogValue.OptionString(getOption(option), v));
+        final int i = slot(getOption(option));
+        if (i >= 0) {
+            stringValues[i] = v;
+            set[i] = true;
         }
     }
 
     @TruffleBoundary
     public MGLogValue<?> getOptionValue(String option) {
-        if (this.values.containsKey(option)) {
-            return this.values.get(option);
+        final MGLogOption o = getOption(option);
+        final MGLogValue<?> defaultValue = o.getDefaultValue();
+        final int i = o.getIndex();
+        if (!isSet(i)) {
+            return defaultValue;
+        } else if (defaultValue instanceof MGLogValue.OptionString) {
+            return new MGLogValue.OptionString(o, stringValues[i]);
+        } else if (defaultValue instanceof MGLogValue.OptionBoolean) {
+            return new MGLogValue.OptionBoolean(o, longValues[i] != 0);
         } else {
-            return getOption(option).getDefaultValue();
+            return new MGLogValue.OptionLong(o, longValues[i]);
         }
     }
 
     @TruffleBoundary
     public long getOptionValueLong(String option) {
-        if (this.values.containsKey(option)) {
-            return ((MGLogValue.OptionLong) this.values.get(option)).getValue();
+        final MGLogOption o = getOption(option);
+        if (isSet(o.getIndex())) {
+            return longValues[o.getIndex()];
         } else {
-            return ((MGLogValue.OptionLong) getOption(option).getDefaultValue()).getValue();
+            return ((MGLogValue.OptionLong) o.getDefaultValue()).getValue();
         }
     }
 
     @TruffleBoundary
     public boolean getOptionValueBoolean(String option) {
-        if (this.values.containsKey(option)) {
-            return ((MGLogValue.OptionBoolean) this.values.get(option)).getValue();
+        final MGLogOption o = getOption(option);
+        if (isSet(o.getIndex())) {
+            return longValues[o.getIndex()] != 0;
         } else {
-            return ((MGLogValue.OptionBoolean) getOption(option).getDefaultValue()).getValue();
+            return ((MGLogValue.OptionBoolean) o.getDefaultValue()).getValue();
         }
     }
 
     @TruffleBoundary
     public String getOptionValueString(String option) {
-        if (this.values.containsKey(option)) {
-            return ((MGLogValue.OptionString) this.values.get(option)).getValue();
+        final MGLogOption o = getOption(option);
+        if (isSet(o.getIndex())) {
+            return stringValues[o.getIndex()];
         } else {
-            return ((MGLogValue.OptionString) getOption(option).getDefaultValue()).getValue();
+            return ((MGLogValue.OptionString) o.getDefaultValue()).getValue();
         }
     }
 
+    /**
+     * @return copies of the most recent logs, at most {@link MGOptions.Log#History} of them and the
+     *         oldest first.
+     */
     @TruffleBoundary
-    public static ArrayList<MGLog> getLogs() {
-        return logs;
+    public static synchronized ArrayList<MGLog> getLogs() {
+        final ArrayList<MGLog> recent = new ArrayList<>();
+        if (history != null) {
+            for (int i = 0; i < history.length; i++) {
+                final MGLog l = history[(historyNext + i) % history.length];
+                if (l != null) {
+                    final MGLog copy = new MGLog((MGLogSite) null);
+                    copy.copyFrom(l);
+                    recent.add(copy);
+                }
+            }
+        }
+        return recent;
     }
 
+    /**
+     * Aggregates the log into its site and keeps a copy of it in the bounded history. The log
+     * itself can be reused afterwards.
+     */
     @TruffleBoundary
-    public static void addLog(MGLog log) {
-        MGLog.logs.add(log);
+    public static synchronized void addLog(MGLog log) {
+        if (log.latencies[MGLatency.Total.ordinal()] < 0)
+            log.addLatency(MGLatency.Total, System.nanoTime() - log.startNanos);
+        final MGLogSite site = log.site != null ? log.site : MGLogSite.get(null);
+        site.add(log);
+        if (firstSite == null)
+            firstSite = site;
+        totalLogs++;
+
+        final int capacity = MGOptions.Log.History;
+        if (capacity > 0) {
+            if (history == null || history.length != capacity) {
+                history = new MGLog[capacity];
+                historyNext = 0;
+            }
+            if (history[historyNext] == null)
+                history[historyNext] = new MGLog((MGLogSite) null);
+            history[historyNext].copyFrom(log);
+            historyNext = (historyNext + 1) % capacity;
+        }
+    }
+
+    public static synchronized long getTotalLogs() {
+        return totalLogs;
     }
 
     @TruffleBoundary
@@ -222,7 +376,7 @@ public class MGLog {
         String msg = "";
         if (!MGOptions.Log.Summary) {
             for (String option : MGLogOption.nonsummaryFields) {
-                if (!this.values.containsKey(option))
+                if (!isSet(option))
                     continue;
                 MGLogOption o = getOption(option);
                 if (o.isEnabled() && o.getRuntimeMsg() != null) {
@@ -254,6 +408,10 @@ public class MGLog {
 
     @TruffleBoundary
     public void printLogJSON() {
+        printLogJSON(false);
+    }
+
+    private void printLogJSON(boolean latencies) {
 
         JSONObjectBuilder jsonOut = JSONHelper.object();
 
@@ -268,6 +426,12 @@ public class MGLog {
             getOptionValue(option).addJSONField(jsonOut);
         }
 
+        if (latencies) {
+            for (MGLatency latency : MGLatency.values()) {
+                MGLogSite.getTotalLatency(latency).addJSONFields(jsonOut, latency.getJsonName());
+            }
+        }
+
         String prettyJSON = jsonOut.toString();
         prettyJSON = prettyJSON.replace(", ", ",\n");
         prettyJSON = prettyJSON.replace("{", "{\n").replace("}", "\n}");
@@ -297,87 +461,72 @@ public class MGLog {
     }
 
     @TruffleBoundary
-    public static void printSummary() {
-        MGLog summary = new MGLog(null);
+    public static synchronized void printSummary() {
+        MGLog summary = new MGLog((SourceSection) null);
         ArrayList<String> fields = MGLogOption.jsonSummaryFields;
-        MGLogValue<?> values[] = new MGLogValue<?>[fields.size()];
-        final HashMap<String, Integer> executionMode = new HashMap<>();
+        final HashMap<String, Long> executionMode = new HashMap<>();
         final HashMap<String, HashSet<Long>> finalExecutionMode = new HashMap<>();
-        if (logs.size() > 0) {
-            values[fields.indexOf("Filename")] = logs.get(0).getOptionValue("Filename").copy();
-            values[fields.indexOf("BoundCheckEnabled")] = logs.get(0).getOptionValue("BoundCheckEnabled").copy();
+        if (totalLogs > 0) {
+            if (firstSite.getFilename() != null)
+                summary.setOptionValue("Filename", firstSite.getFilename());
             HashSet<String> avoidFields = new HashSet<>();
             avoidFields.add("Filename");
             avoidFields.add("BoundCheckEnabled");
             avoidFields.add("FinalExecutionMode");
             avoidFields.add("ExecutionMode");
-            for (MGLog l : logs) {
+            for (MGLogSite site : MGLogSite.getSites()) {
                 for (String f : fields) {
-                    if (!(getOption(f).getDefaultValue() instanceof MGLogValue.OptionLong) || avoidFields.contains(f))
+                    final MGLogOption o = getOption(f);
+                    if (!o.isLong() || avoidFields.contains(f) || !site.isPresent(o.getIndex()))
                         continue;
 
-                    if (l.values.containsKey(f)) {
-                        final int idx = fields.indexOf(f);
-                        if (values[idx] == null) {
-                            values[idx] = l.getOptionValue(f).copy();
-                        } else {
-                            final long acc = ((MGLogValue.OptionLong) values[idx]).getValue() + ((MGLogValue.OptionLong) l.getOptionValue(f)).getValue();
-                            ((MGLogValue.OptionLong) values[idx]).setValue(acc);
-                        }
-                    }
+                    summary.setOptionValue(f, (summary.isSet(f) ? summary.getOptionValueLong(f) : 0) + site.getTotal(o.getIndex()));
                 }
 
-                if (l.values.containsKey("FinalExecutionMode")) {
-                    final String fm = (String) l.values.get("FinalExecutionMode").getValue();
+                for (String fm : site.getFinalExecutionModes()) {
                     if (!finalExecutionMode.containsKey(fm))
                         finalExecutionMode.put(fm, new HashSet<>());
-                    finalExecutionMode.get(fm).add(l.getOptionValueLong("Line"));
+                    finalExecutionMode.get(fm).add(site.getLine());
                 }
 
-                if (l.values.containsKey("ExecutionMode") && !l.values.containsKey("Executed")) {
-                    final String em = (String) l.values.get("ExecutionMode").getValue();
-                    if (!executionMode.containsKey(em)) {
-                        executionMode.put(em, 1);
-                    } else {
-                        executionMode.put(em, executionMode.get(em) + 1);
-                    }
+                for (Entry<String, long[]> e : site.getExecutionModes().entrySet()) {
+                    final Long count = executionMode.get(e.getKey());
+                    executionMode.put(e.getKey(), (count == null ? 0 : count) + e.getValue()[0]);
                 }
 
             }
 
-            int idx = fields.indexOf("FinalExecutionMode");
-            values[idx] = new MGLogValue.OptionString(getOption("FinalExecutionMode"), "");
+            String modes = "";
             for (Entry<String, HashSet<Long>> e : finalExecutionMode.entrySet()) {
-                final String acc = ((MGLogValue.OptionString) values[idx]).getValue() + String.format("%s:%d;;", e.getKey(), e.getValue().size());
-                ((MGLogValue.OptionString) values[idx]).setValue(acc);
+                modes += String.format("%s:%d;;", e.getKey(), e.getValue().size());
             }
+            summary.setOptionValue("FinalExecutionMode", modes);
 
-            idx = fields.indexOf("ExecutionMode");
-            values[idx] = new MGLogValue.OptionString(getOption("ExecutionMode"), "");
-            for (Entry<String, Integer> e : executionMode.entrySet()) {
-                final String acc = ((MGLogValue.OptionString) values[idx]).getValue() + String.format("%s:%d;;", e.getKey(), e.getValue());
-                ((MGLogValue.OptionString) values[idx]).setValue(acc);
-            }
-
-            for (int i = 0; i < fields.size(); i++) {
-                final String f = fields.get(i);
-                if (values[i] == null) {
-                    summary.values.put(f, getOption(f).getDefaultValue());
-                } else {
-                    summary.values.put(f, values[i]);
-                }
+            modes = "";
+            for (Entry<String, Long> e : executionMode.entrySet()) {
+                modes += String.format("%s:%d;;", e.getKey(), e.getValue());
             }
+            summary.setOptionValue("ExecutionMode", modes);
 
             summary.setOptionValue("DataTransferTime", summary.getOptionValueLong("DataTransferTime") + MGTParallel.OpenCLGetData.sharedDTLog.getOptionValueLong("DataTransferTime"));
         }
 
         if ((MGOptions.Log.JSON)) {
-            summary.printLogJSON();
+            summary.printLogJSON(true);
         } else if ((MGOptions.Log.CSV)) {
             summary.printLogCSV();
         } else {
-            printlnTagged("Total number of executions: " + logs.size() + " times");
+            printlnTagged("Total number of executions: " + totalLogs + " times");
             summary.printLogTagged();
+            for (MGLogSite site : MGLogSite.getSites()) {
+                if (site.getFilename() == null)
+                    continue;
+                for (MGLatency latency : MGLatency.values()) {
+                    final MGLatencyHistogram h = site.getLatency(latency);
+                    if (h.getCount() > 0)
+                        printlnTagged(String.format("%s %s Latency: %s", site.getFilename(), latency.name(), h));
+                }
+            }
         }
     }
 
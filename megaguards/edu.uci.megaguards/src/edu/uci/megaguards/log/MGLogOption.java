@@ -38,9 +38,12 @@ public class MGLogOption {
     public static final ArrayList<String> jsonFields = new ArrayList<>();
     public static final ArrayList<String> jsonSummaryFields = new ArrayList<>();
     public static final ArrayList<String> cmdOptions = new ArrayList<>();
+    private static final ArrayList<MGLogOption> options = new ArrayList<>();
 
     private final String name;
 
+    private final int index;
+
     private final boolean summary;
     private final boolean control;
 
@@ -54,7 +57,12 @@ public class MGLogOption {
     private MGLogValue<?> defaultValue;
 
     public MGLogOption(String name, String runtimeMsg, String jsonName, String cmdDescription, char cmdOption, boolean summary, boolean control) {
+        this(name, -1, runtimeMsg, jsonName, cmdDescription, cmdOption, summary, control);
+    }
+
+    private MGLogOption(String name, int index, String runtimeMsg, String jsonName, String cmdDescription, char cmdOption, boolean summary, boolean control) {
         this.name = name;
+        this.index = index;
         this.runtimeMsg = runtimeMsg;
         this.jsonName = jsonName;
         this.summary = summary;
@@ -69,6 +77,22 @@ public class MGLogOption {
         return name;
     }
 
+    /**
+     * @return the slot of this option in {@link MGLog} and {@link MGLogSite}, given in registration
+     *         order.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public static int getCount() {
+        return options.size();
+    }
+
+    public static MGLogOption getOption(int index) {
+        return options.get(index);
+    }
+
     public boolean isSummary() {
         return summary;
     }
@@ -105,6 +129,10 @@ public class MGLogOption {
         return defaultValue;
     }
 
+    public boolean isLong() {
+        return defaultValue instanceof MGLogValue.OptionLong;
+    }
+
     public void setDefaultValue(String v) {
         this.defaultValue = new MGLogValue.OptionString(this, v);
     }
@@ -119,7 +147,8 @@ public class MGLogOption {
 
     @TruffleBoundary
     public static MGLogOption addOption(String name, String runtimeMsg, String jsonName, String cmdDescription, char cmdOption, boolean summary, boolean control) {
-        MGLogOption option = new MGLogOption(name, runtimeMsg, jsonName, cmdDescription, cmdOption, summary, control);
+        MGLogOption option = new MGLogOption(name, options.size(), runtimeMsg, jsonName, cmdDescription, cmdOption, summary, control);
+        options.add(option);
         logOptions.put(name, option);
         logOptionsChar.put(cmdOption, option);
         if (jsonName != null) {
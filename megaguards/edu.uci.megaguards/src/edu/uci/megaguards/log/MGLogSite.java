@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * The metrics of one loop site. The counters of every {@link MGLog} added for the site are
+ * aggregated in place into slots indexed like the ones of {@link MGLog}, and the site hands out the
+ * same {@link MGLog} to each of its invocations.
+ *
+ * A site never runs nested in itself, the loop body is translated along with the loop and does not
+ * re-enter the guest.
+ */
+public final class MGLogSite {
+
+    private static final HashMap<SourceSection, MGLogSite> sites = new HashMap<>();
+    private static final ArrayList<MGLogSite> ordered = new ArrayList<>();
+
+    private final SourceSection source;
+    private final String filename;
+    private final long line;
+    private final String guestCode;
+
+    private long[] totals;
+    private boolean[] present;
+    private long invocations;
+
+    private final HashMap<String, long[]> executionModes;
+    private final HashSet<String> finalExecutionModes;
+
+    private final MGLatencyHistogram[] latencies;
+
+    private MGLog log;
+
+    private MGLogSite(SourceSection source) {
+        this.source = source;
+        if (source != null) {
+            this.filename = source.getSource().getName() + ":" + source.getStartLine();
+            this.line = source.getStartLine();
+            this.guestCode = source.getCharacters().toString();
+        } else {
+            this.filename = null;
+            this.line = -1;
+            this.guestCode = null;
+        }
+        this.totals = new long[MGLogOption.getCount()];
+        this.present = new boolean[totals.length];
+        this.invocations = 0;
+        this.executionModes = new HashMap<>();
+        this.finalExecutionModes = new HashSet<>();
+        this.latencies = new MGLatencyHistogram[MGLatency.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new MGLatencyHistogram();
+        }
+        this.log = null;
+    }
+
+    @TruffleBoundary
+    public static synchronized MGLogSite get(SourceSection source) {
+        MGLogSite site = sites.get(source);
+        if (site == null) {
+            site = new MGLogSite(source);
+            sites.put(source, site);
+            ordered.add(site);
+        }
+        return site;
+    }
+
+    /**
+     * @return the sites in the order they were first seen.
+     */
+    @TruffleBoundary
+    public static synchronized ArrayList<MGLogSite> getSites() {
+        return new ArrayList<>(ordered);
+    }
+
+    /**
+     * @return the log of the next invocation of this site, cleared of the previous one.
+     */
+    @TruffleBoundary
+    public MGLog begin() {
+        if (log == null) {
+            log = new MGLog(this);
+        } else {
+            log.reset();
+        }
+        return log;
+    }
+
+    @TruffleBoundary
+    void add(MGLog l) {
+        final int count = MGLogOption.getCount();
+        if (totals.length < count) {
+            totals = Arrays.copyOf(totals, count);
+            present = Arrays.copyOf(present, count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (l.isSet(i) && MGLogOption.getOption(i).isLong()) {
+                totals[i] += l.getLong(i);
+                present[i] = true;
+            }
+        }
+        if (!l.isSet("Executed")) {
+            // the logs of background compilations are not invocations of the site
+            for (MGLatency latency : MGLatency.values()) {
+                final long nanos = l.getLatency(latency);
+                if (nanos >= 0)
+                    latencies[latency.ordinal()].record(nanos);
+            }
+        }
+        final String mode = l.getOptionValueStringIfSet("ExecutionMode");
+        if (mode != null && !l.isSet("Executed")) {
+            final long[] c = executionModes.get(mode);
+            if (c == null) {
+                executionModes.put(mode, new long[]{1});
+            } else {
+                c[0]++;
+            }
+        }
+        final String finalMode = l.getOptionValueStringIfSet("FinalExecutionMode");
+        if (finalMode != null) {
+            finalExecutionModes.add(finalMode);
+        }
+        invocations++;
+    }
+
+    public SourceSection getSource() {
+        return source;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public String getGuestCode() {
+        return guestCode;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * @return whether any of the added logs had a value for the option of the slot.
+     */
+    public boolean isPresent(int index) {
+        return index < present.length && present[index];
+    }
+
+    public long getTotal(int index) {
+        return index < totals.length ? totals[index] : 0;
+    }
+
+    /**
+     * @return how many of the invocations ran on each execution target.
+     */
+    public HashMap<String, long[]> getExecutionModes() {
+        return executionModes;
+    }
+
+    public HashSet<String> getFinalExecutionModes() {
+        return finalExecutionModes;
+    }
+
+    /**
+     * @return the latencies measured by the invocations of this site.
+     */
+    public MGLatencyHistogram getLatency(MGLatency latency) {
+        return latencies[latency.ordinal()];
+    }
+
+    /**
+     * @return the latencies of all the sites merged into one histogram.
+     */
+    public static synchronized MGLatencyHistogram getTotalLatency(MGLatency latency) {
+        final MGLatencyHistogram total = new MGLatencyHistogram();
+        for (MGLogSite site : ordered) {
+            total.add(site.getLatency(latency));
+        }
+        return total;
+    }
+
+}
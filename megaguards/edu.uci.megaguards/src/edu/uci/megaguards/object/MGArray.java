@@ -224,6 +224,8 @@ public abstract class MGArray extends MGStorage {
     }
 
     public final Unboxer getBoxed() {
+        if (boxed == null && getValue() instanceof ParallelWorkload)
+            return ((ParallelWorkload) getValue()).getBoxed();
         return boxed;
     }
 
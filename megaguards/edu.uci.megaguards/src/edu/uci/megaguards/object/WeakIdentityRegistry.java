@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.object;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.ToLongFunction;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * Map from objects, compared by identity and held weakly, to values. Once a key is collected
+ * its value is handed to the {@link Releaser} the next time the registry is used. Values must
+ * not hold a strong reference to their key, use {@link Ref#get()} instead.
+ */
+public class WeakIdentityRegistry<V> {
+
+    public interface Releaser<V> {
+        void release(V value);
+    }
+
+    public static final class Ref extends WeakReference<Object> {
+        private final int hash;
+
+        private Ref(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Ref))
+                return false;
+            final Object o = get();
+            return o != null && o == ((Ref) obj).get();
+        }
+    }
+
+    private final HashMap<Ref, V> entries;
+    private final ReferenceQueue<Object> queue;
+    private final Releaser<V> releaser;
+    private final ToLongFunction<V> weigher;
+    private long released;
+
+    public WeakIdentityRegistry(Releaser<V> releaser, ToLongFunction<V> weigher) {
+        this.entries = new HashMap<>();
+        this.queue = new ReferenceQueue<>();
+        this.releaser = releaser;
+        this.weigher = weigher;
+        this.released = 0;
+    }
+
+    @TruffleBoundary
+    public synchronized V get(Object key) {
+        drain();
+        return entries.get(new Ref(key, null));
+    }
+
+    /**
+     * @return the weak reference the value can use to reach its key.
+     */
+    @TruffleBoundary
+    public synchronized Ref put(Object key, V value) {
+        drain();
+        final Ref ref = new Ref(key, queue);
+        entries.remove(ref);
+        entries.put(ref, value);
+        return ref;
+    }
+
+    @TruffleBoundary
+    public synchronized V remove(Object key) {
+        return entries.remove(new Ref(key, null));
+    }
+
+    /**
+     * Releases the values of the collected keys.
+     *
+     * @return number of released values.
+     */
+    @TruffleBoundary
+    public synchronized int drain() {
+        int count = 0;
+        Reference<?> r;
+        while ((r = queue.poll()) != null) {
+            final V v = entries.remove(r);
+            if (v != null) {
+                count++;
+                if (releaser != null)
+                    releaser.release(v);
+            }
+        }
+        released += count;
+        return count;
+    }
+
+    @TruffleBoundary
+    public synchronized ArrayList<V> values() {
+        return new ArrayList<>(entries.values());
+    }
+
+    @TruffleBoundary
+    public synchronized void clear() {
+        entries.clear();
+        while (queue.poll() != null) {
+            // pass
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @TruffleBoundary
+    public synchronized long getMemory() {
+        long memory = 0;
+        if (weigher != null) {
+            for (V v : entries.values())
+                memory += weigher.applyAsLong(v);
+        }
+        return memory;
+    }
+
+    public synchronized long getReleased() {
+        return released;
+    }
+
+    @TruffleBoundary
+    public synchronized String getStatistics() {
+        return String.format("live: %d, memory: %d byte, released: %d", size(), getMemory(), released);
+    }
+}
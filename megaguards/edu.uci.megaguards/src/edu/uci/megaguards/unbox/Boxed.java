@@ -31,6 +31,7 @@ import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.Node;
 
+import edu.uci.megaguards.MGOptions;
 import edu.uci.megaguards.analysis.exception.MGException;
 import edu.uci.megaguards.log.MGLog;
 import edu.uci.megaguards.object.DataType;
@@ -52,11 +53,32 @@ public abstract class Boxed<T extends Node> extends Node {
     @TruffleBoundary
     public static void UnboxAll(MGLog log) throws MGException {
         long dataSize = 0;
+        long hits = 0;
+        long misses = 0;
         for (Unboxer boxed : unProcessed) {
-            dataSize += boxed.getInfo().sizeEstimate(boxed.getTypeSize());
-            boxed.setValue(boxed.unbox());
+            final long size = boxed.getInfo().sizeEstimate(boxed.getTypeSize());
+            final Object origin = MGOptions.Backend.unboxCache ? boxed.getOrigin() : null;
+            final long version = origin != null ? boxed.getOriginVersion() : Unboxer.NO_VERSION;
+            Object unboxed = null;
+            if (version != Unboxer.NO_VERSION && !boxed.isMarkedChanged()) {
+                unboxed = UnboxCache.lookup(origin, version);
+            }
+
+            if (unboxed != null) {
+                hits++;
+            } else {
+                unboxed = boxed.unbox();
+                dataSize += size;
+                if (version != Unboxer.NO_VERSION) {
+                    UnboxCache.store(origin, version, unboxed, size);
+                    misses++;
+                }
+            }
+            boxed.setValue(unboxed);
         }
         log.setOptionValue("TotalDataTransfer", log.getOptionValueLong("TotalDataTransfer") + dataSize);
+        log.setOptionValue("UnboxCacheHits", log.getOptionValueLong("UnboxCacheHits") + hits);
+        log.setOptionValue("UnboxCacheMisses", log.getOptionValueLong("UnboxCacheMisses") + misses);
         unProcessed.clear();
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.unbox;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * Bitmap of the fixed-size blocks of an unboxed array that were modified since the last
+ * transfer. Elements are numbered in row-major order over the whole array.
+ */
+public final class DirtyBlocks {
+
+    private final int numElements;
+    private final int blockSize;
+    private final int numBlocks;
+    private final long[] bits;
+    private int dirtyBlocks;
+
+    public DirtyBlocks(int numElements, int blockSize) {
+        this.numElements = numElements;
+        this.blockSize = Math.max(1, blockSize);
+        this.numBlocks = (int) (((long) numElements + this.blockSize - 1) / this.blockSize);
+        this.bits = new long[(numBlocks + 63) >>> 6];
+        this.dirtyBlocks = 0;
+    }
+
+    public int getNumElements() {
+        return numElements;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+
+    public int getDirtyBlocks() {
+        return dirtyBlocks;
+    }
+
+    public boolean isEmpty() {
+        return dirtyBlocks == 0;
+    }
+
+    public void mark(int element) {
+        final int block = element / blockSize;
+        final long mask = 1L << block;
+        final int word = block >>> 6;
+        if ((bits[word] & mask) == 0) {
+            bits[word] |= mask;
+            dirtyBlocks++;
+        }
+    }
+
+    @TruffleBoundary
+    public void markRange(int fromElement, int toElement) {
+        final int to = Math.min(toElement, numElements);
+        for (int e = Math.max(0, fromElement); e < to; e += blockSize) {
+            mark(e);
+        }
+        if (to > fromElement && to > 0)
+            mark(to - 1);
+    }
+
+    @TruffleBoundary
+    public void merge(DirtyBlocks other) {
+        for (int i = 0; i < bits.length && i < other.bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+        dirtyBlocks = 0;
+        for (long w : bits) {
+            dirtyBlocks += Long.bitCount(w);
+        }
+    }
+
+    @TruffleBoundary
+    public DirtyBlocks copy() {
+        final DirtyBlocks c = new DirtyBlocks(numElements, blockSize);
+        System.arraycopy(bits, 0, c.bits, 0, bits.length);
+        c.dirtyBlocks = dirtyBlocks;
+        return c;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0);
+        dirtyBlocks = 0;
+    }
+
+    public boolean isDirty(int block) {
+        return (bits[block >>> 6] & (1L << block)) != 0;
+    }
+
+    /**
+     * @return the first dirty block at or after {@code fromBlock}, or {@link #getNumBlocks()}.
+     */
+    public int nextDirty(int fromBlock) {
+        int b = fromBlock;
+        while (b < numBlocks && !isDirty(b))
+            b++;
+        return b;
+    }
+
+    /**
+     * @return the first clean block at or after {@code fromBlock}, or {@link #getNumBlocks()}.
+     */
+    public int nextClean(int fromBlock) {
+        int b = fromBlock;
+        while (b < numBlocks && isDirty(b))
+            b++;
+        return b;
+    }
+
+    public long getDirtyElements() {
+        long count = (long) dirtyBlocks * blockSize;
+        if (numBlocks > 0 && isDirty(numBlocks - 1))
+            count -= (long) numBlocks * blockSize - numElements;
+        return count;
+    }
+
+}
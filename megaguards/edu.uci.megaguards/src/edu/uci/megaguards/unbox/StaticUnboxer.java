@@ -30,18 +30,26 @@ import edu.uci.megaguards.object.DataType;
 
 public abstract class StaticUnboxer extends Unboxer {
 
-    public StaticUnboxer(Object value, ArrayInfo info, DataType kind, int OriginHashCode, boolean ignore) {
-        super(value, info, kind, OriginHashCode, ignore);
+    public StaticUnboxer(Object value, ArrayInfo info, DataType kind, Object origin, boolean ignore) {
+        super(value, info, kind, origin, ignore);
     }
 
     public abstract Object getFirstValue();
 
+    /**
+     * The value is the array itself, there is no copy worth keeping.
+     */
+    @Override
+    public Object getOrigin() {
+        return null;
+    }
+
     public static class IntDimSize extends StaticUnboxer {
 
         private final int dim;
 
         public IntDimSize(ArrayInfo info, int dim) {
-            super(info.getSize(dim), info, DataType.Int, info.hashCode(), false);
+            super(info.getSize(dim), info, DataType.Int, info, false);
             this.dim = dim;
         }
 
@@ -64,8 +72,8 @@ public abstract class StaticUnboxer extends Unboxer {
 
     public static class IntArray extends StaticUnboxer {
 
-        public IntArray(Object value, ArrayInfo info, int OriginHashCode, boolean ignore) {
-            super(value, info, DataType.IntArray, OriginHashCode, ignore);
+        public IntArray(Object value, ArrayInfo info, Object origin, boolean ignore) {
+            super(value, info, DataType.IntArray, origin, ignore);
         }
 
         @Override
@@ -87,8 +95,8 @@ public abstract class StaticUnboxer extends Unboxer {
 
     public static class LongArray extends StaticUnboxer {
 
-        public LongArray(Object value, ArrayInfo info, int OriginHashCode, boolean ignore) {
-            super(value, info, DataType.LongArray, OriginHashCode, ignore);
+        public LongArray(Object value, ArrayInfo info, Object origin, boolean ignore) {
+            super(value, info, DataType.LongArray, origin, ignore);
         }
 
         @Override
@@ -110,8 +118,8 @@ public abstract class StaticUnboxer extends Unboxer {
 
     public static class DoubleArray extends StaticUnboxer {
 
-        public DoubleArray(Object value, ArrayInfo info, int OriginHashCode, boolean ignore) {
-            super(value, info, DataType.DoubleArray, OriginHashCode, ignore);
+        public DoubleArray(Object value, ArrayInfo info, Object origin, boolean ignore) {
+            super(value, info, DataType.DoubleArray, origin, ignore);
         }
 
         @Override
@@ -133,8 +141,8 @@ public abstract class StaticUnboxer extends Unboxer {
 
     public static class BooleanArray extends StaticUnboxer {
 
-        public BooleanArray(Object value, ArrayInfo info, int OriginHashCode, boolean ignore) {
-            super(value, info, DataType.BoolArray, OriginHashCode, ignore);
+        public BooleanArray(Object value, ArrayInfo info, Object origin, boolean ignore) {
+            super(value, info, DataType.BoolArray, origin, ignore);
         }
 
         @Override
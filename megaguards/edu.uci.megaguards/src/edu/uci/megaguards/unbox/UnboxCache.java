@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, Regents of the University of California
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.uci.megaguards.unbox;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+import edu.uci.megaguards.MGOptions;
+
+/**
+ * Keeps the unboxed copies of guest objects so an object that was not modified since its last
+ * unboxing is not copied again. Entries are keyed by the identity of the guest object and
+ * are valid for a single modification version. The cache is bounded by
+ * {@link MGOptions.Backend#unboxCacheSize} bytes and evicts the least recently used entries.
+ * Entries of collected guest objects are dropped on the next lookup or store.
+ *
+ * The entries are chained into the buckets and into the recency list themselves, so that a
+ * lookup does not allocate.
+ */
+public final class UnboxCache {
+
+    private static final class Entry extends WeakReference<Object> {
+        private final int hash;
+        private final long version;
+        private final long size;
+        private Object unboxed;
+        /*- next entry of the bucket */
+        private Entry next;
+        /*- neighbours in the recency list, least recently used first */
+        private Entry before;
+        private Entry after;
+
+        private Entry(Object origin, ReferenceQueue<Object> queue, long version, Object unboxed, long size) {
+            super(origin, queue);
+            this.hash = System.identityHashCode(origin);
+            this.version = version;
+            this.unboxed = unboxed;
+            this.size = size;
+        }
+    }
+
+    private static final int INITIAL_BUCKETS = 64;
+
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    private static final Entry recency = createRecency();
+
+    private static Entry[] buckets = new Entry[INITIAL_BUCKETS];
+
+    private static int count = 0;
+
+    private static long size = 0;
+
+    private static Entry createRecency() {
+        final Entry head = new Entry(null, null, Unboxer.NO_VERSION, null, 0);
+        head.before = head;
+        head.after = head;
+        return head;
+    }
+
+    private static int indexOf(int hash, int length) {
+        return (hash ^ (hash >>> 16)) & (length - 1);
+    }
+
+    private static Entry find(Object origin) {
+        for (Entry e = buckets[indexOf(System.identityHashCode(origin), buckets.length)]; e != null; e = e.next) {
+            if (e.get() == origin)
+                return e;
+        }
+        return null;
+    }
+
+    private static void link(Entry e) {
+        e.before = recency.before;
+        e.after = recency;
+        recency.before.after = e;
+        recency.before = e;
+    }
+
+    private static void unlink(Entry e) {
+        e.before.after = e.after;
+        e.after.before = e.before;
+        e.before = null;
+        e.after = null;
+    }
+
+    private static void add(Entry e) {
+        if (count >= buckets.length - (buckets.length >>> 2))
+            resize();
+        final int index = indexOf(e.hash, buckets.length);
+        e.next = buckets[index];
+        buckets[index] = e;
+        link(e);
+        count++;
+        size += e.size;
+    }
+
+    private static void resize() {
+        final Entry[] old = buckets;
+        buckets = new Entry[old.length * 2];
+        for (Entry head : old) {
+            Entry e = head;
+            while (e != null) {
+                final Entry next = e.next;
+                final int index = indexOf(e.hash, buckets.length);
+                e.next = buckets[index];
+                buckets[index] = e;
+                e = next;
+            }
+        }
+    }
+
+    private static void remove(Entry e) {
+        final int index = indexOf(e.hash, buckets.length);
+        Entry prev = null;
+        for (Entry c = buckets[index]; c != null; prev = c, c = c.next) {
+            if (c == e) {
+                if (prev == null)
+                    buckets[index] = c.next;
+                else
+                    prev.next = c.next;
+                unlink(e);
+                e.next = null;
+                e.unboxed = null;
+                count--;
+                size -= e.size;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the entries whose guest object was collected.
+     */
+    private static void purge() {
+        Reference<?> ref;
+        while ((ref = collected.poll()) != null) {
+            remove((Entry) ref);
+        }
+    }
+
+    @TruffleBoundary
+    public static synchronized Object lookup(Object origin, long version) {
+        purge();
+        final Entry e = find(origin);
+        if (e == null)
+            return null;
+        if (e.version != version) {
+            remove(e);
+            return null;
+        }
+        unlink(e);
+        link(e);
+        return e.unboxed;
+    }
+
+    @TruffleBoundary
+    public static synchronized void store(Object origin, long version, Object unboxed, long bytes) {
+        purge();
+        invalidate(origin);
+        if (bytes > MGOptions.Backend.unboxCacheSize)
+            return;
+        add(new Entry(origin, collected, version, unboxed, bytes));
+        while (size > MGOptions.Backend.unboxCacheSize && recency.after != recency) {
+            remove(recency.after);
+        }
+    }
+
+    @TruffleBoundary
+    public static synchronized void invalidate(Object origin) {
+        final Entry e = find(origin);
+        if (e != null)
+            remove(e);
+    }
+
+    @TruffleBoundary
+    public static synchronized void clear() {
+        while (recency.after != recency) {
+            remove(recency.after);
+        }
+        buckets = new Entry[INITIAL_BUCKETS];
+        while (collected.poll() != null) {
+            // the entries are gone already
+        }
+    }
+
+    public static synchronized long getSize() {
+        return size;
+    }
+
+    public static synchronized int getEntries() {
+        return count;
+    }
+}
@@ -24,50 +24,118 @@
  */
 package edu.uci.megaguards.unbox;
 
-import java.util.HashMap;
-import java.util.HashSet;
-
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 
 import edu.uci.megaguards.analysis.exception.TypeException;
 import edu.uci.megaguards.object.ArrayInfo;
 import edu.uci.megaguards.object.DataType;
+import edu.uci.megaguards.object.WeakIdentityRegistry;
 
 public abstract class Unboxer {
 
-    protected static final HashMap<Integer, Object> UNBOXED = new HashMap<>();
+    public static final long NO_VERSION = -1;
+
+    /**
+     * Modifications of a guest object that were not picked up yet, and the number of times the
+     * object was reported as modified.
+     */
+    private static final class Changes {
+        private boolean changed;
+        private DirtyBlocks blocks;
+        private long version;
+    }
 
-    protected static final HashSet<Integer> changedlist = new HashSet<>();
+    private static final WeakIdentityRegistry<Changes> changes = new WeakIdentityRegistry<>(null, null);
 
     protected Object value;
     protected final ArrayInfo info;
     protected final DataType kind;
-    protected int OriginHashCode;
+    protected Object origin;
     protected boolean changed;
 
-    public Unboxer(Object value, ArrayInfo info, int OriginHashCode, DataType kind) {
-        this(value, info, kind, OriginHashCode, false);
+    public Unboxer(Object value, ArrayInfo info, Object origin, DataType kind) {
+        this(value, info, kind, origin, false);
     }
 
-    public Unboxer(Object value, ArrayInfo info, DataType kind, int OriginHashCode, boolean ignore) {
+    public Unboxer(Object value, ArrayInfo info, DataType kind, Object origin, boolean ignore) {
         this.value = value;
         this.info = info;
         this.kind = kind;
         this.changed = false;
-        this.OriginHashCode = OriginHashCode;
+        this.origin = origin;
         if (!ignore)
             Boxed.addBoxed(this);
     }
 
     @TruffleBoundary
-    public static void setChanged(int hashCode, boolean changed) {
-        if (changed) {
-            changedlist.add(hashCode);
+    private static Changes getChanges(Object origin) {
+        Changes c = changes.get(origin);
+        if (c == null) {
+            c = new Changes();
+            changes.put(origin, c);
+        }
+        return c;
+    }
+
+    @TruffleBoundary
+    public static void setChanged(Object origin, boolean changed) {
+        if (changed && origin != null) {
+            final Changes c = getChanges(origin);
+            c.changed = true;
+            c.blocks = null;
+            c.version++;
+        }
+    }
+
+    /**
+     * Records that only the given blocks of the array changed. Ignored if the whole array is
+     * already marked as changed.
+     */
+    @TruffleBoundary
+    public static void setChanged(Object origin, DirtyBlocks blocks) {
+        if (origin == null || blocks == null || blocks.isEmpty())
+            return;
+        final Changes c = getChanges(origin);
+        c.version++;
+        if (c.changed)
+            return;
+        if (c.blocks == null || c.blocks.getNumElements() != blocks.getNumElements() || c.blocks.getBlockSize() != blocks.getBlockSize()) {
+            c.blocks = blocks.copy();
+        } else {
+            c.blocks.merge(blocks);
         }
     }
 
     public abstract Object unbox() throws TypeException;
 
+    /**
+     * The guest object this unboxer copies from. Together with {@link #getOriginVersion()} it
+     * lets {@link UnboxCache} reuse the previous copy of an unmodified object.
+     */
+    public Object getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Modification version of {@link #getOrigin()}, or {@link #NO_VERSION} if there is no origin.
+     * It counts the modifications reported through {@link #setChanged(Object, boolean)}, which
+     * the guest already has to report for the device copies to be refreshed.
+     */
+    @TruffleBoundary
+    public long getOriginVersion() {
+        final Object o = getOrigin();
+        if (o == null)
+            return NO_VERSION;
+        final Changes c = changes.get(o);
+        return c != null ? c.version : 0;
+    }
+
+    @TruffleBoundary
+    public boolean isMarkedChanged() {
+        final Changes c = origin != null ? changes.get(origin) : null;
+        return c != null && (c.changed || c.blocks != null);
+    }
+
     public Object getValue() {
         return value;
     }
@@ -84,18 +152,42 @@ public abstract class Unboxer {
         return kind;
     }
 
-    public void setOriginHashCode(int hashCode) {
-        OriginHashCode = hashCode;
+    public void setOrigin(Object origin) {
+        this.origin = origin;
     }
 
     public abstract int getTypeSize();
 
+    @TruffleBoundary
     public boolean isChanged() {
-        return changedlist.remove(OriginHashCode);
+        final Changes c = origin != null ? changes.get(origin) : null;
+        if (c != null && c.changed) {
+            c.changed = false;
+            c.blocks = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the blocks changed since the last call, or null if none were recorded.
+     */
+    @TruffleBoundary
+    public DirtyBlocks takeChangedBlocks() {
+        final Changes c = origin != null ? changes.get(origin) : null;
+        if (c == null)
+            return null;
+        final DirtyBlocks blocks = c.blocks;
+        c.blocks = null;
+        return blocks;
     }
 
     public void setChanged(boolean changed) {
-        setChanged(OriginHashCode, changed);
+        setChanged(origin, changed);
+    }
+
+    public void setChanged(DirtyBlocks blocks) {
+        setChanged(origin, blocks);
     }
 
 }
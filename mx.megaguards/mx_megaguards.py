@@ -269,6 +269,32 @@ def check_megaguards(device='GPU', verbose=False, cmd=['mx', 'python'], testprog
         print_ok("OpenCL device {0} has been detected!".format(device))
         return True
 
+def check_async_transfers(device='CPU', verbose=False, cmd=['mx', 'python'], testprogram='check_async_transfers_MG.py'):
+    check_python_program = [_suite.dir + os.sep + 'tests' + os.sep + testprogram]
+    checksums = {}
+    for mode, opts in [('synchronous', []), ('asynchronous', ['--mg-target-async-transfers'])]:
+        megaguards_opt = ['--mg-target=' + device.lower(), '--mg-log=eyxd'] + opts
+        out = mx.OutputCapture()
+        _out = out if not verbose else mx.TeeOutputCapture(out)
+        out_err = mx.OutputCapture()
+        _out_err = out if not verbose else mx.TeeOutputCapture(out_err)
+        print_progress('Testing %s transfers on OpenCL device %s' % (mode, device))
+        retcode = mx.run(cmd + check_python_program + megaguards_opt, out=_out, err=_out_err, nonZeroIsFatal=False)
+        if not re.search(r"Execution Target:.+" + device, out.data, re.MULTILINE):
+            print_error(opencl_err.format(device))
+            return False
+        m = re.search(r"^Checksum: (?P<checksum>.+)$", out.data, re.MULTILINE)
+        if retcode != 0 or not m:
+            print_error('The %s transfers results differ from ZipPy' % mode)
+            return False
+        checksums[mode] = m.group('checksum')
+
+    if checksums['synchronous'] != checksums['asynchronous']:
+        print_error('The asynchronous transfers results differ from the synchronous ones')
+        return False
+    print_ok('The asynchronous transfers results match the synchronous ones')
+    return True
+
 def get_megaguards_benchmark_suite(force=False, check_only=False, verbose=False):
     is_exist = os.path.exists(_suite.dir + megaguards_benchmarks_path + os.sep + '.git')
     if check_only:
@@ -323,6 +349,16 @@ def run_mg_internal(args, verbose=False, extraVmArgs=None, env=None, jdk=None, *
             break
     return out.data
 
+def run_mg_jmh(args):
+    """run the JMH microbenchmarks of the MegaGuards core
+
+    JVM arguments go before '--', everything else is passed to JMH,
+    e.g. mx mg-jmh -Xmx4g -- -f 1 -wi 3 -i 5 BoundCheck"""
+    vmArgs, jmhArgs = mx.extract_VM_args(args, useDoubleDash=True, defaultAllVMArgs=False)
+    vmArgs += ['-cp', mx.classpath(["edu.uci.megaguards.benchmark"])]
+    vmArgs.append("org.openjdk.jmh.Main")
+    return mx.run_java(vmArgs + jmhArgs, jdk=get_jdk())
+
 def check_polyhedral_mg(verbose=False):
     success = 'Polyhedral test is operational'
     failure = 'Polyhedral test FAILED!'
@@ -690,6 +726,7 @@ def get_megaguards_setup(args):
     parser.add_argument('--clinfo', action='store_true', help='Print OpenCL devices information.')
     parser.add_argument('--test-gpu', '-t', action='store_true', help='Test GPU OpenCL device.')
     parser.add_argument('--test-cpu', action='store_true', help='Test CPU OpenCL device.')
+    parser.add_argument('--test-async-transfers', action='store_true', help='Compare the asynchronous and synchronous transfers on the CPU OpenCL device (e.g. pocl).')
     parser.add_argument('--check-requirements', action='store_true', help='Test benchmark requirements.')
     parser.add_argument('--simple-example', action='store_true', help='Run simple examples.')
     parser.add_argument('--detect-ocl-platform', action='store_true', help='Detect OpenCL devices platform index.')
@@ -746,6 +783,9 @@ def get_megaguards_setup(args):
     if args.test_cpu or init:
         check_megaguards('CPU', verbose)
 
+    if args.test_async_transfers:
+        check_async_transfers('CPU', verbose)
+
     if args.detect_ocl_platform or init_all:
         find_opencl_device_platform(verbose)
 
@@ -767,4 +807,5 @@ def get_megaguards_setup(args):
 mx.update_commands(_suite, {
     # new commands
     'mg' : [get_megaguards_setup, ['options']],
+    'mg-jmh' : [run_mg_jmh, '[VM options] [--] [JMH options]'],
 })
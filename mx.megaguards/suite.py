@@ -68,6 +68,31 @@ suite = {
       "workingSets" : "Truffle",
     },
 
+    "edu.uci.megaguards.benchmark" : {
+      "subDir" : "megaguards",
+      "sourceDirs" : ["src"],
+      "dependencies" : [
+                "edu.uci.megaguards",
+                "mx:JMH_1_21",
+                ],
+      "checkstyle" : "edu.uci.megaguards",
+      "javaCompliance" : "1.8",
+      "annotationProcessors" : ["mx:JMH_1_21"],
+      "workingSets" : "Truffle,Bench",
+      "testProject" : True,
+    },
+
+    "edu.uci.megaguards.jfr" : {
+      "subDir" : "megaguards",
+      "sourceDirs" : ["src"],
+      "dependencies" : [
+                "edu.uci.megaguards",
+                ],
+      "checkstyle" : "edu.uci.megaguards",
+      "javaCompliance" : "11+",
+      "workingSets" : "Truffle",
+    },
+
   },
 
   "licenses" : {
@@ -94,5 +119,29 @@ suite = {
       "sourcesPath" : "megaguards.src.zip",
     },
 
+    "MEGAGUARDS_BENCHMARKS" : {
+      "path" : "megaguards-benchmarks.jar",
+      "dependencies" : [
+        "edu.uci.megaguards.benchmark",
+      ],
+      "distDependencies" : [
+        "MEGAGUARDS",
+        ],
+      "exclude" : [
+        "mx:JMH_1_21",
+        ],
+      "testDistribution" : True,
+    },
+
+    "MEGAGUARDS_JFR" : {
+      "path" : "megaguards-jfr.jar",
+      "dependencies" : [
+        "edu.uci.megaguards.jfr",
+      ],
+      "distDependencies" : [
+        "MEGAGUARDS",
+        ],
+    },
+
   },
 }
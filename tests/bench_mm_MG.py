@@ -0,0 +1,32 @@
+import sys, time, random
+
+# Compare with and without loop tiling:
+#   mx python tests/bench_mm_MG.py --mg-target=truffle
+#   mx python tests/bench_mm_MG.py --mg-target=truffle --mg-target-no-loop-tiling
+N = int(sys.argv[1]) if len(sys.argv) > 1 else 1024
+RUNS = 5
+
+def mm_MG(X,Y,Z):
+    # iterate through rows of X
+    for i in range(len(X)):
+       # iterate through columns of Y
+       for j in range(len(Y[0])):
+           # iterate through rows of Y
+           for k in range(len(Y)):
+               Z[i][j] += X[i][k] * Y[k][j]
+    return Z
+
+
+X = [[random.random() for i in range(N)] for j in range(N)]
+Y = [[random.random() for i in range(N)] for j in range(N)]
+
+print('Running matrix multiplication (%d x %d) %d times..' % (N, N, RUNS))
+times = []
+for r in range(RUNS):
+    Z = [[0.0 for i in range(N)] for j in range(N)]
+    start = time.time()
+    mm_MG(X,Y,Z)
+    times.append(time.time() - start)
+    print("Run %d: %.5f seconds" % (r, times[-1]))
+
+print("Best matrix multiplication time: %.5f seconds" % min(times))
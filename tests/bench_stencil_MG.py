@@ -0,0 +1,29 @@
+import sys, time, random
+
+# Compare the local memory kernels with the global memory ones, on both devices:
+#   mx python tests/bench_stencil_MG.py --mg-target=gpu
+#   mx python tests/bench_stencil_MG.py --mg-target=gpu --mg-target-local-memory-tiling
+#   mx python tests/bench_stencil_MG.py --mg-target=cpu
+#   mx python tests/bench_stencil_MG.py --mg-target=cpu --mg-target-local-memory-tiling
+N = int(sys.argv[1]) if len(sys.argv) > 1 else 2048
+RUNS = 5
+
+def stencil_MG(A, B):
+    for i in range(1, len(A) - 1):
+        for j in range(1, len(A[0]) - 1):
+            B[i][j] = 0.2 * (A[i][j] + A[i - 1][j] + A[i + 1][j] + A[i][j - 1] + A[i][j + 1])
+    return B
+
+
+A = [[random.random() for i in range(N)] for j in range(N)]
+
+print('Running 5-point stencil (%d x %d) %d times..' % (N, N, RUNS))
+times = []
+for r in range(RUNS):
+    B = [[0.0 for i in range(N)] for j in range(N)]
+    start = time.time()
+    stencil_MG(A, B)
+    times.append(time.time() - start)
+    print("Run %d: %.5f seconds" % (r, times[-1]))
+
+print("Best 5-point stencil time: %.5f seconds" % min(times))
@@ -0,0 +1,83 @@
+import sys, random
+
+# Checks the OpenCL results against ZipPy, run it with and without the asynchronous transfers:
+#   mx python tests/check_async_transfers_MG.py --mg-target=cpu
+#   mx python tests/check_async_transfers_MG.py --mg-target=cpu --mg-target-async-transfers
+# or both at once (on pocl, the usual OpenCL CPU device):
+#   mx mg --test-async-transfers
+N = int(sys.argv[1]) if len(sys.argv) > 1 else 2 ** 16
+M = 2 ** 7
+STEPS = 4
+# the OpenCL compiler may contract multiply-adds
+EPS = 1e-9
+
+random.seed(7)
+
+def saxpy_MG(a, X, Y, Z):
+    for i in range(len(X)):
+        Z[i] = a * X[i] + Y[i]
+    return Z
+
+def stencil_MG(A, B):
+    for i in range(1, len(A) - 1):
+        for j in range(1, len(A[0]) - 1):
+            B[i][j] = 0.2 * (A[i][j] + A[i - 1][j] + A[i + 1][j] + A[i][j - 1] + A[i][j + 1])
+    return B
+
+def max_delta(expected, actual):
+    delta = 0.0
+    for i in range(len(expected)):
+        r = abs(expected[i] - actual[i])
+        delta = delta if r <= delta else r
+    return delta
+
+
+X = [random.random() for i in range(N)]
+Y = [random.random() for i in range(N)]
+Z = [0.0 for i in range(N)]
+failed = False
+
+print('Running saxpy (%d) %d times with partial host updates..' % (N, STEPS))
+for s in range(STEPS):
+    # the unmodified input stays on the device, only the touched blocks of Y are uploaded again
+    for i in range(s * 97, N, N // 8):
+        Y[i] = Y[i] + 1.0
+    saxpy_MG(2.0, X, Y, Z)
+    expected = [2.0 * X[i] + Y[i] for i in range(N)]
+    delta = max_delta(expected, Z)
+    if delta > EPS:
+        print('saxpy step %d: maximum delta = %f' % (s, delta))
+        failed = True
+
+A = [[random.random() for i in range(M)] for j in range(M)]
+B = [[0.0 for i in range(M)] for j in range(M)]
+RA = [row[:] for row in A]
+RB = [row[:] for row in B]
+
+print('Running 5-point stencil (%d x %d) %d times, swapping input and output..' % (M, M, STEPS))
+for s in range(STEPS):
+    stencil_MG(A, B)
+    for i in range(1, M - 1):
+        for j in range(1, M - 1):
+            RB[i][j] = 0.2 * (RA[i][j] + RA[i - 1][j] + RA[i + 1][j] + RA[i][j - 1] + RA[i][j + 1])
+    A, B = B, A
+    RA, RB = RB, RA
+
+delta = 0.0
+for i in range(M):
+    r = max_delta(RA[i], A[i])
+    delta = delta if r <= delta else r
+if delta > EPS:
+    print('stencil: maximum delta = %f' % delta)
+    failed = True
+
+# the synchronous and asynchronous runs have to print the same checksum
+checksum = sum(Z)
+for i in range(M):
+    checksum += sum(A[i])
+print('Checksum: %r' % checksum)
+
+if failed:
+    print('Results differ from ZipPy')
+    sys.exit(1)
+print('Identical results compare to ZipPy')